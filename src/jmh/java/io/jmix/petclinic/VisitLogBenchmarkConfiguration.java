@@ -0,0 +1,49 @@
+package io.jmix.petclinic;
+
+import io.jmix.autoconfigure.core.CoreAutoConfiguration;
+import io.jmix.autoconfigure.data.DataAutoConfiguration;
+import io.jmix.autoconfigure.eclipselink.EclipselinkAutoConfiguration;
+import io.jmix.core.annotation.JmixModule;
+import io.jmix.eclipselink.EclipselinkConfiguration;
+import io.jmix.petclinic.visit.log.VisitLogMapper;
+import io.jmix.petclinic.visit.log.VisitLogStoreDescriptor;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Minimal Spring context for benchmarks of the visit log conversion.
+ * <p>
+ * Instead of {@link JmixPetclinicApplication}, it only starts the Jmix core and data modules with the entities of the
+ * application, so that {@link VisitLogMapper} can create `VisitLog` entities and `Visit` references. The relational
+ * database is an empty in-memory HSQLDB. Web server, UI, MongoDB and all other components of the application are
+ * not started.
+ * </p>
+ */
+@SpringBootConfiguration
+@JmixModule(dependsOn = EclipselinkConfiguration.class)
+@ImportAutoConfiguration({
+        DataSourceAutoConfiguration.class,
+        CoreAutoConfiguration.class,
+        DataAutoConfiguration.class,
+        EclipselinkAutoConfiguration.class
+})
+@Import({VisitLogStoreDescriptor.class, VisitLogMapper.class})
+public class VisitLogBenchmarkConfiguration {
+
+    /**
+     * Starts the benchmark context.
+     *
+     * @return The started context; the caller closes it.
+     */
+    public static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(VisitLogBenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=jdbc:hsqldb:mem:visitLogBenchmark")
+                .run();
+    }
+}
@@ -0,0 +1,117 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.EntityStates;
+import io.jmix.petclinic.VisitLogBenchmarkConfiguration;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the conversion of {@link VisitLogDocument}s by {@link VisitLogMapper} with the former conversion, which
+ * created every {@link VisitLog} through {@link DataManager} and a `visit` reference per document.
+ * <p>
+ * The documents are created in memory, so MongoDB is not accessed. The mapper runs in the minimal context of
+ * {@link VisitLogBenchmarkConfiguration} instead of the whole application. `visitCount` distributes the documents over
+ * one visit, like the list of the visit logs of a visit, or over many visits, like a search result.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VisitLogMapperBenchmark {
+
+    @Param({"10000", "100000"})
+    int documentCount;
+
+    @Param({"1", "1000"})
+    int visitCount;
+
+    ConfigurableApplicationContext context;
+    VisitLogMapper visitLogMapper;
+    DataManager dataManager;
+    EntityStates entityStates;
+    List<VisitLogDocument> documents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = VisitLogBenchmarkConfiguration.start();
+        visitLogMapper = context.getBean(VisitLogMapper.class);
+        dataManager = context.getBean(DataManager.class);
+        entityStates = context.getBean(EntityStates.class);
+
+        List<UUID> visitIds = new ArrayList<>(visitCount);
+        for (int i = 0; i < visitCount; i++) {
+            visitIds.add(UUID.randomUUID());
+        }
+        Instant createdAt = Instant.now();
+        documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            VisitLogDocument document = new VisitLogDocument();
+            document.setId(UUID.randomUUID().toString());
+            document.setVisitId(visitIds.get(i % visitCount));
+            document.setTitle("Visit log " + i);
+            document.setDescription("Description of visit log " + i);
+            document.setCreatedAt(createdAt.plusMillis(i));
+            documents.add(document);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<VisitLog> visitLogMapper() {
+        return visitLogMapper.toVisitLogs(documents);
+    }
+
+    @Benchmark
+    public List<VisitLog> perDocumentLookups() {
+        List<VisitLog> visitLogs = new ArrayList<>(documents.size());
+        for (VisitLogDocument document : documents) {
+            visitLogs.add(toVisitLogPerDocument(document));
+        }
+        return visitLogs;
+    }
+
+    /**
+     * The conversion before {@link VisitLogMapper}, when the visit ID was stored as string.
+     */
+    private VisitLog toVisitLogPerDocument(VisitLogDocument document) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        entityStates.setNew(visitLog, false);
+
+        visitLog.setId(document.getId());
+        visitLog.setVisit(dataManager.getReference(Visit.class, UUID.fromString(document.getVisitId().toString())));
+        visitLog.setTitle(document.getTitle());
+        visitLog.setDescription(document.getDescription());
+        if (document.getCreatedAt() != null) {
+            visitLog.setCreatedAt(document.getCreatedAt().atOffset(ZoneOffset.UTC));
+        }
+        return visitLog;
+    }
+}
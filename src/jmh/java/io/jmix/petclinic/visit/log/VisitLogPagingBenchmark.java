@@ -0,0 +1,134 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.UuidRepresentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a page of the visit logs of a visit with `logCount` visit logs, depending on the position
+ * of the page. The keyset pagination of {@link VisitLogDocumentRepositoryCustom#scrollByVisitIdIn} seeks to the
+ * page on the (visitId, createdAt, _id) index, so its latency is expected to stay constant, while the offset
+ * pagination of {@link VisitLogDocumentRepository#findByVisitIdIn(java.util.Collection, org.springframework.data.domain.Pageable)}
+ * skips over all previous visit logs.
+ * <p>
+ * The application is not started. {@link VisitLogDocumentRepository} is created by a {@link MongoRepositoryFactory}
+ * on a plain {@link MongoTemplate} for the MongoDB URI of application.properties, so that neither
+ * {@link VisitLogCache} nor any other component of the application is involved. The visit logs are written to that
+ * database before the benchmark and removed afterwards.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VisitLogPagingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"100000"})
+    int logCount;
+
+    @Param({"0", "50000", "99950"})
+    int pageStart;
+
+    MongoClient mongoClient;
+    VisitLogDocumentRepository visitLogDocumentRepository;
+    List<UUID> visitIds;
+    KeysetScrollPosition position;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConnectionString connectionString = new ConnectionString(PropertiesLoaderUtils
+                .loadProperties(new ClassPathResource("application.properties"))
+                .getProperty("spring.data.mongodb.uri"));
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(connectionString)
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .build());
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, connectionString.getDatabase());
+
+        MongoMappingContext mappingContext = (MongoMappingContext) mongoTemplate.getConverter().getMappingContext();
+        IndexOperations indexOperations = mongoTemplate.indexOps(VisitLogDocument.class);
+        new MongoPersistentEntityIndexResolver(mappingContext)
+                .resolveIndexFor(VisitLogDocument.class)
+                .forEach(indexOperations::ensureIndex);
+
+        visitLogDocumentRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(
+                VisitLogDocumentRepository.class,
+                RepositoryFragments.just(new VisitLogDocumentRepositoryCustomImpl(mongoTemplate))
+        );
+
+        visitIds = List.of(UUID.randomUUID());
+        Instant createdAt = Instant.now();
+        for (int batchStart = 0; batchStart < logCount; batchStart += 10_000) {
+            List<VisitLogDocument> documents = new ArrayList<>();
+            for (int i = batchStart; i < Math.min(batchStart + 10_000, logCount); i++) {
+                VisitLogDocument document = new VisitLogDocument();
+                document.setVisitId(visitIds.get(0));
+                document.setTitle("Visit log " + i);
+                document.setCreatedAt(createdAt.plusMillis(i));
+                documents.add(document);
+            }
+            mongoTemplate.insert(documents, VisitLogDocument.class);
+        }
+
+        position = ScrollPosition.keyset();
+        if (pageStart > 0) {
+            Window<VisitLogDocument> previous = visitLogDocumentRepository.scrollByVisitIdIn(visitIds, position, pageStart);
+            position = (KeysetScrollPosition) previous.positionAt(previous.size() - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        visitLogDocumentRepository.deleteByVisitIdIn(new ArrayList<>(visitIds));
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Window<VisitLogDocument> keysetPage() {
+        return visitLogDocumentRepository.scrollByVisitIdIn(visitIds, position, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<VisitLogDocument> offsetPage() {
+        return visitLogDocumentRepository.findByVisitIdIn(visitIds,
+                PageRequest.of(pageStart / PAGE_SIZE, PAGE_SIZE, VisitLogPaging.CREATION_ORDER));
+    }
+}
@@ -0,0 +1,206 @@
+package io.jmix.petclinic;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the latency of MongoDB commands and reports slow ones.
+ * <p>
+ * Spring Boot already publishes `mongodb.driver.commands` by command name. This listener adds:
+ * <ul>
+ *     <li>`petclinic.mongodb.commands` - latency histogram by `command`, `collection`, `origin` and `outcome`
+ *     (`success` or `failure`). The `origin` is the application method that issued the command, see
+ *     {@link MongoOperationOrigin}.</li>
+ *     <li>Commands taking longer than `petclinic.mongodb.monitoring.slow-operation-threshold` are logged together
+ *     with the shape of their filter, i.e. the filter with all values replaced by `?`, and recorded in the
+ *     {@link MongoSlowOperationLog}. The shape shows which query pattern is slow without exposing data.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * As the listener is called for every command, the timers are registered once per combination of tags and then
+ * looked up, and the filter shape is only computed for slow commands.
+ * </p>
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoCommandMetrics.class);
+
+    private static final String NO_COLLECTION = "none";
+    private static final String FILTER = "filter";
+    private static final BsonDocumentCodec DOCUMENT_CODEC = new BsonDocumentCodec();
+
+    private final MeterRegistry meterRegistry;
+    private final MongoDbProperties.Monitoring settings;
+    private final MongoSlowOperationLog slowOperationLog;
+
+    private final Map<Integer, StartedCommand> startedCommands = new ConcurrentHashMap<>();
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(MeterRegistry meterRegistry, MongoDbProperties.Monitoring settings,
+                               MongoSlowOperationLog slowOperationLog) {
+        this.meterRegistry = meterRegistry;
+        this.settings = settings;
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        // the command document is only valid during this callback, so the filter is copied as raw BSON; its shape
+        // is only computed if the command turns out to be slow
+        BsonValue filter = filter(event.getCommandName(), command);
+        startedCommands.put(event.getRequestId(), new StartedCommand(
+                Instant.now(),
+                collection(event.getCommandName(), command),
+                MongoOperationOrigin.current(),
+                filter != null ? new RawBsonDocument(new BsonDocument(FILTER, filter), DOCUMENT_CODEC) : null
+        ));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), null);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS),
+                event.getThrowable().getMessage());
+    }
+
+    private void completed(int requestId, String commandName, long elapsedNanos, @Nullable String failure) {
+        StartedCommand started = startedCommands.remove(requestId);
+        if (started == null) {
+            return;
+        }
+
+        TimerKey timerKey = new TimerKey(commandName, started.collection(), started.origin(), failure == null);
+        timers.computeIfAbsent(timerKey, this::createTimer)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        Duration elapsed = Duration.ofNanos(elapsedNanos);
+        if (elapsed.compareTo(settings.getSlowOperationThreshold()) >= 0) {
+            String filterShape = started.filter() != null ? shape(started.filter().get(FILTER)) : null;
+            log.warn("Slow MongoDB operation: {} on {} took {} ms (origin: {}, filter: {})",
+                    commandName, started.collection(), elapsed.toMillis(), started.origin(), filterShape);
+            slowOperationLog.add(new MongoSlowOperationLog.Entry(started.startedAt(), elapsed, commandName,
+                    started.collection(), started.origin(), filterShape, failure));
+        }
+    }
+
+    private Timer createTimer(TimerKey key) {
+        return Timer.builder("petclinic.mongodb.commands")
+                .description("Latency of MongoDB commands")
+                .tag("command", key.command())
+                .tag("collection", key.collection())
+                .tag("origin", key.origin())
+                .tag("outcome", key.success() ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String collection(String commandName, BsonDocument command) {
+        BsonValue target = "getMore".equals(commandName) ? command.get("collection") : command.get(commandName);
+        return target != null && target.isString() ? target.asString().getValue() : NO_COLLECTION;
+    }
+
+    /**
+     * Returns the filter of a command with all values replaced by `?`, e.g. `{visitId: {$in: [?]}}`. For
+     * aggregations, the shape of the whole pipeline is returned.
+     */
+    @Nullable
+    static String filterShape(String commandName, BsonDocument command) {
+        BsonValue filter = filter(commandName, command);
+        return filter != null ? shape(filter) : null;
+    }
+
+    @Nullable
+    private static BsonValue filter(String commandName, BsonDocument command) {
+        return switch (commandName) {
+            case "find" -> command.get("filter");
+            case "count", "distinct", "findAndModify" -> command.get("query");
+            case "aggregate" -> command.get("pipeline");
+            case "delete" -> firstStatementFilter(command.get("deletes"));
+            case "update" -> firstStatementFilter(command.get("updates"));
+            default -> null;
+        };
+    }
+
+    private static String shape(BsonValue filter) {
+        StringBuilder shape = new StringBuilder();
+        appendShape(filter, shape);
+        return shape.toString();
+    }
+
+    @Nullable
+    private static BsonValue firstStatementFilter(@Nullable BsonValue statements) {
+        if (statements == null || !statements.isArray() || statements.asArray().isEmpty()) {
+            return null;
+        }
+        BsonValue first = statements.asArray().get(0);
+        return first.isDocument() ? first.asDocument().get("q") : null;
+    }
+
+    private static void appendShape(BsonValue value, StringBuilder shape) {
+        if (value.isDocument()) {
+            shape.append('{');
+            boolean first = true;
+            for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+                if (!first) {
+                    shape.append(", ");
+                }
+                first = false;
+                shape.append(field.getKey()).append(": ");
+                appendShape(field.getValue(), shape);
+            }
+            shape.append('}');
+        } else if (value.isArray()) {
+            appendArrayShape(value.asArray(), shape);
+        } else {
+            shape.append('?');
+        }
+    }
+
+    private static void appendArrayShape(BsonArray array, StringBuilder shape) {
+        boolean containsDocuments = array.stream().anyMatch(element -> element.isDocument() || element.isArray());
+        if (!containsDocuments) {
+            // lists of values, e.g. of $in, have the same shape regardless of their length
+            shape.append("[?]");
+            return;
+        }
+
+        shape.append('[');
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                shape.append(", ");
+            }
+            appendShape(array.get(i), shape);
+        }
+        shape.append(']');
+    }
+
+    private record StartedCommand(Instant startedAt, String collection, String origin,
+                                  @Nullable RawBsonDocument filter) {
+    }
+
+    private record TimerKey(String command, String collection, String origin, boolean success) {
+    }
+}
@@ -0,0 +1,96 @@
+package io.jmix.petclinic;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes how long operations wait for a pooled MongoDB connection and how often they do not get one.
+ * <p>
+ * Spring Boot already publishes the size of the pools and the number of checked out connections
+ * (`mongodb.driver.pool.*`). This listener adds the metrics showing that a pool is saturated:
+ * <ul>
+ *     <li>`petclinic.mongodb.pool.checkout` - time until a connection was checked out, by `server`.</li>
+ *     <li>`petclinic.mongodb.pool.checkout.failed` - failed check-outs by `server` and `reason`. The reason
+ *     `TIMEOUT` means that no connection became free within `petclinic.mongodb.pool.max-wait-time`.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The meters of a server are registered once when its pool is created and removed when the pool is closed, like
+ * Spring Boot does for its pool metrics, so a check-out only looks up the meters of its server.
+ * </p>
+ */
+public class MongoConnectionPoolSaturationMetrics implements ConnectionPoolListener {
+
+    private final MeterRegistry meterRegistry;
+    private final Meter.MeterProvider<Timer> checkoutTimers;
+    private final Meter.MeterProvider<Counter> failedCheckoutCounters;
+
+    private final Map<ServerId, PoolMeters> poolMeters = new ConcurrentHashMap<>();
+
+    public MongoConnectionPoolSaturationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.checkoutTimers = Timer.builder("petclinic.mongodb.pool.checkout")
+                .description("Time until a pooled MongoDB connection was checked out")
+                .withRegistry(meterRegistry);
+        this.failedCheckoutCounters = Counter.builder("petclinic.mongodb.pool.checkout.failed")
+                .description("Failed check-outs of pooled MongoDB connections")
+                .withRegistry(meterRegistry);
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        meters(event.getServerId());
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        PoolMeters meters = poolMeters.remove(event.getServerId());
+        if (meters != null) {
+            meterRegistry.remove(meters.checkout());
+            meters.failedCheckouts().values().forEach(meterRegistry::remove);
+        }
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        meters(event.getConnectionId().getServerId()).checkout()
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        meters(event.getServerId()).failedCheckouts().get(event.getReason()).increment();
+    }
+
+    private PoolMeters meters(ServerId serverId) {
+        // normally created with the pool; computed on demand in case the pool has been created before the listener
+        return poolMeters.computeIfAbsent(serverId, this::createMeters);
+    }
+
+    private PoolMeters createMeters(ServerId serverId) {
+        Tags serverTags = Tags.of("server", serverId.getAddress().toString());
+        Map<ConnectionCheckOutFailedEvent.Reason, Counter> failedCheckouts =
+                new EnumMap<>(ConnectionCheckOutFailedEvent.Reason.class);
+        for (ConnectionCheckOutFailedEvent.Reason reason : ConnectionCheckOutFailedEvent.Reason.values()) {
+            failedCheckouts.put(reason, failedCheckoutCounters.withTags(serverTags.and("reason", reason.name())));
+        }
+        return new PoolMeters(checkoutTimers.withTags(serverTags), failedCheckouts);
+    }
+
+    private record PoolMeters(Timer checkout, Map<ConnectionCheckOutFailedEvent.Reason, Counter> failedCheckouts) {
+    }
+}
@@ -0,0 +1,59 @@
+package io.jmix.petclinic;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Holds the MongoDB database that the current thread works on, overriding the database that the routing database
+ * factories of the online profile would choose for the thread.
+ * <p>
+ * In the online profile, each HTTP session works on a database of its own, which is determined from the
+ * authentication bound to the calling thread. Background threads, e.g. the writer of the visit log write-behind
+ * queue, have no session. They therefore capture the database name when work is queued and select it while
+ * processing the work. Reactive streams, which are subscribed on other threads, carry the name in their subscriber
+ * context under the key {@code MongoDatabaseSelection.class} instead.
+ * </p>
+ * <p>
+ * Outside of the online profile there is only one database, and the selection has no effect.
+ * </p>
+ */
+public final class MongoDatabaseSelection {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private MongoDatabaseSelection() {
+    }
+
+    /**
+     * @return The database selected for the current thread, or {@code null} if the database is determined as usual.
+     */
+    @Nullable
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Selects the database of the current thread.
+     *
+     * @param databaseName The name of the database, captured e.g. with {@code MongoTemplate.getDb().getName()}.
+     * @return The previous selection, to be passed to {@link #restore} afterwards.
+     */
+    @Nullable
+    public static String enter(String databaseName) {
+        String previous = CURRENT.get();
+        CURRENT.set(databaseName);
+        return previous;
+    }
+
+    /**
+     * Restores the selection that was set before the matching {@link #enter} call.
+     *
+     * @param previous The value returned by {@link #enter}.
+     */
+    public static void restore(@Nullable String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package io.jmix.petclinic;
 
+import com.mongodb.MongoCompressor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MongoDB configuration class that activates scanning for Spring Data MongoDB repositories.
@@ -13,10 +22,20 @@ import org.springframework.data.mongodb.repository.MongoRepository;
  * are automatically detected and registered as beans within the Spring application context.
  * </p>
  * <p>
+ * In the same way, {@link EnableReactiveMongoRepositories} registers all interfaces extending
+ * {@link ReactiveMongoRepository}. Spring Data assigns each repository interface to either the blocking or the
+ * reactive infrastructure based on the repository base interface it extends.
+ * </p>
+ * <p>
  * The {@link Configuration} annotation marks this as a Spring-managed configuration class, enabling
  * MongoDB-specific setup, including repository and template management.
  * </p>
  * <p>
+ * Additionally, the MongoDB client shared by both repository types is tuned by {@link MongoDbProperties}
+ * (`petclinic.mongodb.*`): connection pool, timeouts and wire compression. Its commands are monitored for
+ * latency and slow operations.
+ * </p>
+ * <p>
  * Refer to the <a href="https://docs.spring.io/spring-data/mongodb/reference/mongodb/repositories/repositories.html">Spring Data MongoDB Repositories</a> documentation for more details on repository scanning,
  * as well as the general <a href="https://docs.spring.io/spring-data/mongodb/reference/repositories/core-concepts.html">core concepts of repository support</a> in Spring Data.
  * </p>
@@ -27,7 +46,53 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 // tag::class[]
 @Configuration
 @EnableMongoRepositories
+@EnableReactiveMongoRepositories
 public class MongoDbConfiguration {
 
+    // ...
+
+    // end::class[]
+
+    /**
+     * Applies {@link MongoDbProperties} to the settings of the MongoDB client created by Spring Boot and publishes
+     * the saturation of the connection pool (see {@link MongoConnectionPoolSaturationMetrics}) as well as the
+     * latency and slow operations of all commands (see {@link MongoCommandMetrics}) as metrics.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer petclinicMongoClientSettingsCustomizer(MongoDbProperties mongoDbProperties,
+                                                                                       MeterRegistry meterRegistry,
+                                                                                       MongoSlowOperationLog slowOperationLog) {
+        MongoDbProperties.Pool pool = mongoDbProperties.getPool();
+        MongoDbProperties.Timeouts timeouts = mongoDbProperties.getTimeouts();
+        List<MongoCompressor> compressors = mongoDbProperties.getCompressors().stream()
+                .map(this::toMongoCompressor)
+                .toList();
+
+        return builder -> builder
+                .applyToConnectionPoolSettings(poolSettings -> poolSettings
+                        .minSize(pool.getMinSize())
+                        .maxSize(pool.getMaxSize())
+                        .maxConnectionIdleTime(pool.getMaxIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .addConnectionPoolListener(new MongoConnectionPoolSaturationMetrics(meterRegistry)))
+                .applyToSocketSettings(socketSettings -> socketSettings
+                        .connectTimeout(timeouts.getConnect().toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout(timeouts.getSocketRead().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(clusterSettings -> clusterSettings
+                        .serverSelectionTimeout(timeouts.getServerSelection().toMillis(), TimeUnit.MILLISECONDS))
+                .compressorList(compressors)
+                .addCommandListener(new MongoCommandMetrics(meterRegistry, mongoDbProperties.getMonitoring(),
+                        slowOperationLog));
+    }
+
+    private MongoCompressor toMongoCompressor(MongoDbProperties.Compressor compressor) {
+        return switch (compressor) {
+            case SNAPPY -> MongoCompressor.createSnappyCompressor();
+            case ZSTD -> MongoCompressor.createZstdCompressor();
+            case ZLIB -> MongoCompressor.createZlibCompressor();
+        };
+    }
+
+// tag::closing-class[]
 }
-// end::class[]
\ No newline at end of file
+// end::closing-class[]
\ No newline at end of file
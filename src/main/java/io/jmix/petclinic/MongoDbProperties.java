@@ -0,0 +1,210 @@
+package io.jmix.petclinic;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the MongoDB client, bound from `petclinic.mongodb.*` and applied by {@link MongoDbConfiguration}.
+ * <p>
+ * The connection itself is configured through `spring.data.mongodb.uri`. These properties only tune the
+ * connection pool, timeouts and wire compression, which otherwise stay at the driver defaults, and configure the
+ * monitoring of slow operations.
+ * </p>
+ */
+@Configuration
+@ConfigurationProperties(prefix = "petclinic.mongodb")
+@Validated
+public class MongoDbProperties {
+
+    @Valid
+    private final Pool pool = new Pool();
+
+    @Valid
+    private final Timeouts timeouts = new Timeouts();
+
+    @Valid
+    private final Monitoring monitoring = new Monitoring();
+
+    /**
+     * Compressors offered to the server, in order of preference. The server uses the first one it supports.
+     */
+    @NotNull
+    private List<Compressor> compressors = new ArrayList<>(List.of(Compressor.ZSTD, Compressor.SNAPPY, Compressor.ZLIB));
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public Monitoring getMonitoring() {
+        return monitoring;
+    }
+
+    public List<Compressor> getCompressors() {
+        return compressors;
+    }
+
+    public void setCompressors(List<Compressor> compressors) {
+        this.compressors = compressors;
+    }
+
+    public enum Compressor {
+        SNAPPY, ZSTD, ZLIB
+    }
+
+    /**
+     * Settings of the connection pool, which exists per MongoDB server.
+     */
+    public static class Pool {
+
+        /**
+         * Number of connections kept open even if they are idle.
+         */
+        @PositiveOrZero
+        private int minSize = 5;
+
+        /**
+         * Maximum number of connections. Further operations wait for a connection to be returned to the pool.
+         */
+        @Positive
+        private int maxSize = 50;
+
+        /**
+         * Time after which an idle connection is closed, as long as more than `min-size` connections are open.
+         */
+        @NotNull
+        private Duration maxIdleTime = Duration.ofMinutes(10);
+
+        /**
+         * Maximum time an operation waits for a connection of a saturated pool before it fails.
+         */
+        @NotNull
+        private Duration maxWaitTime = Duration.ofSeconds(5);
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Duration getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        public void setMaxWaitTime(Duration maxWaitTime) {
+            this.maxWaitTime = maxWaitTime;
+        }
+    }
+
+    /**
+     * Network timeouts of the client.
+     */
+    public static class Timeouts {
+
+        /**
+         * Maximum time to establish a new connection.
+         */
+        @NotNull
+        private Duration connect = Duration.ofSeconds(5);
+
+        /**
+         * Maximum time to wait for the response to an operation on an open connection.
+         */
+        @NotNull
+        private Duration socketRead = Duration.ofSeconds(30);
+
+        /**
+         * Maximum time to find a suitable server, e.g. while the primary of a replica set is re-elected.
+         */
+        @NotNull
+        private Duration serverSelection = Duration.ofSeconds(10);
+
+        public Duration getConnect() {
+            return connect;
+        }
+
+        public void setConnect(Duration connect) {
+            this.connect = connect;
+        }
+
+        public Duration getSocketRead() {
+            return socketRead;
+        }
+
+        public void setSocketRead(Duration socketRead) {
+            this.socketRead = socketRead;
+        }
+
+        public Duration getServerSelection() {
+            return serverSelection;
+        }
+
+        public void setServerSelection(Duration serverSelection) {
+            this.serverSelection = serverSelection;
+        }
+    }
+
+    /**
+     * Settings of the command monitoring by {@link MongoCommandMetrics}.
+     */
+    public static class Monitoring {
+
+        /**
+         * Commands taking at least this long are logged and recorded in the slow operation log.
+         */
+        @NotNull
+        private Duration slowOperationThreshold = Duration.ofMillis(100);
+
+        /**
+         * Number of recent slow operations kept for the "Slow MongoDB operations" view. 0 disables the log.
+         */
+        @PositiveOrZero
+        private int slowOperationLogSize = 200;
+
+        public Duration getSlowOperationThreshold() {
+            return slowOperationThreshold;
+        }
+
+        public void setSlowOperationThreshold(Duration slowOperationThreshold) {
+            this.slowOperationThreshold = slowOperationThreshold;
+        }
+
+        public int getSlowOperationLogSize() {
+            return slowOperationLogSize;
+        }
+
+        public void setSlowOperationLogSize(int slowOperationLogSize) {
+            this.slowOperationLogSize = slowOperationLogSize;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.jmix.petclinic;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Holds the application method on whose behalf the current thread runs MongoDB operations, so that
+ * {@link MongoCommandMetrics} can attribute each command to its origin.
+ * <p>
+ * The origin is bound to the calling thread. Commands of the synchronous driver are started on that thread and
+ * therefore see the origin. Reactive streams are subscribed on driver threads after the method returned, so their
+ * commands, like those of background components, have no origin.
+ * </p>
+ */
+public final class MongoOperationOrigin {
+
+    /**
+     * Origin reported for commands started outside of a tracked method.
+     */
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private MongoOperationOrigin() {
+    }
+
+    /**
+     * @return The origin of the operations of the current thread, or {@link #NONE}.
+     */
+    public static String current() {
+        String origin = CURRENT.get();
+        return origin != null ? origin : NONE;
+    }
+
+    /**
+     * Sets the origin of the operations of the current thread.
+     *
+     * @param origin The origin, e.g. `VisitLogService.findByVisit`.
+     * @return The previous origin, to be passed to {@link #restore} afterwards.
+     */
+    @Nullable
+    public static String enter(String origin) {
+        String previous = CURRENT.get();
+        CURRENT.set(origin);
+        return previous;
+    }
+
+    /**
+     * Restores the origin that was set before the matching {@link #enter} call.
+     *
+     * @param previous The value returned by {@link #enter}.
+     */
+    public static void restore(@Nullable String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.jmix.petclinic;
+
+import io.jmix.core.entity.annotation.JmixId;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * DTO entity displaying a slow MongoDB operation recorded by {@link MongoSlowOperationLog} in the UI.
+ * <p>
+ * Field descriptions:
+ * <ul>
+ *     <li><b>startedAt</b> - Time the command was sent to the server.</li>
+ *     <li><b>durationMillis</b> - Duration until the response was received, in milliseconds.</li>
+ *     <li><b>command</b> - Name of the command, e.g. `find` or `aggregate`.</li>
+ *     <li><b>collection</b> - Collection the command operated on.</li>
+ *     <li><b>origin</b> - Application method that issued the command, see {@link MongoOperationOrigin}.</li>
+ *     <li><b>filterShape</b> - Filter of the command with all values replaced by `?`.</li>
+ *     <li><b>failure</b> - Error of a failed command, empty for successful commands.</li>
+ * </ul>
+ * </p>
+ */
+@JmixEntity(name = "petclinic_MongoSlowOperation")
+public class MongoSlowOperation {
+
+    @JmixId
+    private UUID id;
+
+    private OffsetDateTime startedAt;
+
+    private Long durationMillis;
+
+    @InstanceName
+    private String command;
+
+    private String collection;
+
+    private String origin;
+
+    private String filterShape;
+
+    private String failure;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public OffsetDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(OffsetDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(Long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public String getFilterShape() {
+        return filterShape;
+    }
+
+    public void setFilterShape(String filterShape) {
+        this.filterShape = filterShape;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+}
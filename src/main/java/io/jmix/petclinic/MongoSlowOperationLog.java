@@ -0,0 +1,75 @@
+package io.jmix.petclinic;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the most recent slow MongoDB operations in memory, as reported by {@link MongoCommandMetrics}.
+ * <p>
+ * At most `petclinic.mongodb.monitoring.slow-operation-log-size` operations are kept; older ones are dropped.
+ * The log is not persisted and only covers the operations of this application instance since its start.
+ * </p>
+ */
+@Component("petclinic_MongoSlowOperationLog")
+public class MongoSlowOperationLog {
+
+    private final MongoDbProperties.Monitoring settings;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    public MongoSlowOperationLog(MongoDbProperties mongoDbProperties) {
+        this.settings = mongoDbProperties.getMonitoring();
+    }
+
+    /**
+     * Records a slow operation, dropping the oldest one if the log is full.
+     *
+     * @param entry The slow operation.
+     */
+    public synchronized void add(Entry entry) {
+        if (settings.getSlowOperationLogSize() <= 0) {
+            return;
+        }
+        while (entries.size() >= settings.getSlowOperationLogSize()) {
+            entries.removeFirst();
+        }
+        entries.addLast(entry);
+    }
+
+    /**
+     * @return The recorded operations, slowest first.
+     */
+    public synchronized List<Entry> getSlowest() {
+        return entries.stream()
+                .sorted(Comparator.comparing(Entry::duration).reversed())
+                .toList();
+    }
+
+    /**
+     * Removes all recorded operations.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A slow MongoDB operation.
+     *
+     * @param startedAt   Time the command was sent to the server.
+     * @param duration    Duration until the response was received.
+     * @param command     Name of the command.
+     * @param collection  Collection the command operated on.
+     * @param origin      Application method that issued the command, see {@link MongoOperationOrigin}.
+     * @param filterShape Filter of the command with all values replaced by `?`, if the command has a filter.
+     * @param failure     Error of a failed command.
+     */
+    public record Entry(Instant startedAt, Duration duration, String command, String collection, String origin,
+                        @Nullable String filterShape, @Nullable String failure) {
+    }
+}
@@ -0,0 +1,30 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.petclinic.visit.log.VisitLogDocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Assigns creation timestamps to visit logs stored before `createdAt` was introduced, so that they are included
+ * in the ordered / keyset based retrieval of visit logs.
+ */
+@Component("petclinic_BackfillVisitLogCreatedAtOnApplicationStart")
+public class BackfillVisitLogCreatedAtOnApplicationStart {
+
+    private static final Logger log = LoggerFactory.getLogger(BackfillVisitLogCreatedAtOnApplicationStart.class);
+
+    @Autowired
+    protected VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @EventListener
+    public void onApplicationStarted(ApplicationStartedEvent event) {
+        long updatedCount = visitLogDocumentRepository.backfillCreatedAt();
+        if (updatedCount > 0) {
+            log.info("Creation timestamp assigned to {} existing visit logs", updatedCount);
+        }
+    }
+}
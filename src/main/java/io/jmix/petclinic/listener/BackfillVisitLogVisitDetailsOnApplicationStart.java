@@ -0,0 +1,49 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.core.security.SystemAuthenticator;
+import io.jmix.petclinic.visit.log.VisitLogDenormalization;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts copying the visit, pet and owner attributes into visit logs that were stored without them in a background
+ * thread, so that the application is available while existing visit logs are completed.
+ */
+@Component("petclinic_BackfillVisitLogVisitDetailsOnApplicationStart")
+public class BackfillVisitLogVisitDetailsOnApplicationStart {
+
+    private static final Logger log = LoggerFactory.getLogger(BackfillVisitLogVisitDetailsOnApplicationStart.class);
+
+    @Autowired
+    protected VisitLogDenormalization visitLogDenormalization;
+
+    @Autowired
+    protected VisitLogProperties visitLogProperties;
+
+    @Autowired
+    protected SystemAuthenticator systemAuthenticator;
+
+    @EventListener
+    public void onApplicationStarted(ApplicationStartedEvent event) {
+        if (!visitLogProperties.getVisitDetails().isBackfillEnabled()) {
+            return;
+        }
+
+        Thread backfillThread = new Thread(() -> {
+            try {
+                systemAuthenticator.runWithSystem(() -> {
+                    visitLogDenormalization.backfill();
+                });
+            } catch (RuntimeException e) {
+                log.error("Copying visit attributes into visit logs failed, it is resumed on the next start", e);
+            }
+        }, "visit-log-visit-details-backfill");
+        backfillThread.setDaemon(true);
+        backfillThread.start();
+    }
+}
@@ -0,0 +1,52 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import io.jmix.petclinic.visit.log.VisitLogVisitIdMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts the conversion of string visit IDs of visit logs to binary UUIDs in a background thread, so that the
+ * application is available while existing visit logs are migrated.
+ * <p>
+ * If the conversion is disabled, only the number of remaining string visit IDs is checked, so that queries stop
+ * matching the string form once a previous run has converted all visit logs.
+ * </p>
+ */
+@Component("petclinic_MigrateVisitLogVisitIdsOnApplicationStart")
+public class MigrateVisitLogVisitIdsOnApplicationStart {
+
+    private static final Logger log = LoggerFactory.getLogger(MigrateVisitLogVisitIdsOnApplicationStart.class);
+
+    @Autowired
+    protected VisitLogVisitIdMigration visitLogVisitIdMigration;
+
+    @Autowired
+    protected VisitLogProperties visitLogProperties;
+
+    @EventListener
+    public void onApplicationStarted(ApplicationStartedEvent event) {
+        if (!visitLogProperties.getVisitIdMigration().isEnabled()) {
+            try {
+                visitLogVisitIdMigration.refreshCompleted();
+            } catch (RuntimeException e) {
+                log.warn("Could not check for string visit IDs of visit logs, both forms are queried", e);
+            }
+            return;
+        }
+
+        Thread migrationThread = new Thread(() -> {
+            try {
+                visitLogVisitIdMigration.migrate();
+            } catch (RuntimeException e) {
+                log.error("Visit ID conversion of visit logs failed, it is resumed on the next start", e);
+            }
+        }, "visit-log-visit-id-migration");
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+}
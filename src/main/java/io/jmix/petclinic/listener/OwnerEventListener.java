@@ -0,0 +1,45 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.core.event.EntityChangedEvent;
+import io.jmix.petclinic.entity.owner.Owner;
+import io.jmix.petclinic.visit.log.VisitLogDenormalization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Updates the owner name copied into the visit logs of the pets of an {@link Owner} once a change of the owner's
+ * name has been committed.
+ * <p>
+ * The copies are updated by {@link VisitLogDenormalization}. A failed update is logged and does not affect the
+ * committed change of the owner.
+ * </p>
+ */
+@Component("petclinic_OwnerEventListener")
+public class OwnerEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OwnerEventListener.class);
+
+    @Autowired
+    protected VisitLogDenormalization visitLogDenormalization;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onOwnerChangedAfterCommit(final EntityChangedEvent<Owner> event) {
+        if (event.getType() != EntityChangedEvent.Type.UPDATED
+                || !(event.getChanges().isChanged("firstName") || event.getChanges().isChanged("lastName"))) {
+            return;
+        }
+
+        UUID ownerId = (UUID) event.getEntityId().getValue();
+        try {
+            visitLogDenormalization.onOwnerChanged(ownerId);
+        } catch (RuntimeException e) {
+            log.error("Owner name of the visit logs of owner {} could not be updated", ownerId, e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.core.event.EntityChangedEvent;
+import io.jmix.petclinic.entity.pet.Pet;
+import io.jmix.petclinic.visit.log.VisitLogDenormalization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Updates the pet attributes copied into the visit logs of a {@link Pet} once a change of its name or owner has
+ * been committed.
+ * <p>
+ * The copies are updated by {@link VisitLogDenormalization}. A failed update is logged and does not affect the
+ * committed change of the pet.
+ * </p>
+ */
+@Component("petclinic_PetEventListener")
+public class PetEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PetEventListener.class);
+
+    @Autowired
+    protected VisitLogDenormalization visitLogDenormalization;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPetChangedAfterCommit(final EntityChangedEvent<Pet> event) {
+        if (event.getType() != EntityChangedEvent.Type.UPDATED
+                || !(event.getChanges().isChanged("name") || event.getChanges().isChanged("owner"))) {
+            return;
+        }
+
+        UUID petId = (UUID) event.getEntityId().getValue();
+        try {
+            visitLogDenormalization.onPetChanged(petId);
+        } catch (RuntimeException e) {
+            log.error("Pet attributes of the visit logs of pet {} could not be updated", petId, e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.jmix.petclinic.listener;
+
+import io.jmix.core.event.EntityChangedEvent;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.visit.log.VisitLogCascadeDeletion;
+import io.jmix.petclinic.visit.log.VisitLogDenormalization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Removes the visit logs of a {@link Visit} once the removal of the visit has been committed, and updates the
+ * visit attributes copied into its visit logs once a change of the pet or start of the visit has been committed.
+ * <p>
+ * Both hard and soft deletion (setting the {@link io.jmix.core.annotation.DeletedDate} of the visit) are handled.
+ * The visit logs are removed asynchronously by {@link VisitLogCascadeDeletion}, so the transaction that removes
+ * the visit does not wait for MongoDB.
+ * </p>
+ * <p>
+ * The copied attributes are updated by {@link VisitLogDenormalization}. A failed update is logged and does not
+ * affect the committed change of the visit.
+ * </p>
+ */
+@Component("petclinic_VisitEventListener")
+public class VisitEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitEventListener.class);
+
+    @Autowired
+    protected VisitLogCascadeDeletion visitLogCascadeDeletion;
+
+    @Autowired
+    protected VisitLogDenormalization visitLogDenormalization;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onVisitChangedAfterCommit(final EntityChangedEvent<Visit> event) {
+        if (event.getType() == EntityChangedEvent.Type.DELETED || isSoftDeleted(event)) {
+            UUID visitId = (UUID) event.getEntityId().getValue();
+            visitLogCascadeDeletion.enqueue(List.of(visitId));
+        } else if (isVisitDetailsChanged(event)) {
+            UUID visitId = (UUID) event.getEntityId().getValue();
+            try {
+                visitLogDenormalization.onVisitChanged(visitId);
+            } catch (RuntimeException e) {
+                log.error("Visit attributes of the visit logs of visit {} could not be updated", visitId, e);
+            }
+        }
+    }
+
+    private boolean isVisitDetailsChanged(EntityChangedEvent<Visit> event) {
+        return event.getType() == EntityChangedEvent.Type.UPDATED
+                && (event.getChanges().isChanged("pet") || event.getChanges().isChanged("visitStart"));
+    }
+
+    private boolean isSoftDeleted(EntityChangedEvent<Visit> event) {
+        return event.getType() == EntityChangedEvent.Type.UPDATED
+                && event.getChanges().isChanged("deletedDate")
+                && event.getChanges().getOldValue("deletedDate") == null;
+    }
+}
@@ -1,13 +1,16 @@
 package io.jmix.petclinic.online;
 
+import com.mongodb.client.MongoClient;
 import io.jmix.autoconfigure.data.JmixLiquibaseCreator;
 import liquibase.integration.spring.SpringLiquibase;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.*;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.sql.DataSource;
@@ -34,6 +37,19 @@ public class OnlineModeConfiguration {
         return new BasicDataSource();
     }
 
+    @Bean
+    public RoutingMongoDatabaseFactory mongoDatabaseFactory(MongoClient mongoClient, MongoProperties mongoProperties) {
+        return new RoutingMongoDatabaseFactory(mongoClient, mongoProperties.getMongoClientDatabase());
+    }
+
+    @Bean
+    public ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory(com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient,
+                                                                     MongoProperties mongoProperties,
+                                                                     RoutingMongoDatabaseFactory mongoDatabaseFactory) {
+        return new RoutingReactiveMongoDatabaseFactory(reactiveMongoClient, mongoProperties.getMongoClientDatabase(),
+                mongoDatabaseFactory);
+    }
+
     @Bean(name = "jmix_Liquibase")
     @Scope(BeanDefinition.SCOPE_PROTOTYPE)
     public SpringLiquibase liquibase(DataSource dataSource,
@@ -0,0 +1,159 @@
+package io.jmix.petclinic.online;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.SessionDestroyEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import io.jmix.core.security.ClientDetails;
+import io.jmix.core.security.CurrentAuthentication;
+import io.jmix.petclinic.MongoDatabaseSelection;
+import io.jmix.petclinic.visit.log.VisitLogCascadeDeletion;
+import io.jmix.petclinic.visit.log.VisitLogWriteBehindQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.DefaultIndexOperations;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexCreator;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing MongoDB database factory that delegates to databases created for each HTTP session.
+ * <p>
+ * All databases are served by the shared {@link MongoClient}. The database of a session is named
+ * `&lt;database&gt;_&lt;session ID&gt;` and created lazily, together with the indexes of all mapped documents, when
+ * the session first accesses MongoDB. Without an HTTP session, e.g. on startup or in scheduled jobs, the configured
+ * database is used. Background threads working on behalf of a session select its database with
+ * {@link MongoDatabaseSelection}, which takes precedence over the session. The database of a session is dropped
+ * asynchronously when the session is destroyed, after the queued work of these threads for the database has been
+ * discarded ({@link VisitLogWriteBehindQueue} and {@link VisitLogCascadeDeletion}), so that it can not recreate the
+ * database.
+ * <p>
+ * Indexes that are not declared on mapped documents, like those of the visit log buckets, are created by their
+ * components on the first access to each database.
+ * <p>
+ * Like {@link RoutingDataSource}, proper removal of databases of removed and expired sessions requires
+ * <pre>
+ *     jmix.ui.use-session-fixation-protection = false
+ * </pre>
+ */
+public class RoutingMongoDatabaseFactory extends SimpleMongoClientDatabaseFactory
+        implements ApplicationContextAware, VaadinServiceInitListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingMongoDatabaseFactory.class);
+
+    protected Map<String, String> databaseNames = new ConcurrentHashMap<>();
+
+    protected ApplicationContext applicationContext;
+
+    protected MongoClient mongoClient;
+    protected String defaultDatabaseName;
+
+    public RoutingMongoDatabaseFactory(MongoClient mongoClient, String defaultDatabaseName) {
+        super(mongoClient, defaultDatabaseName);
+        this.mongoClient = mongoClient;
+        this.defaultDatabaseName = defaultDatabaseName;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase() {
+        return getMongoDatabase(determineSessionDatabaseName());
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionDestroyListener(this::onSessionDestroyed);
+    }
+
+    protected String determineSessionDatabaseName() {
+        String selectedDatabaseName = MongoDatabaseSelection.current();
+        if (selectedDatabaseName != null) {
+            log.debug("Selected database {} is used", selectedDatabaseName);
+            return selectedDatabaseName;
+        }
+
+        String sessionId = getSessionId();
+        if (sessionId == null) {
+            return defaultDatabaseName;
+        }
+
+        // index creation uses a factory of the session database, so it does not access this map again
+        String databaseName = databaseNames.computeIfAbsent(sessionId, this::createSessionDatabase);
+        log.debug("Session database {} is used", databaseName);
+        return databaseName;
+    }
+
+    @Nullable
+    protected String getSessionId() {
+        CurrentAuthentication currentAuthentication = applicationContext.getBean(CurrentAuthentication.class);
+
+        String sessionId = null;
+        if (currentAuthentication.isSet()) {
+            Authentication authentication = currentAuthentication.getAuthentication();
+            Object details = authentication.getDetails();
+
+            if (details instanceof WebAuthenticationDetails) {
+                sessionId = ((WebAuthenticationDetails) details).getSessionId();
+            } else if (details instanceof ClientDetails) {
+                sessionId = ((ClientDetails) details).getSessionId();
+            }
+        }
+
+        return sessionId;
+    }
+
+    protected String createSessionDatabase(String sessionId) {
+        String databaseName = defaultDatabaseName + "_" + sessionId.replaceAll("[^A-Za-z0-9_-]", "_");
+        log.info("Creating MongoDB database {} for session {}", databaseName, sessionId);
+
+        MongoMappingContext mappingContext = applicationContext.getBean(MongoMappingContext.class);
+        // documents that have not been accessed yet are added to the mapping context, so their indexes are created too
+        mappingContext.getManagedTypes().forEach(mappingContext::getPersistentEntity);
+        QueryMapper queryMapper = new QueryMapper(applicationContext.getBean(MongoConverter.class));
+        MongoDatabaseFactory sessionDatabaseFactory = new SimpleMongoClientDatabaseFactory(mongoClient, databaseName);
+        new MongoPersistentEntityIndexCreator(mappingContext, (collectionName, type) ->
+                new DefaultIndexOperations(sessionDatabaseFactory, collectionName, queryMapper, type));
+
+        return databaseName;
+    }
+
+    protected void onSessionDestroyed(SessionDestroyEvent event) {
+        String sessionId = event.getSession().getSession().getId();
+
+        String databaseName = databaseNames.remove(sessionId);
+        if (databaseName != null) {
+            dropSessionDatabase(sessionId, databaseName);
+        }
+    }
+
+    protected void dropSessionDatabase(String sessionId, String databaseName) {
+        log.info("Removing MongoDB database {} of session {}", databaseName, sessionId);
+        CompletableFuture.runAsync(() -> {
+                    applicationContext.getBean(VisitLogWriteBehindQueue.class).discardDatabase(databaseName);
+                    applicationContext.getBean(VisitLogCascadeDeletion.class).discardDatabase(databaseName);
+                    mongoClient.getDatabase(databaseName).drop();
+                })
+                .exceptionally(e -> {
+                    log.warn("Error dropping MongoDB database {}", databaseName, e);
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,36 @@
+package io.jmix.petclinic.online;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import io.jmix.petclinic.MongoDatabaseSelection;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Routing reactive MongoDB database factory that uses the same database as {@link RoutingMongoDatabaseFactory}.
+ * <p>
+ * The database is determined on the thread that assembles the reactive pipeline, which is bound to the HTTP session,
+ * and not on the thread that subscribes to it later. A database name in the subscriber context under the key
+ * {@code MongoDatabaseSelection.class} takes precedence, so that streams assembled on a background thread can be
+ * bound to the database of a session as well.
+ * </p>
+ */
+public class RoutingReactiveMongoDatabaseFactory extends SimpleReactiveMongoDatabaseFactory {
+
+    protected RoutingMongoDatabaseFactory routingMongoDatabaseFactory;
+
+    public RoutingReactiveMongoDatabaseFactory(MongoClient mongoClient, String defaultDatabaseName,
+                                               RoutingMongoDatabaseFactory routingMongoDatabaseFactory) {
+        super(mongoClient, defaultDatabaseName);
+        this.routingMongoDatabaseFactory = routingMongoDatabaseFactory;
+    }
+
+    @Override
+    public Mono<MongoDatabase> getMongoDatabase() throws DataAccessException {
+        // creates the database of the session together with its indexes if it does not exist yet
+        String databaseName = routingMongoDatabaseFactory.determineSessionDatabaseName();
+        return Mono.deferContextual(context ->
+                getMongoDatabase(context.getOrDefault(MongoDatabaseSelection.class, databaseName)));
+    }
+}
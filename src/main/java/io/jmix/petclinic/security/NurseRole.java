@@ -49,13 +49,15 @@ public interface NurseRole {
     @EntityPolicy(entityClass = PetType.class, actions = EntityPolicyAction.READ)
     void petType();
 
-    @ViewPolicy(viewIds = {"petclinic_MyVisits", "petclinic_Pet.list", "petclinic_Owner.list", "petclinic_Visit.list", "petclinic_Specialty.list", "petclinic_Veterinarian.list", "petclinic_PetType.list", "petclinic_Owner.detail", "petclinic_Pet.detail", "petclinic_PetType.detail", "petclinic_PetType.lookup", "petclinic_Specialty.detail", "petclinic_Veterinarian.detail", "petclinic_Visit.detail", "petclinic_VisitLog.list", "petclinic_VisitLog.detail"})
+    @ViewPolicy(viewIds = {"petclinic_MyVisits", "petclinic_Pet.list", "petclinic_Owner.list", "petclinic_Visit.list", "petclinic_Specialty.list", "petclinic_Veterinarian.list", "petclinic_PetType.list", "petclinic_Owner.detail", "petclinic_Pet.detail", "petclinic_PetType.detail", "petclinic_PetType.lookup", "petclinic_Specialty.detail", "petclinic_Veterinarian.detail", "petclinic_Visit.detail", "petclinic_VisitLog.list", "petclinic_VisitLog.detail", "petclinic_VisitLog.all"})
     void views();
 
-    @MenuPolicy(menuIds = {"petclinic_MyVisits", "petclinic_Pet.list", "petclinic_Owner.list", "petclinic_Visit.list", "petclinic_Specialty.list", "petclinic_Veterinarian.list", "petclinic_PetType.list"})
+    @MenuPolicy(menuIds = {"petclinic_MyVisits", "petclinic_Pet.list", "petclinic_Owner.list", "petclinic_Visit.list", "petclinic_Specialty.list", "petclinic_Veterinarian.list", "petclinic_PetType.list", "petclinic_VisitLog.all"})
     void screens();
 
-    @EntityAttributePolicy(entityClass = VisitLog.class, attributes = "*", action = EntityAttributePolicyAction.MODIFY)
+    // the attributes copied from the visit, pet and owner are maintained by VisitLogDenormalization and only shown
+    @EntityAttributePolicy(entityClass = VisitLog.class, attributes = {"visit", "title", "description"}, action = EntityAttributePolicyAction.MODIFY)
+    @EntityAttributePolicy(entityClass = VisitLog.class, attributes = {"id", "createdAt", "petName", "ownerName", "visitStart", "descriptionFileId"}, action = EntityAttributePolicyAction.VIEW)
     @EntityPolicy(entityClass = VisitLog.class, actions = EntityPolicyAction.ALL)
     void visitLog();
 }
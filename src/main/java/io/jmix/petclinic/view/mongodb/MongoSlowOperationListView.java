@@ -0,0 +1,91 @@
+package io.jmix.petclinic.view.mongodb;
+
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.router.Route;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Metadata;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.view.*;
+import io.jmix.petclinic.MongoDbProperties;
+import io.jmix.petclinic.MongoSlowOperation;
+import io.jmix.petclinic.MongoSlowOperationLog;
+import io.jmix.petclinic.view.main.MainView;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Admin view listing the slowest recent MongoDB operations of this application instance.
+ * <p>
+ * The operations are taken from the {@link MongoSlowOperationLog}, which records every command taking at least
+ * `petclinic.mongodb.monitoring.slow-operation-threshold`. For each operation, the view shows the application
+ * method that issued it and the shape of its filter, which helps to find missing indexes or unexpected query
+ * patterns without access to the MongoDB profiler.
+ * </p>
+ */
+@Route(value = "mongo-slow-operations", layout = MainView.class)
+@ViewController("petclinic_MongoSlowOperation.list")
+@ViewDescriptor("mongo-slow-operation-list-view.xml")
+@LookupComponent("slowOperationsDataGrid")
+public class MongoSlowOperationListView extends StandardListView<MongoSlowOperation> {
+
+    @Autowired
+    private MongoSlowOperationLog slowOperationLog;
+    @Autowired
+    private MongoDbProperties mongoDbProperties;
+    @Autowired
+    private Metadata metadata;
+    @ViewComponent
+    private MessageBundle messageBundle;
+    @ViewComponent
+    private CollectionLoader<MongoSlowOperation> slowOperationsDl;
+    @ViewComponent
+    private Span thresholdLabel;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        thresholdLabel.setText(messageBundle.formatMessage("slowOperationThreshold",
+                mongoDbProperties.getMonitoring().getSlowOperationThreshold().toMillis()));
+    }
+
+    /**
+     * Loads the recorded slow operations, slowest first.
+     *
+     * @param loadContext The load context provided by Jmix.
+     * @return The recorded slow operations.
+     */
+    @Install(to = "slowOperationsDl", target = Target.DATA_LOADER)
+    protected List<MongoSlowOperation> slowOperationsDlLoadDelegate(LoadContext<MongoSlowOperation> loadContext) {
+        return slowOperationLog.getSlowest().stream()
+                .map(this::toSlowOperation)
+                .toList();
+    }
+
+    private MongoSlowOperation toSlowOperation(MongoSlowOperationLog.Entry entry) {
+        MongoSlowOperation slowOperation = metadata.create(MongoSlowOperation.class);
+        slowOperation.setId(UUID.randomUUID());
+        slowOperation.setStartedAt(entry.startedAt().atOffset(ZoneOffset.UTC));
+        slowOperation.setDurationMillis(entry.duration().toMillis());
+        slowOperation.setCommand(entry.command());
+        slowOperation.setCollection(entry.collection());
+        slowOperation.setOrigin(entry.origin());
+        slowOperation.setFilterShape(entry.filterShape());
+        slowOperation.setFailure(entry.failure());
+        return slowOperation;
+    }
+
+    @Subscribe(id = "refreshButton", subject = "clickListener")
+    public void onRefreshButtonClick(final ClickEvent<JmixButton> event) {
+        slowOperationsDl.load();
+    }
+
+    @Subscribe(id = "clearButton", subject = "clickListener")
+    public void onClearButtonClick(final ClickEvent<JmixButton> event) {
+        slowOperationLog.clear();
+        slowOperationsDl.load();
+    }
+}
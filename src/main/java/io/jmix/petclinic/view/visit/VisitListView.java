@@ -1,17 +1,26 @@
 package io.jmix.petclinic.view.visit;
 
 import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.H4;
 import com.vaadin.flow.component.tabs.Tab;
+import com.vaadin.flow.data.renderer.Renderer;
+import com.vaadin.flow.data.renderer.TextRenderer;
 import com.vaadin.flow.router.Route;
 import io.jmix.core.metamodel.datatype.DatatypeFormatter;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.JpqlCondition;
+import io.jmix.core.querycondition.LogicalCondition;
 import io.jmix.core.security.CurrentAuthentication;
 import io.jmix.flowui.DialogWindows;
+import io.jmix.flowui.Notifications;
 import io.jmix.flowui.component.checkboxgroup.JmixCheckboxGroup;
 import io.jmix.flowui.component.grid.DataGrid;
 import io.jmix.flowui.component.select.JmixSelect;
 import io.jmix.flowui.component.tabsheet.JmixTabSheet;
+import io.jmix.flowui.component.textfield.TypedTextField;
 import io.jmix.flowui.kit.action.ActionPerformedEvent;
+import io.jmix.flowui.model.CollectionContainer;
 import io.jmix.flowui.model.CollectionLoader;
 import io.jmix.flowui.model.DataContext;
 import io.jmix.flowui.view.*;
@@ -22,18 +31,30 @@ import io.jmix.petclinic.entity.visit.Visit;
 import io.jmix.petclinic.entity.visit.VisitType;
 import io.jmix.petclinic.view.main.MainView;
 import io.jmix.petclinic.view.visit.calendar.MonthFormatter;
+import io.jmix.petclinic.view.visitlog.VisitLogExportResources;
 import io.jmix.petclinic.view.visitlog.VisitLogListView;
 import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogExportFilter;
+import io.jmix.petclinic.visit.log.VisitLogExportFormat;
+import io.jmix.petclinic.visit.log.VisitLogExporter;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import io.jmix.petclinic.visit.log.VisitLogService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 
 
 // tag::class[]
@@ -72,11 +93,49 @@ public class VisitListView extends StandardListView<Visit> {
     @ViewComponent
     private CollectionLoader<Visit> visitsDl;
     @ViewComponent
+    private CollectionContainer<Visit> visitsDc;
+    @ViewComponent
     private DataContext dataContext;
+    @Autowired
+    private VisitLogService visitLogService;
+    @Autowired
+    private VisitLogExporter visitLogExporter;
+    @ViewComponent
+    private Anchor exportVisitLogsCsvLink;
+    @ViewComponent
+    private Anchor exportVisitLogsXlsxLink;
+    @ViewComponent
+    private TypedTextField<String> visitLogSearchField;
+    @Autowired
+    private VisitLogProperties visitLogProperties;
+    @Autowired
+    private Notifications notifications;
+    @ViewComponent
+    private MessageBundle messageBundle;
+
+    private Map<UUID, Long> visitLogCounts = Map.of();
+
+    private final List<String> visitLogMatchParameters = new ArrayList<>();
+    /**
+     * Condition of the visit log search, or {@code null} without search. Without any condition, no visit matches.
+     */
+    @Nullable
+    private LogicalCondition visitLogCondition;
+    /**
+     * Condition of `visitsDl` combining {@link #filterCondition} and {@link #visitLogCondition}.
+     */
+    @Nullable
+    private LogicalCondition visitsCondition;
+    /**
+     * Condition of `visitsDl` set by the generic filter.
+     */
+    @Nullable
+    private Condition filterCondition;
 
     @Subscribe
     public void onInit(final InitEvent event) {
         initTypeFilter();
+        visitLogSearchField.setVisible(visitLogService.isTextSearchAvailable());
     }
 
     @Subscribe
@@ -245,11 +304,134 @@ public class VisitListView extends StandardListView<Visit> {
     }
 
 
+    /**
+     * Restricts the visits to those having a visit log that matches the entered terms and reloads them from the
+     * first page.
+     * <p>
+     * The visit logs are stored in MongoDB, so they can not be joined in the JPQL query of `visitsDl`. Instead, the
+     * distinct IDs of the matching visits are read from MongoDB first and added to the condition of the loader as
+     * `e.id in :visitLogMatch0 or e.id in :visitLogMatch1 ...`, with at most
+     * `petclinic.visitlog.max-visit-ids-per-query` IDs per parameter, so that no bind list exceeds the limits of
+     * the JDBC drivers and databases. Paging, sorting, counting and the generic filter are still applied by the
+     * database. If more than `petclinic.visitlog.max-filtered-visits` visits match,
+     * the search is rejected and the visits are shown unfiltered.
+     * </p>
+     *
+     * @param event The value change event of the search field.
+     */
+    @Subscribe("visitLogSearchField")
+    public void onVisitLogSearchFieldComponentValueChange(final AbstractField.ComponentValueChangeEvent<TypedTextField<String>, String> event) {
+        String searchText = getVisitLogSearchText();
+        Set<UUID> visitIds = null;
+        if (searchText != null) {
+            int maxFilteredVisits = visitLogProperties.getMaxFilteredVisits();
+            visitIds = visitLogService.findVisitIdsByText(searchText, maxFilteredVisits + 1);
+            if (visitIds.size() > maxFilteredVisits) {
+                notifications.create(messageBundle.formatMessage("tooManyVisitLogMatches", maxFilteredVisits))
+                        .withType(Notifications.Type.WARNING)
+                        .show();
+                visitIds = null;
+            }
+        }
+        filterByVisitIds(visitIds);
+        visitsDl.setFirstResult(0);
+        visitsDl.load();
+    }
+
+    @Nullable
+    private String getVisitLogSearchText() {
+        String searchText = visitLogSearchField.getTypedValue();
+        return searchText == null || searchText.isBlank() ? null : searchText.trim();
+    }
+
+    private void filterByVisitIds(@Nullable Set<UUID> visitIds) {
+        visitLogMatchParameters.forEach(visitsDl::removeParameter);
+        visitLogMatchParameters.clear();
+        if (visitIds == null) {
+            visitLogCondition = null;
+            return;
+        }
+
+        List<UUID> ids = List.copyOf(visitIds);
+        LogicalCondition condition = LogicalCondition.or();
+        int batchSize = visitLogProperties.getMaxVisitIdsPerQuery();
+        for (int batchStart = 0; batchStart < ids.size(); batchStart += batchSize) {
+            String parameter = "visitLogMatch" + visitLogMatchParameters.size();
+            visitsDl.setParameter(parameter, List.copyOf(ids.subList(batchStart, Math.min(batchStart + batchSize, ids.size()))));
+            visitLogMatchParameters.add(parameter);
+            condition.add(JpqlCondition.create("e.id in :" + parameter, null));
+        }
+        visitLogCondition = condition;
+    }
+
+    /**
+     * Adds the condition of the visit log search to the condition of the generic filter, which replaces the
+     * condition of the loader when it is applied. Without matching visits, nothing is loaded.
+     *
+     * @param event The pre-load event of `visitsDl`.
+     */
+    @Subscribe(id = "visitsDl", target = Target.DATA_LOADER)
+    public void onVisitsDlPreLoad(final CollectionLoader.PreLoadEvent<Visit> event) {
+        if (visitLogCondition != null && visitLogCondition.getConditions().isEmpty()) {
+            event.preventLoad();
+            visitsDc.setItems(List.of());
+            visitLogCounts = Map.of();
+            updateExportLinks(List.of());
+            return;
+        }
+
+        Condition loaderCondition = visitsDl.getCondition();
+        if (visitsCondition == null || loaderCondition != visitsCondition) {
+            filterCondition = loaderCondition;
+        }
+
+        if (visitLogCondition == null) {
+            visitsCondition = null;
+            visitsDl.setCondition(filterCondition);
+        } else {
+            visitsCondition = LogicalCondition.and();
+            if (filterCondition != null) {
+                visitsCondition.add(filterCondition);
+            }
+            visitsCondition.add(visitLogCondition);
+            visitsDl.setCondition(visitsCondition);
+        }
+        event.getLoadContext().getQuery().setCondition(visitsDl.getCondition());
+    }
+
+    @Subscribe(id = "visitsDl", target = Target.DATA_LOADER)
+    public void onVisitsDlPostLoad(final CollectionLoader.PostLoadEvent<Visit> event) {
+        visitLogCounts = visitLogService.countByVisits(event.getLoadedEntities());
+        updateExportLinks(event.getLoadedEntities());
+    }
+
+    /**
+     * Lets the export links download the visit logs of the visits of the current page.
+     *
+     * @param visits The visits of the current page.
+     */
+    private void updateExportLinks(Collection<Visit> visits) {
+        VisitLogExportFilter filter = VisitLogExportFilter.ofVisits(visits.stream().map(Visit::getId).toList());
+        VisitLogExportResources.bind(exportVisitLogsCsvLink, visitLogExporter, filter, VisitLogExportFormat.CSV);
+        VisitLogExportResources.bind(exportVisitLogsXlsxLink, visitLogExporter, filter, VisitLogExportFormat.XLSX);
+    }
+
+    @Supply(to = "visitsDataGrid.visitLogCount", subject = "renderer")
+    private Renderer<Visit> visitsDataGridVisitLogCountRenderer() {
+        return new TextRenderer<>(visit -> String.valueOf(visitLogCounts.getOrDefault(visit.getId(), 0L)));
+    }
+
+    private void refreshVisitLogCounts() {
+        visitLogCounts = visitLogService.countByVisits(visitsDc.getItems());
+        visitsDataGrid.getDataProvider().refreshAll();
+    }
 
     // tag::open-visit-log-list-view[]
     @Subscribe("visitsDataGrid.visitLog")
     public void onVisitsDataGridVisitLog(final ActionPerformedEvent event) {
-        DialogWindow<VisitLogListView> dialog = dialogWindows.view(this, VisitLogListView.class).build();
+        DialogWindow<VisitLogListView> dialog = dialogWindows.view(this, VisitLogListView.class)
+                .withAfterCloseListener(afterCloseEvent -> refreshVisitLogCounts())
+                .build();
 
         VisitLogListView visitLogListView = dialog.getView(); // <1>
 
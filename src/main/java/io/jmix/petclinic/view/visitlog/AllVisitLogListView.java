@@ -0,0 +1,122 @@
+package io.jmix.petclinic.view.visitlog;
+
+import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.router.Route;
+import io.jmix.flowui.component.datepicker.TypedDatePicker;
+import io.jmix.flowui.component.textfield.TypedTextField;
+import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.view.*;
+import io.jmix.petclinic.view.main.MainView;
+import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogDataStore;
+import io.jmix.petclinic.visit.log.VisitLogDenormalization;
+import io.jmix.petclinic.visit.log.VisitLogExportFilter;
+import io.jmix.petclinic.visit.log.VisitLogExportFormat;
+import io.jmix.petclinic.visit.log.VisitLogExporter;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import io.jmix.petclinic.visit.log.VisitLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * List view of the {@link VisitLog} entries of all visits.
+ * <p>
+ * The view shows the pet, owner and visit start of every entry. These attributes are copied into the visit logs
+ * by {@link VisitLogDenormalization}, so the data loader queries MongoDB only: {@link VisitLogDataStore} executes
+ * paging, sorting, counting and the conditions of the generic filter as a single MongoDB query each, which is
+ * served by the indexes on `createdAt`, `visitStart`, `petName` and `ownerName` of the visit log collection. No
+ * visit, pet or owner is loaded from the relational database. The `starts with` conditions on pet and owner match
+ * the exact case of the name, so that they scan only the matching range of the index.
+ * </p>
+ * <p>
+ * The generic filter only offers conditions that an index narrows down across all visits. Words of the title or
+ * description are found by the search field instead, which passes them as `searchText` query parameter to the full-text
+ * search of the data store. Search results keep the sort order selected in the data grid.
+ * </p>
+ * <p>
+ * The export links download the visit logs created in the selected date range as CSV or xlsx file. The file is
+ * streamed by {@link VisitLogExporter}, so even exports of millions of entries do not need more memory. The days of the
+ * range are interpreted in the export time zone, in which the exported timestamps are written as well.
+ * </p>
+ * <p>
+ * Entries of archived visits are not listed, as they are no longer stored in the visit log collection.
+ * </p>
+ */
+@Route(value = "allVisitLogs", layout = MainView.class)
+@ViewController("petclinic_VisitLog.all")
+@ViewDescriptor("all-visit-log-list-view.xml")
+@LookupComponent("visitLogsDataGrid")
+@DialogMode(width = "64em")
+public class AllVisitLogListView extends StandardListView<VisitLog> {
+
+    @Autowired
+    private VisitLogExporter visitLogExporter;
+    @Autowired
+    private VisitLogProperties visitLogProperties;
+    @Autowired
+    private VisitLogService visitLogService;
+    @ViewComponent
+    private CollectionLoader<VisitLog> visitLogsDl;
+    @ViewComponent
+    private TypedTextField<String> searchField;
+    @ViewComponent
+    private TypedDatePicker<LocalDate> exportFromField;
+    @ViewComponent
+    private TypedDatePicker<LocalDate> exportToField;
+    @ViewComponent
+    private Anchor exportCsvLink;
+    @ViewComponent
+    private Anchor exportXlsxLink;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        searchField.setVisible(visitLogService.isTextSearchAvailable());
+        updateExportLinks();
+    }
+
+    /**
+     * Reloads the `VisitLog` entries from the first page when the search terms change.
+     *
+     * @param event The value change event of the search field.
+     */
+    @Subscribe("searchField")
+    public void onSearchFieldComponentValueChange(final AbstractField.ComponentValueChangeEvent<TypedTextField<String>, String> event) {
+        String searchText = searchField.getTypedValue();
+        if (searchText != null && !searchText.isBlank()) {
+            visitLogsDl.setParameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER, searchText.trim());
+        } else {
+            visitLogsDl.removeParameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER);
+        }
+        visitLogsDl.setFirstResult(0);
+        visitLogsDl.load();
+    }
+
+    @Subscribe("exportFromField")
+    public void onExportFromFieldComponentValueChange(final AbstractField.ComponentValueChangeEvent<TypedDatePicker<LocalDate>, LocalDate> event) {
+        updateExportLinks();
+    }
+
+    @Subscribe("exportToField")
+    public void onExportToFieldComponentValueChange(final AbstractField.ComponentValueChangeEvent<TypedDatePicker<LocalDate>, LocalDate> event) {
+        updateExportLinks();
+    }
+
+    private void updateExportLinks() {
+        // the end date is inclusive, so the range ends with the start of the following day
+        VisitLogExportFilter filter = VisitLogExportFilter.createdBetween(
+                startOfDay(exportFromField.getTypedValue()),
+                startOfDay(exportToField.getTypedValue() != null ? exportToField.getTypedValue().plusDays(1) : null)
+        );
+        VisitLogExportResources.bind(exportCsvLink, visitLogExporter, filter, VisitLogExportFormat.CSV);
+        VisitLogExportResources.bind(exportXlsxLink, visitLogExporter, filter, VisitLogExportFormat.XLSX);
+    }
+
+    @Nullable
+    private Instant startOfDay(@Nullable LocalDate date) {
+        return date != null ? date.atStartOfDay(visitLogProperties.getExport().getTimeZone()).toInstant() : null;
+    }
+}
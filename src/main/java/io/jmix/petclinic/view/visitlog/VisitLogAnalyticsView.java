@@ -0,0 +1,134 @@
+package io.jmix.petclinic.view.visitlog;
+
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.router.Route;
+import io.jmix.core.Messages;
+import io.jmix.core.Metadata;
+import io.jmix.core.TimeSource;
+import io.jmix.core.metamodel.datatype.DatatypeFormatter;
+import io.jmix.flowui.component.datepicker.TypedDatePicker;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.view.*;
+import io.jmix.petclinic.entity.visit.VisitType;
+import io.jmix.petclinic.view.main.MainView;
+import io.jmix.petclinic.visit.log.VisitLogActivity;
+import io.jmix.petclinic.visit.log.VisitLogActivityDocument;
+import io.jmix.petclinic.visit.log.VisitLogAnalytics;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Dashboard showing the number of visit logs per day, visit type and nurse for a period.
+ * <p>
+ * The view reads only the pre-aggregated counters maintained by {@link VisitLogAnalytics}, i.e. at most one
+ * document per day, visit type and nurse, and sums them up in memory. Opening the view therefore does not depend on
+ * the number of visit logs. The counters of the last days may be slightly off until the next reconciliation.
+ * </p>
+ */
+@Route(value = "visit-log-analytics", layout = MainView.class)
+@ViewController("petclinic_VisitLogAnalytics")
+@ViewDescriptor("visit-log-analytics-view.xml")
+public class VisitLogAnalyticsView extends StandardView {
+
+    private static final int DEFAULT_PERIOD_DAYS = 30;
+
+    @Autowired
+    private VisitLogAnalytics visitLogAnalytics;
+    @Autowired
+    private VisitLogProperties visitLogProperties;
+    @Autowired
+    private TimeSource timeSource;
+    @Autowired
+    private Metadata metadata;
+    @Autowired
+    private Messages messages;
+    @Autowired
+    private DatatypeFormatter datatypeFormatter;
+    @ViewComponent
+    private MessageBundle messageBundle;
+    @ViewComponent
+    private TypedDatePicker<LocalDate> fromField;
+    @ViewComponent
+    private TypedDatePicker<LocalDate> toField;
+    @ViewComponent
+    private CollectionContainer<VisitLogActivity> activityPerDayDc;
+    @ViewComponent
+    private CollectionContainer<VisitLogActivity> activityPerVisitTypeDc;
+    @ViewComponent
+    private CollectionContainer<VisitLogActivity> activityPerNurseDc;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        LocalDate today = LocalDate.ofInstant(timeSource.now().toInstant(),
+                visitLogProperties.getAnalytics().getTimeZone());
+        toField.setTypedValue(today);
+        fromField.setTypedValue(today.minusDays(DEFAULT_PERIOD_DAYS - 1));
+        loadActivity();
+    }
+
+    @Subscribe(id = "refreshButton", subject = "clickListener")
+    public void onRefreshButtonClick(final ClickEvent<JmixButton> event) {
+        loadActivity();
+    }
+
+    private void loadActivity() {
+        LocalDate from = fromField.getTypedValue();
+        LocalDate to = toField.getTypedValue();
+        List<VisitLogActivityDocument> counters = from != null && to != null
+                ? visitLogAnalytics.findActivity(from, to).stream()
+                        .sorted(Comparator.comparing(VisitLogActivityDocument::getDay))
+                        .toList()
+                : List.of();
+
+        activityPerDayDc.setItems(sumUp(counters, VisitLogActivityDocument::getDay,
+                counter -> datatypeFormatter.formatLocalDate(LocalDate.parse(counter.getDay()))));
+        activityPerVisitTypeDc.setItems(sortByCountDescending(
+                sumUp(counters, VisitLogActivityDocument::getVisitType, this::visitTypeLabel)));
+        activityPerNurseDc.setItems(sortByCountDescending(
+                sumUp(counters, VisitLogActivityDocument::getNurseId, this::nurseLabel)));
+    }
+
+    private List<VisitLogActivity> sortByCountDescending(List<VisitLogActivity> activities) {
+        return activities.stream()
+                .sorted(Comparator.comparing(VisitLogActivity::getCount).reversed())
+                .toList();
+    }
+
+    private List<VisitLogActivity> sumUp(List<VisitLogActivityDocument> counters,
+                                         Function<VisitLogActivityDocument, Object> groupKey,
+                                         Function<VisitLogActivityDocument, String> label) {
+        Map<Object, VisitLogActivity> activities = new LinkedHashMap<>();
+        for (VisitLogActivityDocument counter : counters) {
+            VisitLogActivity activity = activities.computeIfAbsent(groupKey.apply(counter), key -> {
+                VisitLogActivity newActivity = metadata.create(VisitLogActivity.class);
+                newActivity.setId(UUID.randomUUID());
+                newActivity.setLabel(label.apply(counter));
+                newActivity.setCount(0L);
+                return newActivity;
+            });
+            activity.setCount(activity.getCount() + counter.getCount());
+        }
+        return new ArrayList<>(activities.values());
+    }
+
+    private String visitTypeLabel(VisitLogActivityDocument counter) {
+        VisitType visitType = counter.getVisitType() != null ? VisitType.fromId(counter.getVisitType()) : null;
+        return visitType != null ? messages.getMessage(visitType) : messageBundle.getMessage("unknownVisitType");
+    }
+
+    private String nurseLabel(VisitLogActivityDocument counter) {
+        return counter.getNurseId() != null && counter.getNurseName() != null
+                ? counter.getNurseName()
+                : messageBundle.getMessage("withoutNurse");
+    }
+}
@@ -1,43 +1,63 @@
 package io.jmix.petclinic.view.visitlog;
 
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.component.orderedlayout.FlexComponent;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.upload.Upload;
+import com.vaadin.flow.component.upload.receivers.FileBuffer;
 import com.vaadin.flow.router.Route;
-import io.jmix.core.LoadContext;
-import io.jmix.core.SaveContext;
+import com.vaadin.flow.server.StreamResource;
+import io.jmix.core.EntityStates;
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.component.textarea.JmixTextArea;
+import io.jmix.flowui.model.DataContext;
+import io.jmix.flowui.model.InstanceLoader;
 import io.jmix.flowui.view.*;
 import io.jmix.petclinic.entity.visit.Visit;
 import io.jmix.petclinic.view.main.MainView;
 import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogAttachment;
+import io.jmix.petclinic.visit.log.VisitLogDataStore;
+import io.jmix.petclinic.visit.log.VisitLogDescriptionTooLargeException;
 import io.jmix.petclinic.visit.log.VisitLogService;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 /**
  * Detail view for managing {@link VisitLog} entities within the Jmix UI.
  * <p>
- * This view is routed at `"visitLogs/:id"` and displays details for a selected `VisitLog`. The view uses
- * {@link VisitLogService} to handle save operations, ensuring that the `VisitLog` entity is correctly
- * persisted in the database.
+ * This view is routed at `"visitLogs/:id"` and displays details for a selected `VisitLog`. Loading and saving
+ * need no delegates: the `VisitLog` entity belongs to the `visitlogs` data store ({@link VisitLogDataStore}),
+ * so the data loader and the data context go through `DataManager`, which passes the entity on to
+ * {@link VisitLogService}.
  * </p>
  * <p>
  * The {@link Visit} entity is provided as a parameter to the view, setting up the context of the specific visit
- * associated with this `VisitLog`. Before saving, the `Visit` reference is injected into the `VisitLog` entity,
- * ensuring it is fully prepared for persistence by {@link VisitLogService}.
+ * associated with this `VisitLog`. When a new `VisitLog` is created, the `Visit` reference is injected into it,
+ * ensuring it is fully prepared for persistence.
  * </p>
  * <p>
  * Key components and methods:
  * <ul>
  *     <li><b>setVisit(Visit visit)</b> - Setter method that provides the {@link Visit} entity associated with this
- *     `VisitLog`. The `Visit` reference is later injected into the `VisitLog` before saving.</li>
- *     <li><b>saveDelegate(SaveContext saveContext)</b> - This method overrides the save process, injecting the `Visit`
- *     into the `VisitLog` and delegating the save operation to {@link VisitLogService#saveVisitLog}. The updated
- *     `VisitLog` is returned as a singleton set, satisfying the Jmix save requirements.</li>
- *     <li><b>customerDlLoadDelegate(LoadContext loadContext)</b> - Loads the `VisitLog` by its ID, using
- *     {@link VisitLogService} to retrieve and manage the entity state.</li>
+ *     `VisitLog`. The `Visit` reference is later injected into a new `VisitLog`.</li>
+ *     <li><b>onInitEntity(InitEntityEvent event)</b> - Injects the `Visit` into a newly created `VisitLog`.</li>
+ *     <li><b>onVisitLogDlPostLoad(PostLoadEvent event)</b> - Replaces the preview of a description stored in GridFS
+ *     with the full description, see {@link VisitLogService#loadDescription}. A description too large to be loaded
+ *     keeps its preview and is shown read-only.</li>
+ *     <li><b>onReady(ReadyEvent event)</b> - Shows the attachments of a saved `VisitLog`. Files are uploaded into a
+ *     temporary file and streamed from there into GridFS, and downloads are streamed from GridFS into the HTTP
+ *     response, so attachments are never held in memory.</li>
  * </ul>
  * </p>
  *
- * @see VisitLogService
+ * @see VisitLogDataStore
  * @see Visit
  */
 
@@ -49,14 +69,12 @@ import java.util.Set;
 public class VisitLogDetailView extends StandardDetailView<VisitLog> {
 
     private Visit visit;
-    @Autowired
-    private VisitLogService visitLogService;
 
     /**
      * Sets the {@link Visit} reference for this view.
      * <p>
      * This method sets the visit context for the current `VisitLog` view. The provided `Visit` reference
-     * is later injected into the `VisitLog` entity before saving, establishing the correct association.
+     * is later injected into a new `VisitLog` entity, establishing the correct association.
      * </p>
      *
      * @param visit The {@link Visit} entity associated with this `VisitLog`.
@@ -66,46 +84,122 @@ public class VisitLogDetailView extends StandardDetailView<VisitLog> {
     }
 
     /**
-     * Saves the {@link VisitLog} entity using {@link VisitLogService}.
+     * Sets the associated {@link Visit} reference on a newly created `VisitLog` entity.
      * <p>
-     * Before saving, this method sets the associated {@link Visit} reference on the `VisitLog` entity to ensure
-     * completeness. The `VisitLogService` then handles the persistence, and the saved `VisitLog` instance
-     * is returned in a singleton set as required by the Jmix framework.
+     * When the view is saved, the data context passes the `VisitLog` to `DataManager`, which saves it through
+     * {@link VisitLogDataStore} and {@link VisitLogService#saveVisitLog}.
      * </p>
      *
-     * @param saveContext The save context provided by Jmix.
-     * @return A set containing the saved {@link VisitLog} entity.
+     * @param event The event providing the new `VisitLog` entity.
      */
-    @Install(target = Target.DATA_CONTEXT) // <1>
-    private Set<Object> saveDelegate(final SaveContext saveContext) {
-        VisitLog visitLog = getEditedEntity();
+    @Subscribe // <1>
+    public void onInitEntity(final InitEntityEvent<VisitLog> event) {
+        if (visit != null) {
+            event.getEntity().setVisit(visit); // <2>
+        }
+    }
 
-        if (visitLog.getVisit() == null && visit != null) {
-            visitLog.setVisit(visit); // <2>
+    // end::class[]
+
+    @Autowired
+    private VisitLogService visitLogService;
+    @Autowired
+    private EntityStates entityStates;
+    @Autowired
+    private Notifications notifications;
+    @ViewComponent
+    private MessageBundle messageBundle;
+    @ViewComponent
+    private DataContext dataContext;
+    @ViewComponent
+    private JmixTextArea descriptionField;
+    @ViewComponent
+    private VerticalLayout attachmentsBox;
+    @ViewComponent
+    private VerticalLayout attachmentsList;
+
+    @Subscribe(id = "visitLogDl", target = Target.DATA_LOADER)
+    public void onVisitLogDlPostLoad(final InstanceLoader.PostLoadEvent<VisitLog> event) {
+        VisitLog visitLog = event.getLoadedEntity();
+        if (visitLog.getDescriptionFileId() == null) {
+            return;
         }
 
-        VisitLog savedVisitLog = visitLogService.saveVisitLog(visitLog); // <3>
+        String description;
+        try {
+            description = visitLogService.loadDescription(visitLog);
+        } catch (VisitLogDescriptionTooLargeException e) {
+            // the preview is kept together with the file ID, so saving the visit log keeps the stored description
+            descriptionField.setReadOnly(true);
+            notifications.create(messageBundle.getMessage("descriptionTooLarge"))
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
 
-        return Set.of(savedVisitLog);
+        // the full description is edited and saved again; loading it alone does not modify the visit log
+        visitLog.setDescription(description);
+        visitLog.setDescriptionFileId(null);
+        dataContext.setModified(visitLog, false);
     }
 
-    // end::class[]
+    @Subscribe
+    public void onReady(final ReadyEvent event) {
+        if (entityStates.isNew(getEditedEntity())) {
+            return;
+        }
 
-    /**
-     * Loads the {@link VisitLog} entity based on the given ID.
-     * <p>
-     * This method retrieves the `VisitLog` entity by its ID using {@link VisitLogService#loadVisitLog(String)}.
-     * Once loaded, the entity can be used in the UI, ensuring its state is up-to-date and managed correctly.
-     * </p>
-     *
-     * @param loadContext The load context containing entity information.
-     * @return The loaded {@link VisitLog} entity or {@code null} if not implemented.
-     */
-    @Install(to = "visitLogDl", target = Target.DATA_LOADER)
-    private VisitLog customerDlLoadDelegate(final LoadContext<VisitLog> loadContext) {
-        return visitLogService.loadVisitLog((String) loadContext.getId());
+        FileBuffer fileBuffer = new FileBuffer();
+        Upload upload = new Upload(fileBuffer);
+        upload.addSucceededListener(succeededEvent -> {
+            try (InputStream content = fileBuffer.getInputStream()) {
+                visitLogService.addAttachment(getEditedEntity(), succeededEvent.getFileName(),
+                        succeededEvent.getMIMEType(), content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                fileBuffer.getFileData().getFile().delete();
+            }
+            notifications.create(messageBundle.formatMessage("attachmentAdded", succeededEvent.getFileName()))
+                    .withType(Notifications.Type.SUCCESS)
+                    .show();
+            refreshAttachments();
+        });
+
+        attachmentsBox.add(upload);
+        attachmentsBox.setVisible(true);
+        refreshAttachments();
+    }
+
+    private void refreshAttachments() {
+        attachmentsList.removeAll();
+        for (VisitLogAttachment attachment : visitLogService.getAttachments(getEditedEntity())) {
+            attachmentsList.add(createAttachmentRow(attachment));
+        }
+    }
+
+    private HorizontalLayout createAttachmentRow(VisitLogAttachment attachment) {
+        StreamResource resource = new StreamResource(attachment.fileName(),
+                () -> visitLogService.openAttachment(getEditedEntity(), attachment.fileId()));
+        if (attachment.contentType() != null) {
+            resource.setContentType(attachment.contentType());
+        }
+        resource.setCacheTime(0);
+
+        Anchor link = new Anchor(resource, attachment.fileName());
+        link.getElement().setAttribute("download", true);
+
+        Button removeButton = new Button(messageBundle.getMessage("removeAttachment"), clickEvent -> {
+            visitLogService.removeAttachment(getEditedEntity(), attachment.fileId());
+            refreshAttachments();
+        });
+        removeButton.addThemeVariants(ButtonVariant.LUMO_SMALL, ButtonVariant.LUMO_TERTIARY);
+
+        HorizontalLayout row = new HorizontalLayout(link, removeButton);
+        row.setDefaultVerticalComponentAlignment(FlexComponent.Alignment.BASELINE);
+        return row;
     }
 
     // tag::end-class[]
 }
-// end::end-class[]
\ No newline at end of file
+// end::end-class[]
@@ -0,0 +1,44 @@
+package io.jmix.petclinic.view.visitlog;
+
+import com.vaadin.flow.component.html.Anchor;
+import com.vaadin.flow.server.StreamResource;
+import io.jmix.petclinic.visit.log.VisitLogExportFilter;
+import io.jmix.petclinic.visit.log.VisitLogExportFormat;
+import io.jmix.petclinic.visit.log.VisitLogExporter;
+
+/**
+ * Provides downloads of visit log exports for views.
+ * <p>
+ * The download is a {@link StreamResource} whose writer passes the output stream of the HTTP response to
+ * {@link VisitLogExporter}, so the export is written directly into the response while it is read from MongoDB,
+ * without holding the file in memory.
+ * </p>
+ */
+public final class VisitLogExportResources {
+
+    private static final String FILE_NAME = "visit-logs";
+
+    private VisitLogExportResources() {
+    }
+
+    /**
+     * Lets the given anchor download an export of the selected visit logs.
+     *
+     * @param anchor   The anchor to download the export with.
+     * @param exporter The exporter writing the file.
+     * @param filter   The visit logs to export.
+     * @param format   The file format.
+     */
+    public static void bind(Anchor anchor, VisitLogExporter exporter, VisitLogExportFilter filter,
+                            VisitLogExportFormat format) {
+        StreamResource resource = new StreamResource(
+                FILE_NAME + "." + format.getFileExtension(),
+                (outputStream, session) -> exporter.export(filter, format, outputStream)
+        );
+        resource.setContentType(format.getContentType());
+        resource.setCacheTime(0);
+
+        anchor.setHref(resource);
+        anchor.getElement().setAttribute("download", true);
+    }
+}
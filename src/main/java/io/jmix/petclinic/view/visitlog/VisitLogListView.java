@@ -1,24 +1,38 @@
 package io.jmix.petclinic.view.visitlog;
 
+import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.router.Route;
 import io.jmix.core.LoadContext;
 import io.jmix.flowui.DialogWindows;
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.component.pagination.SimplePagination;
+import io.jmix.flowui.component.textfield.TypedTextField;
 import io.jmix.flowui.kit.action.ActionPerformedEvent;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.model.CollectionLoader;
 import io.jmix.flowui.view.*;
 import io.jmix.petclinic.entity.visit.Visit;
 import io.jmix.petclinic.view.main.MainView;
 import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogCriteriaTranslator;
+import io.jmix.petclinic.visit.log.VisitLogDataStore;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
 import io.jmix.petclinic.visit.log.VisitLogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import reactor.core.Disposable;
 
-import java.util.Collection;
 import java.util.List;
 /**
  * List view for managing {@link VisitLog} entries associated with a specific {@link Visit}.
  * <p>
  * This view provides CRUD operations for `VisitLog` entities within a data grid, allowing users to
- * append new entries, view existing entries, and remove selected entries. The view utilizes
- * {@link VisitLogService} for data access and {@link DialogWindows} for handling dialog interactions.
+ * append new entries, view existing entries, and remove selected entries. The view accesses data through
+ * `DataManager` and uses {@link DialogWindows} for handling dialog interactions.
  * </p>
  * <p>
  * The `Visit` entity associated with this view is set from an external source, typically another view
@@ -29,18 +43,32 @@ import java.util.List;
  * Key components and methods:
  * <ul>
  *     <li><b>setVisit(Visit visit)</b> - Setter for the `Visit` parameter that filters `VisitLog` entries
- *     displayed in this view based on the specified visit.</li>
+ *     displayed in this view based on the specified visit. The visit is passed to the data loader as `visit`
+ *     query parameter.</li>
  *     <li><b>onVisitLogsDataGridAppend(ActionPerformedEvent event)</b> - Handles the append action, opening
  *     a dialog for creating a new `VisitLog`. The `visit` reference is set in the dialog to ensure the
  *     `VisitLog` is linked to the correct `Visit` entity.</li>
- *     <li><b>visitLogsDlLoadDelegate(LoadContext loadContext)</b> - Loads `VisitLog` entries associated
- *     with the set `Visit` by using {@link VisitLogService#findByVisit}.</li>
- *     <li><b>visitLogsDataGridRemoveDelegate(Collection visitLogsToRemove)</b> - Handles the remove action
- *     by delegating to {@link VisitLogService#removeVisitLogs} to delete selected entries.</li>
  * </ul>
  * </p>
+ * <p>
+ * Loading, counting and removing entries needs no delegates: the `VisitLog` entity belongs to the `visitlogs` data
+ * store ({@link VisitLogDataStore}), so the data loader, the pagination component and the remove action go through
+ * `DataManager`, which executes paging, sorting and counting in MongoDB.
+ * </p>
+ * <p>
+ * The search field and the generic filter are passed to the data store as well, see
+ * {@link #onSearchFieldComponentValueChange} and {@link VisitLogDataStore}. With
+ * `petclinic.visitlog.streaming.enabled`, the entries are streamed into the data grid instead
+ * ({@link #streamVisitLogs}).
+ * </p>
+ * <p>
+ * The generic filter offers conditions on title, description and creation date. {@link VisitLogDataStore} translates
+ * them into MongoDB criteria, so that they are evaluated by MongoDB together with the restriction to the visit.
+ * Non-JPA properties are hidden from the "add condition" dialog (`jmix.ui.component.filter-show-non-jpa-properties`),
+ * so the filter provides these conditions through its default configuration.
+ * </p>
  *
- * @see VisitLogService
+ * @see VisitLogDataStore
  * @see VisitLogDetailView
  */
 // tag::class[]
@@ -53,8 +81,8 @@ public class VisitLogListView extends StandardListView<VisitLog> {
 
     private Visit visit;
 
-    @Autowired
-    private VisitLogService visitLogService;
+    @ViewComponent
+    private CollectionLoader<VisitLog> visitLogsDl;
     @Autowired
     private DialogWindows dialogWindows;
 
@@ -63,31 +91,145 @@ public class VisitLogListView extends StandardListView<VisitLog> {
      * Sets the {@link Visit} reference for this view.
      * <p>
      * This method provides the visit context for the current `VisitLogListView`, ensuring that
-     * only `VisitLog` entries related to this `Visit` are loaded and displayed.
+     * only `VisitLog` entries related to this `Visit` are loaded and displayed. The visit is passed on as `visit`
+     * parameter of the data loader query, which {@link VisitLogDataStore} translates into a MongoDB query.
      * </p>
      *
      * @param visit The {@link Visit} entity associated with the `VisitLog` entries displayed in this view.
      */
     public void setVisit(Visit visit) {
         this.visit = visit; // <1>
+        visitLogsDl.setParameter(VisitLogDataStore.VISIT_PARAMETER, visit); // <2>
     }
 
+    // end::class[]
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogListView.class);
+
+    @Autowired
+    private VisitLogService visitLogService;
+    @Autowired
+    private VisitLogProperties visitLogProperties;
+    @Autowired
+    private VisitLogCriteriaTranslator visitLogCriteriaTranslator;
+    @Autowired
+    private Notifications notifications;
+    @ViewComponent
+    private MessageBundle messageBundle;
+    @ViewComponent
+    private CollectionContainer<VisitLog> visitLogsDc;
+    @ViewComponent
+    private SimplePagination pagination;
+    @ViewComponent
+    private TypedTextField<String> searchField;
+
+    private Disposable visitLogStream;
     /**
-     * Loads `VisitLog` entries associated with the specified {@link Visit}.
+     * Incremented whenever the stream is cancelled. Only read and written while holding the UI lock.
+     */
+    private int visitLogStreamGeneration;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        searchField.setVisible(visitLogService.isTextSearchAvailable());
+        if (visitLogProperties.getStreaming().isEnabled()) {
+            visitLogsDl.setLoadDelegate(this::streamVisitLogs);
+            pagination.setVisible(false);
+            searchField.setVisible(false);
+            addDetachListener(detachEvent -> cancelVisitLogStream());
+        }
+    }
+
+    /**
+     * Load delegate of the streaming load mode.
      * <p>
-     * This method delegates the data loading to {@link VisitLogService#findByVisit}, ensuring that
-     * only the logs associated with the current `visit` are retrieved and displayed.
+     * Starts streaming the `VisitLog` entries of the current {@link Visit} that match the conditions of the generic
+     * filter and returns immediately with an empty list. Entries are collected into chunks of
+     * `petclinic.visitlog.streaming.chunk-size`, but a chunk is emitted after
+     * `petclinic.visitlog.streaming.max-chunk-delay` at the latest. Each chunk is added to `visitLogsDc` within
+     * {@link UI#access}, which pushes it to the browser. Because the stream is consumed on a driver thread, chunks
+     * can only be applied after the current request has released the UI lock, so they are never overwritten by the
+     * empty result of this method. The conditions of the generic filter are applied to the stream as well.
+     * If the stream fails, an error notification is shown.
+     * </p>
+     * <p>
+     * Disposing the previous stream does not withdraw chunks that are already waiting for the UI lock. Each stream
+     * therefore remembers its generation, and chunks of a stream that has been cancelled or replaced by a reload
+     * in the meantime are dropped.
      * </p>
      *
      * @param loadContext The load context provided by Jmix.
-     * @return A list of `VisitLog` entries associated with the current visit.
+     * @return An empty list; the entries are added asynchronously.
      */
-    @Install(to = "visitLogsDl", target = Target.DATA_LOADER) // <2>
-    protected List<VisitLog> visitLogsDlLoadDelegate(LoadContext<VisitLog> loadContext) {
-        return visitLogService.findByVisit(visit); // <3>
+    private List<VisitLog> streamVisitLogs(LoadContext<VisitLog> loadContext) {
+        cancelVisitLogStream();
+
+        LoadContext.Query query = loadContext.getQuery();
+        Criteria condition = query != null
+                ? visitLogCriteriaTranslator.translate(query.getCondition(), query.getParameters()).criteria()
+                : null;
+
+        int generation = visitLogStreamGeneration;
+        UI ui = UI.getCurrent();
+        VisitLogProperties.Streaming streaming = visitLogProperties.getStreaming();
+        visitLogStream = visitLogService.streamByVisit(visit, condition)
+                .bufferTimeout(streaming.getChunkSize(), streaming.getMaxChunkDelay())
+                .subscribe(
+                        chunk -> ui.access(() -> {
+                            if (generation == visitLogStreamGeneration) {
+                                visitLogsDc.getMutableItems().addAll(chunk);
+                            }
+                        }),
+                        error -> {
+                            log.error("Error while streaming visit logs of visit {}", visit.getId(), error);
+                            ui.access(() -> {
+                                if (generation == visitLogStreamGeneration) {
+                                    notifications.create(messageBundle.getMessage("streamingFailed"))
+                                            .withType(Notifications.Type.ERROR)
+                                            .show();
+                                }
+                            });
+                        }
+                );
+
+        return List.of();
     }
 
-    // end::class[]
+    private void cancelVisitLogStream() {
+        visitLogStreamGeneration++;
+        if (visitLogStream != null) {
+            visitLogStream.dispose();
+            visitLogStream = null;
+        }
+    }
+
+    /**
+     * Reloads the `VisitLog` entries from the first page when the search terms change.
+     * <p>
+     * The terms are passed as `searchText` query parameter, which {@link VisitLogDataStore} executes as a full-text
+     * search on title and description. Search results are ordered by relevance, unless the data grid is sorted by
+     * a column.
+     * </p>
+     *
+     * @param event The value change event of the search field.
+     */
+    @Subscribe("searchField")
+    public void onSearchFieldComponentValueChange(final AbstractField.ComponentValueChangeEvent<TypedTextField<String>, String> event) {
+        String searchText = getSearchText();
+        if (searchText != null) {
+            visitLogsDl.setParameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER, searchText);
+        } else {
+            visitLogsDl.removeParameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER);
+        }
+        visitLogsDl.setFirstResult(0);
+        visitLogsDl.load();
+    }
+
+    @Nullable
+    private String getSearchText() {
+        String searchText = searchField.getTypedValue();
+        return searchText == null || searchText.isBlank() ? null : searchText.trim();
+    }
 
     /**
      * Opens a dialog to create a new {@link VisitLog} associated with the current {@link Visit}.
@@ -115,20 +257,6 @@ public class VisitLogListView extends StandardListView<VisitLog> {
 
         dialog.open();
     }
-
-    /**
-     * Removes the selected {@link VisitLog} entries from the database.
-     * <p>
-     * This method is triggered by the remove action in the data grid and uses {@link VisitLogService#removeVisitLogs}
-     * to delete the selected `VisitLog` entries.
-     * </p>
-     *
-     * @param visitLogsToRemove The collection of `VisitLog` entries selected for removal.
-     */
-    @Install(to = "visitLogsDataGrid.remove", subject = "delegate")
-    private void visitLogsDataGridRemoveDelegate(final Collection<VisitLog> visitLogsToRemove) {
-        visitLogService.removeVisitLogs(visitLogsToRemove);
-    }
     // tag::end-class[]
 }
 
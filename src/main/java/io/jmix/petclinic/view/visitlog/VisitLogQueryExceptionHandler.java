@@ -0,0 +1,29 @@
+package io.jmix.petclinic.view.visitlog;
+
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.exception.AbstractUiExceptionHandler;
+import io.jmix.petclinic.visit.log.VisitLogQueryException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shows a {@link VisitLogQueryException}, e.g. caused by a generic filter condition that can not be evaluated on
+ * visit logs, as a warning instead of the generic error dialog, so that the user can adjust the filter.
+ */
+@Component("petclinic_VisitLogQueryExceptionHandler")
+public class VisitLogQueryExceptionHandler extends AbstractUiExceptionHandler {
+
+    private final Notifications notifications;
+
+    public VisitLogQueryExceptionHandler(Notifications notifications) {
+        super(VisitLogQueryException.class.getName());
+        this.notifications = notifications;
+    }
+
+    @Override
+    protected void doHandle(String className, String message, @Nullable Throwable throwable) {
+        notifications.create(message)
+                .withType(Notifications.Type.WARNING)
+                .show();
+    }
+}
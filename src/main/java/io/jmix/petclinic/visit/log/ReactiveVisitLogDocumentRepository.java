@@ -0,0 +1,20 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking counterpart of {@link VisitLogDocumentRepository}.
+ * <p>
+ * The methods of this repository return a {@link Flux} that emits the {@link VisitLogDocument} entries while the
+ * MongoDB cursor is read, without blocking the calling thread. This allows the UI to display the first entries
+ * before all entries have been transferred from the database.
+ * </p>
+ *
+ * @see VisitLogDocumentRepository
+ * @see ReactiveVisitLogDocumentRepositoryCustom
+ * @see ReactiveMongoRepository
+ */
+public interface ReactiveVisitLogDocumentRepository extends ReactiveMongoRepository<VisitLogDocument, String>,
+        ReactiveVisitLogDocumentRepositoryCustom {
+}
@@ -0,0 +1,28 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import reactor.core.publisher.Flux;
+
+/**
+ * Custom repository fragment for {@link ReactiveVisitLogDocumentRepository} containing queries that cannot be
+ * expressed through Spring Data's query derivation.
+ * <p>
+ * The implementation ({@link ReactiveVisitLogDocumentRepositoryCustomImpl}) is picked up automatically by Spring
+ * Data and uses {@link org.springframework.data.mongodb.core.ReactiveMongoTemplate} directly.
+ * </p>
+ *
+ * @see ReactiveVisitLogDocumentRepository
+ */
+public interface ReactiveVisitLogDocumentRepositoryCustom {
+
+    /**
+     * Streams the {@link VisitLogDocument} entries matching the given criteria, e.g. translated from the generic
+     * filter by {@link VisitLogCriteriaTranslator}.
+     *
+     * @param criteria The criteria to match.
+     * @param sort     The order in which the entries are emitted.
+     * @return A {@link Flux} emitting the matching documents without their `searchText`.
+     */
+    Flux<VisitLogDocument> streamByCriteria(Criteria criteria, Sort sort);
+}
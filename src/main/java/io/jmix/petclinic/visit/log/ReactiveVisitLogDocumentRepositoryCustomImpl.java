@@ -0,0 +1,27 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+/**
+ * {@link ReactiveMongoTemplate} based implementation of {@link ReactiveVisitLogDocumentRepositoryCustom}.
+ */
+public class ReactiveVisitLogDocumentRepositoryCustomImpl implements ReactiveVisitLogDocumentRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReactiveVisitLogDocumentRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<VisitLogDocument> streamByCriteria(Criteria criteria, Sort sort) {
+        Query query = Query.query(criteria).with(sort);
+        query.fields().exclude("searchText");
+
+        return reactiveMongoTemplate.find(query, VisitLogDocument.class);
+    }
+}
@@ -4,10 +4,14 @@ import io.jmix.core.metamodel.annotation.InstanceName;
 import io.jmix.petclinic.entity.visit.Visit;
 import jakarta.validation.constraints.NotNull;
 
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+
 // tag::imports[]
 import io.jmix.core.entity.annotation.JmixId;
 import io.jmix.core.metamodel.annotation.JmixEntity;
 import io.jmix.core.metamodel.annotation.JmixProperty;
+import io.jmix.core.metamodel.annotation.Store;
 
 // end::imports[]
 
@@ -23,7 +27,8 @@ import io.jmix.core.metamodel.annotation.JmixProperty;
  * The {@link JmixEntity} annotation registers this class as a Jmix-managed entity, enabling it to be
  * used in data containers and views within the Jmix UI. The {@link JmixId} annotation indicates the primary
  * identifier for this entity, while {@link InstanceName} marks the `description` field as the name
- * to be displayed in Jmix views.
+ * to be displayed in Jmix views. The {@link Store} annotation assigns the entity to the `visitlogs` data store
+ * ({@link VisitLogDataStore}), so that it can be loaded and saved through `DataManager` like a JPA entity.
  * </p>
  * <p>
  * Field descriptions:
@@ -35,6 +40,14 @@ import io.jmix.core.metamodel.annotation.JmixProperty;
  *     <li><b>title</b> - Title or summary of the visit log, often displayed in list views or summary panels.</li>
  *     <li><b>description</b> - Detailed description or notes for the visit log, marked with {@link InstanceName}
  *     for easy identification within Jmix components.</li>
+ *     <li><b>createdAt</b> - Creation timestamp of the visit log. It is assigned when the log is saved for the
+ *     first time and determines the order of the logs of a visit.</li>
+ *     <li><b>petName</b>, <b>ownerName</b>, <b>visitStart</b> - Read-only copies of the attributes of the visit,
+ *     its pet and the pet's owner, stored with the visit log (see {@link VisitLogDenormalization}). They allow
+ *     displaying, filtering and sorting visit logs of all visits without loading the visits.</li>
+ *     <li><b>descriptionFileId</b> - Set if the description is stored in GridFS and `description` only holds its
+ *     beginning. The full description is loaded on demand with {@link VisitLogService#loadDescription}. A visit
+ *     log whose `descriptionFileId` is cleared is saved with its `description` as full description.</li>
  * </ul>
  * </p>
  * <p>
@@ -49,6 +62,7 @@ import io.jmix.core.metamodel.annotation.JmixProperty;
  */
 
 // tag::visit-log-entity[]
+@Store(name = "visitlogs")
 @JmixEntity(name = "petclinic_VisitLog")
 public class VisitLog {
 
@@ -64,10 +78,56 @@ public class VisitLog {
     @InstanceName
     private String description;
 
+    private OffsetDateTime createdAt;
+
     // ...
 
     // end::visit-log-entity[]
 
+    @JmixProperty
+    private String petName;
+
+    @JmixProperty
+    private String ownerName;
+
+    @JmixProperty
+    private LocalDateTime visitStart;
+
+    @JmixProperty
+    private String descriptionFileId;
+
+    public String getDescriptionFileId() {
+        return descriptionFileId;
+    }
+
+    public void setDescriptionFileId(String descriptionFileId) {
+        this.descriptionFileId = descriptionFileId;
+    }
+
+    public String getPetName() {
+        return petName;
+    }
+
+    public void setPetName(String petName) {
+        this.petName = petName;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public void setOwnerName(String ownerName) {
+        this.ownerName = ownerName;
+    }
+
+    public LocalDateTime getVisitStart() {
+        return visitStart;
+    }
+
+    public void setVisitStart(LocalDateTime visitStart) {
+        this.visitStart = visitStart;
+    }
+
     public Visit getVisit() {
         return visit;
     }
@@ -92,6 +152,14 @@ public class VisitLog {
         this.title = title;
     }
 
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public String getId() {
         return id;
     }
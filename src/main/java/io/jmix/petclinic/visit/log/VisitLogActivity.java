@@ -0,0 +1,54 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.entity.annotation.JmixId;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+
+import java.util.UUID;
+
+/**
+ * DTO entity displaying the number of visit logs of a day, visit type or nurse in the UI, summed up from the
+ * {@link VisitLogActivityDocument} counters of {@link VisitLogAnalytics}.
+ * <p>
+ * Field descriptions:
+ * <ul>
+ *     <li><b>label</b> - The day, visit type or nurse the visit logs are counted for.</li>
+ *     <li><b>count</b> - Number of visit logs.</li>
+ * </ul>
+ * </p>
+ */
+@JmixEntity(name = "petclinic_VisitLogActivity")
+public class VisitLogActivity {
+
+    @JmixId
+    private UUID id;
+
+    @InstanceName
+    private String label;
+
+    private Long count;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,99 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.UUID;
+
+/**
+ * Pre-aggregated number of visit logs created on a day for visits of one type and nurse, stored in the
+ * `visitLogActivity` collection.
+ * <p>
+ * The counters are maintained by {@link VisitLogAnalytics}, so the activity of a period can be read from a few
+ * small documents instead of aggregating all visit logs of the period.
+ * </p>
+ * <p>
+ * Fields:
+ * <ul>
+ *     <li><b>day</b> - Day the visit logs were created on in `petclinic.visitlog.analytics.time-zone`, as ISO
+ *     date (`yyyy-MM-dd`). Stored as string, so the day does not depend on the time zone of the application.</li>
+ *     <li><b>visitType</b> - ID of the {@link io.jmix.petclinic.entity.visit.VisitType} of the visits, `null` for
+ *     visits that do not exist (anymore).</li>
+ *     <li><b>nurseId</b> - ID of the nurse assigned to the visits, `null` for visits without nurse.</li>
+ *     <li><b>nurseName</b> - Display name of the nurse.</li>
+ *     <li><b>count</b> - Number of visit logs.</li>
+ *     <li><b>revision</b> - Number of incremental updates of the counter. The reconciliation only overwrites a
+ *     counter whose revision has not changed since it was read.</li>
+ * </ul>
+ * </p>
+ */
+@Document("visitLogActivity")
+@CompoundIndex(name = "day_visitType_nurseId", def = "{'day': 1, 'visitType': 1, 'nurseId': 1}", unique = true)
+public class VisitLogActivityDocument {
+
+    @Id
+    private String id;
+    private String day;
+    private String visitType;
+    private UUID nurseId;
+    private String nurseName;
+    private long count;
+    private long revision;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(String day) {
+        this.day = day;
+    }
+
+    public String getVisitType() {
+        return visitType;
+    }
+
+    public void setVisitType(String visitType) {
+        this.visitType = visitType;
+    }
+
+    public UUID getNurseId() {
+        return nurseId;
+    }
+
+    public void setNurseId(UUID nurseId) {
+        this.nurseId = nurseId;
+    }
+
+    public String getNurseName() {
+        return nurseName;
+    }
+
+    public void setNurseName(String nurseName) {
+        this.nurseName = nurseName;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+}
@@ -0,0 +1,318 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.bulk.BulkWriteResult;
+import io.jmix.core.DataManager;
+import io.jmix.core.FetchPlan;
+import io.jmix.core.FetchPlans;
+import io.jmix.core.TimeSource;
+import io.jmix.core.security.Authenticated;
+import io.jmix.petclinic.entity.User;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Maintains the number of visit logs per day, visit type and nurse in the {@link VisitLogActivityDocument}
+ * collection, so that the activity can be displayed without aggregating the visit logs themselves.
+ * <p>
+ * The counters are updated incrementally: {@link VisitLogService} calls {@link #recordCreated} for new visit logs
+ * and {@link #recordRemoved} for removed ones, which load the type and nurse of the affected visits with one JPA
+ * query and update every affected counter with an `$inc` upsert, all in one unordered bulk write. Failing updates
+ * are only logged and do not fail the save.
+ * </p>
+ * <p>
+ * The counters can drift, e.g. after a failed update, when the type or nurse of a visit changes, or when visit logs
+ * are removed together with their visit. The reconciliation job, triggered by
+ * `petclinic.visitlog.analytics.reconciliation-cron`, therefore recounts the last
+ * `petclinic.visitlog.analytics.reconciliation-days` days from the visit logs and overwrites their counters. Every
+ * day is recounted with an aggregation of its own, so only the visit counts of a single day are held in memory.
+ * Incremental updates running concurrently are not lost: every `$inc` also increments the `revision` of the
+ * counter, and the reconciliation overwrites or removes a counter only if its revision is still the one read
+ * before the day was recounted. Counters updated in the meantime are left to the next reconciliation. Archived
+ * visit logs are not recounted, which only matters for visit logs created within these days for visits that were
+ * archived in the meantime.
+ * </p>
+ */
+@Component("petclinic_VisitLogAnalytics")
+public class VisitLogAnalytics {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogAnalytics.class);
+
+    private final DataManager dataManager;
+    private final FetchPlans fetchPlans;
+    private final TimeSource timeSource;
+    private final MongoTemplate mongoTemplate;
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogProperties visitLogProperties;
+    private final VisitLogProperties.Analytics settings;
+
+    public VisitLogAnalytics(DataManager dataManager, FetchPlans fetchPlans, TimeSource timeSource,
+                             MongoTemplate mongoTemplate, VisitLogDocumentRepository visitLogDocumentRepository,
+                             VisitLogBucketStore visitLogBucketStore, VisitLogProperties visitLogProperties) {
+        this.dataManager = dataManager;
+        this.fetchPlans = fetchPlans;
+        this.timeSource = timeSource;
+        this.mongoTemplate = mongoTemplate;
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogProperties = visitLogProperties;
+        this.settings = visitLogProperties.getAnalytics();
+    }
+
+    /**
+     * Increments the counters of newly created visit logs.
+     *
+     * @param visitLogDocuments The new visit logs.
+     */
+    public void recordCreated(Collection<VisitLogDocument> visitLogDocuments) {
+        if (!settings.isEnabled() || visitLogDocuments.isEmpty()) {
+            return;
+        }
+
+        increment(visitLogDocuments.stream()
+                .collect(Collectors.groupingBy(
+                        visitLogDocument -> new VisitDay(day(visitLogDocument.getCreatedAt()), visitLogDocument.getVisitId()),
+                        Collectors.counting())), 1);
+    }
+
+    /**
+     * Decrements the counters of removed visit logs. Visit logs that have never been saved are ignored.
+     *
+     * @param visitLogs The removed visit logs.
+     */
+    public void recordRemoved(Collection<VisitLog> visitLogs) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        Map<VisitDay, Long> countsPerVisitDay = visitLogs.stream()
+                .filter(visitLog -> visitLog.getCreatedAt() != null)
+                .collect(Collectors.groupingBy(
+                        visitLog -> new VisitDay(day(visitLog.getCreatedAt().toInstant()), visitLog.getVisit().getId()),
+                        Collectors.counting()));
+        if (!countsPerVisitDay.isEmpty()) {
+            increment(countsPerVisitDay, -1);
+        }
+    }
+
+    @Authenticated
+    @Scheduled(cron = "${petclinic.visitlog.analytics.reconciliation-cron}")
+    public void reconcileOnSchedule() {
+        if (settings.isEnabled()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recounts the visit logs of the last `petclinic.visitlog.analytics.reconciliation-days` days and replaces the
+     * counters of these days with the result, one day at a time.
+     *
+     * @return The number of counters of the reconciled days.
+     */
+    public int reconcile() {
+        ZoneId timeZone = settings.getTimeZone();
+        LocalDate lastDay = LocalDate.ofInstant(timeSource.now().toInstant(), timeZone);
+        LocalDate firstDay = lastDay.minusDays(settings.getReconciliationDays() - 1L);
+
+        int counterCount = 0;
+        int removedCount = 0;
+        int skippedCount = 0;
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            ReconciledDay reconciledDay = reconcile(day, timeZone);
+            counterCount += reconciledDay.counterCount();
+            removedCount += reconciledDay.removedCount();
+            skippedCount += reconciledDay.skippedCount();
+        }
+        log.info("Reconciled {} visit log activity counters from {} to {}, removed {} obsolete counters, "
+                + "skipped {} counters updated meanwhile", counterCount, firstDay, lastDay, removedCount, skippedCount);
+        return counterCount;
+    }
+
+    private ReconciledDay reconcile(LocalDate day, ZoneId timeZone) {
+        // the revisions are read before counting, so that any increment after this point prevents the overwrite
+        Map<ActivityKey, VisitLogActivityDocument> storedCounters = new HashMap<>();
+        mongoTemplate.find(Query.query(where("day").is(day.toString())), VisitLogActivityDocument.class)
+                .forEach(storedCounter -> storedCounters.put(ActivityKey.of(storedCounter), storedCounter));
+
+        Instant from = day.atStartOfDay(timeZone).toInstant();
+        Instant to = day.plusDays(1).atStartOfDay(timeZone).toInstant();
+        List<VisitLogDailyCount> dailyCounts = visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.countPerDayAndVisit(from, to, timeZone)
+                : visitLogDocumentRepository.countPerDayAndVisit(from, to, timeZone);
+        Counters counters = rollUp(dailyCounts.stream()
+                .collect(Collectors.toMap(
+                        dailyCount -> new VisitDay(dailyCount.day(), dailyCount.visitId()),
+                        VisitLogDailyCount::count,
+                        Long::sum)));
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VisitLogActivityDocument.class);
+        int operationCount = 0;
+        int removedCount = 0;
+        for (Map.Entry<ActivityKey, Long> counter : counters.counts().entrySet()) {
+            VisitLogActivityDocument storedCounter = storedCounters.get(counter.getKey());
+            if (storedCounter == null) {
+                // a counter created by a concurrent increment meanwhile is kept
+                bulkOperations.upsert(counter.getKey().query(), new Update()
+                        .setOnInsert("count", counter.getValue())
+                        .setOnInsert("nurseName", counters.nurseName(counter.getKey()))
+                        .setOnInsert("revision", 0L));
+            } else if (storedCounter.getCount() != counter.getValue()) {
+                bulkOperations.updateOne(unchanged(storedCounter), new Update()
+                        .set("count", counter.getValue())
+                        .set("nurseName", counters.nurseName(counter.getKey())));
+            } else {
+                continue;
+            }
+            operationCount++;
+        }
+        // counters of the day whose visit logs have all been removed
+        for (Map.Entry<ActivityKey, VisitLogActivityDocument> storedCounter : storedCounters.entrySet()) {
+            if (!counters.counts().containsKey(storedCounter.getKey())) {
+                bulkOperations.remove(unchanged(storedCounter.getValue()));
+                operationCount++;
+                removedCount++;
+            }
+        }
+
+        int skippedCount = 0;
+        if (operationCount > 0) {
+            BulkWriteResult result = bulkOperations.execute();
+            skippedCount = operationCount - result.getMatchedCount() - result.getDeletedCount() - result.getUpserts().size();
+        }
+        return new ReconciledDay(counters.counts().size(), removedCount, skippedCount);
+    }
+
+    private Query unchanged(VisitLogActivityDocument storedCounter) {
+        // counters written before the revision was introduced have none
+        return Query.query(where("id").is(storedCounter.getId()).and("revision").in(storedCounter.getRevision() == 0
+                ? Arrays.asList(0L, null)
+                : List.of(storedCounter.getRevision())));
+    }
+
+    /**
+     * Returns the counters of the given days. The counters are not further aggregated, so callers can sum them up
+     * per day, visit type or nurse.
+     *
+     * @param firstDay The first day (inclusive).
+     * @param lastDay  The last day (inclusive).
+     * @return The counters of the days.
+     */
+    public List<VisitLogActivityDocument> findActivity(LocalDate firstDay, LocalDate lastDay) {
+        return mongoTemplate.find(
+                Query.query(where("day").gte(firstDay.toString()).lte(lastDay.toString())),
+                VisitLogActivityDocument.class);
+    }
+
+    private void increment(Map<VisitDay, Long> countsPerVisitDay, int sign) {
+        try {
+            Counters counters = rollUp(countsPerVisitDay);
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VisitLogActivityDocument.class);
+            counters.counts().forEach((key, count) -> bulkOperations.upsert(key.query(),
+                    new Update().inc("count", sign * count).inc("revision", 1).set("nurseName", counters.nurseName(key))));
+            bulkOperations.execute();
+        } catch (RuntimeException e) {
+            log.warn("Failed to update visit log activity counters, they are corrected by the next reconciliation", e);
+        }
+    }
+
+    private Counters rollUp(Map<VisitDay, Long> countsPerVisitDay) {
+        Map<UUID, VisitAttributes> attributesByVisitId = loadVisitAttributes(
+                countsPerVisitDay.keySet().stream().map(VisitDay::visitId).distinct().toList());
+
+        Map<ActivityKey, Long> counts = new HashMap<>();
+        Map<UUID, String> nurseNames = new HashMap<>();
+        countsPerVisitDay.forEach((visitDay, count) -> {
+            VisitAttributes attributes = attributesByVisitId.getOrDefault(visitDay.visitId(), VisitAttributes.UNKNOWN);
+            counts.merge(new ActivityKey(visitDay.day(), attributes.visitType(), attributes.nurseId()), count, Long::sum);
+            if (attributes.nurseId() != null) {
+                nurseNames.put(attributes.nurseId(), attributes.nurseName());
+            }
+        });
+        return new Counters(counts, nurseNames);
+    }
+
+    private Map<UUID, VisitAttributes> loadVisitAttributes(List<UUID> visitIds) {
+        Map<UUID, VisitAttributes> attributesByVisitId = new HashMap<>();
+        int batchSize = visitLogProperties.getMaxVisitIdsPerQuery();
+        for (int batchStart = 0; batchStart < visitIds.size(); batchStart += batchSize) {
+            List<UUID> batch = visitIds.subList(batchStart, Math.min(batchStart + batchSize, visitIds.size()));
+            dataManager.unconstrained().load(Visit.class)
+                    .ids(new ArrayList<>(batch))
+                    .fetchPlan(visitAttributesFetchPlan())
+                    .list()
+                    .forEach(visit -> attributesByVisitId.put(visit.getId(), toVisitAttributes(visit)));
+        }
+        return attributesByVisitId;
+    }
+
+    private FetchPlan visitAttributesFetchPlan() {
+        return fetchPlans.builder(Visit.class)
+                .addAll("type", "assignedNurse.firstName", "assignedNurse.lastName", "assignedNurse.username")
+                .build();
+    }
+
+    private VisitAttributes toVisitAttributes(Visit visit) {
+        User nurse = visit.getAssignedNurse();
+        return new VisitAttributes(
+                visit.getType() != null ? visit.getType().getId() : null,
+                nurse != null ? nurse.getId() : null,
+                nurse != null ? nurse.getDisplayName() : null
+        );
+    }
+
+    private String day(Instant instant) {
+        return LocalDate.ofInstant(instant, settings.getTimeZone()).toString();
+    }
+
+    private record VisitDay(String day, UUID visitId) {
+    }
+
+    private record VisitAttributes(@Nullable String visitType, @Nullable UUID nurseId, @Nullable String nurseName) {
+
+        static final VisitAttributes UNKNOWN = new VisitAttributes(null, null, null);
+    }
+
+    private record ActivityKey(String day, @Nullable String visitType, @Nullable UUID nurseId) {
+
+        static ActivityKey of(VisitLogActivityDocument counter) {
+            return new ActivityKey(counter.getDay(), counter.getVisitType(), counter.getNurseId());
+        }
+
+        Query query() {
+            return Query.query(where("day").is(day).and("visitType").is(visitType).and("nurseId").is(nurseId));
+        }
+    }
+
+    private record ReconciledDay(int counterCount, int removedCount, int skippedCount) {
+    }
+
+    private record Counters(Map<ActivityKey, Long> counts, Map<UUID, String> nurseNames) {
+
+        @Nullable
+        String nurseName(ActivityKey key) {
+            return key.nurseId() != null ? nurseNames.get(key.nurseId()) : null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.FluentValuesLoader;
+import io.jmix.core.TimeSource;
+import io.jmix.core.security.Authenticated;
+import io.jmix.petclinic.entity.visit.VisitTreatmentStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Scheduled job that moves the visit logs of completed visits into the archive.
+ * <p>
+ * Visit logs of visits that are {@link VisitTreatmentStatus#DONE} and ended more than
+ * `petclinic.visitlog.archive.older-than` ago are hardly ever read, but still occupy the regular collection and
+ * its indexes. The job, triggered by `petclinic.visitlog.archive.cron`, processes these visits in batches of
+ * `petclinic.visitlog.archive.batch-size`, paging through them by visit ID: the visit logs of each batch are loaded
+ * with one `$in` query, written to {@link VisitLogArchive} (one compressed document per visit) and then removed from
+ * the regular collection.
+ * </p>
+ * <p>
+ * Only the visit logs that have been written to the archive are removed, and only while they have not been saved
+ * again since they were read (same `updatedAt`). Visit logs added or changed in the meantime stay in the regular
+ * collection, where they take precedence over their archived copy, and are archived by the next run.
+ * {@link VisitLogService} combines both sources when reading the visit logs of an archived visit. With the bucket
+ * layout, the visit logs are moved out of the buckets of {@link VisitLogBucketStore} instead.
+ * </p>
+ */
+@Component("petclinic_VisitLogArchival")
+public class VisitLogArchival {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogArchival.class);
+
+    private final DataManager dataManager;
+    private final TimeSource timeSource;
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogArchive visitLogArchive;
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogProperties.Archive settings;
+
+    public VisitLogArchival(DataManager dataManager, TimeSource timeSource,
+                            VisitLogDocumentRepository visitLogDocumentRepository,
+                            VisitLogBucketStore visitLogBucketStore, VisitLogArchive visitLogArchive,
+                            VisitLogVisitIdMigration visitLogVisitIdMigration, VisitLogCache visitLogCache,
+                            VisitLogProperties visitLogProperties) {
+        this.dataManager = dataManager;
+        this.timeSource = timeSource;
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogArchive = visitLogArchive;
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+        this.visitLogCache = visitLogCache;
+        this.settings = visitLogProperties.getArchive();
+    }
+
+    @Authenticated
+    @Scheduled(cron = "${petclinic.visitlog.archive.cron}")
+    public void archiveOnSchedule() {
+        if (settings.isEnabled()) {
+            archive();
+        }
+    }
+
+    /**
+     * Moves the visit logs of all completed visits that ended before the configured age into the archive.
+     *
+     * @return The number of archived visit logs.
+     */
+    public long archive() {
+        LocalDateTime endedBefore = timeSource.now().toLocalDateTime().minus(settings.getOlderThan());
+        int batchSize = settings.getBatchSize();
+
+        long archivedCount = 0;
+        List<UUID> visitIds;
+        UUID afterId = null;
+        do {
+            visitIds = loadCompletedVisitIds(endedBefore, afterId, batchSize);
+            archivedCount += archiveBatch(visitIds);
+            afterId = visitIds.isEmpty() ? null : visitIds.get(visitIds.size() - 1);
+        } while (visitIds.size() == batchSize);
+
+        if (archivedCount > 0) {
+            log.info("Archived {} visit logs of visits completed before {}", archivedCount, endedBefore);
+        }
+        return archivedCount;
+    }
+
+    private List<UUID> loadCompletedVisitIds(LocalDateTime endedBefore, @Nullable UUID afterId, int maxResults) {
+        // keyset paging: the next batch continues after the last visit of the previous one instead of skipping
+        // over all previous batches, which also keeps batches stable while visits are completed in the meantime
+        FluentValuesLoader loader = dataManager.loadValues("select e.id from petclinic_Visit e " +
+                        "where e.treatmentStatus = :treatmentStatus and e.visitEnd < :endedBefore" +
+                        (afterId != null ? " and e.id > :afterId" : "") + " order by e.id")
+                .properties("id")
+                .parameter("treatmentStatus", VisitTreatmentStatus.DONE)
+                .parameter("endedBefore", endedBefore)
+                .maxResults(maxResults);
+        if (afterId != null) {
+            loader.parameter("afterId", afterId);
+        }
+        return loader.list()
+                .stream()
+                .map(keyValueEntity -> keyValueEntity.<UUID>getValue("id"))
+                .toList();
+    }
+
+    private long archiveBatch(List<UUID> visitIds) {
+        if (visitIds.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(visitIds);
+        Map<UUID, List<VisitLogDocument>> visitLogsByVisitId = (visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.findByVisitIdIn(visitIdValues)
+                : visitLogDocumentRepository.findByVisitIdIn(visitIdValues, VisitLogPaging.CREATION_ORDER))
+                .stream()
+                .collect(Collectors.groupingBy(VisitLogDocument::getVisitId));
+
+        visitLogsByVisitId.forEach((visitId, visitLogDocuments) -> {
+            visitLogArchive.archive(visitId, visitLogDocuments);
+            if (visitLogBucketStore.isEnabled()) {
+                visitLogBucketStore.deleteAllUnchanged(visitLogDocuments);
+            } else {
+                visitLogDocumentRepository.deleteAllUnchanged(visitLogDocuments);
+            }
+        });
+        visitLogCache.invalidateVisits(visitLogsByVisitId.keySet());
+
+        return visitLogsByVisitId.values().stream().mapToLong(List::size).sum();
+    }
+}
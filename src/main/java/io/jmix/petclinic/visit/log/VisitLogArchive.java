@@ -0,0 +1,192 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.TimeSource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Read and write access to the archived visit logs of completed visits.
+ * <p>
+ * All visit logs of an archived visit are stored in a single {@link VisitLogArchiveDocument}. Archiving further
+ * visit logs of the same visit merges them into the existing archive, where a visit log replaces an archived visit
+ * log with the same ID. The archive is written by {@link VisitLogArchival} and read by {@link VisitLogService}.
+ * </p>
+ */
+@Component("petclinic_VisitLogArchive")
+public class VisitLogArchive {
+
+    private final VisitLogArchiveRepository visitLogArchiveRepository;
+    private final TimeSource timeSource;
+
+    public VisitLogArchive(VisitLogArchiveRepository visitLogArchiveRepository, TimeSource timeSource) {
+        this.visitLogArchiveRepository = visitLogArchiveRepository;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Checks whether a visit has archived visit logs, without reading them.
+     *
+     * @param visitId The ID of the visit.
+     * @return Whether the visit is archived.
+     */
+    public boolean isArchived(UUID visitId) {
+        return visitLogArchiveRepository.existsById(visitId);
+    }
+
+    /**
+     * Returns the archived visit logs of a visit in the order of their creation.
+     *
+     * @param visitId The ID of the visit.
+     * @return The archived visit logs, or an empty optional if the visit is not archived.
+     */
+    public Optional<List<VisitLogDocument>> findByVisitId(UUID visitId) {
+        return visitLogArchiveRepository.findById(visitId)
+                .map(archive -> VisitLogArchiveCodec.decode(visitId, archive.getEntries()));
+    }
+
+    /**
+     * Returns the archived visit logs of several visits in the order of their creation.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The archived visit logs by visit ID; visits that are not archived are not contained.
+     */
+    public Map<UUID, List<VisitLogDocument>> findByVisitIds(Collection<UUID> visitIds) {
+        Map<UUID, List<VisitLogDocument>> visitLogDocuments = new LinkedHashMap<>();
+        visitLogArchiveRepository.findAllById(visitIds)
+                .forEach(archive -> visitLogDocuments.put(archive.getVisitId(),
+                        VisitLogArchiveCodec.decode(archive.getVisitId(), archive.getEntries())));
+        return visitLogDocuments;
+    }
+
+    /**
+     * Returns the archived visit logs created in the given period, in the order of their creation. Only the matching
+     * visit logs are kept in memory while the archives are read.
+     *
+     * @param visitIds    The IDs of the visits, or {@code null} for the archived visit logs of all visits.
+     * @param createdFrom The earliest creation time (inclusive), or {@code null} for no lower bound.
+     * @param createdTo   The latest creation time (exclusive), or {@code null} for no upper bound.
+     * @return The matching archived visit logs.
+     */
+    public List<VisitLogDocument> findCreatedBetween(@Nullable Collection<UUID> visitIds, @Nullable Instant createdFrom,
+                                                     @Nullable Instant createdTo) {
+        Predicate<VisitLogDocument> createdBetween = visitLogDocument ->
+                visitLogDocument.getCreatedAt() != null
+                        && (createdFrom == null || !visitLogDocument.getCreatedAt().isBefore(createdFrom))
+                        && (createdTo == null || visitLogDocument.getCreatedAt().isBefore(createdTo));
+
+        List<VisitLogDocument> visitLogDocuments;
+        if (visitIds != null) {
+            visitLogDocuments = findByVisitIds(visitIds).values().stream()
+                    .flatMap(List::stream)
+                    .filter(createdBetween)
+                    .toList();
+        } else {
+            try (Stream<VisitLogArchiveDocument> archives = visitLogArchiveRepository.streamAllBy()) {
+                visitLogDocuments = archives
+                        .flatMap(archive -> VisitLogArchiveCodec.decode(archive.getVisitId(), archive.getEntries()).stream())
+                        .filter(createdBetween)
+                        .toList();
+            }
+        }
+        return VisitLogPaging.apply(visitLogDocuments, VisitLogPaging.CREATION_ORDER);
+    }
+
+    /**
+     * Returns a single archived visit log.
+     *
+     * @param id The ID of the visit log.
+     * @return The archived visit log, or an empty optional if no archive contains it.
+     */
+    public Optional<VisitLogDocument> findEntry(String id) {
+        return visitLogArchiveRepository.findByEntryIds(id)
+                .flatMap(archive -> VisitLogArchiveCodec.decode(archive.getVisitId(), archive.getEntries()).stream()
+                        .filter(visitLogDocument -> id.equals(visitLogDocument.getId()))
+                        .findFirst());
+    }
+
+    /**
+     * Returns the number of archived visit logs of several visits.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The number of archived visit logs by visit ID; visits that are not archived are not contained.
+     */
+    public Map<UUID, Long> countByVisitIds(Collection<UUID> visitIds) {
+        Map<UUID, Long> counts = new LinkedHashMap<>();
+        visitLogArchiveRepository.findAllById(visitIds)
+                .forEach(archive -> counts.put(archive.getVisitId(), (long) archive.getEntryCount()));
+        return counts;
+    }
+
+    /**
+     * Adds visit logs to the archive of their visit.
+     *
+     * @param visitId           The ID of the visit.
+     * @param visitLogDocuments The visit logs to archive.
+     */
+    public void archive(UUID visitId, Collection<VisitLogDocument> visitLogDocuments) {
+        List<VisitLogDocument> archived = findByVisitId(visitId).orElse(List.of());
+        save(visitId, merge(archived, visitLogDocuments));
+    }
+
+    /**
+     * Removes single visit logs from the archives they are contained in. Archives without visit logs are removed.
+     *
+     * @param ids The IDs of the visit logs.
+     */
+    public void removeEntries(Collection<String> ids) {
+        for (VisitLogArchiveDocument archive : visitLogArchiveRepository.findByEntryIdsIn(ids)) {
+            List<VisitLogDocument> remaining = VisitLogArchiveCodec.decode(archive.getVisitId(), archive.getEntries()).stream()
+                    .filter(visitLogDocument -> !ids.contains(visitLogDocument.getId()))
+                    .toList();
+            if (remaining.isEmpty()) {
+                visitLogArchiveRepository.delete(archive);
+            } else {
+                save(archive.getVisitId(), remaining);
+            }
+        }
+    }
+
+    /**
+     * Removes the archives of the given visits.
+     *
+     * @param visitIds The IDs of the visits.
+     */
+    public void removeVisits(Collection<UUID> visitIds) {
+        visitLogArchiveRepository.deleteAllById(visitIds);
+    }
+
+    /**
+     * Combines archived visit logs with visit logs of the same visit that are stored in the regular collection.
+     * A visit log of {@code visitLogDocuments} replaces an archived visit log with the same ID.
+     *
+     * @param archived          The archived visit logs.
+     * @param visitLogDocuments The other visit logs.
+     * @return The combined visit logs in the order of their creation.
+     */
+    public List<VisitLogDocument> merge(Collection<VisitLogDocument> archived, Collection<VisitLogDocument> visitLogDocuments) {
+        Map<String, VisitLogDocument> merged = new LinkedHashMap<>();
+        archived.forEach(visitLogDocument -> merged.put(visitLogDocument.getId(), visitLogDocument));
+        visitLogDocuments.forEach(visitLogDocument -> merged.put(visitLogDocument.getId(), visitLogDocument));
+        return VisitLogPaging.apply(List.copyOf(merged.values()), VisitLogPaging.CREATION_ORDER);
+    }
+
+    private void save(UUID visitId, List<VisitLogDocument> visitLogDocuments) {
+        VisitLogArchiveDocument archive = new VisitLogArchiveDocument();
+        archive.setVisitId(visitId);
+        archive.setEntryIds(visitLogDocuments.stream().map(VisitLogDocument::getId).toList());
+        archive.setEntryCount(visitLogDocuments.size());
+        archive.setEntries(VisitLogArchiveCodec.encode(visitLogDocuments));
+        archive.setArchivedAt(timeSource.now().toInstant());
+        visitLogArchiveRepository.save(archive);
+    }
+}
@@ -0,0 +1,79 @@
+package io.jmix.petclinic.visit.log;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes the visit logs of a visit into the compact form stored in {@link VisitLogArchiveDocument#getEntries()}:
+ * a BSON document with an `entries` array, compressed with GZIP. The `visitId` is not repeated per entry.
+ */
+final class VisitLogArchiveCodec {
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private VisitLogArchiveCodec() {
+    }
+
+    static byte[] encode(Collection<VisitLogDocument> visitLogDocuments) {
+        List<Document> entries = new ArrayList<>(visitLogDocuments.size());
+        for (VisitLogDocument visitLogDocument : visitLogDocuments) {
+            Document entry = new Document("_id", visitLogDocument.getId())
+                    .append("title", visitLogDocument.getTitle())
+                    .append("description", visitLogDocument.getDescription());
+            if (visitLogDocument.getCreatedAt() != null) {
+                entry.append("createdAt", Date.from(visitLogDocument.getCreatedAt()));
+            }
+            if (visitLogDocument.getDescriptionFileId() != null) {
+                entry.append("descriptionFileId", visitLogDocument.getDescriptionFileId());
+            }
+            entries.add(entry);
+        }
+
+        ByteBuffer bson = new RawBsonDocument(new Document("entries", entries), DOCUMENT_CODEC).getByteBuffer().asNIO();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bson.remaining() / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bson.array(), bson.arrayOffset() + bson.position(), bson.remaining());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    static List<VisitLogDocument> decode(UUID visitId, byte[] compressedEntries) {
+        byte[] bson;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressedEntries))) {
+            bson = gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<Document> entries = new RawBsonDocument(bson).decode(DOCUMENT_CODEC).getList("entries", Document.class);
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>(entries.size());
+        for (Document entry : entries) {
+            VisitLogDocument visitLogDocument = new VisitLogDocument();
+            visitLogDocument.setId(entry.getString("_id"));
+            visitLogDocument.setVisitId(visitId);
+            visitLogDocument.setTitle(entry.getString("title"));
+            visitLogDocument.setDescription(entry.getString("description"));
+            Date createdAt = entry.getDate("createdAt");
+            visitLogDocument.setCreatedAt(createdAt != null ? createdAt.toInstant() : null);
+            visitLogDocument.setDescriptionFileId(entry.getString("descriptionFileId"));
+            visitLogDocuments.add(visitLogDocument);
+        }
+        return visitLogDocuments;
+    }
+}
@@ -0,0 +1,81 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Archived visit logs of a single visit, stored in the `visitLogArchive` collection.
+ * <p>
+ * Instead of one document per visit log, all visit logs of an archived visit are stored in a single document.
+ * The visit logs themselves are kept as one GZIP-compressed BSON array (see {@link VisitLogArchiveCodec}), so an
+ * archived visit costs one `_id` index entry plus the `entryIds` needed to load a single archived visit log.
+ * </p>
+ * <p>
+ * Fields:
+ * <ul>
+ *     <li><b>visitId</b> - ID of the archived visit, used as document ID.</li>
+ *     <li><b>entryIds</b> - IDs of the archived visit logs.</li>
+ *     <li><b>entryCount</b> - Number of archived visit logs.</li>
+ *     <li><b>entries</b> - The compressed visit logs.</li>
+ *     <li><b>archivedAt</b> - Point in time the visit logs were (last) archived.</li>
+ * </ul>
+ * </p>
+ *
+ * @see VisitLogArchive
+ */
+@Document("visitLogArchive")
+public class VisitLogArchiveDocument {
+
+    @Id
+    private UUID visitId;
+    @Indexed
+    private List<String> entryIds;
+    private int entryCount;
+    private byte[] entries;
+    private Instant archivedAt;
+
+    public UUID getVisitId() {
+        return visitId;
+    }
+
+    public void setVisitId(UUID visitId) {
+        this.visitId = visitId;
+    }
+
+    public List<String> getEntryIds() {
+        return entryIds;
+    }
+
+    public void setEntryIds(List<String> entryIds) {
+        this.entryIds = entryIds;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public byte[] getEntries() {
+        return entries;
+    }
+
+    public void setEntries(byte[] entries) {
+        this.entries = entries;
+    }
+
+    public Instant getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(Instant archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Repository for the archived visit logs of completed visits, see {@link VisitLogArchiveDocument}.
+ */
+public interface VisitLogArchiveRepository extends MongoRepository<VisitLogArchiveDocument, UUID> {
+
+    /**
+     * Finds the archive containing the visit log with the given ID.
+     *
+     * @param entryId The ID of the archived visit log.
+     * @return The archive of the visit the visit log belongs to.
+     */
+    Optional<VisitLogArchiveDocument> findByEntryIds(String entryId);
+
+    /**
+     * Finds the archives containing any of the visit logs with the given IDs.
+     *
+     * @param entryIds The IDs of the archived visit logs.
+     * @return The archives of the visits the visit logs belong to.
+     */
+    List<VisitLogArchiveDocument> findByEntryIdsIn(Collection<String> entryIds);
+
+    /**
+     * Reads all archives through a cursor. The returned stream has to be closed.
+     *
+     * @return The archives of all archived visits.
+     */
+    Stream<VisitLogArchiveDocument> streamAllBy();
+}
@@ -0,0 +1,21 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * A file attached to a visit log, stored in GridFS by {@link VisitLogContentStorage}.
+ *
+ * @param fileId      The ID of the GridFS file.
+ * @param fileName    The name of the uploaded file.
+ * @param contentType The MIME type of the file, if known.
+ * @param length      The size of the file in bytes.
+ * @param uploadedAt  The point in time the file was uploaded.
+ */
+public record VisitLogAttachment(String fileId,
+                                 String fileName,
+                                 @Nullable String contentType,
+                                 long length,
+                                 Instant uploadedAt) {
+}
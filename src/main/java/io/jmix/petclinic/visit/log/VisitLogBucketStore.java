@@ -0,0 +1,874 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Stores visit logs in buckets: documents holding the visit logs of one visit, used with
+ * {@link VisitLogStorageLayout#BUCKET}.
+ * <p>
+ * A bucket stores the attributes shared by all visit logs of a visit once (`visitId` and the copied attributes of
+ * {@link VisitLogDenormalization}) and the visit logs themselves in its `entries` array. New visit logs are appended
+ * with `$push` to an open bucket of their visit, i.e. one holding less than `petclinic.visitlog.bucket.max-entries`
+ * visit logs that still has room for the visit log within `petclinic.visitlog.bucket.max-size`. If there is none,
+ * the same upsert starts a new bucket. Like this, many short visit logs cost a few documents and index entries
+ * instead of one each, and the visit logs of a visit are usually read with a single document fetch.
+ * </p>
+ * <p>
+ * Fields of a bucket: `visitId`, `petId`, `petName`, `ownerId`, `ownerName`, `visitStart`, `entries` (visit logs
+ * without the visit attributes), `entryIds` (indexed, to access a single visit log), `entryCount`, `size` (BSON
+ * size of the entries) and `maxCreatedAt` (latest creation time of the entries).
+ * </p>
+ * <p>
+ * A saved visit log replaces its entry within its bucket as long as the bucket stays within `max-size`. Otherwise,
+ * or if the visit log moved to another visit, the entry is removed from its bucket and appended like a new visit
+ * log. The visit attributes of a bucket are only set when the bucket is created; afterwards they are maintained by
+ * {@link VisitLogDenormalization} for all buckets of the visit.
+ * </p>
+ * <p>
+ * The visit logs are read as {@link VisitLogDocument}s, so {@link VisitLogService} serves both layouts with the same
+ * mapping, caching and paging. Pages and scroll windows of a visit are cut out of the unwound entries by MongoDB, so
+ * only the requested visit logs are transferred. Queries across visits, e.g. of the generic filter, unwind the
+ * entries in an aggregation after selecting the buckets: conditions on the visit attributes are evaluated on the
+ * buckets directly, conditions on the visit logs with `$elemMatch` on `entries`.
+ * </p>
+ * <p>
+ * The full-text search is not available with this layout: a text index can only score and match whole buckets, not
+ * their entries, so neither the stemmed matching nor the relevance order of the document layout can be reproduced
+ * per visit log. {@link VisitLogService} rejects searches with a {@link VisitLogQueryException} instead of returning
+ * different results than the document layout.
+ * </p>
+ */
+@Component("petclinic_VisitLogBucketStore")
+public class VisitLogBucketStore {
+
+    private static final List<String> VISIT_FIELDS = List.of("visitId", "petId", "petName", "ownerId", "ownerName", "visitStart");
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoConverter mongoConverter;
+    private final QueryMapper queryMapper;
+    private final MongoPersistentEntity<?> visitLogDocumentEntity;
+    private final VisitLogProperties visitLogProperties;
+    private final VisitLogProperties.Bucket settings;
+    private final Set<String> indexedDatabases = ConcurrentHashMap.newKeySet();
+
+    public VisitLogBucketStore(MongoTemplate mongoTemplate, VisitLogProperties visitLogProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.mongoConverter = mongoTemplate.getConverter();
+        this.queryMapper = new QueryMapper(mongoConverter);
+        this.visitLogDocumentEntity = mongoConverter.getMappingContext().getRequiredPersistentEntity(VisitLogDocument.class);
+        this.visitLogProperties = visitLogProperties;
+        this.settings = visitLogProperties.getBucket();
+    }
+
+    private void createIndexes(MongoCollection<Document> buckets) {
+        buckets.createIndex(Indexes.ascending("visitId"));
+        buckets.createIndex(Indexes.ascending("entryIds"));
+        buckets.createIndex(Indexes.ascending("petId"));
+        buckets.createIndex(Indexes.ascending("ownerId"));
+        buckets.createIndex(Indexes.ascending("petName"));
+        buckets.createIndex(Indexes.ascending("ownerName"));
+        buckets.createIndex(Indexes.ascending("entries.createdAt"));
+    }
+
+    /**
+     * @return Whether visit logs are stored in buckets (`petclinic.visitlog.storage-layout=bucket`).
+     */
+    public boolean isEnabled() {
+        return visitLogProperties.getStorageLayout() == VisitLogStorageLayout.BUCKET;
+    }
+
+    /**
+     * Appends a new visit log to an open bucket of its visit or replaces a stored visit log within its bucket.
+     *
+     * @param visitLogDocument The visit log. A new visit log without ID receives a new ObjectId.
+     * @return The saved visit log.
+     */
+    public VisitLogDocument save(VisitLogDocument visitLogDocument) {
+        buckets().bulkWrite(writeModels(List.of(visitLogDocument)).models(), new BulkWriteOptions().ordered(true));
+        return visitLogDocument;
+    }
+
+    /**
+     * Saves several visit logs with one bulk write. Each new visit log is appended by an upsert of its own, which
+     * sees the buckets filled by the previous ones of an ordered bulk write. A visit log moved to another bucket is
+     * written by several operations, whose errors are reported for the visit log.
+     *
+     * @param documents The visit logs to save. Visit logs without ID receive a new ObjectId.
+     * @param bulkMode  Whether writing stops at the first failing visit log.
+     * @return The error messages of the visit logs that could not be written, by their index in {@code documents}.
+     * @see VisitLogDocumentRepositoryCustom#bulkSave
+     */
+    public Map<Integer, String> bulkSave(List<VisitLogDocument> documents, BulkOperations.BulkMode bulkMode) {
+        if (documents.isEmpty()) {
+            return Map.of();
+        }
+
+        boolean ordered = bulkMode == BulkOperations.BulkMode.ORDERED;
+        WriteModels writeModels = writeModels(documents);
+        try {
+            buckets().bulkWrite(writeModels.models(), new BulkWriteOptions().ordered(ordered));
+            return Map.of();
+        } catch (MongoBulkWriteException e) {
+            Map<Integer, String> errors = new LinkedHashMap<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                errors.putIfAbsent(writeModels.documentIndexes().get(error.getIndex()), error.getMessage());
+            }
+            if (ordered && !e.getWriteErrors().isEmpty()) {
+                int failedIndex = writeModels.documentIndexes().get(e.getWriteErrors().get(0).getIndex());
+                for (int i = failedIndex + 1; i < documents.size(); i++) {
+                    errors.putIfAbsent(i, "Not written because of a previous error in the ordered bulk write");
+                }
+            }
+            return errors;
+        }
+    }
+
+    /**
+     * Saves several visit logs with one unordered bulk write, skipping those whose stored visit log has been saved
+     * more recently. The `updatedAt` of the stored visit logs is read before the write.
+     *
+     * @param documents The visit logs to save. All of them have an ID and `updatedAt`.
+     * @return The failed visit logs and the skipped ones, by their index in {@code documents}.
+     * @see VisitLogDocumentRepositoryCustom#bulkSaveIfNewer
+     */
+    public VisitLogDocumentRepositoryCustom.ConditionalSaveResult bulkSaveIfNewer(List<VisitLogDocument> documents) {
+        Map<String, Instant> storedUpdatedAt = findUpdatedAt(documents.stream().map(VisitLogDocument::getId).toList());
+
+        List<Integer> writtenIndexes = new ArrayList<>();
+        Set<Integer> skipped = new HashSet<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Instant updatedAt = storedUpdatedAt.get(documents.get(i).getId());
+            if (updatedAt != null && !updatedAt.isBefore(documents.get(i).getUpdatedAt())) {
+                skipped.add(i);
+            } else {
+                writtenIndexes.add(i);
+            }
+        }
+
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        bulkSave(writtenIndexes.stream().map(documents::get).toList(), BulkOperations.BulkMode.UNORDERED)
+                .forEach((index, message) -> errors.put(writtenIndexes.get(index), message));
+        return new VisitLogDocumentRepositoryCustom.ConditionalSaveResult(errors, skipped);
+    }
+
+    private Map<String, Instant> findUpdatedAt(List<String> ids) {
+        List<Object> requestedIds = storedIds(ids);
+        Map<String, Instant> updatedAt = new HashMap<>();
+        buckets().aggregate(List.of(
+                        Aggregates.match(Filters.in("entryIds", requestedIds)),
+                        Aggregates.unwind("$entries"),
+                        Aggregates.match(Filters.in("entries._id", requestedIds)),
+                        Aggregates.project(Projections.fields(
+                                Projections.computed("_id", "$entries._id"),
+                                Projections.computed("updatedAt", "$entries.updatedAt")
+                        ))
+                ))
+                .forEach(entry -> updatedAt.put(entry.get("_id").toString(), toInstant(entry.get("updatedAt"))));
+        return updatedAt;
+    }
+
+    private WriteModels writeModels(List<VisitLogDocument> visitLogDocuments) {
+        visitLogDocuments.stream()
+                .filter(visitLogDocument -> visitLogDocument.getId() == null)
+                .forEach(visitLogDocument -> visitLogDocument.setId(new ObjectId().toHexString()));
+        Map<String, StoredEntry> storedEntries = findStoredEntries(visitLogDocuments.stream().map(VisitLogDocument::getId).toList());
+        // sizes of the buckets including the replacements planned so far, so that several replacements of a bulk
+        // write do not exceed max-size together
+        Map<Object, Long> bucketSizes = new HashMap<>();
+
+        List<WriteModel<Document>> writeModels = new ArrayList<>(visitLogDocuments.size());
+        List<Integer> documentIndexes = new ArrayList<>(visitLogDocuments.size());
+        for (int i = 0; i < visitLogDocuments.size(); i++) {
+            VisitLogDocument visitLogDocument = visitLogDocuments.get(i);
+            Document written = new Document();
+            mongoConverter.write(visitLogDocument, written);
+
+            Document entry = new Document();
+            Document visitFields = new Document();
+            written.forEach((field, value) -> {
+                if (VISIT_FIELDS.contains(field)) {
+                    visitFields.append(field, value);
+                } else if (!field.equals("_class")) {
+                    entry.append(field, value);
+                }
+            });
+            long entrySize = bsonSize(entry);
+
+            List<WriteModel<Document>> entryWriteModels = new ArrayList<>();
+            StoredEntry storedEntry = storedEntries.get(visitLogDocument.getId());
+            if (storedEntry != null) {
+                long bucketSize = bucketSizes.getOrDefault(storedEntry.bucketId(), storedEntry.bucketSize());
+                long replacedBucketSize = bucketSize - storedEntry.entrySize() + entrySize;
+                boolean sameVisit = Objects.equals(String.valueOf(storedEntry.visitId()), String.valueOf(visitLogDocument.getVisitId()));
+                // a single visit log larger than max-size stays alone in its bucket instead of moving on
+                if (sameVisit && (replacedBucketSize <= settings.getMaxSize().toBytes() || storedEntry.entryCount() == 1)) {
+                    bucketSizes.put(storedEntry.bucketId(), replacedBucketSize);
+                    entryWriteModels.add(replaceEntry(storedEntry.bucketId(), entry));
+                } else {
+                    bucketSizes.put(storedEntry.bucketId(), bucketSize - storedEntry.entrySize());
+                    entryWriteModels.addAll(removeEntry(storedEntry.bucketId(), entry.get("_id")));
+                    entryWriteModels.add(appendEntry(visitLogDocument.getVisitId(), entry, entrySize, visitFields));
+                }
+            } else {
+                entryWriteModels.add(appendEntry(visitLogDocument.getVisitId(), entry, entrySize, visitFields));
+            }
+
+            writeModels.addAll(entryWriteModels);
+            documentIndexes.addAll(Collections.nCopies(entryWriteModels.size(), i));
+        }
+        return new WriteModels(writeModels, documentIndexes);
+    }
+
+    private record WriteModels(List<WriteModel<Document>> models, List<Integer> documentIndexes) {
+    }
+
+    private record StoredEntry(Object bucketId, @Nullable Object visitId, long bucketSize, int entryCount, long entrySize) {
+    }
+
+    private Map<String, StoredEntry> findStoredEntries(List<String> ids) {
+        List<Object> requestedIds = storedIds(new HashSet<>(ids));
+        Document requestedEntries = new Document("$filter", new Document("input", "$entries")
+                .append("cond", new Document("$in", List.of("$$this._id", new Document("$literal", requestedIds)))));
+
+        Map<String, StoredEntry> storedEntries = new HashMap<>();
+        buckets().aggregate(List.of(
+                        Aggregates.match(Filters.in("entryIds", requestedIds)),
+                        Aggregates.project(Projections.fields(
+                                Projections.include("visitId", "size", "entryCount"),
+                                Projections.computed("entrySizes", new Document("$map", new Document("input", requestedEntries)
+                                        .append("in", new Document("_id", "$$this._id")
+                                                .append("size", new Document("$bsonSize", "$$this")))))
+                        ))
+                ))
+                .forEach(bucket -> bucket.getList("entrySizes", Document.class).forEach(entrySize ->
+                        storedEntries.put(entrySize.get("_id").toString(), new StoredEntry(
+                                bucket.get("_id"),
+                                bucket.get("visitId"),
+                                number(bucket.get("size")),
+                                (int) number(bucket.get("entryCount")),
+                                number(entrySize.get("size"))
+                        ))));
+        return storedEntries;
+    }
+
+    private WriteModel<Document> appendEntry(UUID visitId, Document entry, long entrySize, Document visitFields) {
+        Bson openBucket = Filters.and(
+                Filters.eq("visitId", visitId),
+                Filters.lt("entryCount", settings.getMaxEntries()),
+                Filters.lte("size", settings.getMaxSize().toBytes() - entrySize)
+        );
+
+        List<Bson> updates = new ArrayList<>();
+        updates.add(Updates.push("entries", entry));
+        updates.add(Updates.push("entryIds", entry.get("_id")));
+        updates.add(Updates.inc("entryCount", 1));
+        updates.add(Updates.inc("size", entrySize));
+        updates.add(Updates.max("maxCreatedAt", entry.get("createdAt")));
+        visitFields.forEach((field, value) -> {
+            // the visit ID of a new bucket is taken from the filter, the other visit attributes of an existing
+            // bucket are maintained by VisitLogDenormalization
+            if (!field.equals("visitId")) {
+                updates.add(Updates.setOnInsert(field, value));
+            }
+        });
+
+        return new UpdateOneModel<>(openBucket, Updates.combine(updates), new UpdateOptions().upsert(true));
+    }
+
+    private WriteModel<Document> replaceEntry(Object bucketId, Document entry) {
+        Object id = entry.get("_id");
+
+        // values are wrapped in $literal, so that strings starting with '$' are not evaluated as field paths
+        Document replacedEntries = new Document("$map", new Document("input", "$entries")
+                .append("in", new Document("$cond", List.of(
+                        new Document("$eq", List.of("$$this._id", new Document("$literal", id))),
+                        new Document("$literal", entry),
+                        "$$this"
+                ))));
+        Document maxCreatedAt = new Document("$max", List.of("$maxCreatedAt", new Document("$literal", entry.get("createdAt"))));
+
+        return new UpdateOneModel<>(
+                Filters.and(Filters.eq("_id", bucketId), Filters.eq("entryIds", id)),
+                List.of(
+                        new Document("$set", new Document("entries", replacedEntries).append("maxCreatedAt", maxCreatedAt)),
+                        new Document("$set", new Document("size", entriesSize()))
+                )
+        );
+    }
+
+    private List<WriteModel<Document>> removeEntry(Object bucketId, Object id) {
+        return List.of(
+                new UpdateOneModel<>(Filters.and(Filters.eq("_id", bucketId), Filters.eq("entryIds", id)), withoutEntries(List.of(id))),
+                new DeleteOneModel<>(Filters.and(Filters.eq("_id", bucketId), Filters.eq("entryCount", 0)))
+        );
+    }
+
+    private List<Document> withoutEntries(List<Object> removedIds) {
+        Document remainingEntries = new Document("$filter", new Document("input", "$entries")
+                .append("cond", new Document("$not", List.of(
+                        new Document("$in", List.of("$$this._id", new Document("$literal", removedIds)))
+                ))));
+        Document remainingEntryIds = new Document("$setDifference", List.of("$entryIds", new Document("$literal", removedIds)));
+
+        return List.of(
+                new Document("$set", new Document("entries", remainingEntries).append("entryIds", remainingEntryIds)),
+                new Document("$set", new Document("entryCount", new Document("$size", "$entries")).append("size", entriesSize()))
+        );
+    }
+
+    /**
+     * Returns the visit logs of the given visits in the order of their creation.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The visit logs.
+     */
+    public List<VisitLogDocument> findByVisitIdIn(Collection<?> visitIds) {
+        if (visitIds.isEmpty()) {
+            return List.of();
+        }
+
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>();
+        buckets().find(Filters.in("visitId", visitIds))
+                .projection(Projections.exclude("entries.searchText"))
+                .forEach(bucket -> visitLogDocuments.addAll(read(bucket)));
+        return VisitLogPaging.apply(visitLogDocuments, VisitLogPaging.CREATION_ORDER);
+    }
+
+    /**
+     * Returns a page of the visit logs of the given visits. The page is cut out of the unwound entries by MongoDB.
+     *
+     * @param visitIds The IDs of the visits.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return The visit logs of the requested page.
+     */
+    public List<VisitLogDocument> findByVisitIdIn(Collection<?> visitIds, Pageable pageable) {
+        if (visitIds.isEmpty()) {
+            return List.of();
+        }
+        return findByCriteria(where("visitId").in(visitIds), pageable);
+    }
+
+    /**
+     * Returns a single visit log. Only the matching entry of its bucket is transferred.
+     *
+     * @param id The ID of the visit log.
+     * @return The visit log, or an empty optional if no bucket contains it.
+     */
+    public Optional<VisitLogDocument> findById(String id) {
+        Object storedId = storedId(id);
+        Document bucket = buckets().find(Filters.eq("entryIds", storedId))
+                .projection(Projections.fields(
+                        Projections.include(VISIT_FIELDS),
+                        Projections.elemMatch("entries", Filters.eq("_id", storedId))
+                ))
+                .first();
+
+        return bucket != null ? read(bucket).stream().findFirst() : Optional.empty();
+    }
+
+    /**
+     * Counts the visit logs of several visits from the entry counts of their buckets.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The number of visit logs by visit ID; visits without visit logs are not contained.
+     */
+    public Map<UUID, Long> countPerVisitId(Collection<?> visitIds) {
+        if (visitIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<UUID, Long> counts = new HashMap<>();
+        buckets().aggregate(List.of(
+                        Aggregates.match(Filters.in("visitId", visitIds)),
+                        Aggregates.group("$visitId", Accumulators.sum("count", "$entryCount"))
+                ))
+                .forEach(result -> counts.put(result.get("_id", UUID.class), ((Number) result.get("count")).longValue()));
+        return counts;
+    }
+
+    /**
+     * Returns the visit logs of a visit that follow the given position, in the order of their creation. Buckets
+     * holding only visit logs created before the position are skipped by their `maxCreatedAt`, and the window is cut
+     * out of the unwound entries of the remaining ones by MongoDB.
+     *
+     * @param visitIds The IDs of the visit.
+     * @param position The position to continue after.
+     * @param limit    The maximum number of visit logs to return.
+     * @return The visit logs and the positions to continue from.
+     * @see VisitLogDocumentRepositoryCustom#scrollByVisitIdIn
+     */
+    public Window<VisitLogDocument> scrollByVisitIdIn(Collection<?> visitIds, KeysetScrollPosition position, int limit) {
+        if (visitIds.isEmpty()) {
+            return Window.from(List.of(), index -> ScrollPosition.keyset());
+        }
+
+        Bson buckets = Filters.in("visitId", visitIds);
+        Bson entries = new Document();
+        if (!position.isInitial()) {
+            Object createdAt = mongoConverter.convertToMongoType(toInstant(position.getKeys().get("createdAt")));
+            Object lastSeenId = position.getKeys().containsKey("_id") ? position.getKeys().get("_id") : position.getKeys().get("id");
+            Object storedLastSeenId = lastSeenId != null ? storedId(lastSeenId.toString()) : null;
+
+            buckets = Filters.and(buckets, Filters.or(
+                    Filters.gte("maxCreatedAt", createdAt),
+                    Filters.exists("maxCreatedAt", false)
+            ));
+            entries = Filters.or(
+                    Filters.gt("createdAt", createdAt),
+                    Filters.and(Filters.eq("createdAt", createdAt), Filters.gt("_id", storedLastSeenId))
+            );
+        }
+
+        Document visitFields = new Document();
+        VISIT_FIELDS.forEach(field -> visitFields.append(field, "$" + field));
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>();
+        buckets().aggregate(List.of(
+                        Aggregates.match(buckets),
+                        Aggregates.project(Projections.exclude("entries.searchText")),
+                        Aggregates.unwind("$entries"),
+                        Aggregates.replaceRoot(new Document("$mergeObjects", List.of(visitFields, "$entries"))),
+                        Aggregates.match(entries),
+                        Aggregates.sort(new Document("createdAt", 1).append("_id", 1)),
+                        Aggregates.limit(limit + 1)
+                ))
+                .allowDiskUse(true)
+                .forEach(document -> visitLogDocuments.add(mongoConverter.read(VisitLogDocument.class, document)));
+
+        List<VisitLogDocument> window = visitLogDocuments.subList(0, Math.min(limit, visitLogDocuments.size()));
+        return Window.from(window, index -> positionOf(window.get(index)), visitLogDocuments.size() > limit);
+    }
+
+    private ScrollPosition positionOf(VisitLogDocument visitLogDocument) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("createdAt", visitLogDocument.getCreatedAt());
+        keys.put("_id", visitLogDocument.getId());
+        return ScrollPosition.forward(keys);
+    }
+
+    @Nullable
+    private Instant toInstant(@Nullable Object value) {
+        if (value instanceof Date date) {
+            return date.toInstant();
+        }
+        return (Instant) value;
+    }
+
+    /**
+     * Returns the visit logs matching arbitrary criteria on {@link VisitLogDocument} fields.
+     *
+     * @param criteria The criteria on {@link VisitLogDocument} fields.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return The matching visit logs of the requested page.
+     * @see VisitLogDocumentRepositoryCustom#findByCriteria
+     */
+    public List<VisitLogDocument> findByCriteria(Criteria criteria, Pageable pageable) {
+        List<Bson> pipeline = entriesMatching(criteria);
+        pipeline.add(Aggregates.sort(mappedSort(pageable.getSortOr(VisitLogPaging.CREATION_ORDER))));
+        if (pageable.isPaged()) {
+            pipeline.add(Aggregates.skip((int) pageable.getOffset()));
+            pipeline.add(Aggregates.limit(pageable.getPageSize()));
+        }
+
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>();
+        buckets().aggregate(pipeline)
+                .allowDiskUse(true)
+                .forEach(document -> visitLogDocuments.add(mongoConverter.read(VisitLogDocument.class, document)));
+        return visitLogDocuments;
+    }
+
+    /**
+     * Counts the visit logs matching arbitrary criteria.
+     *
+     * @param criteria The criteria on {@link VisitLogDocument} fields.
+     * @return The number of matching visit logs.
+     */
+    public long countByCriteria(Criteria criteria) {
+        List<Bson> pipeline = entriesMatching(criteria);
+        pipeline.add(Aggregates.count("count"));
+
+        Document result = buckets().aggregate(pipeline).allowDiskUse(true).first();
+        return result != null ? ((Number) result.get("count")).longValue() : 0;
+    }
+
+    /**
+     * Streams the visit logs matching arbitrary criteria through an aggregation cursor. The stream has to be closed.
+     *
+     * @param criteria  The criteria on {@link VisitLogDocument} fields.
+     * @param sort      The sort order on {@link VisitLogDocument} fields.
+     * @param batchSize The number of visit logs MongoDB returns per batch.
+     * @return The matching visit logs.
+     * @see VisitLogDocumentRepositoryCustom#streamByCriteria
+     */
+    public Stream<VisitLogDocument> streamByCriteria(Criteria criteria, Sort sort, int batchSize) {
+        List<Bson> pipeline = entriesMatching(criteria);
+        pipeline.add(Aggregates.sort(mappedSort(sort)));
+
+        MongoCursor<Document> cursor = buckets().aggregate(pipeline)
+                .allowDiskUse(true)
+                .batchSize(batchSize)
+                .cursor();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close)
+                .map(document -> mongoConverter.read(VisitLogDocument.class, document));
+    }
+
+    private List<Bson> entriesMatching(Criteria criteria) {
+        Document mappedCriteria = mapped(criteria);
+
+        Document visitFields = new Document();
+        VISIT_FIELDS.forEach(field -> visitFields.append(field, "$" + field));
+
+        // buckets are selected before their entries are unwound: conditions on the visit attributes hold for all
+        // entries of a bucket, conditions on the visit logs need at least one matching entry
+        List<Bson> bucketConditions = new ArrayList<>();
+        Document visitConditions = visitConditions(mappedCriteria);
+        if (!visitConditions.isEmpty()) {
+            bucketConditions.add(visitConditions);
+        }
+        Document entryConditions = entryConditions(mappedCriteria);
+        if (!entryConditions.isEmpty()) {
+            bucketConditions.add(Filters.elemMatch("entries", entryConditions));
+        }
+
+        List<Bson> pipeline = new ArrayList<>();
+        if (!bucketConditions.isEmpty()) {
+            pipeline.add(Aggregates.match(bucketConditions.size() == 1 ? bucketConditions.get(0) : Filters.and(bucketConditions)));
+        }
+        pipeline.add(Aggregates.unwind("$entries"));
+        pipeline.add(Aggregates.replaceRoot(new Document("$mergeObjects", List.of(visitFields, "$entries"))));
+        pipeline.add(Aggregates.match(mappedCriteria));
+        pipeline.add(Aggregates.project(Projections.exclude("searchText")));
+        return pipeline;
+    }
+
+    private Document visitConditions(Document mappedCriteria) {
+        List<Document> conditions = new ArrayList<>();
+        mappedCriteria.forEach((field, condition) -> {
+            if (VISIT_FIELDS.contains(field)) {
+                conditions.add(new Document(field, condition));
+            } else if (field.equals("$and") && condition instanceof List<?> andConditions) {
+                andConditions.stream()
+                        .filter(Document.class::isInstance)
+                        .map(Document.class::cast)
+                        .forEach(andCondition -> conditions.add(visitConditions(andCondition)));
+            }
+        });
+        conditions.removeIf(Document::isEmpty);
+
+        if (conditions.isEmpty()) {
+            return new Document();
+        }
+        return conditions.size() == 1 ? conditions.get(0) : new Document("$and", conditions);
+    }
+
+    private Document entryConditions(Document mappedCriteria) {
+        List<Document> conditions = new ArrayList<>();
+        mappedCriteria.forEach((field, condition) -> {
+            if (field.equals("$and") && condition instanceof List<?> andConditions) {
+                andConditions.stream()
+                        .filter(Document.class::isInstance)
+                        .map(Document.class::cast)
+                        .forEach(andCondition -> conditions.add(entryConditions(andCondition)));
+            } else if (isEntryCondition(field, condition)) {
+                conditions.add(new Document(field, condition));
+            }
+        });
+        conditions.removeIf(Document::isEmpty);
+
+        if (conditions.isEmpty()) {
+            return new Document();
+        }
+        return conditions.size() == 1 ? conditions.get(0) : new Document("$and", conditions);
+    }
+
+    private boolean isEntryCondition(String field, Object condition) {
+        if (!field.startsWith("$")) {
+            return !VISIT_FIELDS.contains(field);
+        }
+        // $or and $nor can be evaluated within $elemMatch if all of their branches only refer to visit log fields,
+        // other top-level operators like $expr are only evaluated after unwinding
+        if ((field.equals("$or") || field.equals("$nor")) && condition instanceof List<?> branches) {
+            return branches.stream().allMatch(branch -> branch instanceof Document document
+                    && document.entrySet().stream().allMatch(entry -> isEntryCondition(entry.getKey(), entry.getValue())));
+        }
+        if (field.equals("$and") && condition instanceof List<?> branches) {
+            return isEntryCondition("$or", branches);
+        }
+        return false;
+    }
+
+    private Document mapped(Criteria criteria) {
+        return queryMapper.getMappedObject(criteria.getCriteriaObject(), visitLogDocumentEntity);
+    }
+
+    private Document mappedSort(Sort sort) {
+        return queryMapper.getMappedSort(new Query().with(sort).getSortObject(), visitLogDocumentEntity);
+    }
+
+    /**
+     * Updates the copied visit, pet and owner attributes of the buckets of a visit.
+     *
+     * @return The number of updated buckets.
+     * @see VisitLogDocumentRepositoryCustom#updateVisitDetails
+     */
+    public long updateVisitDetails(Collection<?> visitIds, VisitLogVisitDetails details) {
+        return buckets().updateMany(Filters.in("visitId", visitIds), Updates.combine(
+                Updates.set("petId", details.petId()),
+                Updates.set("petName", details.petName()),
+                Updates.set("ownerId", details.ownerId()),
+                Updates.set("ownerName", details.ownerName()),
+                Updates.set("visitStart", mongoConverter.convertToMongoType(details.visitStart()))
+        )).getModifiedCount();
+    }
+
+    /**
+     * Updates the copied pet and owner attributes of the buckets of a pet.
+     *
+     * @return The number of updated buckets.
+     * @see VisitLogDocumentRepositoryCustom#updatePetDetails
+     */
+    public long updatePetDetails(UUID petId, @Nullable String petName, @Nullable UUID ownerId, @Nullable String ownerName) {
+        return buckets().updateMany(Filters.eq("petId", petId), Updates.combine(
+                Updates.set("petName", petName),
+                Updates.set("ownerId", ownerId),
+                Updates.set("ownerName", ownerName)
+        )).getModifiedCount();
+    }
+
+    /**
+     * Updates the copied owner name of the buckets of an owner.
+     *
+     * @return The number of updated buckets.
+     * @see VisitLogDocumentRepositoryCustom#updateOwnerName
+     */
+    public long updateOwnerName(UUID ownerId, @Nullable String ownerName) {
+        return buckets().updateMany(Filters.eq("ownerId", ownerId), Updates.set("ownerName", ownerName))
+                .getModifiedCount();
+    }
+
+    /**
+     * Returns the IDs of the visits whose buckets match the given criteria on the visit attributes.
+     *
+     * @param criteria The criteria on visit attributes, e.g. `petId`.
+     * @return The visit IDs.
+     */
+    public Set<UUID> findDistinctVisitIds(Criteria criteria) {
+        Set<UUID> visitIds = new HashSet<>();
+        buckets().distinct("visitId", mapped(criteria), UUID.class).forEach(visitIds::add);
+        return visitIds;
+    }
+
+    /**
+     * Counts the visit logs created in the given period per day and visit.
+     *
+     * @param from     The start of the period (inclusive).
+     * @param to       The end of the period (exclusive).
+     * @param timeZone The time zone defining the days.
+     * @return The number of visit logs per day and visit.
+     * @see VisitLogDocumentRepositoryCustom#countPerDayAndVisit
+     */
+    public List<VisitLogDailyCount> countPerDayAndVisit(Instant from, Instant to, ZoneId timeZone) {
+        Document day = new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                .append("date", "$createdAt")
+                .append("timezone", timeZone.getId()));
+
+        List<Bson> pipeline = entriesMatching(where("createdAt").gte(from).lt(to));
+        pipeline.add(Aggregates.group(new Document("day", day).append("visitId", "$visitId"), Accumulators.sum("count", 1L)));
+
+        List<VisitLogDailyCount> dailyCounts = new ArrayList<>();
+        buckets().aggregate(pipeline).forEach(result -> {
+            Document key = result.get("_id", Document.class);
+            dailyCounts.add(new VisitLogDailyCount(key.getString("day"), key.get("visitId", UUID.class),
+                    ((Number) result.get("count")).longValue()));
+        });
+        return dailyCounts;
+    }
+
+    /**
+     * Removes single visit logs from their buckets. Buckets without visit logs are removed.
+     *
+     * @param ids The IDs of the visit logs.
+     */
+    public void deleteAllById(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<Object> removedIds = storedIds(ids);
+        List<ObjectId> bucketIds = new ArrayList<>();
+        buckets().find(Filters.in("entryIds", removedIds))
+                .projection(Projections.include("_id"))
+                .forEach(bucket -> bucketIds.add(bucket.getObjectId("_id")));
+        if (bucketIds.isEmpty()) {
+            return;
+        }
+
+        buckets().updateMany(Filters.in("_id", bucketIds), withoutEntries(removedIds));
+        buckets().deleteMany(Filters.and(Filters.in("_id", bucketIds), Filters.eq("entryCount", 0)));
+    }
+
+    /**
+     * Removes single visit logs from their buckets, unless they have been saved again since they were read. Buckets
+     * without visit logs are removed.
+     *
+     * @param documents The visit logs to remove, as they have been read.
+     * @see VisitLogDocumentRepositoryCustom#deleteAllUnchanged
+     */
+    public void deleteAllUnchanged(Collection<VisitLogDocument> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        List<Object> removedIds = storedIds(documents.stream().map(VisitLogDocument::getId).toList());
+        List<ObjectId> bucketIds = new ArrayList<>();
+        buckets().find(Filters.in("entryIds", removedIds))
+                .projection(Projections.include("_id"))
+                .forEach(bucket -> bucketIds.add(bucket.getObjectId("_id")));
+        if (bucketIds.isEmpty()) {
+            return;
+        }
+
+        List<List<Object>> removedVersions = documents.stream()
+                .map(document -> Arrays.<Object>asList(storedId(document.getId()),
+                        document.getUpdatedAt() != null ? Date.from(document.getUpdatedAt()) : null))
+                .toList();
+        // an entry is only removed while its (_id, updatedAt) pair is still the one that has been read
+        Document remainingEntries = new Document("$filter", new Document("input", "$entries")
+                .append("cond", new Document("$not", List.of(new Document("$in", List.of(
+                        List.of("$$this._id", new Document("$ifNull", Arrays.asList("$$this.updatedAt", null))),
+                        new Document("$literal", removedVersions)
+                ))))));
+
+        buckets().updateMany(Filters.in("_id", bucketIds), List.of(
+                new Document("$set", new Document("entries", remainingEntries)),
+                new Document("$set", new Document("entryIds", "$entries._id")
+                        .append("entryCount", new Document("$size", "$entries"))
+                        .append("size", entriesSize()))
+        ));
+        buckets().deleteMany(Filters.and(Filters.in("_id", bucketIds), Filters.eq("entryCount", 0)));
+    }
+
+    /**
+     * Removes the buckets of the given visits.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The number of removed visit logs.
+     */
+    public long deleteByVisitIdIn(Collection<?> visitIds) {
+        if (visitIds.isEmpty()) {
+            return 0;
+        }
+
+        long removedCount = 0;
+        for (Document bucket : buckets().find(Filters.in("visitId", visitIds)).projection(Projections.include("entryCount"))) {
+            removedCount += bucket.getInteger("entryCount", 0);
+        }
+        buckets().deleteMany(Filters.in("visitId", visitIds));
+        return removedCount;
+    }
+
+    private List<VisitLogDocument> read(Document bucket) {
+        List<Document> entries = bucket.getList("entries", Document.class, List.of());
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>(entries.size());
+        for (Document entry : entries) {
+            Document visitLog = new Document(entry);
+            VISIT_FIELDS.stream()
+                    .filter(bucket::containsKey)
+                    .forEach(field -> visitLog.put(field, bucket.get(field)));
+            visitLogDocuments.add(mongoConverter.read(VisitLogDocument.class, visitLog));
+        }
+        return visitLogDocuments;
+    }
+
+    private List<Object> storedIds(Collection<String> ids) {
+        return ids.stream().map(this::storedId).toList();
+    }
+
+    private Object storedId(String id) {
+        // like for VisitLogDocument, IDs in the form of an ObjectId are stored as ObjectId
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    private long bsonSize(Document document) {
+        return new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer().remaining();
+    }
+
+    private long number(@Nullable Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    private Document entriesSize() {
+        return new Document("$sum", new Document("$map", new Document("input", "$entries")
+                .append("in", new Document("$bsonSize", "$$this"))));
+    }
+
+    private MongoCollection<Document> buckets() {
+        MongoDatabase database = mongoTemplate.getDb();
+        MongoCollection<Document> buckets = database.getCollection(settings.getCollection());
+        // the indexes are created on the first access to each database, as the online profile uses one per session
+        if (!indexedDatabases.contains(database.getName())) {
+            createIndexes(buckets);
+            indexedDatabases.add(database.getName());
+        }
+        return buckets;
+    }
+}
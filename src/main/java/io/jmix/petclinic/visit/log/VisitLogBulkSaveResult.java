@@ -0,0 +1,25 @@
+package io.jmix.petclinic.visit.log;
+
+import java.util.List;
+
+/**
+ * Result of {@link VisitLogService#saveVisitLogs}.
+ *
+ * @param saved    The visit logs that were written, in their saved state.
+ * @param failures The visit logs that could not be written, together with the reason.
+ */
+public record VisitLogBulkSaveResult(List<VisitLog> saved, List<Failure> failures) {
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * A visit log that could not be written as part of a bulk write.
+     *
+     * @param visitLog The visit log as passed to {@link VisitLogService#saveVisitLogs}.
+     * @param message  The error reported by MongoDB.
+     */
+    public record Failure(VisitLog visitLog, String message) {
+    }
+}
@@ -0,0 +1,165 @@
+package io.jmix.petclinic.visit.log;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache for {@link VisitLogDocument}s used by {@link VisitLogService}.
+ * <p>
+ * Two caches are maintained:
+ * <ul>
+ *     <li><b>visitLogs</b> - single documents by their ID, used by {@link VisitLogService#loadVisitLog}.</li>
+ *     <li><b>visitLogQueries</b> - the documents of a visit, optionally restricted to one page, used by
+ *     {@link VisitLogService#findByVisit}.</li>
+ * </ul>
+ * Both caches are limited by the number of documents they hold (`petclinic.visitlog.cache.maximum-size`) and
+ * expire entries after `petclinic.visitlog.cache.expire-after-write`. Documents are cached instead of
+ * {@link VisitLog} entities, so that every caller receives its own instance that it can modify.
+ * </p>
+ * <p>
+ * Misses that find nothing are not cached, so a visit log or visit that is written right afterwards is never hidden
+ * by a cached absence. Every invalidation increments a generation counter. A loaded result is only kept if no
+ * invalidation happened while it was loaded, so a load that raced with a write can not cache the state before the
+ * write.
+ * </p>
+ * <p>
+ * Hit, miss and eviction counts are published as the standard Micrometer cache metrics (`cache.gets`,
+ * `cache.evictions`, ...) with the tag `cache=visitLogs` / `cache=visitLogQueries`.
+ * </p>
+ */
+@Component("petclinic_VisitLogCache")
+public class VisitLogCache {
+
+    private final boolean enabled;
+    private final Cache<String, VisitLogDocument> visitLogs;
+    private final Cache<QueryKey, List<VisitLogDocument>> visitLogQueries;
+    private final AtomicLong generation = new AtomicLong();
+
+    public VisitLogCache(VisitLogProperties visitLogProperties, MeterRegistry meterRegistry) {
+        VisitLogProperties.Cache cacheProperties = visitLogProperties.getCache();
+        this.enabled = cacheProperties.isEnabled();
+
+        this.visitLogs = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(cacheProperties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        this.visitLogQueries = Caffeine.newBuilder()
+                .maximumWeight(cacheProperties.getMaximumSize())
+                .<QueryKey, List<VisitLogDocument>>weigher((key, documents) -> Math.max(1, documents.size()))
+                .expireAfterWrite(cacheProperties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, visitLogs, "visitLogs");
+        CaffeineCacheMetrics.monitor(meterRegistry, visitLogQueries, "visitLogQueries");
+    }
+
+    /**
+     * Returns the cached document with the given ID or loads it with the given loader.
+     *
+     * @param id     The ID of the visit log document.
+     * @param loader Loads the document from MongoDB on a cache miss.
+     * @return The document, or an empty optional if it does not exist.
+     */
+    public Optional<VisitLogDocument> getVisitLog(String id, Function<String, Optional<VisitLogDocument>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+
+        VisitLogDocument cached = visitLogs.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long loadedGeneration = generation.get();
+        Optional<VisitLogDocument> loaded = loader.apply(id);
+        loaded.ifPresent(document -> putIfCurrent(visitLogs, id, document, loadedGeneration));
+        return loaded;
+    }
+
+    /**
+     * Returns the cached documents of a visit for the given page or loads them with the given loader.
+     *
+     * @param visitId  The ID of the visit.
+     * @param pageable The requested page, {@link Pageable#unpaged()} for all documents of the visit.
+     * @param loader   Loads the documents from MongoDB on a cache miss.
+     * @return The documents of the visit.
+     */
+    public List<VisitLogDocument> getVisitLogs(UUID visitId, Pageable pageable, Supplier<List<VisitLogDocument>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        QueryKey key = QueryKey.of(visitId, pageable);
+        List<VisitLogDocument> cached = visitLogQueries.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedGeneration = generation.get();
+        List<VisitLogDocument> loaded = List.copyOf(loader.get());
+        if (!loaded.isEmpty()) {
+            putIfCurrent(visitLogQueries, key, loaded, loadedGeneration);
+        }
+        return loaded;
+    }
+
+    private <K, V> void putIfCurrent(Cache<K, V> cache, K key, V value, long loadedGeneration) {
+        cache.put(key, value);
+        // an invalidation increments the generation before it removes entries, so a result put concurrently is
+        // either removed by the invalidation or here
+        if (generation.get() != loadedGeneration) {
+            cache.asMap().remove(key, value);
+        }
+    }
+
+    /**
+     * Removes all cached entries that are affected by a change of the given visit logs.
+     *
+     * @param visitLogIds The IDs of the changed visit logs; {@code null} IDs of new visit logs are ignored.
+     * @param visitIds    The IDs of the visits the changed visit logs belong to.
+     */
+    public void invalidate(Collection<String> visitLogIds, Collection<UUID> visitIds) {
+        generation.incrementAndGet();
+        visitLogIds.stream()
+                .filter(Objects::nonNull)
+                .forEach(visitLogs::invalidate);
+        visitLogQueries.asMap().keySet()
+                .removeIf(key -> visitIds.contains(key.visitId()));
+    }
+
+    /**
+     * Removes all cached entries of the given visits, including single visit logs loaded by their ID.
+     *
+     * @param visitIds The IDs of the visits whose visit logs have been removed.
+     */
+    public void invalidateVisits(Collection<UUID> visitIds) {
+        generation.incrementAndGet();
+        visitLogs.asMap().values()
+                .removeIf(document -> visitIds.contains(document.getVisitId()));
+        visitLogQueries.asMap().keySet()
+                .removeIf(key -> visitIds.contains(key.visitId()));
+    }
+
+    private record QueryKey(UUID visitId, long offset, int size, Sort sort) {
+
+        static QueryKey of(UUID visitId, Pageable pageable) {
+            return pageable.isPaged()
+                    ? new QueryKey(visitId, pageable.getOffset(), pageable.getPageSize(), pageable.getSort())
+                    : new QueryKey(visitId, -1, -1, pageable.getSort());
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.petclinic.MongoDatabaseSelection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Removes the {@link VisitLogDocument}s of removed visits in the background.
+ * <p>
+ * Visit logs are not part of the JPA model, so removing a visit does not remove its visit logs. Instead, the IDs
+ * of removed visits are passed to {@link #enqueue} and a dedicated thread removes their visit logs with a single
+ * `deleteMany({visitId: {$in: ...}})` command per `petclinic.visitlog.cascade-delete.batch-size` visits, together
+ * with their archived visit logs and their attachments and description files in GridFS. Like this, removing visits
+ * does not wait for MongoDB, and removing many visits at once causes only a few commands.
+ * </p>
+ * <p>
+ * The database of a removed visit is captured when it is queued, and its visit logs are removed with that database
+ * selected by {@link MongoDatabaseSelection}, as the worker thread has no HTTP session of the online profile.
+ * When such a database is dropped, its queued visits are discarded with {@link #discardDatabase}.
+ * </p>
+ * <p>
+ * Visits that are still queued on shutdown are processed before the application stops. If the application is
+ * terminated abruptly, the visit logs of these visits remain in MongoDB.
+ * </p>
+ * <p>
+ * Metrics: `petclinic.visitlog.cascade-delete.queue.depth` (visits waiting) and
+ * `petclinic.visitlog.cascade-delete.documents` (removed visit logs).
+ * </p>
+ */
+@Component("petclinic_VisitLogCascadeDeletion")
+public class VisitLogCascadeDeletion {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogCascadeDeletion.class);
+
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogWriteBehindQueue visitLogWriteBehindQueue;
+    private final VisitLogJournal visitLogJournal;
+    private final VisitLogArchive visitLogArchive;
+    private final VisitLogContentStorage visitLogContentStorage;
+    private final MongoDatabaseFactory mongoDatabaseFactory;
+    private final VisitLogProperties.CascadeDelete settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition deleted = lock.newCondition();
+    private final Deque<RemovedVisit> removedVisits = new ArrayDeque<>();
+    private List<RemovedVisit> inProgress = List.of();
+    private final Counter removedDocumentsCounter;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    public VisitLogCascadeDeletion(VisitLogDocumentRepository visitLogDocumentRepository,
+                                   VisitLogBucketStore visitLogBucketStore,
+                                   VisitLogVisitIdMigration visitLogVisitIdMigration, VisitLogCache visitLogCache,
+                                   VisitLogWriteBehindQueue visitLogWriteBehindQueue, VisitLogJournal visitLogJournal,
+                                   VisitLogArchive visitLogArchive,
+                                   VisitLogContentStorage visitLogContentStorage,
+                                   MongoDatabaseFactory mongoDatabaseFactory,
+                                   VisitLogProperties visitLogProperties, MeterRegistry meterRegistry) {
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+        this.visitLogCache = visitLogCache;
+        this.visitLogWriteBehindQueue = visitLogWriteBehindQueue;
+        this.visitLogJournal = visitLogJournal;
+        this.visitLogArchive = visitLogArchive;
+        this.visitLogContentStorage = visitLogContentStorage;
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+        this.settings = visitLogProperties.getCascadeDelete();
+
+        Gauge.builder("petclinic.visitlog.cascade-delete.queue.depth", this, VisitLogCascadeDeletion::size)
+                .description("Removed visits whose visit logs are waiting to be removed")
+                .register(meterRegistry);
+        this.removedDocumentsCounter = Counter.builder("petclinic.visitlog.cascade-delete.documents")
+                .description("Visit logs removed together with their visit")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        worker = new Thread(this::deleteLoop, "visit-log-cascade-delete");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues the removal of all visit logs of the given visits.
+     *
+     * @param visitIds The IDs of the removed visits.
+     */
+    public void enqueue(Collection<UUID> visitIds) {
+        String databaseName = mongoDatabaseFactory.getMongoDatabase().getName();
+        add(visitIds, databaseName);
+    }
+
+    /**
+     * Drops the queued visits of the given database, e.g. because the database of an HTTP session of the online
+     * profile is dropped. If visit logs of that database are being removed, the method waits for the removal to
+     * finish, so that it can not recreate the database after it has been dropped.
+     *
+     * @param databaseName The name of the MongoDB database.
+     */
+    public void discardDatabase(String databaseName) {
+        lock.lock();
+        try {
+            while (inProgress.stream().anyMatch(removedVisit -> databaseName.equals(removedVisit.databaseName()))) {
+                deleted.awaitUninterruptibly();
+            }
+            removedVisits.removeIf(removedVisit -> databaseName.equals(removedVisit.databaseName()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of removed visits whose visit logs are waiting to be removed.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return removedVisits.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(Collection<UUID> visitIds, String databaseName) {
+        lock.lock();
+        try {
+            visitIds.forEach(visitId -> removedVisits.add(new RemovedVisit(visitId, databaseName)));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record RemovedVisit(UUID visitId, String databaseName) {
+    }
+
+    private void deleteLoop() {
+        while (running) {
+            try {
+                List<RemovedVisit> batch = takeBatch();
+                try {
+                    for (Map.Entry<String, List<UUID>> visitIdsOfDatabase : byDatabase(batch).entrySet()) {
+                        deleteOrRetry(visitIdsOfDatabase.getKey(), visitIdsOfDatabase.getValue());
+                    }
+                } finally {
+                    complete();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while removing visit logs of removed visits", e);
+            }
+        }
+    }
+
+    private List<RemovedVisit> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = settings.getFlushInterval().toNanos();
+            while (removedVisits.isEmpty() && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            if (removedVisits.isEmpty()) {
+                return List.of();
+            }
+
+            remainingNanos = settings.getFlushInterval().toNanos();
+            while (removedVisits.size() < settings.getBatchSize() && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+
+            List<RemovedVisit> batch = new ArrayList<>();
+            while (!removedVisits.isEmpty() && batch.size() < settings.getBatchSize()) {
+                batch.add(removedVisits.poll());
+            }
+            inProgress = batch;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete() {
+        lock.lock();
+        try {
+            inProgress = List.of();
+            deleted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, List<UUID>> byDatabase(List<RemovedVisit> batch) {
+        Map<String, List<UUID>> visitIdsByDatabase = new LinkedHashMap<>();
+        batch.forEach(removedVisit -> visitIdsByDatabase
+                .computeIfAbsent(removedVisit.databaseName(), databaseName -> new ArrayList<>())
+                .add(removedVisit.visitId()));
+        return visitIdsByDatabase;
+    }
+
+    private void deleteOrRetry(String databaseName, List<UUID> visitIds) throws InterruptedException {
+        try {
+            delete(databaseName, visitIds);
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove the visit logs of {} removed visits, retrying", visitIds.size(), e);
+            add(visitIds, databaseName);
+            if (running) {
+                TimeUnit.NANOSECONDS.sleep(settings.getFlushInterval().toNanos());
+            }
+        }
+    }
+
+    private void delete(String databaseName, List<UUID> visitIds) {
+        String previous = MongoDatabaseSelection.enter(databaseName);
+        try {
+            visitLogWriteBehindQueue.discardVisits(visitIds);
+            visitLogJournal.discardVisits(visitIds);
+            long removedCount = deleteVisitLogs(visitIds);
+            visitLogArchive.removeVisits(visitIds);
+            visitLogContentStorage.removeFilesOfVisits(visitIds);
+            visitLogCache.invalidateVisits(visitIds);
+
+            removedDocumentsCounter.increment(removedCount);
+            log.debug("Removed {} visit logs of {} removed visits", removedCount, visitIds.size());
+        } finally {
+            MongoDatabaseSelection.restore(previous);
+        }
+    }
+
+    /**
+     * Removes the visit logs of all queued visits before the application shuts down. Unlike the worker thread,
+     * a failing batch is not retried; its visit logs remain in MongoDB.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(30));
+
+        List<RemovedVisit> remaining;
+        lock.lock();
+        try {
+            remaining = new ArrayList<>(removedVisits);
+            removedVisits.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Map.Entry<String, List<UUID>> visitIdsOfDatabase : byDatabase(remaining).entrySet()) {
+            List<UUID> visitIds = visitIdsOfDatabase.getValue();
+            for (int batchStart = 0; batchStart < visitIds.size(); batchStart += settings.getBatchSize()) {
+                List<UUID> batch = visitIds.subList(batchStart, Math.min(batchStart + settings.getBatchSize(), visitIds.size()));
+                try {
+                    delete(visitIdsOfDatabase.getKey(), batch);
+                } catch (RuntimeException e) {
+                    log.error("Failed to remove the visit logs of {} removed visits on shutdown", batch.size(), e);
+                }
+            }
+        }
+    }
+
+    private long deleteVisitLogs(List<UUID> visitIds) {
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(visitIds);
+        return visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.deleteByVisitIdIn(visitIdValues)
+                : visitLogDocumentRepository.deleteByVisitIdIn(visitIdValues);
+    }
+}
@@ -0,0 +1,164 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.MongoConnectionPoolClearedException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for the writes of visit logs to MongoDB.
+ * <p>
+ * While MongoDB is down, every write waits for the server selection or connection pool timeout
+ * (`petclinic.mongodb.timeouts.server-selection`, `petclinic.mongodb.pool.max-wait-time`) before it fails, so
+ * requests pile up on the connection pool. After `petclinic.visitlog.circuit-breaker.failure-threshold` consecutive
+ * connection failures, the circuit breaker therefore opens and rejects writes immediately with a
+ * {@link DataAccessResourceFailureException}, which {@link VisitLogService#saveVisitLog} handles like any other
+ * connection failure by appending the visit log to {@link VisitLogJournal}. After
+ * `petclinic.visitlog.circuit-breaker.open-duration`, a single write is let through: if it succeeds, the circuit
+ * breaker closes again, otherwise it stays open for another period.
+ * </p>
+ * <p>
+ * Only connection failures and timeouts (see {@link #isUnavailability}) count as failures. Any other error means
+ * that MongoDB answered, so it closes the circuit breaker like a successful write.
+ * </p>
+ * <p>
+ * Metrics: `petclinic.visitlog.circuit-breaker.state` (0 = closed, 1 = open, 2 = half-open) and
+ * `petclinic.visitlog.circuit-breaker.rejected` (writes rejected while open).
+ * </p>
+ */
+@Component("petclinic_VisitLogCircuitBreaker")
+public class VisitLogCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final VisitLogProperties.CircuitBreaker settings;
+    private final Counter rejectedCounter;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtNanos;
+    private boolean trialInProgress = false;
+
+    public VisitLogCircuitBreaker(VisitLogProperties visitLogProperties, MeterRegistry meterRegistry) {
+        this.settings = visitLogProperties.getCircuitBreaker();
+
+        Gauge.builder("petclinic.visitlog.circuit-breaker.state", this, circuitBreaker -> circuitBreaker.getState().ordinal())
+                .description("State of the circuit breaker for visit log writes: 0 = closed, 1 = open, 2 = half-open")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("petclinic.visitlog.circuit-breaker.rejected")
+                .description("Visit log writes rejected by the open circuit breaker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Executes a write unless the circuit breaker is open, and records its outcome.
+     *
+     * @param write The write to MongoDB.
+     * @param <T>   The result type of the write.
+     * @return The result of the write.
+     * @throws DataAccessResourceFailureException If the circuit breaker is open.
+     */
+    public <T> T execute(Supplier<T> write) {
+        if (!tryAcquire()) {
+            rejectedCounter.increment();
+            throw new DataAccessResourceFailureException(
+                    "MongoDB is unavailable, visit log writes are rejected by the open circuit breaker");
+        }
+
+        try {
+            T result = write.get();
+            recordSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (isUnavailability(e)) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The current state. An open circuit breaker whose `open-duration` has passed is reported as open until
+     * the next write is let through.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Checks whether an exception means that MongoDB can not be reached, as opposed to an error reported by MongoDB.
+     *
+     * @param e The exception thrown by a MongoDB operation.
+     * @return {@code true} for connection failures and timeouts, including the rejection by an open circuit breaker.
+     */
+    public static boolean isUnavailability(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException
+                    || cause instanceof MongoSocketException
+                    || cause instanceof MongoTimeoutException
+                    || cause instanceof MongoConnectionPoolClearedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (!settings.isEnabled()) {
+            return true;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < settings.getOpenDuration().toNanos()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInProgress = true;
+                return true;
+            default:
+                if (trialInProgress) {
+                    return false;
+                }
+                trialInProgress = true;
+                return true;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("MongoDB is available again, closing the circuit breaker for visit log writes");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInProgress = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= settings.getFailureThreshold())) {
+            if (state == State.CLOSED) {
+                log.warn("MongoDB is unavailable after {} failed visit log writes, opening the circuit breaker for {}",
+                        consecutiveFailures, settings.getOpenDuration());
+            }
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores attachments and large descriptions of visit logs in GridFS, outside of the {@link VisitLogDocument}s.
+ * <p>
+ * Descriptions larger than `petclinic.visitlog.content.description-threshold` are moved into a GridFS file by
+ * {@link #storeDescriptions} before the visit log is written. The document keeps only the first
+ * `petclinic.visitlog.content.preview-length` characters in `description` together with the file ID, and the full
+ * description is read with {@link #readDescription} only when a single visit log is opened or exported, up to
+ * `petclinic.visitlog.content.max-loaded-description-size`. For the full-text search and description conditions,
+ * the first `petclinic.visitlog.content.search-text-length` characters are kept in `searchText`. Both copies together
+ * stay well below the threshold, so the documents in the collection and in the cache of MongoDB stay small; words
+ * beyond `searchText` are not found by the search. Attachments are stored as GridFS files only; they are listed
+ * through the `files` collection of the bucket and streamed from it on demand.
+ * </p>
+ * <p>
+ * Every file carries the IDs of its visit log and visit in its metadata (`metadata.visitLogId`, `metadata.visitId`),
+ * which are indexed, so the files of removed visit logs and visits can be removed without scanning the bucket.
+ * The indexes are created on the first access to the bucket of each database.
+ * </p>
+ */
+@Component("petclinic_VisitLogContentStorage")
+public class VisitLogContentStorage {
+
+    private static final String KIND_DESCRIPTION = "description";
+    private static final String KIND_ATTACHMENT = "attachment";
+    private static final String DESCRIPTION_CONTENT_TYPE = "text/plain;charset=UTF-8";
+
+    private final MongoDatabaseFactory mongoDatabaseFactory;
+    private final VisitLogProperties.Content settings;
+    private final Set<String> indexedDatabases = ConcurrentHashMap.newKeySet();
+
+    public VisitLogContentStorage(MongoDatabaseFactory mongoDatabaseFactory, VisitLogProperties visitLogProperties) {
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+        this.settings = visitLogProperties.getContent();
+    }
+
+    /**
+     * Moves descriptions above the threshold into GridFS before the given documents are written. Documents that
+     * already reference a description file keep it, as their `description` holds only the preview; their
+     * `searchText` is read from the file if it is missing. Documents without an ID that are moved receive a new
+     * ObjectId, which the file is associated with.
+     *
+     * @param visitLogDocuments The documents to write.
+     * @return The documents that are written with a new full description. After they are written, the files of
+     * their previous descriptions have to be removed with {@link #removeReplacedDescriptions}.
+     */
+    public List<VisitLogDocument> storeDescriptions(Collection<VisitLogDocument> visitLogDocuments) {
+        List<VisitLogDocument> withNewDescription = new ArrayList<>();
+        for (VisitLogDocument visitLogDocument : visitLogDocuments) {
+            if (visitLogDocument.getDescriptionFileId() != null) {
+                if (visitLogDocument.getSearchText() == null) {
+                    visitLogDocument.setSearchText(readSearchText(visitLogDocument.getDescriptionFileId()));
+                }
+                continue;
+            }
+            withNewDescription.add(visitLogDocument);
+
+            String description = visitLogDocument.getDescription();
+            visitLogDocument.setSearchText(null);
+            if (description == null) {
+                continue;
+            }
+            byte[] content = description.getBytes(StandardCharsets.UTF_8);
+            if (content.length <= settings.getDescriptionThreshold().toBytes()) {
+                continue;
+            }
+
+            if (visitLogDocument.getId() == null) {
+                visitLogDocument.setId(new ObjectId().toHexString());
+            }
+            ObjectId fileId = bucket().uploadFromStream(
+                    visitLogDocument.getId() + "-description.txt",
+                    new ByteArrayInputStream(content),
+                    uploadOptions(KIND_DESCRIPTION, visitLogDocument.getId(), visitLogDocument.getVisitId(),
+                            DESCRIPTION_CONTENT_TYPE)
+            );
+            visitLogDocument.setDescriptionFileId(fileId.toHexString());
+            visitLogDocument.setDescription(truncate(description, settings.getPreviewLength()));
+            visitLogDocument.setSearchText(truncate(description, settings.getSearchTextLength()));
+        }
+        return withNewDescription;
+    }
+
+    /**
+     * Removes the description files the given documents no longer reference.
+     *
+     * @param visitLogDocuments Documents returned by {@link #storeDescriptions} that have been written.
+     */
+    public void removeReplacedDescriptions(Collection<VisitLogDocument> visitLogDocuments) {
+        Map<String, String> currentFileIds = new HashMap<>();
+        visitLogDocuments.stream()
+                .filter(document -> document.getId() != null)
+                .forEach(document -> currentFileIds.put(document.getId(), document.getDescriptionFileId()));
+        if (currentFileIds.isEmpty()) {
+            return;
+        }
+
+        List<ObjectId> replacedFileIds = new ArrayList<>();
+        filesCollection().find(Filters.and(
+                        Filters.eq("metadata.kind", KIND_DESCRIPTION),
+                        Filters.in("metadata.visitLogId", currentFileIds.keySet())
+                ))
+                .projection(Projections.include("_id", "metadata.visitLogId"))
+                .forEach(file -> {
+                    ObjectId fileId = file.getObjectId("_id");
+                    String visitLogId = file.get("metadata", Document.class).getString("visitLogId");
+                    if (!Objects.equals(fileId.toHexString(), currentFileIds.get(visitLogId))) {
+                        replacedFileIds.add(fileId);
+                    }
+                });
+        deleteFiles(replacedFileIds);
+    }
+
+    /**
+     * Removes the description files stored for documents that have not been written after all, e.g. because the
+     * write failed or a more recent save of the visit log is stored.
+     *
+     * @param visitLogDocuments Documents returned by {@link #storeDescriptions} that have not been written.
+     */
+    public void removeUnwrittenDescriptions(Collection<VisitLogDocument> visitLogDocuments) {
+        deleteFiles(visitLogDocuments.stream()
+                .map(VisitLogDocument::getDescriptionFileId)
+                .filter(Objects::nonNull)
+                .map(ObjectId::new)
+                .toList());
+    }
+
+    /**
+     * Restores `searchText` of visit logs that have been read without it, e.g. archived visit logs, so that
+     * conditions on their description can be evaluated in memory by {@link VisitLogCriteriaMatcher}. Only visit logs
+     * whose description is stored in GridFS are affected.
+     *
+     * @param visitLogDocuments The visit logs.
+     */
+    public void loadSearchTexts(Collection<VisitLogDocument> visitLogDocuments) {
+        for (VisitLogDocument visitLogDocument : visitLogDocuments) {
+            if (visitLogDocument.getDescriptionFileId() != null && visitLogDocument.getSearchText() == null) {
+                visitLogDocument.setSearchText(readSearchText(visitLogDocument.getDescriptionFileId()));
+            }
+        }
+    }
+
+    /**
+     * Reads a description stored in GridFS.
+     *
+     * @param descriptionFileId The ID of the description file, see {@link VisitLogDocument#getDescriptionFileId()}.
+     * @return The full description.
+     * @throws VisitLogDescriptionTooLargeException If the description exceeds
+     *                                              `petclinic.visitlog.content.max-loaded-description-size`.
+     */
+    public String readDescription(String descriptionFileId) {
+        try (GridFSDownloadStream content = bucket().openDownloadStream(new ObjectId(descriptionFileId))) {
+            long length = content.getGridFSFile().getLength();
+            long maxLength = settings.getMaxLoadedDescriptionSize().toBytes();
+            if (length > maxLength) {
+                throw new VisitLogDescriptionTooLargeException(descriptionFileId, length, maxLength);
+            }
+            return new String(content.readNBytes((int) length), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Description " + descriptionFileId + " could not be read", e);
+        }
+    }
+
+    private String readSearchText(String descriptionFileId) {
+        char[] searchText = new char[settings.getSearchTextLength()];
+        int length = 0;
+        try (Reader content = new InputStreamReader(bucket().openDownloadStream(new ObjectId(descriptionFileId)),
+                StandardCharsets.UTF_8)) {
+            int read;
+            while (length < searchText.length && (read = content.read(searchText, length, searchText.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Description " + descriptionFileId + " could not be read", e);
+        }
+        // the last character may be the first half of a surrogate pair cut off by the limit
+        if (length == searchText.length && Character.isHighSurrogate(searchText[length - 1])) {
+            length--;
+        }
+        return new String(searchText, 0, length);
+    }
+
+    /**
+     * Stores a file as attachment of a visit log. The content is read and written in GridFS chunks, so the file is
+     * never held in memory.
+     *
+     * @param visitLogId  The ID of the visit log.
+     * @param visitId     The ID of the visit of the visit log.
+     * @param fileName    The name of the file.
+     * @param contentType The MIME type of the file, if known.
+     * @param content     The content of the file. It is not closed.
+     * @return The stored attachment.
+     */
+    public VisitLogAttachment addAttachment(String visitLogId, UUID visitId, String fileName,
+                                            @Nullable String contentType, InputStream content) {
+        ObjectId fileId = bucket().uploadFromStream(fileName, content,
+                uploadOptions(KIND_ATTACHMENT, visitLogId, visitId, contentType));
+
+        return toAttachment(Objects.requireNonNull(bucket().find(Filters.eq("_id", fileId)).first()));
+    }
+
+    /**
+     * Lists the attachments of a visit log in upload order.
+     *
+     * @param visitLogId The ID of the visit log.
+     * @return The attachments.
+     */
+    public List<VisitLogAttachment> getAttachments(String visitLogId) {
+        List<VisitLogAttachment> attachments = new ArrayList<>();
+        bucket().find(attachmentsOf(visitLogId))
+                .sort(Sorts.ascending("uploadDate"))
+                .forEach(file -> attachments.add(toAttachment(file)));
+        return attachments;
+    }
+
+    /**
+     * Opens the content of an attachment of a visit log. The content is read chunk by chunk while the stream is
+     * consumed; the stream has to be closed.
+     *
+     * @param visitLogId The ID of the visit log.
+     * @param fileId     The ID of the attachment.
+     * @return The content of the attachment.
+     * @throws IllegalArgumentException If the visit log has no such attachment.
+     */
+    public InputStream openAttachment(String visitLogId, String fileId) {
+        GridFSFile file = findAttachment(visitLogId, fileId);
+        return bucket().openDownloadStream(file.getObjectId());
+    }
+
+    /**
+     * Removes an attachment of a visit log.
+     *
+     * @param visitLogId The ID of the visit log.
+     * @param fileId     The ID of the attachment.
+     * @throws IllegalArgumentException If the visit log has no such attachment.
+     */
+    public void removeAttachment(String visitLogId, String fileId) {
+        bucket().delete(findAttachment(visitLogId, fileId).getObjectId());
+    }
+
+    /**
+     * Removes all description files and attachments of the given visit logs.
+     *
+     * @param visitLogIds The IDs of the removed visit logs.
+     */
+    public void removeFiles(Collection<String> visitLogIds) {
+        if (!visitLogIds.isEmpty()) {
+            deleteFiles(Filters.in("metadata.visitLogId", visitLogIds));
+        }
+    }
+
+    /**
+     * Removes all description files and attachments of the visit logs of the given visits.
+     *
+     * @param visitIds The IDs of the removed visits.
+     */
+    public void removeFilesOfVisits(Collection<UUID> visitIds) {
+        if (!visitIds.isEmpty()) {
+            deleteFiles(Filters.in("metadata.visitId", visitIds.stream().map(UUID::toString).toList()));
+        }
+    }
+
+    private GridFSFile findAttachment(String visitLogId, String fileId) {
+        GridFSFile file = ObjectId.isValid(fileId)
+                ? bucket().find(Filters.and(attachmentsOf(visitLogId), Filters.eq("_id", new ObjectId(fileId)))).first()
+                : null;
+        if (file == null) {
+            throw new IllegalArgumentException("Visit log " + visitLogId + " has no attachment " + fileId);
+        }
+        return file;
+    }
+
+    private Bson attachmentsOf(String visitLogId) {
+        return Filters.and(
+                Filters.eq("metadata.kind", KIND_ATTACHMENT),
+                Filters.eq("metadata.visitLogId", visitLogId)
+        );
+    }
+
+    private void deleteFiles(Bson filter) {
+        List<ObjectId> fileIds = new ArrayList<>();
+        filesCollection().find(filter)
+                .projection(Projections.include("_id"))
+                .forEach(file -> fileIds.add(file.getObjectId("_id")));
+        deleteFiles(fileIds);
+    }
+
+    private void deleteFiles(List<ObjectId> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        // files are removed first, so that a partially removed file is never found
+        filesCollection().deleteMany(Filters.in("_id", fileIds));
+        chunksCollection().deleteMany(Filters.in("files_id", fileIds));
+    }
+
+    private GridFSUploadOptions uploadOptions(String kind, String visitLogId, UUID visitId, @Nullable String contentType) {
+        Document metadata = new Document("kind", kind)
+                .append("visitLogId", visitLogId)
+                .append("visitId", visitId.toString());
+        if (contentType != null) {
+            metadata.append("contentType", contentType);
+        }
+        return new GridFSUploadOptions().metadata(metadata);
+    }
+
+    private VisitLogAttachment toAttachment(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        return new VisitLogAttachment(
+                file.getObjectId().toHexString(),
+                file.getFilename(),
+                metadata != null ? metadata.getString("contentType") : null,
+                file.getLength(),
+                file.getUploadDate().toInstant()
+        );
+    }
+
+    private String truncate(String description, int length) {
+        int end = length;
+        if (description.length() <= end) {
+            return description;
+        }
+        if (Character.isHighSurrogate(description.charAt(end - 1))) {
+            end--;
+        }
+        return description.substring(0, end);
+    }
+
+    // The database is resolved for every call, as the database factory may route to a different database per
+    // HTTP session (see RoutingMongoDatabaseFactory in the online profile).
+    private GridFSBucket bucket() {
+        return GridFSBuckets.create(database(), settings.getBucket());
+    }
+
+    private MongoCollection<Document> filesCollection() {
+        return database().getCollection(settings.getBucket() + ".files");
+    }
+
+    private MongoCollection<Document> chunksCollection() {
+        return database().getCollection(settings.getBucket() + ".chunks");
+    }
+
+    private MongoDatabase database() {
+        MongoDatabase database = mongoDatabaseFactory.getMongoDatabase();
+        if (!indexedDatabases.contains(database.getName())) {
+            MongoCollection<Document> files = database.getCollection(settings.getBucket() + ".files");
+            files.createIndex(Indexes.ascending("metadata.visitLogId"));
+            files.createIndex(Indexes.ascending("metadata.visitId"));
+            indexedDatabases.add(database.getName());
+        }
+        return database;
+    }
+}
@@ -0,0 +1,148 @@
+package io.jmix.petclinic.visit.log;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates {@link Criteria} on {@link VisitLogDocument}s in memory, for visit logs that are not queried from
+ * MongoDB (e.g. archived visit logs).
+ * <p>
+ * Only the operators produced by {@link VisitLogCriteriaTranslator} and the visit criteria of
+ * {@link VisitLogService} are supported: `$and`, `$or`, `$nor`, equality, `$ne`, `$in`, `$nin`, `$gt`, `$gte`,
+ * `$lt`, `$lte`, `$not` and regular expressions. They are evaluated as MongoDB does, e.g. a missing value equals
+ * {@code null} and is neither greater nor less than any value. Criteria with other operators are rejected with a
+ * {@link VisitLogQueryException}.
+ * </p>
+ * <p>
+ * Conditions on `searchText` can only match documents that carry it, see
+ * {@link VisitLogContentStorage#loadSearchTexts}.
+ * </p>
+ */
+public final class VisitLogCriteriaMatcher {
+
+    private VisitLogCriteriaMatcher() {
+    }
+
+    /**
+     * Returns the documents matching the given criteria, keeping their order.
+     *
+     * @param documents The documents to filter.
+     * @param criteria  The criteria on {@link VisitLogDocument} fields, or {@code null} to keep all documents.
+     * @return The matching documents.
+     * @throws VisitLogQueryException If the criteria contain an operator that can not be evaluated in memory.
+     */
+    public static List<VisitLogDocument> filter(List<VisitLogDocument> documents, @Nullable Criteria criteria) {
+        if (criteria == null) {
+            return documents;
+        }
+        Document criteriaObject = criteria.getCriteriaObject();
+        return documents.stream()
+                .filter(document -> matches(document, criteriaObject))
+                .toList();
+    }
+
+    /**
+     * Checks whether a document matches the given criteria.
+     *
+     * @param document The document.
+     * @param criteria The criteria on {@link VisitLogDocument} fields.
+     * @return Whether the document matches.
+     * @throws VisitLogQueryException If the criteria contain an operator that can not be evaluated in memory.
+     */
+    public static boolean matches(VisitLogDocument document, Criteria criteria) {
+        return matches(document, criteria.getCriteriaObject());
+    }
+
+    private static boolean matches(VisitLogDocument document, Document criteria) {
+        for (Map.Entry<String, Object> entry : criteria.entrySet()) {
+            boolean matches = switch (entry.getKey()) {
+                case "$and" -> nested(entry.getValue()).stream().allMatch(nested -> matches(document, nested));
+                case "$or" -> nested(entry.getValue()).stream().anyMatch(nested -> matches(document, nested));
+                case "$nor" -> nested(entry.getValue()).stream().noneMatch(nested -> matches(document, nested));
+                default -> matchesValue(value(document, entry.getKey()), entry.getValue());
+            };
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesValue(@Nullable Object value, @Nullable Object condition) {
+        if (condition instanceof Pattern pattern) {
+            return value instanceof String text && pattern.matcher(text).find();
+        }
+        if (condition instanceof Document operators && isOperatorDocument(operators)) {
+            return operators.entrySet().stream()
+                    .allMatch(operator -> matchesOperator(value, operator.getKey(), operator.getValue()));
+        }
+        return Objects.equals(value, condition);
+    }
+
+    private static boolean matchesOperator(@Nullable Object value, String operator, @Nullable Object operand) {
+        return switch (operator) {
+            case "$eq" -> Objects.equals(value, operand);
+            case "$ne" -> !Objects.equals(value, operand);
+            case "$in" -> values(operand).stream().anyMatch(candidate -> matchesValue(value, candidate));
+            case "$nin" -> values(operand).stream().noneMatch(candidate -> matchesValue(value, candidate));
+            case "$gt" -> compare(value, operand, comparison -> comparison > 0);
+            case "$gte" -> compare(value, operand, comparison -> comparison >= 0);
+            case "$lt" -> compare(value, operand, comparison -> comparison < 0);
+            case "$lte" -> compare(value, operand, comparison -> comparison <= 0);
+            case "$not" -> !matchesValue(value, operand);
+            default -> throw new VisitLogQueryException("Visit logs can not be filtered in memory with " + operator);
+        };
+    }
+
+    /**
+     * Compares two values of the same type. Values of different types, including missing values, are not
+     * comparable and fail every comparison, as in MongoDB.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean compare(@Nullable Object value, @Nullable Object operand, IntPredicate comparison) {
+        if (value == null || operand == null || value.getClass() != operand.getClass()
+                || !(value instanceof Comparable comparable)) {
+            return false;
+        }
+        return comparison.test(comparable.compareTo(operand));
+    }
+
+    @Nullable
+    private static Object value(VisitLogDocument document, String field) {
+        return switch (field) {
+            case "id", "_id" -> document.getId();
+            case "visitId" -> document.getVisitId();
+            case "title" -> document.getTitle();
+            case "description" -> document.getDescription();
+            case "descriptionFileId" -> document.getDescriptionFileId();
+            case "searchText" -> document.getSearchText();
+            case "createdAt" -> document.getCreatedAt();
+            case "petName" -> document.getPetName();
+            case "ownerName" -> document.getOwnerName();
+            case "visitStart" -> document.getVisitStart();
+            default -> throw new VisitLogQueryException("Visit logs can not be filtered in memory by " + field);
+        };
+    }
+
+    private static boolean isOperatorDocument(Document document) {
+        return !document.isEmpty() && document.keySet().stream().allMatch(key -> key.startsWith("$"));
+    }
+
+    private static List<Document> nested(Object value) {
+        return values(value).stream()
+                .map(Document.class::cast)
+                .toList();
+    }
+
+    private static Collection<?> values(@Nullable Object operand) {
+        return operand instanceof Collection<?> values ? values : List.of();
+    }
+}
@@ -0,0 +1,260 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Translates Jmix {@link Condition}s on {@link VisitLog} properties into Spring Data MongoDB {@link Criteria} on
+ * the fields of {@link VisitLogDocument}, so that they are evaluated by MongoDB.
+ * <p>
+ * Supported are {@link LogicalCondition}s (`AND` / `OR`) and {@link PropertyCondition}s on `id`, `visit`,
+ * `title`, `description`, `createdAt`, `petName`, `ownerName` and `visitStart` with the following operations:
+ * <ul>
+ *     <li>`=`, `<>`, `in_list`, `not_in_list`, `>`, `>=`, `<`, `<=` and `is_set` - translated into the corresponding
+ *     MongoDB operators.</li>
+ *     <li>`contains`, `not_contains` and `ends_with` - translated into case-insensitive regular expressions, as
+ *     Jmix does for JPA entities. The value is quoted, so it is always matched literally.</li>
+ *     <li>`starts_with` - translated into a case-sensitive regular expression anchored at the beginning, whose
+ *     metacharacters are escaped one by one. Only such a simple prefix lets MongoDB scan a tight range of an index;
+ *     a case-insensitive or `\Q...\E` quoted expression has to be evaluated on every index key.</li>
+ * </ul>
+ * For a description stored in GridFS, whose document holds only a preview, the expressions are evaluated on
+ * `searchText` instead (see {@link VisitLogContentStorage}).
+ * Conditions on `visit` match the binary UUID as well as the string form of not yet migrated documents
+ * (see {@link VisitLogVisitIdMigration}).
+ * </p>
+ * <p>
+ * Only `starts_with` on `petName` and `ownerName`, which lead an index of their own, is narrowed down by an index
+ * across visits. All other text operations have to scan every candidate document. They are reported by
+ * {@link Translation#unindexedMatches()}, so that {@link VisitLogDataStore} can reject them where no other index
+ * narrows the documents down. The text index is deliberately not used to narrow down `contains`
+ * conditions: it matches whole, stemmed words and ignores stop words, so it would drop documents that contain the
+ * value as part of a word. Searching by words is a condition of its own, the `searchText` query parameter of
+ * {@link VisitLogDataStore}.
+ * </p>
+ * <p>
+ * Property conditions without a value are skipped, as Jmix does for JPA entities with
+ * `jmix.core.skip-null-or-empty-conditions-by-default`. Conditions that cannot be translated are rejected with a
+ * {@link VisitLogQueryException} instead of being ignored, which would silently return too many entries.
+ * </p>
+ */
+@Component("petclinic_VisitLogCriteriaTranslator")
+public class VisitLogCriteriaTranslator {
+
+    private static final Set<String> PREFIX_INDEXED_FIELDS = Set.of("petName", "ownerName");
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+
+    /**
+     * The result of a translation.
+     *
+     * @param criteria         The criteria, or {@code null} if the condition does not restrict the result.
+     * @param unindexedMatches Whether the criteria contain text matches that no index can narrow down.
+     */
+    public record Translation(@Nullable Criteria criteria, boolean unindexedMatches) {
+    }
+
+    public VisitLogCriteriaTranslator(VisitLogVisitIdMigration visitLogVisitIdMigration) {
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+    }
+
+    /**
+     * Translates a condition into MongoDB criteria.
+     *
+     * @param condition  The condition of the load context, may be {@code null}.
+     * @param parameters The query parameters, which provide the values of conditions that reference a parameter
+     *                   instead of holding the value themselves.
+     * @return The criteria together with the information whether they can be narrowed down by an index.
+     * @throws VisitLogQueryException If the condition can not be evaluated on visit logs.
+     */
+    public Translation translate(@Nullable Condition condition, Map<String, Object> parameters) {
+        TextMatches textMatches = new TextMatches();
+        Criteria criteria = translate(condition, parameters, textMatches);
+        return new Translation(criteria, textMatches.unindexed);
+    }
+
+    /**
+     * Creates the criteria matching all visit logs of a visit.
+     *
+     * @param visitId The ID of the visit.
+     * @return The criteria on `visitId`.
+     */
+    public Criteria visitCriteria(UUID visitId) {
+        return where("visitId").in(visitLogVisitIdMigration.queryValues(visitId));
+    }
+
+    /**
+     * Combines criteria with `$and`, skipping missing ones.
+     *
+     * @param criteria The criteria to combine.
+     * @return The combined criteria, or empty criteria matching all visit logs if none are given.
+     */
+    public static Criteria and(List<Criteria> criteria) {
+        List<Criteria> present = criteria.stream().filter(Objects::nonNull).toList();
+        return switch (present.size()) {
+            case 0 -> new Criteria();
+            case 1 -> present.get(0);
+            default -> new Criteria().andOperator(present);
+        };
+    }
+
+    @Nullable
+    private Criteria translate(@Nullable Condition condition, Map<String, Object> parameters,
+                               TextMatches textMatches) {
+        if (condition == null) {
+            return null;
+        }
+        if (condition instanceof LogicalCondition logicalCondition) {
+            return translateLogical(logicalCondition, parameters, textMatches);
+        }
+        if (condition instanceof PropertyCondition propertyCondition) {
+            return translateProperty(propertyCondition, parameters, textMatches);
+        }
+        throw new VisitLogQueryException("Visit logs can not be filtered by a condition of type "
+                + condition.getClass().getSimpleName());
+    }
+
+    @Nullable
+    private Criteria translateLogical(LogicalCondition condition, Map<String, Object> parameters,
+                                      TextMatches textMatches) {
+        List<Criteria> criteria = condition.getConditions().stream()
+                .map(nested -> translate(nested, parameters, textMatches))
+                .filter(Objects::nonNull)
+                .toList();
+
+        if (criteria.isEmpty()) {
+            return null;
+        }
+        if (criteria.size() == 1) {
+            return criteria.get(0);
+        }
+        return condition.getType() == LogicalCondition.Type.OR
+                ? new Criteria().orOperator(criteria)
+                : new Criteria().andOperator(criteria);
+    }
+
+    @Nullable
+    private Criteria translateProperty(PropertyCondition condition, Map<String, Object> parameters,
+                                       TextMatches textMatches) {
+        Object value = condition.getParameterValue() != null
+                ? condition.getParameterValue()
+                : parameters.get(condition.getParameterName());
+        if (value == null || (value instanceof Collection<?> values && values.isEmpty())) {
+            return null;
+        }
+
+        String field = VisitLogPaging.documentField(condition.getProperty());
+        if (field == null) {
+            throw new VisitLogQueryException("Visit logs can not be filtered by " + condition.getProperty());
+        }
+
+        switch (condition.getOperation()) {
+            case PropertyCondition.Operation.CONTAINS, PropertyCondition.Operation.NOT_CONTAINS,
+                 PropertyCondition.Operation.ENDS_WITH -> textMatches.unindexed = true;
+            case PropertyCondition.Operation.STARTS_WITH -> textMatches.unindexed |= !PREFIX_INDEXED_FIELDS.contains(field);
+            default -> {
+            }
+        }
+
+        return switch (condition.getOperation()) {
+            case PropertyCondition.Operation.EQUAL -> in(field, List.of(value));
+            case PropertyCondition.Operation.IN_LIST -> in(field, toCollection(value));
+            case PropertyCondition.Operation.NOT_EQUAL, PropertyCondition.Operation.NOT_IN_LIST ->
+                    where(field).nin(documentValues(field, toCollection(value)));
+            case PropertyCondition.Operation.GREATER -> where(field).gt(toDocumentValue(value));
+            case PropertyCondition.Operation.GREATER_OR_EQUAL -> where(field).gte(toDocumentValue(value));
+            case PropertyCondition.Operation.LESS -> where(field).lt(toDocumentValue(value));
+            case PropertyCondition.Operation.LESS_OR_EQUAL -> where(field).lte(toDocumentValue(value));
+            case PropertyCondition.Operation.IS_SET -> Boolean.TRUE.equals(value)
+                    ? where(field).ne(null)
+                    : where(field).is(null);
+            case PropertyCondition.Operation.CONTAINS -> matchingText(field, literal(value), "i");
+            case PropertyCondition.Operation.NOT_CONTAINS -> field.equals("description")
+                    ? new Criteria().norOperator(matchingText(field, literal(value), "i"))
+                    : where(field).not().regex(literal(value), "i");
+            case PropertyCondition.Operation.STARTS_WITH -> matchingText(field, prefix(value), null);
+            case PropertyCondition.Operation.ENDS_WITH -> matchingText(field, literal(value) + "$", "i");
+            default -> throw new VisitLogQueryException("Visit logs can not be filtered by " + condition.getProperty()
+                    + " with the operation " + condition.getOperation());
+        };
+    }
+
+    private Criteria matchingText(String field, String regex, @Nullable String options) {
+        if (!field.equals("description")) {
+            return where(field).regex(regex, options);
+        }
+        return new Criteria().orOperator(
+                where("descriptionFileId").is(null).and("description").regex(regex, options),
+                where("searchText").regex(regex, options)
+        );
+    }
+
+    private String literal(Object value) {
+        return Pattern.quote(value.toString());
+    }
+
+    private String prefix(Object value) {
+        StringBuilder regex = new StringBuilder("^");
+        for (char character : value.toString().toCharArray()) {
+            if (REGEX_METACHARACTERS.indexOf(character) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(character);
+        }
+        return regex.toString();
+    }
+
+    private Criteria in(String field, Collection<?> values) {
+        List<Object> documentValues = documentValues(field, values);
+        return documentValues.size() == 1
+                ? where(field).is(documentValues.get(0))
+                : where(field).in(documentValues);
+    }
+
+    private List<Object> documentValues(String field, Collection<?> values) {
+        if ("visitId".equals(field)) {
+            return visitLogVisitIdMigration.queryValues(values.stream().map(this::toVisitId).toList());
+        }
+        return values.stream().map(this::toDocumentValue).toList();
+    }
+
+    private Collection<?> toCollection(Object value) {
+        return value instanceof Collection<?> values ? values : List.of(value);
+    }
+
+    private UUID toVisitId(Object value) {
+        if (value instanceof Visit visit) {
+            return visit.getId();
+        }
+        if (value instanceof UUID visitId) {
+            return visitId;
+        }
+        return UUID.fromString(value.toString());
+    }
+
+    private Object toDocumentValue(Object value) {
+        return value instanceof OffsetDateTime dateTime ? dateTime.toInstant() : value;
+    }
+
+    private static class TextMatches {
+
+        private boolean unindexed = false;
+    }
+}
@@ -0,0 +1,13 @@
+package io.jmix.petclinic.visit.log;
+
+import java.util.UUID;
+
+/**
+ * Number of visit logs of a visit created on a day, as counted by the reconciliation of {@link VisitLogAnalytics}.
+ *
+ * @param day     The day as ISO date (`yyyy-MM-dd`).
+ * @param visitId The ID of the visit.
+ * @param count   The number of visit logs.
+ */
+public record VisitLogDailyCount(String day, UUID visitId, long count) {
+}
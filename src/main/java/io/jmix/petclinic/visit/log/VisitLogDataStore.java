@@ -0,0 +1,303 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataStore;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Metadata;
+import io.jmix.core.SaveContext;
+import io.jmix.core.ValueLoadContext;
+import io.jmix.core.datastore.AbstractDataStore;
+import io.jmix.core.entity.EntityValues;
+import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Jmix {@link DataStore} of the {@link VisitLog} entity, which makes visit logs available through
+ * {@link io.jmix.core.DataManager} and therefore to data loaders, data contexts and standard actions without
+ * load or save delegates.
+ * <p>
+ * The store extends {@link AbstractDataStore}, which wraps the operations below with the load and save events of
+ * Jmix, e.g. for row-level security and entity event listeners, and applies in-memory constraints.
+ * </p>
+ * <p>
+ * Loading translates the {@link LoadContext} into a MongoDB query executed by {@link VisitLogService}:
+ * <ul>
+ *     <li>the condition is translated by {@link VisitLogCriteriaTranslator}. Text matches that no index can
+ *     narrow down are only accepted within the logs of a visit or together with the `searchText` parameter,
+ *     otherwise the load fails with a {@link VisitLogQueryException},</li>
+ *     <li>the `visit` query parameter restricts the result to the logs of that visit. A query that declares the
+ *     parameter (`:visit`) but receives no visit returns nothing, like the JPQL condition `e.visit = :visit`
+ *     would. For an archived visit, the condition is evaluated on its logs in memory (see
+ *     {@link VisitLogService#findByVisit(Visit, Criteria, String, Pageable)}),</li>
+ *     <li>the `searchText` query parameter adds a full-text search on title and description. Its results are
+ *     sorted by relevance unless the query requests a sort order. Archived visits can not be searched; the load
+ *     fails with a {@link VisitLogQueryException},</li>
+ *     <li>sort, first and max results are mapped by {@link VisitLogPaging}, and counts are executed as
+ *     MongoDB counts.</li>
+ * </ul>
+ * The JPQL query string of the load context is not interpreted otherwise, it only serves as documentation in view
+ * descriptors. A query restricted by nothing but the `visit` parameter uses {@link VisitLogService#findByVisit},
+ * so it also returns archived entries and benefits from {@link VisitLogCache}.
+ * </p>
+ * <p>
+ * Saving and removing delegate to {@link VisitLogService#saveVisitLog} and {@link VisitLogService#removeVisitLogs}.
+ * New visit logs receive their ObjectId before they are saved. MongoDB writes are not transactional, so the
+ * transaction callbacks of {@link AbstractDataStore} do nothing.
+ * </p>
+ * <p>
+ * Value loading ({@link ValueLoadContext}) loads the matching visit logs like an entity query with the same
+ * condition and parameters, and returns the requested properties of each of them. The properties have to be
+ * {@link VisitLog} attributes or paths, e.g. `title` or `visit.id`; aggregate functions are not supported.
+ * </p>
+ *
+ * @see VisitLogStoreDescriptor
+ */
+@Component("petclinic_VisitLogDataStore")
+public class VisitLogDataStore extends AbstractDataStore {
+
+    /**
+     * Query parameter restricting the loaded visit logs to the logs of a {@link Visit}.
+     */
+    public static final String VISIT_PARAMETER = "visit";
+
+    /**
+     * Query parameter with full-text search terms the loaded visit logs have to match.
+     */
+    public static final String SEARCH_TEXT_PARAMETER = "searchText";
+
+    private static final Pattern VISIT_PARAMETER_REFERENCE = Pattern.compile(":" + VISIT_PARAMETER + "\\b");
+    private static final Object NO_TRANSACTION = new Object();
+
+    private final VisitLogService visitLogService;
+    private final VisitLogCriteriaTranslator visitLogCriteriaTranslator;
+    private final Metadata metadata;
+
+    public VisitLogDataStore(VisitLogService visitLogService, VisitLogCriteriaTranslator visitLogCriteriaTranslator,
+                             Metadata metadata) {
+        this.visitLogService = visitLogService;
+        this.visitLogCriteriaTranslator = visitLogCriteriaTranslator;
+        this.metadata = metadata;
+    }
+
+    @Nullable
+    @Override
+    protected Object loadOne(LoadContext<?> context) {
+        if (context.getId() != null) {
+            return loadById((String) context.getId());
+        }
+
+        List<Object> result = loadAll(context);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    @Override
+    protected List<Object> loadAll(LoadContext<?> context) {
+        if (!context.getIds().isEmpty()) {
+            List<Object> visitLogs = new ArrayList<>(context.getIds().size());
+            for (Object id : context.getIds()) {
+                VisitLog visitLog = loadById((String) id);
+                if (visitLog != null) {
+                    visitLogs.add(visitLog);
+                }
+            }
+            return visitLogs;
+        }
+
+        LoadContext.Query query = context.getQuery();
+        Map<String, Object> parameters = parameters(query);
+        UUID visitId = visitId(parameters);
+        if (visitId == null && requiresVisit(query)) {
+            return List.of();
+        }
+
+        String searchText = searchText(parameters);
+        // a full-text search without a requested sort order returns the most relevant entries first
+        Pageable pageable = VisitLogPaging.toPageable(query,
+                searchText != null ? Sort.unsorted() : VisitLogPaging.CREATION_ORDER);
+        VisitLogCriteriaTranslator.Translation translation = visitLogCriteriaTranslator.translate(
+                query != null ? query.getCondition() : null, parameters);
+        Criteria condition = translation.criteria();
+
+        if (visitId != null) {
+            Visit visit = (Visit) parameters.get(VISIT_PARAMETER);
+            if (condition != null) {
+                return List.copyOf(visitLogService.findByVisit(visit, condition, searchText, pageable));
+            }
+            return List.copyOf(searchText != null
+                    ? visitLogService.searchByVisit(visit, searchText, pageable)
+                    : visitLogService.findByVisit(visit, pageable));
+        }
+
+        return List.copyOf(visitLogService.find(criteria(condition), text(searchText, translation), pageable));
+    }
+
+    @Override
+    protected long countAll(LoadContext<?> context) {
+        if (!context.getIds().isEmpty()) {
+            return loadAll(context).size();
+        }
+
+        LoadContext.Query query = context.getQuery();
+        Map<String, Object> parameters = parameters(query);
+        UUID visitId = visitId(parameters);
+        if (visitId == null && requiresVisit(query)) {
+            return 0;
+        }
+
+        String searchText = searchText(parameters);
+        VisitLogCriteriaTranslator.Translation translation = visitLogCriteriaTranslator.translate(
+                query != null ? query.getCondition() : null, parameters);
+        Criteria condition = translation.criteria();
+
+        if (visitId != null) {
+            Visit visit = (Visit) parameters.get(VISIT_PARAMETER);
+            if (condition != null) {
+                return visitLogService.countByVisit(visit, condition, searchText);
+            }
+            return searchText != null
+                    ? visitLogService.countSearchByVisit(visit, searchText)
+                    : visitLogService.countByVisit(visit);
+        }
+
+        return visitLogService.count(criteria(condition), text(searchText, translation));
+    }
+
+    @Override
+    protected Set<Object> saveAll(SaveContext context) {
+        Set<Object> result = new LinkedHashSet<>();
+        for (Object entity : context.getEntitiesToSave()) {
+            VisitLog visitLog = (VisitLog) entity;
+            if (visitLog.getId() == null) {
+                // assigned before saving, so that the caller finds the saved instance in the result by its ID
+                visitLog.setId(new ObjectId().toHexString());
+            }
+            result.add(visitLogService.saveVisitLog(visitLog));
+        }
+        return result;
+    }
+
+    @Override
+    protected Set<Object> deleteAll(SaveContext context) {
+        List<VisitLog> visitLogsToRemove = context.getEntitiesToRemove().stream()
+                .map(VisitLog.class::cast)
+                .toList();
+        if (!visitLogsToRemove.isEmpty()) {
+            visitLogService.removeVisitLogs(visitLogsToRemove);
+        }
+        return new LinkedHashSet<>(visitLogsToRemove);
+    }
+
+    @Override
+    protected List<Object> loadAllValues(ValueLoadContext context) {
+        List<Object> values = new ArrayList<>();
+        for (Object entity : loadAll(toLoadContext(context))) {
+            KeyValueEntity keyValueEntity = new KeyValueEntity();
+            for (String property : context.getProperties()) {
+                keyValueEntity.setValue(property, EntityValues.getValueEx(entity, property));
+            }
+            values.add(keyValueEntity);
+        }
+        return values;
+    }
+
+    @Override
+    protected long countAllValues(ValueLoadContext context) {
+        return countAll(toLoadContext(context));
+    }
+
+    @Override
+    protected Object beginLoadTransaction(boolean joinTransaction) {
+        return NO_TRANSACTION;
+    }
+
+    @Override
+    protected Object beginSaveTransaction(boolean joinTransaction) {
+        return NO_TRANSACTION;
+    }
+
+    @Override
+    protected void commitTransaction(Object transaction) {
+    }
+
+    @Override
+    protected void rollbackTransaction(Object transaction) {
+    }
+
+    @Override
+    protected TransactionContextState getTransactionContextState(boolean isJoinTransaction) {
+        return new TransactionContextState() {
+        };
+    }
+
+    private LoadContext<VisitLog> toLoadContext(ValueLoadContext context) {
+        LoadContext<VisitLog> loadContext = new LoadContext<>(metadata.getClass(VisitLog.class));
+        ValueLoadContext.Query valueQuery = context.getQuery();
+        if (valueQuery != null) {
+            loadContext.setQuery(new LoadContext.Query(valueQuery.getQueryString())
+                    .setParameters(valueQuery.getParameters())
+                    .setCondition(valueQuery.getCondition())
+                    .setSort(valueQuery.getSort())
+                    .setFirstResult(valueQuery.getFirstResult())
+                    .setMaxResults(valueQuery.getMaxResults()));
+        }
+        return loadContext;
+    }
+
+    @Nullable
+    private VisitLog loadById(String id) {
+        try {
+            return visitLogService.loadVisitLog(id);
+        } catch (VisitLogNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Map<String, Object> parameters(@Nullable LoadContext.Query query) {
+        return query != null ? query.getParameters() : Map.of();
+    }
+
+    private boolean requiresVisit(@Nullable LoadContext.Query query) {
+        return query != null && (query.getParameters().containsKey(VISIT_PARAMETER)
+                || (query.getQueryString() != null && VISIT_PARAMETER_REFERENCE.matcher(query.getQueryString()).find()));
+    }
+
+    @Nullable
+    private UUID visitId(Map<String, Object> parameters) {
+        return parameters.get(VISIT_PARAMETER) instanceof Visit visit ? visit.getId() : null;
+    }
+
+    @Nullable
+    private String searchText(Map<String, Object> parameters) {
+        return parameters.get(SEARCH_TEXT_PARAMETER) instanceof String text && !text.isBlank() ? text.trim() : null;
+    }
+
+    /**
+     * Determines the full-text search of a query. Text matches that no index can narrow down are only accepted
+     * where the visit index or the text index of the `searchText` parameter narrows the documents down instead.
+     */
+    @Nullable
+    private String text(@Nullable String searchText, VisitLogCriteriaTranslator.Translation translation) {
+        if (searchText == null && translation.unindexedMatches()) {
+            throw new VisitLogQueryException("The visit logs of all visits can only be filtered by the beginning of "
+                    + "a text (starts with); use the search to find words of the title or description");
+        }
+        return searchText;
+    }
+
+    private Criteria criteria(@Nullable Criteria condition) {
+        return condition != null ? condition : new Criteria();
+    }
+}
@@ -0,0 +1,287 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.FetchPlan;
+import io.jmix.core.FetchPlans;
+import io.jmix.petclinic.entity.owner.Owner;
+import io.jmix.petclinic.entity.pet.Pet;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Copies attributes of the visit, its pet and the pet's owner into the {@link VisitLogDocument}s of the visit and
+ * keeps these copies up to date.
+ * <p>
+ * With the copies, visit logs of all visits can be listed, filtered and sorted by pet, owner and visit start
+ * directly in MongoDB, without joining the JPA entities for every page (see `AllVisitLogListView`):
+ * <ul>
+ *     <li>{@link #denormalize} is called by {@link VisitLogService} before visit logs are written. It loads the
+ *     attributes of all visits of the written documents with a single JPA query.</li>
+ *     <li>{@link #onVisitChanged}, {@link #onPetChanged} and {@link #onOwnerChanged} are called by the entity
+ *     listeners once a change has been committed and update the copies with one `updateMany` command.</li>
+ *     <li>{@link #reconcile} is called once visit logs have been written and corrects copies that were changed
+ *     concurrently.</li>
+ *     <li>{@link #backfill} completes visit logs that were stored before the copies were introduced.</li>
+ * </ul>
+ * With the bucket layout, the copies are updated in the buckets of {@link VisitLogBucketStore}. Buckets have been
+ * introduced after the copies, so they do not need a backfill.
+ * The attributes are loaded without row-level and attribute restrictions, so the copies do not depend on the
+ * permissions of the user who happens to save a visit log.
+ * </p>
+ */
+@Component("petclinic_VisitLogDenormalization")
+public class VisitLogDenormalization {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogDenormalization.class);
+
+    private final DataManager dataManager;
+    private final FetchPlans fetchPlans;
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogProperties.VisitDetails settings;
+
+    public VisitLogDenormalization(DataManager dataManager, FetchPlans fetchPlans,
+                                   VisitLogDocumentRepository visitLogDocumentRepository,
+                                   VisitLogBucketStore visitLogBucketStore,
+                                   VisitLogVisitIdMigration visitLogVisitIdMigration, VisitLogCache visitLogCache,
+                                   VisitLogProperties visitLogProperties) {
+        this.dataManager = dataManager;
+        this.fetchPlans = fetchPlans;
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+        this.visitLogCache = visitLogCache;
+        this.settings = visitLogProperties.getVisitDetails();
+    }
+
+    /**
+     * Copies the visit, pet and owner attributes into the given documents before they are written. Documents of
+     * visits that do not exist (anymore) are left unchanged.
+     *
+     * @param visitLogDocuments The documents to complete.
+     */
+    public void denormalize(Collection<VisitLogDocument> visitLogDocuments) {
+        Set<UUID> visitIds = visitLogDocuments.stream()
+                .map(VisitLogDocument::getVisitId)
+                .collect(Collectors.toSet());
+        Map<UUID, VisitLogVisitDetails> detailsByVisitId = loadVisitDetails(visitIds);
+
+        for (VisitLogDocument visitLogDocument : visitLogDocuments) {
+            VisitLogVisitDetails details = detailsByVisitId.get(visitLogDocument.getVisitId());
+            if (details != null) {
+                details.applyTo(visitLogDocument);
+            }
+        }
+    }
+
+    /**
+     * Updates the copies in the visit logs of a visit whose pet or start has changed.
+     *
+     * @param visitId The ID of the changed visit.
+     */
+    public void onVisitChanged(UUID visitId) {
+        VisitLogVisitDetails details = loadVisitDetails(Set.of(visitId)).get(visitId);
+        if (details == null) {
+            return;
+        }
+
+        updateVisitDetails(details);
+        visitLogCache.invalidateVisits(List.of(visitId));
+    }
+
+    /**
+     * Corrects the copies in the visit logs of the given documents once they have been written, if the visit, pet or
+     * owner has been changed since {@link #denormalize} copied the attributes.
+     * <p>
+     * A change that is committed between {@link #denormalize} and the write of a document is missed by the entity
+     * listeners, as their `updateMany` command runs before the document exists. The attributes are therefore read
+     * again after the write and compared with the written copies. Changes committed after this read are handled by
+     * the entity listeners, whose update then finds the written document.
+     * A failed correction is logged and does not affect the written documents.
+     * </p>
+     *
+     * @param writtenDocuments The documents written to MongoDB.
+     */
+    public void reconcile(Collection<VisitLogDocument> writtenDocuments) {
+        if (writtenDocuments.isEmpty()) {
+            return;
+        }
+        try {
+            reconcileVisitDetails(writtenDocuments);
+        } catch (RuntimeException e) {
+            log.error("Copied attributes of {} written visit logs could not be reconciled", writtenDocuments.size(), e);
+        }
+    }
+
+    private void reconcileVisitDetails(Collection<VisitLogDocument> writtenDocuments) {
+        Map<UUID, Set<VisitLogVisitDetails>> writtenDetails = writtenDocuments.stream()
+                .collect(Collectors.groupingBy(VisitLogDocument::getVisitId,
+                        Collectors.mapping(VisitLogVisitDetails::of, Collectors.toSet())));
+        Map<UUID, VisitLogVisitDetails> currentDetails = loadVisitDetails(writtenDetails.keySet());
+
+        List<UUID> changedVisitIds = new ArrayList<>();
+        for (VisitLogVisitDetails details : currentDetails.values()) {
+            if (!writtenDetails.get(details.visitId()).equals(Set.of(details))) {
+                log.debug("Correcting the copied attributes of the visit logs of visit {}, changed while writing",
+                        details.visitId());
+                updateVisitDetails(details);
+                changedVisitIds.add(details.visitId());
+            }
+        }
+        if (!changedVisitIds.isEmpty()) {
+            visitLogCache.invalidateVisits(changedVisitIds);
+        }
+    }
+
+    private void updateVisitDetails(VisitLogVisitDetails details) {
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(details.visitId());
+        if (visitLogBucketStore.isEnabled()) {
+            visitLogBucketStore.updateVisitDetails(visitIdValues, details);
+        } else {
+            visitLogDocumentRepository.updateVisitDetails(visitIdValues, details);
+        }
+    }
+
+    /**
+     * Updates the copies in the visit logs of a pet whose name or owner has changed.
+     *
+     * @param petId The ID of the changed pet.
+     */
+    public void onPetChanged(UUID petId) {
+        dataManager.unconstrained().load(Pet.class)
+                .id(petId)
+                .fetchPlan(fetchPlan -> fetchPlan.addAll("name", "owner.firstName", "owner.lastName"))
+                .optional()
+                .ifPresent(pet -> {
+                    Owner owner = pet.getOwner();
+                    UUID ownerId = owner != null ? owner.getId() : null;
+                    long updated = visitLogBucketStore.isEnabled()
+                            ? visitLogBucketStore.updatePetDetails(petId, pet.getName(), ownerId, ownerName(owner))
+                            : visitLogDocumentRepository.updatePetDetails(petId, pet.getName(), ownerId, ownerName(owner));
+                    if (updated > 0) {
+                        visitLogCache.invalidateVisits(findDistinctVisitIds(where("petId").is(petId)));
+                    }
+                });
+    }
+
+    /**
+     * Updates the copies in the visit logs of an owner whose name has changed.
+     *
+     * @param ownerId The ID of the changed owner.
+     */
+    public void onOwnerChanged(UUID ownerId) {
+        dataManager.unconstrained().load(Owner.class)
+                .id(ownerId)
+                .fetchPlan(fetchPlan -> fetchPlan.addAll("firstName", "lastName"))
+                .optional()
+                .ifPresent(owner -> {
+                    long updated = visitLogBucketStore.isEnabled()
+                            ? visitLogBucketStore.updateOwnerName(ownerId, owner.getFullName())
+                            : visitLogDocumentRepository.updateOwnerName(ownerId, owner.getFullName());
+                    if (updated > 0) {
+                        visitLogCache.invalidateVisits(findDistinctVisitIds(where("ownerId").is(ownerId)));
+                    }
+                });
+    }
+
+    /**
+     * Copies the visit, pet and owner attributes into all visit logs that do not contain them yet.
+     * <p>
+     * The visit logs are processed in `_id` order in batches of `petclinic.visitlog.visit-details.batch-size`
+     * documents. Per batch, the attributes of all its visits are loaded with one JPA query and every visit is
+     * updated with one `updateMany` command. Visit logs of visits that no longer exist are skipped.
+     * </p>
+     *
+     * @return The number of completed visit logs, always 0 with the bucket layout.
+     */
+    public long backfill() {
+        if (visitLogBucketStore.isEnabled()) {
+            return 0;
+        }
+
+        long updatedCount = 0;
+        String afterId = null;
+        List<VisitLogDocument> batch;
+        do {
+            batch = visitLogDocumentRepository.findWithoutVisitDetails(afterId, settings.getBatchSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            Set<UUID> visitIds = batch.stream().map(VisitLogDocument::getVisitId).collect(Collectors.toSet());
+            for (VisitLogVisitDetails details : loadVisitDetails(visitIds).values()) {
+                updatedCount += visitLogDocumentRepository.updateVisitDetails(
+                        visitLogVisitIdMigration.queryValues(details.visitId()), details);
+            }
+            visitLogCache.invalidateVisits(visitIds);
+
+            afterId = batch.get(batch.size() - 1).getId();
+        } while (batch.size() == settings.getBatchSize());
+
+        if (updatedCount > 0) {
+            log.info("Copied visit, pet and owner attributes into {} visit logs", updatedCount);
+        }
+        return updatedCount;
+    }
+
+    private Set<UUID> findDistinctVisitIds(Criteria criteria) {
+        return visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.findDistinctVisitIds(criteria)
+                : visitLogDocumentRepository.findDistinctVisitIds(criteria);
+    }
+
+    private Map<UUID, VisitLogVisitDetails> loadVisitDetails(Collection<UUID> visitIds) {
+        if (visitIds.isEmpty()) {
+            return Map.of();
+        }
+
+        return dataManager.unconstrained().load(Visit.class)
+                .ids(List.copyOf(visitIds))
+                .fetchPlan(visitDetailsFetchPlan())
+                .list()
+                .stream()
+                .map(this::toVisitDetails)
+                .collect(Collectors.toMap(VisitLogVisitDetails::visitId, Function.identity()));
+    }
+
+    private FetchPlan visitDetailsFetchPlan() {
+        return fetchPlans.builder(Visit.class)
+                .addAll("visitStart", "pet.name", "pet.owner.firstName", "pet.owner.lastName")
+                .build();
+    }
+
+    private VisitLogVisitDetails toVisitDetails(Visit visit) {
+        Pet pet = visit.getPet();
+        Owner owner = pet != null ? pet.getOwner() : null;
+        return new VisitLogVisitDetails(
+                visit.getId(),
+                pet != null ? pet.getId() : null,
+                pet != null ? pet.getName() : null,
+                owner != null ? owner.getId() : null,
+                ownerName(owner),
+                visit.getVisitStart()
+        );
+    }
+
+    @Nullable
+    private String ownerName(@Nullable Owner owner) {
+        return owner != null ? owner.getFullName() : null;
+    }
+}
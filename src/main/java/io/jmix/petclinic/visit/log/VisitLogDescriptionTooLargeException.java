@@ -0,0 +1,8 @@
+package io.jmix.petclinic.visit.log;
+
+public class VisitLogDescriptionTooLargeException extends RuntimeException {
+    public VisitLogDescriptionTooLargeException(String descriptionFileId, long length, long maxLength) {
+        super("Description " + descriptionFileId + " has " + length + " bytes, which exceeds the limit of "
+                + maxLength + " bytes for loading it");
+    }
+}
@@ -3,11 +3,18 @@ package io.jmix.petclinic.visit.log;
 
 // tag::imports[]
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.HashIndexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 // end::imports[]
 
+import org.springframework.data.mongodb.core.index.Indexed;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
 /**
  * MongoDB persistence class representing a `VisitLog` document for storage and retrieval from the database.
  * <p>
@@ -25,12 +32,52 @@ import org.springframework.data.mongodb.core.mapping.Document;
  * <ul>
  *     <li><b>id</b> - Unique identifier for each `VisitLogDocument` entry in MongoDB. By convention, MongoDB treats
  *     this `id` field as the document’s primary key, or "_id" field, which serves as the unique identifier and index for each document.</li>
- *     <li><b>visitId</b> - Corresponds to the visit entity's identifier, linking `VisitLogDocument` and related visit records.</li>
+ *     <li><b>visitId</b> - Corresponds to the visit entity's identifier, linking `VisitLogDocument` and related visit records.
+ *     It is stored as BSON binary UUID (subtype 4), which takes 16 bytes instead of the 36 characters of its string
+ *     form. Documents written before may still contain the string form until {@link VisitLogVisitIdMigration}
+ *     has converted them.</li>
  *     <li><b>title</b> - Title or summary of the visit log.</li>
  *     <li><b>description</b> - Detailed description or notes for the visit log.</li>
+ *     <li><b>createdAt</b> - Point in time the visit log was created. Together with `id` it defines a stable
+ *     order of the logs of a visit.</li>
+ *     <li><b>petId</b>, <b>petName</b>, <b>ownerId</b>, <b>ownerName</b>, <b>visitStart</b> - Copies of the
+ *     corresponding attributes of the visit, its pet and the pet's owner. They are written together with the visit
+ *     log and kept in sync by {@link VisitLogDenormalization}, so that visit logs of all visits can be listed,
+ *     filtered and sorted by them without loading any JPA entity.</li>
+ *     <li><b>descriptionFileId</b> - ID of the GridFS file holding the description if it exceeds
+ *     `petclinic.visitlog.content.description-threshold`. In this case, `description` only holds its beginning
+ *     (see {@link VisitLogContentStorage}).</li>
+ *     <li><b>searchText</b> - Beginning of a description stored in GridFS, up to
+ *     `petclinic.visitlog.content.search-text-length` characters. It is part of the text index and matched by
+ *     description conditions, but not read for lists. Together with the preview in `description`, it stays well
+ *     below the threshold, so that the document stays small.</li>
+ *     <li><b>updatedAt</b> - Point in time of the last save. {@link VisitLogArchival} only removes an archived
+ *     visit log while it has not been saved again. Delayed writes, such as the replay of {@link VisitLogJournal},
+ *     only replace a stored document that is older.</li>
  * </ul>
  * </p>
  * <p>
+ * The compound index on `visitId`, `createdAt` and `_id` serves both the lookup of all logs of a visit and
+ * their ordered retrieval. Because it is unique per document, it allows keyset pagination
+ * ("seek after the last seen key") where every page costs the same as the first one.
+ * </p>
+ * <p>
+ * The compound index on `visitId` and `title` serves filters on the title of the logs of a visit
+ * (see {@link VisitLogCriteriaTranslator}): equality and `starts with` conditions are resolved within the index
+ * bounds, the case-insensitive regular expressions of `contains` conditions are evaluated on the index keys of the
+ * visit, so that only matching documents are read.
+ * </p>
+ * <p>
+ * The indexes starting with `createdAt`, `visitStart`, `petName` and `ownerName` serve the list of the visit logs of
+ * all visits (`AllVisitLogListView`), which is sorted and filtered by these fields. The case-sensitive prefix
+ * expressions of `starts with` conditions on `petName` and `ownerName` scan only the matching range of their
+ * index. `petId` and `ownerId` are indexed for updating the copied attributes when a pet or owner changes.
+ * </p>
+ * <p>
+ * `title`, `description` and `searchText` are part of a text index, which is used for the full-text search of
+ * visit logs. Matches in the title are weighted higher than matches in the description.
+ * </p>
+ * <p>
  * For more details on using Spring Data MongoDB’s {@link Document} annotation, see the
  * <a href="https://docs.spring.io/spring-data/mongodb/docs/current/reference/html/#mapping-usage">Spring Data MongoDB mapping documentation</a>.
  * </p>
@@ -41,20 +88,42 @@ import org.springframework.data.mongodb.core.mapping.Document;
 
 // tag::visit-log-document[]
 @Document // <1>
+@CompoundIndex(name = "visitId_createdAt_id", def = "{'visitId': 1, 'createdAt': 1, '_id': 1}") // <4>
+@CompoundIndex(name = "visitId_title", def = "{'visitId': 1, 'title': 1}")
+@CompoundIndex(name = "createdAt_id", def = "{'createdAt': 1, '_id': 1}")
+@CompoundIndex(name = "visitStart_createdAt", def = "{'visitStart': 1, 'createdAt': 1}")
+@CompoundIndex(name = "petName_createdAt", def = "{'petName': 1, 'createdAt': 1}")
+@CompoundIndex(name = "ownerName_createdAt", def = "{'ownerName': 1, 'createdAt': 1}")
 public class VisitLogDocument {
 
     @Id // <2>
     private String id;
 
-    @HashIndexed // <4>
-    private String visitId; // <3>
+    private UUID visitId; // <3>
+    @TextIndexed(weight = 3)
     private String title;
+    @TextIndexed
     private String description;
+    private Instant createdAt;
 
     // ...
 
     // end::visit-log-document[]
 
+    @Indexed
+    private UUID petId;
+    private String petName;
+    @Indexed
+    private UUID ownerId;
+    private String ownerName;
+    private LocalDateTime visitStart;
+
+    private String descriptionFileId;
+    @TextIndexed
+    private String searchText;
+
+    private Instant updatedAt;
+
     public String getDescription() {
         return description;
     }
@@ -71,14 +140,86 @@ public class VisitLogDocument {
         this.title = title;
     }
 
-    public String getVisitId() {
+    public UUID getVisitId() {
         return visitId;
     }
 
-    public void setVisitId(String visitId) {
+    public void setVisitId(UUID visitId) {
         this.visitId = visitId;
     }
 
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public UUID getPetId() {
+        return petId;
+    }
+
+    public void setPetId(UUID petId) {
+        this.petId = petId;
+    }
+
+    public String getPetName() {
+        return petName;
+    }
+
+    public void setPetName(String petName) {
+        this.petName = petName;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(UUID ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public void setOwnerName(String ownerName) {
+        this.ownerName = ownerName;
+    }
+
+    public LocalDateTime getVisitStart() {
+        return visitStart;
+    }
+
+    public void setVisitStart(LocalDateTime visitStart) {
+        this.visitStart = visitStart;
+    }
+
+    public String getDescriptionFileId() {
+        return descriptionFileId;
+    }
+
+    public void setDescriptionFileId(String descriptionFileId) {
+        this.descriptionFileId = descriptionFileId;
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+
+    public void setSearchText(String searchText) {
+        this.searchText = searchText;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     public String getId() {
         return id;
     }
@@ -5,6 +5,11 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 // end::imports[]
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.Collection;
 import java.util.List;
 
 
@@ -17,13 +22,27 @@ import java.util.List;
  * simplify data access by offering a standard API without requiring explicit implementation.
  * </p>
  * <p>
- * In addition to the default CRUD methods, this interface defines a custom query method:
+ * In addition to the default CRUD methods, this interface defines custom query methods:
  * <ul>
- *     <li><b>findByVisitId(String visitId)</b> - Retrieves a list of `VisitLogDocument` entities associated
- *     with a specific `visitId`.</li>
+ *     <li><b>findByVisitIdIn(Collection visitIds)</b> - Retrieves a list of `VisitLogDocument` entities associated
+ *     with the given `visitId` values.</li>
+ *     <li><b>findByVisitIdIn(Collection visitIds, Pageable pageable)</b> - Retrieves a single page of `VisitLogDocument`
+ *     entities associated with the given `visitId` values, sorted as requested by the {@link Pageable}.</li>
+ *     <li><b>countByVisitIdIn(Collection visitIds)</b> - Counts the `VisitLogDocument` entities associated with the
+ *     given `visitId` values without loading them.</li>
+ *     <li><b>findByVisitIdIn(Collection visitIds, Sort sort)</b> - Retrieves the `VisitLogDocument` entities of
+ *     several visits with a single `$in` query.</li>
+ *     <li><b>deleteByVisitIdIn(Collection visitIds)</b> - Removes the `VisitLogDocument` entities of several visits
+ *     with a single `deleteMany` command.</li>
  * </ul>
- * Spring Data MongoDB will automatically generate the query for `findByVisitId` based on its naming convention,
- * making it straightforward to add custom finder methods without additional configuration.
+ * The methods accept a collection of `visitId` values instead of a single visit ID, so that documents can be
+ * matched by the binary {@link java.util.UUID} as well as by its former string form until
+ * {@link VisitLogVisitIdMigration} has converted all documents. Use {@link VisitLogVisitIdMigration#queryValues}
+ * to obtain the values for a visit.
+ * Spring Data MongoDB will automatically generate the queries for these methods based on their naming convention,
+ * making it straightforward to add custom finder methods without additional configuration. Queries that cannot
+ * be derived from a method name are implemented in {@link VisitLogDocumentRepositoryCustom}. The finders do not read
+ * {@link VisitLogDocument#getSearchText()}, which is only needed by MongoDB for matching.
  * </p>
  * <p>
  * For more details on working with MongoDB repositories and custom query methods, refer to the
@@ -35,14 +54,56 @@ import java.util.List;
  */
 // tag::repository[]
 
-public interface VisitLogDocumentRepository extends MongoRepository<VisitLogDocument, String> {
+public interface VisitLogDocumentRepository extends MongoRepository<VisitLogDocument, String>, VisitLogDocumentRepositoryCustom {
+
+    /**
+     * Finds all {@link VisitLogDocument} entries associated with the specified visit ID values.
+     *
+     * @param visitIds The `visitId` values of the logs to retrieve.
+     * @return A list of {@link VisitLogDocument} instances matching one of the specified values.
+     */
+    @Query(fields = VisitLogDocumentRepositoryCustom.LIST_FIELDS)
+    List<VisitLogDocument> findByVisitIdIn(Collection<?> visitIds);
+
+    /**
+     * Finds a single page of {@link VisitLogDocument} entries associated with the specified visit ID values.
+     * <p>
+     * Skip, limit and sort order of the {@link Pageable} are passed to MongoDB, so only the requested page
+     * is transferred from the database.
+     * </p>
+     *
+     * @param visitIds The `visitId` values of the logs to retrieve.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return A list of {@link VisitLogDocument} instances of the requested page.
+     */
+    @Query(fields = VisitLogDocumentRepositoryCustom.LIST_FIELDS)
+    List<VisitLogDocument> findByVisitIdIn(Collection<?> visitIds, Pageable pageable);
+
+    /**
+     * Counts all {@link VisitLogDocument} entries associated with the specified visit ID values.
+     *
+     * @param visitIds The `visitId` values of the logs to count.
+     * @return The number of {@link VisitLogDocument} instances matching one of the specified values.
+     */
+    long countByVisitIdIn(Collection<?> visitIds);
+
+    /**
+     * Finds all {@link VisitLogDocument} entries associated with any of the specified visit ID values.
+     *
+     * @param visitIds The `visitId` values of the logs to retrieve.
+     * @param sort     The sort order of the result.
+     * @return A list of {@link VisitLogDocument} instances matching one of the specified values.
+     */
+    @Query(fields = VisitLogDocumentRepositoryCustom.LIST_FIELDS)
+    List<VisitLogDocument> findByVisitIdIn(Collection<?> visitIds, Sort sort);
 
     /**
-     * Finds all {@link VisitLogDocument} entries associated with the specified visit ID.
+     * Removes all {@link VisitLogDocument} entries associated with any of the specified visit ID values, without
+     * loading them.
      *
-     * @param visitId The ID of the visit associated with the logs to retrieve.
-     * @return A list of {@link VisitLogDocument} instances matching the specified visit ID.
+     * @param visitIds The `visitId` values of the logs to remove.
+     * @return The number of removed documents.
      */
-    List<VisitLogDocument> findByVisitId(String visitId);
+    long deleteByVisitIdIn(Collection<?> visitIds);
 }
 // end::repository[]
\ No newline at end of file
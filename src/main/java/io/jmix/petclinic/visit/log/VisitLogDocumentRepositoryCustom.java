@@ -0,0 +1,280 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Custom repository fragment for {@link VisitLogDocumentRepository} containing queries that cannot be expressed
+ * through Spring Data's query derivation.
+ * <p>
+ * The implementation ({@link VisitLogDocumentRepositoryCustomImpl}) is picked up automatically by Spring Data
+ * and uses {@link org.springframework.data.mongodb.core.MongoTemplate} directly.
+ * </p>
+ *
+ * @see VisitLogDocumentRepository
+ */
+public interface VisitLogDocumentRepositoryCustom {
+
+    /**
+     * Field projection of the queries that read visit logs for lists. It leaves out
+     * {@link VisitLogDocument#getSearchText()}, which may hold a large part of a description stored in GridFS.
+     */
+    String LIST_FIELDS = "{ 'searchText': 0 }";
+
+    /**
+     * Scrolls through the {@link VisitLogDocument} entries of a visit in `createdAt` / `id` order using
+     * keyset pagination.
+     * <p>
+     * Instead of skipping the previous pages, the query continues right after the key of the last entry that
+     * was seen, which is resolved through the compound `(visitId, createdAt, _id)` index. Therefore every
+     * page costs the same, regardless of how deep it is.
+     * </p>
+     *
+     * @param visitIds The `visitId` values of the logs to retrieve, see {@link VisitLogVisitIdMigration#queryValues}.
+     * @param position The position to continue after, {@link org.springframework.data.domain.ScrollPosition#keyset()}
+     *                 for the first page.
+     * @param limit    The maximum number of entries to return.
+     * @return A {@link Window} with the entries and the positions to continue from.
+     */
+    Window<VisitLogDocument> scrollByVisitIdIn(Collection<?> visitIds, KeysetScrollPosition position, int limit);
+
+    /**
+     * Assigns a `createdAt` timestamp to all {@link VisitLogDocument} entries that were stored before the
+     * timestamp was introduced. The timestamp is derived from the creation time embedded in their ObjectId.
+     *
+     * @return The number of updated documents.
+     */
+    long backfillCreatedAt();
+
+    /**
+     * Writes the given {@link VisitLogDocument} entries in a single bulk write.
+     * <p>
+     * Documents without an `id` are inserted and receive a newly generated ObjectId, all other documents
+     * replace (or create) the document with their `id`. Failures of single documents do not abort the
+     * bulk write but are reported by their position in the given list. In {@link BulkOperations.BulkMode#ORDERED}
+     * mode, the documents after the first failure are not written and reported as failed as well.
+     * </p>
+     *
+     * @param documents The documents to write.
+     * @param bulkMode  Whether MongoDB has to apply the writes in order and stop at the first failure.
+     * @return Error messages by the position of the failed document in {@code documents}; empty if all were written.
+     */
+    Map<Integer, String> bulkSave(List<VisitLogDocument> documents, BulkOperations.BulkMode bulkMode);
+
+    /**
+     * Deletes the given {@link VisitLogDocument} entries, unless they have been saved again since they were read.
+     * <p>
+     * A document is only deleted while its stored `updatedAt` is still the one of the given document, so a
+     * concurrent save is not lost, e.g. when {@link VisitLogArchival} removes visit logs it has just archived.
+     * </p>
+     *
+     * @param documents The documents to delete, as they have been read.
+     * @return The number of deleted documents.
+     */
+    long deleteAllUnchanged(Collection<VisitLogDocument> documents);
+
+    /**
+     * Writes the given {@link VisitLogDocument} entries in a single unordered bulk write, unless the stored document
+     * with the same `id` has been saved more recently.
+     * <p>
+     * In contrast to {@link #bulkSave}, a document only replaces a stored document whose `updatedAt` is older or
+     * missing. This is used by delayed writes, e.g. the replay of {@link VisitLogJournal}, which may repeat a save
+     * that has been overwritten meanwhile.
+     * </p>
+     *
+     * @param documents The documents to write. All of them have an `id` and `updatedAt`.
+     * @return The failed documents and the documents that were skipped because the stored document is newer.
+     */
+    ConditionalSaveResult bulkSaveIfNewer(List<VisitLogDocument> documents);
+
+    /**
+     * Outcome of {@link #bulkSaveIfNewer}.
+     *
+     * @param errors  Error messages by the position of the failed document.
+     * @param skipped Positions of the documents not written because the stored document is newer.
+     */
+    record ConditionalSaveResult(Map<Integer, String> errors, Set<Integer> skipped) {
+
+        /**
+         * @return Whether the document at the given position has been written.
+         */
+        public boolean isWritten(int index) {
+            return !errors.containsKey(index) && !skipped.contains(index);
+        }
+    }
+
+    /**
+     * Counts the {@link VisitLogDocument} entries of several visits with a single aggregation
+     * (`$match` on the visit IDs followed by `$group` by visit ID).
+     *
+     * @param visitIds The `visitId` values of the logs to count, see {@link VisitLogVisitIdMigration#queryValues}.
+     * @return The number of logs by visit ID; visits without logs are not contained.
+     */
+    Map<UUID, Long> countPerVisitId(Collection<?> visitIds);
+
+    /**
+     * Performs a full-text search over `title` and `description` of the {@link VisitLogDocument} entries.
+     * <p>
+     * The search is executed as a MongoDB `$text` query, which always uses the text index of the collection.
+     * If the index does not exist, MongoDB rejects the query instead of scanning the collection.
+     * </p>
+     *
+     * @param visitIds The `visitId` values to restrict the search to, or {@code null} to search all visit logs.
+     * @param text     The search terms.
+     * @param pageable The page to retrieve. If it is unsorted, the entries are sorted by relevance, most relevant
+     *                 first, and then by creation.
+     * @return The matching documents of the requested page.
+     */
+    List<VisitLogDocument> searchByText(@Nullable Collection<?> visitIds, String text, Pageable pageable);
+
+    /**
+     * Counts the {@link VisitLogDocument} entries matching a full-text search.
+     *
+     * @param visitIds The `visitId` values to restrict the search to, or {@code null} to search all visit logs.
+     * @param text     The search terms.
+     * @return The number of matching documents.
+     */
+    long countByText(@Nullable Collection<?> visitIds, String text);
+
+    /**
+     * Finds the {@link VisitLogDocument} entries matching arbitrary criteria, e.g. translated from a Jmix condition
+     * by {@link VisitLogCriteriaTranslator}.
+     *
+     * @param criteria The criteria to match.
+     * @param text     Full-text search terms that entries have to match in addition, or {@code null}.
+     * @param pageable The page to retrieve, including its sort order. If it is unsorted, the entries are sorted by
+     *                 relevance if a full-text search is given, and then by creation.
+     * @return The matching documents of the requested page.
+     */
+    List<VisitLogDocument> findByCriteria(Criteria criteria, @Nullable String text, Pageable pageable);
+
+    /**
+     * Counts the {@link VisitLogDocument} entries matching arbitrary criteria.
+     *
+     * @param criteria The criteria to match.
+     * @param text     Full-text search terms that entries have to match in addition, or {@code null}.
+     * @return The number of matching documents.
+     */
+    long countByCriteria(Criteria criteria, @Nullable String text);
+
+    /**
+     * Streams the {@link VisitLogDocument} entries matching the given criteria through a MongoDB cursor.
+     * <p>
+     * The documents are fetched lazily in batches of {@code batchSize} while the stream is consumed, so only one
+     * batch is held in memory at a time, regardless of the size of the result. The stream has to be closed to
+     * release the cursor.
+     * </p>
+     *
+     * @param criteria  The criteria to match.
+     * @param sort      The order of the documents.
+     * @param batchSize The number of documents fetched per round-trip.
+     * @return The matching documents.
+     */
+    Stream<VisitLogDocument> streamByCriteria(Criteria criteria, Sort sort, int batchSize);
+
+    /**
+     * Writes the copied visit, pet and owner attributes into all {@link VisitLogDocument} entries of a visit.
+     *
+     * @param visitIds The `visitId` values of the visit, see {@link VisitLogVisitIdMigration#queryValues}.
+     * @param details  The attributes to write.
+     * @return The number of updated documents.
+     */
+    long updateVisitDetails(Collection<?> visitIds, VisitLogVisitDetails details);
+
+    /**
+     * Writes the copied pet and owner attributes into all {@link VisitLogDocument} entries of a pet.
+     *
+     * @param petId     The ID of the pet.
+     * @param petName   The current name of the pet.
+     * @param ownerId   The ID of the current owner of the pet.
+     * @param ownerName The full name of the current owner.
+     * @return The number of updated documents.
+     */
+    long updatePetDetails(UUID petId, @Nullable String petName, @Nullable UUID ownerId, @Nullable String ownerName);
+
+    /**
+     * Writes the copied owner name into all {@link VisitLogDocument} entries of an owner's pets.
+     *
+     * @param ownerId   The ID of the owner.
+     * @param ownerName The current full name of the owner.
+     * @return The number of updated documents.
+     */
+    long updateOwnerName(UUID ownerId, @Nullable String ownerName);
+
+    /**
+     * Returns the distinct visits of the {@link VisitLogDocument} entries matching the given criteria, e.g. to
+     * invalidate their cached logs after an update.
+     *
+     * @param criteria The criteria to match.
+     * @return The distinct visit IDs.
+     */
+    Set<UUID> findDistinctVisitIds(Criteria criteria);
+
+    /**
+     * Returns the distinct visits of the {@link VisitLogDocument} entries matching the given full-text search terms
+     * in their title or description.
+     *
+     * @param text           The search terms.
+     * @param limit          The maximum number of returned visit IDs.
+     * @param stringVisitIds Whether documents may still store their `visitId` as string, see
+     *                       {@link VisitLogVisitIdMigration}, so that a visit can be found in both forms.
+     * @return Up to {@code limit} distinct visit IDs.
+     */
+    Set<UUID> findDistinctVisitIdsByText(String text, int limit, boolean stringVisitIds);
+
+    /**
+     * Counts the {@link VisitLogDocument} entries created in the given period per day and visit.
+     *
+     * @param from     The start of the period (inclusive).
+     * @param to       The end of the period (exclusive).
+     * @param timeZone The time zone defining the days.
+     * @return The number of entries per day and visit; combinations without entries are omitted.
+     */
+    List<VisitLogDailyCount> countPerDayAndVisit(Instant from, Instant to, ZoneId timeZone);
+
+    /**
+     * Finds up to {@code limit} {@link VisitLogDocument} entries that do not contain the copied visit attributes
+     * yet, in `_id` order. Only `_id` and `visitId` of the documents are loaded.
+     *
+     * @param afterId The `_id` of the last document of the previous batch, or {@code null} to start from the beginning.
+     * @param limit   The maximum number of documents to return.
+     * @return The documents of the batch.
+     */
+    List<VisitLogDocument> findWithoutVisitDetails(@Nullable String afterId, int limit);
+
+    /**
+     * Converts the string `visitId` of up to {@code batchSize} {@link VisitLogDocument} entries to a binary UUID.
+     * <p>
+     * The documents are processed in `_id` order, starting after {@code afterId}. Every document is updated only if
+     * its `visitId` still holds the string that was read, so concurrent writes of the application are not
+     * overwritten. Strings that are not a valid UUID are left untouched.
+     * </p>
+     *
+     * @param afterId   The `_id` returned by the previous batch, or {@code null} to start from the beginning.
+     * @param batchSize The maximum number of documents to convert.
+     * @return The `_id` of the last document of the batch, or {@code null} if no documents were left.
+     */
+    @Nullable
+    Object migrateVisitIdsToUuid(@Nullable Object afterId, int batchSize);
+
+    /**
+     * Counts the {@link VisitLogDocument} entries whose `visitId` is still stored as a UUID string.
+     *
+     * @return The number of documents that have not been migrated yet.
+     */
+    long countStringVisitIds();
+}
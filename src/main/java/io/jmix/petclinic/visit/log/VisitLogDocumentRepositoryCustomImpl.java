@@ -0,0 +1,390 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * {@link MongoTemplate} based implementation of {@link VisitLogDocumentRepositoryCustom}.
+ */
+public class VisitLogDocumentRepositoryCustomImpl implements VisitLogDocumentRepositoryCustom {
+
+    private static final Pattern UUID_STRING = Pattern.compile(
+            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    private final MongoTemplate mongoTemplate;
+
+    public VisitLogDocumentRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Window<VisitLogDocument> scrollByVisitIdIn(Collection<?> visitIds, KeysetScrollPosition position, int limit) {
+        Query query = Query.query(where("visitId").in(visitIds))
+                .with(VisitLogPaging.CREATION_ORDER)
+                .with(position)
+                .limit(limit);
+        query.fields().exclude("searchText");
+
+        return mongoTemplate.scroll(query, VisitLogDocument.class);
+    }
+
+    @Override
+    public long backfillCreatedAt() {
+        Query withoutCreatedAt = Query.query(where("createdAt").exists(false));
+        AggregationUpdate createdAtFromId = AggregationUpdate.update()
+                .set("createdAt").toValue(ConvertOperators.ToDate.toDate("$_id"));
+
+        return mongoTemplate.updateMulti(withoutCreatedAt, createdAtFromId, VisitLogDocument.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public Map<Integer, String> bulkSave(List<VisitLogDocument> documents, BulkOperations.BulkMode bulkMode) {
+        if (documents.isEmpty()) {
+            return Map.of();
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(bulkMode, VisitLogDocument.class);
+        for (VisitLogDocument document : documents) {
+            if (document.getId() == null) {
+                document.setId(new ObjectId().toHexString());
+                bulkOperations.insert(document);
+            } else {
+                bulkOperations.replaceOne(
+                        Query.query(where("id").is(document.getId())),
+                        document,
+                        FindAndReplaceOptions.options().upsert()
+                );
+            }
+        }
+
+        try {
+            bulkOperations.execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            return collectErrors(e, documents.size(), bulkMode);
+        }
+    }
+
+    @Override
+    public long deleteAllUnchanged(Collection<VisitLogDocument> documents) {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+
+        // a missing updatedAt matches null, like documents that were stored before the field was introduced
+        Criteria unchanged = new Criteria().orOperator(documents.stream()
+                .map(document -> where("id").is(document.getId()).and("updatedAt").is(document.getUpdatedAt()))
+                .toList());
+        return mongoTemplate.remove(Query.query(unchanged), VisitLogDocument.class).getDeletedCount();
+    }
+
+    @Override
+    public ConditionalSaveResult bulkSaveIfNewer(List<VisitLogDocument> documents) {
+        if (documents.isEmpty()) {
+            return new ConditionalSaveResult(Map.of(), Set.of());
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VisitLogDocument.class);
+        for (VisitLogDocument document : documents) {
+            bulkOperations.replaceOne(
+                    Query.query(where("id").is(document.getId()).orOperator(
+                            where("updatedAt").lt(document.getUpdatedAt()),
+                            where("updatedAt").exists(false)
+                    )),
+                    document,
+                    FindAndReplaceOptions.options().upsert()
+            );
+        }
+
+        try {
+            bulkOperations.execute();
+            return new ConditionalSaveResult(Map.of(), Set.of());
+        } catch (BulkOperationException e) {
+            // if the stored document is newer, the filter does not match and the upsert collides with its ID
+            Map<Integer, String> errors = new LinkedHashMap<>();
+            Set<Integer> skipped = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                    skipped.add(error.getIndex());
+                } else {
+                    errors.put(error.getIndex(), error.getMessage());
+                }
+            }
+            return new ConditionalSaveResult(errors, skipped);
+        }
+    }
+
+    private Map<Integer, String> collectErrors(BulkOperationException e, int documentCount, BulkOperations.BulkMode bulkMode) {
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        for (BulkWriteError error : e.getErrors()) {
+            errors.put(error.getIndex(), error.getMessage());
+        }
+
+        if (bulkMode == BulkOperations.BulkMode.ORDERED) {
+            int firstFailedIndex = e.getErrors().get(0).getIndex();
+            for (int i = firstFailedIndex + 1; i < documentCount; i++) {
+                errors.putIfAbsent(i, "Not written because of a previous error in the ordered bulk write");
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public Map<UUID, Long> countPerVisitId(Collection<?> visitIds) {
+        if (visitIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Aggregation countPerVisit = Aggregation.newAggregation(
+                Aggregation.match(where("visitId").in(visitIds)),
+                Aggregation.group("visitId").count().as("count")
+        );
+
+        // while visit IDs are migrated, the logs of a visit may be grouped under both forms of its ID
+        Map<UUID, Long> counts = new HashMap<>();
+        mongoTemplate.aggregate(countPerVisit, VisitLogDocument.class, Document.class)
+                .forEach(result -> counts.merge(toUuid(result.get("_id")), ((Number) result.get("count")).longValue(), Long::sum));
+        return counts;
+    }
+
+    private UUID toUuid(Object visitId) {
+        return visitId instanceof UUID uuid ? uuid : UUID.fromString(visitId.toString());
+    }
+
+    @Override
+    public List<VisitLogDocument> searchByText(@Nullable Collection<?> visitIds, String text, Pageable pageable) {
+        Query query = sortByScoreIfUnsorted(createTextQuery(visitIds, text), pageable)
+                .with(pageable);
+        query.fields().exclude("searchText");
+
+        return mongoTemplate.find(query, VisitLogDocument.class);
+    }
+
+    @Override
+    public long countByText(@Nullable Collection<?> visitIds, String text) {
+        return mongoTemplate.count(createTextQuery(visitIds, text), VisitLogDocument.class);
+    }
+
+    private TextQuery createTextQuery(@Nullable Collection<?> visitIds, String text) {
+        TextQuery query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text));
+        if (visitIds != null) {
+            query.addCriteria(where("visitId").in(visitIds));
+        }
+        return query;
+    }
+
+    /**
+     * Sorts a full-text search by relevance unless the caller requested a sort order, e.g. by a column of a data
+     * grid. Entries of the same relevance are sorted by creation.
+     */
+    private Query sortByScoreIfUnsorted(TextQuery query, Pageable pageable) {
+        return pageable.getSort().isSorted()
+                ? query
+                : query.sortByScore().with(VisitLogPaging.CREATION_ORDER);
+    }
+
+    @Override
+    public List<VisitLogDocument> findByCriteria(Criteria criteria, @Nullable String text, Pageable pageable) {
+        Query query;
+        if (text != null) {
+            query = sortByScoreIfUnsorted(TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text)), pageable)
+                    .addCriteria(criteria);
+        } else {
+            query = Query.query(criteria);
+            if (pageable.getSort().isUnsorted()) {
+                query.with(VisitLogPaging.CREATION_ORDER);
+            }
+        }
+        query.fields().exclude("searchText");
+
+        return mongoTemplate.find(query.with(pageable), VisitLogDocument.class);
+    }
+
+    @Override
+    public long countByCriteria(Criteria criteria, @Nullable String text) {
+        Query query = text != null
+                ? TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text)).addCriteria(criteria)
+                : Query.query(criteria);
+
+        return mongoTemplate.count(query, VisitLogDocument.class);
+    }
+
+    @Override
+    public Stream<VisitLogDocument> streamByCriteria(Criteria criteria, Sort sort, int batchSize) {
+        Query query = Query.query(criteria)
+                .with(sort)
+                .cursorBatchSize(batchSize);
+        query.fields().exclude("searchText");
+
+        return mongoTemplate.stream(query, VisitLogDocument.class);
+    }
+
+    @Override
+    public long updateVisitDetails(Collection<?> visitIds, VisitLogVisitDetails details) {
+        Update update = new Update()
+                .set("petId", details.petId())
+                .set("petName", details.petName())
+                .set("ownerId", details.ownerId())
+                .set("ownerName", details.ownerName())
+                .set("visitStart", details.visitStart());
+
+        return mongoTemplate.updateMulti(Query.query(where("visitId").in(visitIds)), update, VisitLogDocument.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public long updatePetDetails(UUID petId, @Nullable String petName, @Nullable UUID ownerId, @Nullable String ownerName) {
+        Update update = new Update()
+                .set("petName", petName)
+                .set("ownerId", ownerId)
+                .set("ownerName", ownerName);
+
+        return mongoTemplate.updateMulti(Query.query(where("petId").is(petId)), update, VisitLogDocument.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public long updateOwnerName(UUID ownerId, @Nullable String ownerName) {
+        return mongoTemplate.updateMulti(
+                Query.query(where("ownerId").is(ownerId)),
+                Update.update("ownerName", ownerName),
+                VisitLogDocument.class
+        ).getModifiedCount();
+    }
+
+    @Override
+    public Set<UUID> findDistinctVisitIds(Criteria criteria) {
+        // the values are read untyped, as not yet migrated documents store the visit ID as string
+        return mongoTemplate.findDistinct(Query.query(criteria), "visitId", VisitLogDocument.class, Object.class)
+                .stream()
+                .map(this::toUuid)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<UUID> findDistinctVisitIdsByText(String text, int limit, boolean stringVisitIds) {
+        // a visit has a group per form of its visit ID, so twice the groups contain enough distinct visits
+        long groupLimit = stringVisitIds ? 2L * limit : limit;
+        Aggregation matchingVisits = Aggregation.newAggregation(
+                Aggregation.match(TextCriteria.forDefaultLanguage().matching(text)),
+                Aggregation.group("visitId"),
+                Aggregation.limit(groupLimit)
+        );
+
+        return mongoTemplate.aggregate(matchingVisits, VisitLogDocument.class, Document.class)
+                .getMappedResults()
+                .stream()
+                .map(result -> toUuid(result.get("_id")))
+                .distinct()
+                .limit(limit)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<VisitLogDailyCount> countPerDayAndVisit(Instant from, Instant to, ZoneId timeZone) {
+        Aggregation dailyCounts = Aggregation.newAggregation(
+                Aggregation.match(where("createdAt").gte(from).lt(to)),
+                Aggregation.project("visitId")
+                        .and(DateOperators.DateToString.dateOf("createdAt")
+                                .toString("%Y-%m-%d")
+                                .withTimezone(DateOperators.Timezone.valueOf(timeZone.getId())))
+                        .as("day"),
+                Aggregation.group("day", "visitId").count().as("count")
+        );
+
+        return mongoTemplate.aggregate(dailyCounts, VisitLogDocument.class, Document.class)
+                .getMappedResults()
+                .stream()
+                .map(result -> {
+                    Document key = result.get("_id", Document.class);
+                    return new VisitLogDailyCount(key.getString("day"), toUuid(key.get("visitId")),
+                            ((Number) result.get("count")).longValue());
+                })
+                .toList();
+    }
+
+    @Override
+    public List<VisitLogDocument> findWithoutVisitDetails(@Nullable String afterId, int limit) {
+        Query query = Query.query(where("petId").exists(false));
+        if (afterId != null) {
+            query.addCriteria(where("id").gt(afterId));
+        }
+        query.fields().include("id", "visitId");
+        query.with(Sort.by("id")).limit(limit);
+
+        return mongoTemplate.find(query, VisitLogDocument.class);
+    }
+
+    @Override
+    @Nullable
+    public Object migrateVisitIdsToUuid(@Nullable Object afterId, int batchSize) {
+        String collectionName = mongoTemplate.getCollectionName(VisitLogDocument.class);
+
+        // documents are read untyped, so that the string visitId is not converted on read
+        Query stringVisitIds = Query.query(where("visitId").regex(UUID_STRING));
+        if (afterId != null) {
+            stringVisitIds.addCriteria(where("_id").gt(afterId));
+        }
+        stringVisitIds.fields().include("_id", "visitId");
+        stringVisitIds.with(Sort.by("_id")).limit(batchSize);
+
+        List<Document> batch = mongoTemplate.find(stringVisitIds, Document.class, collectionName);
+        if (batch.isEmpty()) {
+            return null;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collectionName);
+        for (Document document : batch) {
+            String visitId = document.getString("visitId");
+            bulkOperations.updateOne(
+                    Query.query(where("_id").is(document.get("_id")).and("visitId").is(visitId)),
+                    Update.update("visitId", UUID.fromString(visitId))
+            );
+        }
+        bulkOperations.execute();
+
+        return batch.get(batch.size() - 1).get("_id");
+    }
+
+    @Override
+    public long countStringVisitIds() {
+        return mongoTemplate.count(Query.query(where("visitId").regex(UUID_STRING)), VisitLogDocument.class);
+    }
+}
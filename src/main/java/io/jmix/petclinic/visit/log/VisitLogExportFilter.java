@@ -0,0 +1,41 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Selects the visit logs exported by {@link VisitLogExporter}.
+ *
+ * @param createdFrom The earliest creation time of exported visit logs (inclusive), or {@code null} for no lower bound.
+ * @param createdTo   The latest creation time of exported visit logs (exclusive), or {@code null} for no upper bound.
+ * @param visitIds    The visits whose logs are exported, or {@code null} to export the logs of all visits.
+ */
+public record VisitLogExportFilter(@Nullable Instant createdFrom,
+                                   @Nullable Instant createdTo,
+                                   @Nullable Collection<UUID> visitIds) {
+
+    /**
+     * Selects the visit logs of all visits created in the given period.
+     *
+     * @param createdFrom The start of the period (inclusive), or {@code null}.
+     * @param createdTo   The end of the period (exclusive), or {@code null}.
+     * @return The filter.
+     */
+    public static VisitLogExportFilter createdBetween(@Nullable Instant createdFrom, @Nullable Instant createdTo) {
+        return new VisitLogExportFilter(createdFrom, createdTo, null);
+    }
+
+    /**
+     * Selects all visit logs of the given visits.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The filter.
+     */
+    public static VisitLogExportFilter ofVisits(Collection<UUID> visitIds) {
+        return new VisitLogExportFilter(null, null, List.copyOf(visitIds));
+    }
+}
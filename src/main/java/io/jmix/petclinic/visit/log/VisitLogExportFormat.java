@@ -0,0 +1,26 @@
+package io.jmix.petclinic.visit.log;
+
+/**
+ * File formats supported by {@link VisitLogExporter}.
+ */
+public enum VisitLogExportFormat {
+
+    CSV("csv", "text/csv;charset=UTF-8"),
+    XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final String fileExtension;
+    private final String contentType;
+
+    VisitLogExportFormat(String fileExtension, String contentType) {
+        this.fileExtension = fileExtension;
+        this.contentType = contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
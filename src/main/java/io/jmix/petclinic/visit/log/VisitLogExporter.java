@@ -0,0 +1,351 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.MessageTools;
+import io.jmix.core.Metadata;
+import io.jmix.core.metamodel.model.MetaClass;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Exports visit logs as CSV or xlsx file with constant memory usage, regardless of the number of exported entries.
+ * <p>
+ * The {@link VisitLogDocument}s are read through a MongoDB cursor in batches of
+ * `petclinic.visitlog.export.cursor-batch-size` ({@link VisitLogDocumentRepository#streamByCriteria}) and every
+ * document is written as soon as it has been read (with the bucket layout, {@link VisitLogBucketStore#streamByCriteria}
+ * unwinds the buckets on the cursor). Neither the result nor the file is materialized:
+ * <ul>
+ *     <li>CSV rows are written through a small buffer directly into the given output stream, e.g. the HTTP
+ *     response.</li>
+ *     <li>xlsx rows are written with the streaming {@link SXSSFWorkbook}, which keeps only the last
+ *     `petclinic.visitlog.export.xlsx-row-access-window` rows in memory and flushes older rows to a compressed
+ *     temporary file. Once all rows are written, the workbook is assembled from that file into the output stream.
+ *     A new sheet is started whenever a sheet reaches the row limit of the format.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Visit logs are exported in creation order, including the copied pet, owner and visit start attributes
+ * (see {@link VisitLogDenormalization}). Creation timestamps are written as local date
+ * and time in the time zone `petclinic.visitlog.export.time-zone`.
+ * </p>
+ * <p>
+ * Entries of archived visits are exported as well: the matching archived entries are read from
+ * {@link VisitLogArchive} before the export starts and merged into the cursor in creation order, where a stored
+ * visit log replaces an archived one with the same ID. Unlike the stored entries, the archived entries of the
+ * export are held in memory.
+ * </p>
+ * <p>
+ * Descriptions stored in GridFS are exported in full: they are read through {@link VisitLogContentStorage} while
+ * their row is written, so only one of them is held in memory at a time. A description that exceeds
+ * `petclinic.visitlog.content.max-loaded-description-size`, or the cell size limit of xlsx, is cut off and ends with
+ * {@value #TRUNCATION_MARKER}.
+ * </p>
+ */
+@Component("petclinic_VisitLogExporter")
+public class VisitLogExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogExporter.class);
+
+    private static final List<String> PROPERTIES = List.of(
+            "createdAt", "visitStart", "petName", "ownerName", "visit", "title", "description"
+    );
+
+    /**
+     * Appended to descriptions that could not be exported in full.
+     */
+    public static final String TRUNCATION_MARKER = " [truncated]";
+
+    private static final int CSV_BUFFER_SIZE = 64 * 1024;
+    private static final int XLSX_MAX_ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int XLSX_MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogContentStorage visitLogContentStorage;
+    private final VisitLogArchive visitLogArchive;
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+    private final MessageTools messageTools;
+    private final MetaClass visitLogMetaClass;
+    private final VisitLogProperties.Export settings;
+
+    public VisitLogExporter(VisitLogDocumentRepository visitLogDocumentRepository,
+                            VisitLogBucketStore visitLogBucketStore, VisitLogContentStorage visitLogContentStorage,
+                            VisitLogArchive visitLogArchive, VisitLogVisitIdMigration visitLogVisitIdMigration,
+                            MessageTools messageTools,
+                            Metadata metadata, VisitLogProperties visitLogProperties) {
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogContentStorage = visitLogContentStorage;
+        this.visitLogArchive = visitLogArchive;
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+        this.messageTools = messageTools;
+        this.visitLogMetaClass = metadata.getClass(VisitLog.class);
+        this.settings = visitLogProperties.getExport();
+    }
+
+    /**
+     * Writes the selected visit logs to the given output stream. The stream is not closed.
+     *
+     * @param filter The visit logs to export.
+     * @param format The file format.
+     * @param output The stream to write the file to.
+     * @return The number of exported visit logs.
+     * @throws UncheckedIOException If writing to the output stream fails, e.g. because the download was cancelled.
+     */
+    public long export(VisitLogExportFilter filter, VisitLogExportFormat format, OutputStream output) {
+        long startedAt = System.nanoTime();
+        long exportedCount;
+        List<VisitLogDocument> archived = visitLogArchive.findCreatedBetween(filter.visitIds(), filter.createdFrom(),
+                filter.createdTo());
+        try (Stream<VisitLogDocument> stored = streamByCriteria(criteria(filter))) {
+            Iterator<VisitLogDocument> visitLogDocuments = archived.isEmpty()
+                    ? stored.iterator()
+                    : new CreationOrderMerge(stored.iterator(), archived.iterator());
+            exportedCount = switch (format) {
+                case CSV -> writeCsv(visitLogDocuments, output);
+                case XLSX -> writeXlsx(visitLogDocuments, output);
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException("Export of visit logs failed", e);
+        }
+
+        log.info("Exported {} visit logs as {} in {} ms", exportedCount, format,
+                (System.nanoTime() - startedAt) / 1_000_000);
+        return exportedCount;
+    }
+
+    private Stream<VisitLogDocument> streamByCriteria(Criteria criteria) {
+        return visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.streamByCriteria(criteria, VisitLogPaging.CREATION_ORDER, settings.getCursorBatchSize())
+                : visitLogDocumentRepository.streamByCriteria(criteria, VisitLogPaging.CREATION_ORDER,
+                settings.getCursorBatchSize());
+    }
+
+    private Criteria criteria(VisitLogExportFilter filter) {
+        List<Criteria> criteria = new ArrayList<>(3);
+        if (filter.visitIds() != null) {
+            criteria.add(where("visitId").in(visitLogVisitIdMigration.queryValues(filter.visitIds())));
+        }
+        if (filter.createdFrom() != null) {
+            criteria.add(where("createdAt").gte(filter.createdFrom()));
+        }
+        if (filter.createdTo() != null) {
+            criteria.add(where("createdAt").lt(filter.createdTo()));
+        }
+        return VisitLogCriteriaTranslator.and(criteria);
+    }
+
+    /**
+     * Merges two iterators that are both in creation order. Of two visit logs with the same ID, only the one of
+     * {@code stored} is returned.
+     */
+    private static class CreationOrderMerge implements Iterator<VisitLogDocument> {
+
+        private static final Comparator<VisitLogDocument> CREATION_ORDER = Comparator
+                .comparing(VisitLogDocument::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(VisitLogDocument::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        private final Iterator<VisitLogDocument> stored;
+        private final Iterator<VisitLogDocument> archived;
+        private VisitLogDocument nextStored;
+        private VisitLogDocument nextArchived;
+
+        CreationOrderMerge(Iterator<VisitLogDocument> stored, Iterator<VisitLogDocument> archived) {
+            this.stored = stored;
+            this.archived = archived;
+            this.nextStored = stored.hasNext() ? stored.next() : null;
+            this.nextArchived = archived.hasNext() ? archived.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextStored != null || nextArchived != null;
+        }
+
+        @Override
+        public VisitLogDocument next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int comparison = nextStored == null ? 1
+                    : nextArchived == null ? -1
+                    : CREATION_ORDER.compare(nextStored, nextArchived);
+            if (comparison == 0) {
+                // saved again after the archival
+                nextArchived = archived.hasNext() ? archived.next() : null;
+            }
+            if (comparison <= 0) {
+                VisitLogDocument next = nextStored;
+                nextStored = stored.hasNext() ? stored.next() : null;
+                return next;
+            }
+            VisitLogDocument next = nextArchived;
+            nextArchived = archived.hasNext() ? archived.next() : null;
+            return next;
+        }
+    }
+
+    private long writeCsv(Iterator<VisitLogDocument> visitLogDocuments, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+        writeCsvRow(writer, headers());
+
+        long count = 0;
+        while (visitLogDocuments.hasNext()) {
+            writeCsvRow(writer, values(visitLogDocuments.next()));
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private void writeCsvRow(Writer writer, List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvField(values.get(i)));
+        }
+        writer.write("\r\n");
+    }
+
+    private String csvField(@Nullable Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        String text = value instanceof Instant instant
+                ? LocalDateTime.ofInstant(instant, settings.getTimeZone()).toString()
+                : value.toString();
+        if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+            // prevents spreadsheet applications from evaluating the text as formula
+            text = "'" + text;
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+
+    private long writeXlsx(Iterator<VisitLogDocument> visitLogDocuments, OutputStream output) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, settings.getXlsxRowAccessWindow(), true);
+        try {
+            CellStyle dateTimeStyle = workbook.createCellStyle();
+            dateTimeStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
+            Sheet sheet = null;
+            int rowIndex = XLSX_MAX_ROWS_PER_SHEET;
+            long count = 0;
+            while (visitLogDocuments.hasNext()) {
+                if (rowIndex == XLSX_MAX_ROWS_PER_SHEET) {
+                    sheet = createSheet(workbook);
+                    rowIndex = 1;
+                }
+                writeXlsxRow(sheet.createRow(rowIndex++), values(visitLogDocuments.next()), dateTimeStyle);
+                count++;
+            }
+            if (sheet == null) {
+                createSheet(workbook);
+            }
+
+            workbook.write(output);
+            return count;
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private Sheet createSheet(SXSSFWorkbook workbook) {
+        Sheet sheet = workbook.createSheet(messageTools.getEntityCaption(visitLogMetaClass) + " " + (workbook.getNumberOfSheets() + 1));
+        Row headerRow = sheet.createRow(0);
+        List<String> headers = headers();
+        for (int i = 0; i < headers.size(); i++) {
+            headerRow.createCell(i).setCellValue(headers.get(i));
+        }
+        return sheet;
+    }
+
+    private void writeXlsxRow(Row row, List<?> values, CellStyle dateTimeStyle) {
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+
+            Cell cell = row.createCell(i);
+            if (value instanceof Instant instant) {
+                cell.setCellValue(LocalDateTime.ofInstant(instant, settings.getTimeZone()));
+                cell.setCellStyle(dateTimeStyle);
+            } else if (value instanceof LocalDateTime dateTime) {
+                cell.setCellValue(dateTime);
+                cell.setCellStyle(dateTimeStyle);
+            } else {
+                cell.setCellValue(fitIntoCell(value.toString()));
+            }
+        }
+    }
+
+    private String fitIntoCell(String text) {
+        return text.length() <= XLSX_MAX_TEXT_LENGTH
+                ? text
+                : text.substring(0, XLSX_MAX_TEXT_LENGTH - TRUNCATION_MARKER.length()) + TRUNCATION_MARKER;
+    }
+
+    private List<String> headers() {
+        return PROPERTIES.stream()
+                .map(property -> messageTools.getPropertyCaption(visitLogMetaClass, property))
+                .toList();
+    }
+
+    private List<Object> values(VisitLogDocument visitLogDocument) {
+        // same order as PROPERTIES
+        List<Object> values = new ArrayList<>(PROPERTIES.size());
+        values.add(visitLogDocument.getCreatedAt());
+        values.add(visitLogDocument.getVisitStart());
+        values.add(visitLogDocument.getPetName());
+        values.add(visitLogDocument.getOwnerName());
+        values.add(visitLogDocument.getVisitId());
+        values.add(visitLogDocument.getTitle());
+        values.add(description(visitLogDocument));
+        return values;
+    }
+
+    @Nullable
+    private String description(VisitLogDocument visitLogDocument) {
+        if (visitLogDocument.getDescriptionFileId() == null) {
+            return visitLogDocument.getDescription();
+        }
+        try {
+            return visitLogContentStorage.readDescription(visitLogDocument.getDescriptionFileId());
+        } catch (VisitLogDescriptionTooLargeException e) {
+            // the document holds the beginning of the description
+            return visitLogDocument.getDescription() + TRUNCATION_MARKER;
+        }
+    }
+}
@@ -0,0 +1,739 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only journal of visit logs that could not be saved because MongoDB is unavailable, used by
+ * {@link VisitLogService#saveVisitLog} when `petclinic.visitlog.journal.enabled` is set.
+ * <p>
+ * If writing a visit log fails with a connection failure or is rejected by the open {@link VisitLogCircuitBreaker},
+ * the document is appended to the journal instead and the save succeeds. The journal consists of segment files of
+ * `petclinic.visitlog.journal.segment-size` in `petclinic.visitlog.journal.directory`, which are memory-mapped, so
+ * appending a record is a copy into memory. A dedicated thread forces the appended records to disk every
+ * `petclinic.visitlog.journal.sync-interval`, and a save returns only after its record is on disk. Like this, the
+ * saves of an interval share a single fsync.
+ * </p>
+ * <p>
+ * Every record carries its length and a CRC32C checksum, and its length is written last. After a crash, the segments
+ * are read up to the first incomplete record and the journaled visit logs are restored. A second thread replays the
+ * journal every `petclinic.visitlog.journal.replay-interval` in the order of the first save of each visit log, with
+ * unordered bulk writes of `petclinic.visitlog.journal.replay-batch-size` documents through the circuit breaker.
+ * After each batch, a record with the IDs and `updatedAt` of the replayed visit logs is appended, so a recovery does
+ * not restore them again. As this record may itself be lost in a crash, a replayed document replaces the stored
+ * document only if that one has an older `updatedAt` (see {@link VisitLogDocumentRepositoryCustom#bulkSaveIfNewer}),
+ * and never overwrites a save that reached MongoDB after it. Once the journal is empty, a checkpoint record is
+ * appended and the older segments are deleted.
+ * </p>
+ * <p>
+ * The journal keeps visit logs as they were requested: a failed save is journaled before its description has been
+ * moved into GridFS by {@link VisitLogContentStorage}, which is done by the replay instead. The files of replaced
+ * descriptions are removed only after the replayed documents have been written.
+ * </p>
+ * <p>
+ * Repeated saves of a journaled visit log are coalesced like in {@link VisitLogWriteBehindQueue}, and as long as a
+ * visit log is journaled, its later saves are journaled as well, so that the replay does not overwrite them with an
+ * older state. Journaled visit logs are visible to {@link VisitLogService#loadVisitLog}, but to queries only after
+ * they have been replayed. Removing them appends a record that drops them from the journal.
+ * </p>
+ * <p>
+ * Metrics: `petclinic.visitlog.journal.size` (visit logs waiting to be replayed) and
+ * `petclinic.visitlog.journal.documents` by `outcome`: `journaled`, `replayed` or `failed`.
+ * </p>
+ */
+@Component("petclinic_VisitLogJournal")
+public class VisitLogJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogJournal.class);
+
+    private static final byte SAVE = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CHECKPOINT = 3;
+    private static final byte REPLAYED = 4;
+
+    /**
+     * Length of type and payload (int), CRC32C of type and payload (int) and type (byte) of a record.
+     */
+    private static final int HEADER_SIZE = 9;
+
+    private static final String SEGMENT_PREFIX = "visit-log-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final Codec<Document> DOCUMENT_CODEC = CodecRegistries
+            .withUuidRepresentation(MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD)
+            .get(Document.class);
+
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogCircuitBreaker visitLogCircuitBreaker;
+    private final VisitLogContentStorage visitLogContentStorage;
+    private final VisitLogDenormalization visitLogDenormalization;
+    private final MongoConverter mongoConverter;
+    private final VisitLogProperties.Journal settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final Map<String, VisitLogDocument> pending = new LinkedHashMap<>();
+
+    private final Counter journaledCounter;
+    private final Counter replayedCounter;
+    private final Counter failedCounter;
+
+    @Nullable
+    private Segment segment;
+    private long segmentNumber = 0;
+    private long appendedRecords = 0;
+    private long syncedRecords = 0;
+
+    private volatile boolean running = false;
+    @Nullable
+    private Thread syncer;
+    @Nullable
+    private Thread replayer;
+
+    public VisitLogJournal(VisitLogDocumentRepository visitLogDocumentRepository,
+                           VisitLogBucketStore visitLogBucketStore, VisitLogCache visitLogCache,
+                           VisitLogCircuitBreaker visitLogCircuitBreaker,
+                           VisitLogContentStorage visitLogContentStorage,
+                           VisitLogDenormalization visitLogDenormalization, MongoTemplate mongoTemplate,
+                           VisitLogProperties visitLogProperties, MeterRegistry meterRegistry) {
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogCache = visitLogCache;
+        this.visitLogCircuitBreaker = visitLogCircuitBreaker;
+        this.visitLogContentStorage = visitLogContentStorage;
+        this.visitLogDenormalization = visitLogDenormalization;
+        this.mongoConverter = mongoTemplate.getConverter();
+        this.settings = visitLogProperties.getJournal();
+
+        Gauge.builder("petclinic.visitlog.journal.size", this, VisitLogJournal::size)
+                .description("Visit logs waiting in the journal to be replayed into MongoDB")
+                .register(meterRegistry);
+        this.journaledCounter = documentCounter(meterRegistry, "journaled");
+        this.replayedCounter = documentCounter(meterRegistry, "replayed");
+        this.failedCounter = documentCounter(meterRegistry, "failed");
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("petclinic.visitlog.journal.documents")
+                .description("Visit logs processed by the journal")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        open();
+
+        syncer = new Thread(this::syncLoop, "visit-log-journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        replayer = new Thread(this::replayLoop, "visit-log-journal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /**
+     * Recovers the journaled visit logs and accepts new records, without starting the threads that sync and replay
+     * the journal. With a zero `sync-interval`, appended records are forced to disk by the appending thread.
+     */
+    void open() throws IOException {
+        Files.createDirectories(settings.getDirectory());
+        recover();
+        running = true;
+    }
+
+    /**
+     * @return Whether failed saves are journaled, i.e. the journal is enabled and not shut down.
+     */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Writes a document to MongoDB through {@link VisitLogCircuitBreaker}, or appends it to the journal if MongoDB
+     * is unavailable or the visit log is already journaled. A document without `id` receives a newly generated
+     * ObjectId first, so that the caller can return the visit log with its final ID.
+     *
+     * @param document The document to write.
+     * @param store    Writes the document to MongoDB and returns the stored document.
+     * @return The stored document, or an empty optional if the document has been journaled.
+     * @throws RuntimeException The exception of {@code store} if the journal is disabled, the failure is not
+     *                          caused by the connection to MongoDB, or the document can not be journaled.
+     */
+    public Optional<VisitLogDocument> storeOrAppend(VisitLogDocument document, UnaryOperator<VisitLogDocument> store) {
+        if (!running) {
+            return Optional.of(visitLogCircuitBreaker.execute(() -> store.apply(document)));
+        }
+
+        if (document.getId() == null) {
+            document.setId(new ObjectId().toHexString());
+        }
+        if (getPending(document.getId()).isEmpty()) {
+            try {
+                return Optional.of(visitLogCircuitBreaker.execute(() -> store.apply(document)));
+            } catch (RuntimeException e) {
+                if (!VisitLogCircuitBreaker.isUnavailability(e)) {
+                    throw e;
+                }
+                log.warn("MongoDB is unavailable, appending visit log {} to the journal: {}",
+                        document.getId(), e.getMessage());
+                appendOrRethrow(document, e);
+                return Optional.empty();
+            }
+        }
+
+        appendOrRethrow(document, null);
+        return Optional.empty();
+    }
+
+    private void appendOrRethrow(VisitLogDocument document, @Nullable RuntimeException cause) {
+        try {
+            append(document);
+        } catch (RuntimeException e) {
+            if (cause != null) {
+                cause.addSuppressed(e);
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void append(VisitLogDocument document) {
+        appendAll(List.of(document));
+    }
+
+    /**
+     * Appends documents that could not be written to MongoDB elsewhere, e.g. by {@link VisitLogWriteBehindQueue},
+     * and waits until they are on disk. A document is skipped if a more recent save of the visit log is journaled.
+     *
+     * @param documents The documents to journal. All of them have an ID.
+     * @throws IllegalStateException If the journal is disabled or shut down.
+     */
+    public void appendAll(Collection<VisitLogDocument> documents) {
+        Map<VisitLogDocument, byte[]> payloads = new LinkedHashMap<>();
+        for (VisitLogDocument document : documents) {
+            Document bson = new Document();
+            mongoConverter.write(document, bson);
+            payloads.put(document, encode(bson));
+        }
+
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The visit log journal is shut down");
+            }
+            long record = syncedRecords;
+            for (Map.Entry<VisitLogDocument, byte[]> payload : payloads.entrySet()) {
+                VisitLogDocument document = payload.getKey();
+                VisitLogDocument journaled = pending.get(document.getId());
+                if (journaled != null && isNewer(journaled, document)) {
+                    continue;
+                }
+                record = appendRecord(SAVE, payload.getValue());
+                pending.put(document.getId(), document);
+                journaledCounter.increment();
+            }
+            awaitSynced(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isNewer(VisitLogDocument document, VisitLogDocument other) {
+        return document.getUpdatedAt() != null && other.getUpdatedAt() != null
+                && document.getUpdatedAt().isAfter(other.getUpdatedAt());
+    }
+
+    /**
+     * Returns the journaled document with the given ID, which is more recent than the document stored in MongoDB.
+     *
+     * @param id The ID of the visit log.
+     * @return The journaled document, or an empty optional if the visit log is not waiting to be replayed.
+     */
+    public Optional<VisitLogDocument> getPending(String id) {
+        lock.lock();
+        try {
+            return Optional.ofNullable(pending.get(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops journaled saves of the given visit logs, e.g. because they are removed.
+     *
+     * @param ids The IDs of the visit logs.
+     */
+    public void discard(Collection<String> ids) {
+        lock.lock();
+        try {
+            List<String> discarded = ids.stream().filter(pending::containsKey).toList();
+            if (discarded.isEmpty()) {
+                return;
+            }
+            long record = appendRecord(REMOVE, encode(new Document("ids", discarded)));
+            pending.keySet().removeAll(discarded);
+            awaitSynced(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops journaled saves of all visit logs of the given visits, e.g. because the visits are removed.
+     *
+     * @param visitIds The IDs of the visits.
+     */
+    public void discardVisits(Collection<UUID> visitIds) {
+        lock.lock();
+        try {
+            discard(pending.values().stream()
+                    .filter(document -> visitIds.contains(document.getVisitId()))
+                    .map(VisitLogDocument::getId)
+                    .toList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of visit logs waiting to be replayed.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the journaled visit logs to MongoDB until the journal is empty or MongoDB is unavailable. Visit logs
+     * that MongoDB rejects are logged and dropped.
+     *
+     * @return The number of replayed visit logs.
+     */
+    public int replay() {
+        int replayedCount = 0;
+        List<VisitLogDocument> batch;
+        while (!(batch = nextReplayBatch()).isEmpty()) {
+            // the journaled documents are left as they are, in case the replay has to be repeated
+            List<VisitLogDocument> replayed = batch.stream().map(this::copy).toList();
+            VisitLogDocumentRepositoryCustom.ConditionalSaveResult result;
+            try {
+                result = visitLogCircuitBreaker.execute(() -> write(replayed));
+            } catch (RuntimeException e) {
+                if (VisitLogCircuitBreaker.isUnavailability(e)) {
+                    log.debug("MongoDB is still unavailable, {} journaled visit logs are not replayed yet", size());
+                } else {
+                    log.error("Failed to replay {} journaled visit logs", batch.size(), e);
+                }
+                break;
+            }
+
+            List<VisitLogDocument> failedBatch = batch;
+            result.errors().forEach((index, message) ->
+                    log.error("Failed to replay journaled visit log {}: {}", failedBatch.get(index).getId(), message));
+            if (!result.skipped().isEmpty()) {
+                log.debug("Skipped {} journaled visit logs that have been saved again meanwhile", result.skipped().size());
+            }
+            replayedCounter.increment(batch.size() - result.errors().size());
+            failedCounter.increment(result.errors().size());
+            replayedCount += batch.size() - result.errors().size();
+
+            removeReplayed(batch);
+            List<VisitLogDocument> written = new ArrayList<>();
+            for (int i = 0; i < replayed.size(); i++) {
+                if (result.isWritten(i)) {
+                    written.add(replayed.get(i));
+                }
+            }
+            visitLogDenormalization.reconcile(written);
+            visitLogCache.invalidate(
+                    batch.stream().map(VisitLogDocument::getId).toList(),
+                    batch.stream().map(VisitLogDocument::getVisitId).collect(Collectors.toSet())
+            );
+        }
+        if (replayedCount > 0) {
+            log.info("Replayed {} journaled visit logs into MongoDB", replayedCount);
+        }
+        return replayedCount;
+    }
+
+    private VisitLogDocumentRepositoryCustom.ConditionalSaveResult write(List<VisitLogDocument> documents) {
+        List<VisitLogDocument> withNewDescription = visitLogContentStorage.storeDescriptions(documents);
+        // description files of a failed write are left behind and removed with the replaced descriptions later
+        VisitLogDocumentRepositoryCustom.ConditionalSaveResult result = visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.bulkSaveIfNewer(documents)
+                : visitLogDocumentRepository.bulkSaveIfNewer(documents);
+
+        List<VisitLogDocument> written = new ArrayList<>();
+        List<VisitLogDocument> notWritten = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            if (!withNewDescription.contains(documents.get(i))) {
+                continue;
+            }
+            if (result.isWritten(i)) {
+                written.add(documents.get(i));
+            } else {
+                notWritten.add(documents.get(i));
+            }
+        }
+        visitLogContentStorage.removeReplacedDescriptions(written);
+        visitLogContentStorage.removeUnwrittenDescriptions(notWritten);
+        return result;
+    }
+
+    private VisitLogDocument copy(VisitLogDocument document) {
+        Document bson = new Document();
+        mongoConverter.write(document, bson);
+        return mongoConverter.read(VisitLogDocument.class, bson);
+    }
+
+    private List<VisitLogDocument> nextReplayBatch() {
+        lock.lock();
+        try {
+            return pending.values().stream().limit(settings.getReplayBatchSize()).toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeReplayed(List<VisitLogDocument> batch) {
+        lock.lock();
+        try {
+            // a save of the same visit log journaled during the replay is kept for the next batch
+            List<Document> replayed = batch.stream()
+                    .filter(document -> pending.remove(document.getId(), document))
+                    .map(document -> new Document("id", document.getId())
+                            .append("updatedAt", document.getUpdatedAt() != null ? document.getUpdatedAt().toEpochMilli() : null))
+                    .toList();
+            if (pending.isEmpty()) {
+                checkpoint();
+            } else if (!replayed.isEmpty()) {
+                // not awaited: if the record is lost, the replay is repeated and skipped by the stored `updatedAt`
+                appendRecord(REPLAYED, encode(new Document("documents", replayed)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkpoint() {
+        if (segment == null) {
+            return;
+        }
+        appendRecord(CHECKPOINT, new byte[0]);
+        segment.buffer().force();
+        syncedRecords = appendedRecords;
+        synced.signalAll();
+
+        try (Stream<Path> segmentFiles = listSegmentFiles()) {
+            segmentFiles.filter(path -> !path.equals(segment.path())).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // the file is skipped by the next recovery because of the checkpoint and deleted next time
+                    log.debug("Failed to delete replayed journal segment {}", path, e);
+                }
+            });
+        }
+    }
+
+    private long appendRecord(byte type, byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > settings.getSegmentSize().toBytes()) {
+            throw new IllegalArgumentException("Visit log of " + payload.length + " bytes exceeds the journal segment size");
+        }
+        if (segment == null || segment.buffer().remaining() < recordSize) {
+            rollSegment();
+        }
+
+        MappedByteBuffer buffer = segment.buffer();
+        int position = buffer.position();
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload);
+        buffer.position(position + Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+        // the length is written last, so that a partially written record ends the journal
+        buffer.putInt(position, payload.length + 1);
+        return ++appendedRecords;
+    }
+
+    private void rollSegment() {
+        try {
+            if (segment != null) {
+                segment.buffer().force();
+                segment.channel().close();
+                syncedRecords = appendedRecords;
+                synced.signalAll();
+            }
+            Path path = settings.getDirectory().resolve(String.format("%s%019d%s", SEGMENT_PREFIX, ++segmentNumber, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = new Segment(path, channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, settings.getSegmentSize().toBytes()));
+        } catch (IOException e) {
+            segment = null;
+            throw new UncheckedIOException("Failed to create a visit log journal segment", e);
+        }
+    }
+
+    private void awaitSynced(long record) {
+        if (syncedRecords >= record) {
+            return;
+        }
+        if (settings.getSyncInterval().isZero()) {
+            segment.buffer().force();
+            syncedRecords = appendedRecords;
+            return;
+        }
+        boolean interrupted = false;
+        while (syncedRecords < record) {
+            try {
+                synced.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(settings.getSyncInterval().toNanos());
+                sync();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while syncing the visit log journal", e);
+            }
+        }
+    }
+
+    private void sync() {
+        long record;
+        Segment current;
+        lock.lock();
+        try {
+            if (syncedRecords == appendedRecords || segment == null) {
+                return;
+            }
+            record = appendedRecords;
+            current = segment;
+        } finally {
+            lock.unlock();
+        }
+
+        // forced without holding the lock, so that saves can append further records meanwhile
+        current.buffer().force();
+
+        lock.lock();
+        try {
+            syncedRecords = Math.max(syncedRecords, record);
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayLoop() {
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(settings.getReplayInterval().toNanos());
+                if (size() > 0) {
+                    replay();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while replaying the visit log journal", e);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = listSegmentFiles()) {
+            segmentFiles = files.sorted().toList();
+        }
+
+        for (Path path : segmentFiles) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                readSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.info("Recovered {} visit logs from the journal, they are replayed into MongoDB", pending.size());
+        } else {
+            for (Path path : segmentFiles) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void readSegment(Path path, ByteBuffer buffer) {
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int position = buffer.position();
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() - Integer.BYTES) {
+                return;
+            }
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            byte[] payload = new byte[length - 1];
+            buffer.get(payload);
+
+            CRC32C crc = new CRC32C();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Journal segment {} ends with a corrupt record at position {}", path, position);
+                return;
+            }
+
+            switch (type) {
+                case SAVE -> {
+                    VisitLogDocument document = mongoConverter.read(VisitLogDocument.class, decode(payload));
+                    pending.put(document.getId(), document);
+                }
+                case REMOVE -> pending.keySet().removeAll(decode(payload).getList("ids", String.class));
+                case REPLAYED -> decode(payload).getList("documents", Document.class).forEach(replayed ->
+                        pending.computeIfPresent(replayed.getString("id"),
+                                (id, document) -> isReplayed(document, replayed.getLong("updatedAt")) ? null : document));
+                case CHECKPOINT -> pending.clear();
+                default -> {
+                    log.warn("Journal segment {} contains an unknown record type {} at position {}", path, type, position);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean isReplayed(VisitLogDocument document, @Nullable Long replayedUpdatedAt) {
+        // a later save of the visit log, journaled while the batch was replayed, is restored
+        return replayedUpdatedAt == null
+                || document.getUpdatedAt() == null
+                || document.getUpdatedAt().toEpochMilli() <= replayedUpdatedAt;
+    }
+
+    private Stream<Path> listSegmentFiles() {
+        try {
+            return Files.list(settings.getDirectory())
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the visit log journal segments", e);
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] encode(Document document) {
+        BasicOutputBuffer outputBuffer = new BasicOutputBuffer();
+        DOCUMENT_CODEC.encode(new BsonBinaryWriter(outputBuffer), document, EncoderContext.builder().build());
+        return outputBuffer.toByteArray();
+    }
+
+    private static Document decode(byte[] payload) {
+        return DOCUMENT_CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(payload)), DecoderContext.builder().build());
+    }
+
+    /**
+     * Forces the remaining records to disk before the application shuts down. Journaled visit logs are replayed
+     * after the next start.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        for (Thread thread : new Thread[]{syncer, replayer}) {
+            if (thread != null) {
+                thread.interrupt();
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            }
+        }
+
+        lock.lock();
+        try {
+            if (segment != null) {
+                segment.buffer().force();
+                segment.channel().close();
+                syncedRecords = appendedRecords;
+                synced.signalAll();
+            }
+            if (!pending.isEmpty()) {
+                log.info("{} visit logs remain in the journal until the next start", pending.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+    }
+}
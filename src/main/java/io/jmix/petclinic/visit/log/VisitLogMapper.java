@@ -0,0 +1,158 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.EntityStates;
+import io.jmix.core.Metadata;
+import io.jmix.core.TimeSource;
+import io.jmix.core.metamodel.model.MetaClass;
+import io.jmix.petclinic.entity.visit.Visit;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Converts between the persistent {@link VisitLogDocument} and the {@link VisitLog} DTO entity.
+ * <p>
+ * The mapper is optimized for converting large result sets:
+ * <ul>
+ *     <li>The {@link MetaClass} of {@link VisitLog} is resolved once instead of on every conversion.</li>
+ *     <li>When converting multiple documents, the `visit` reference of every distinct visit is created only once and
+ *     shared by all converted entries of that visit. This avoids a reference instance per document, which makes up
+ *     most of the work per row for the typical "all logs of a visit" result.</li>
+ *     <li>The `visitId` is stored as binary UUID, so no string has to be parsed to create the reference.</li>
+ * </ul>
+ * </p>
+ *
+ * @see VisitLogService
+ */
+@Component("petclinic_VisitLogMapper")
+public class VisitLogMapper {
+
+    private final Metadata metadata;
+    private final EntityStates entityStates;
+    private final DataManager dataManager;
+    private final TimeSource timeSource;
+    private final MetaClass visitLogMetaClass;
+
+    public VisitLogMapper(Metadata metadata, EntityStates entityStates, DataManager dataManager, TimeSource timeSource) {
+        this.metadata = metadata;
+        this.entityStates = entityStates;
+        this.dataManager = dataManager;
+        this.timeSource = timeSource;
+        this.visitLogMetaClass = metadata.getClass(VisitLog.class);
+    }
+
+    /**
+     * Converts a single {@link VisitLogDocument} to a {@link VisitLog} DTO entity.
+     *
+     * @param visitLogDocument The MongoDB document to convert.
+     * @return The converted {@link VisitLog} entity.
+     */
+    public VisitLog toVisitLog(VisitLogDocument visitLogDocument) {
+        return toVisitLog(visitLogDocument, visitReference(visitLogDocument.getVisitId()));
+    }
+
+    /**
+     * Converts multiple {@link VisitLogDocument}s to {@link VisitLog} DTO entities, keeping their order.
+     * Entries of the same visit share one `visit` reference instance.
+     *
+     * @param visitLogDocuments The MongoDB documents to convert.
+     * @return The converted {@link VisitLog} entities.
+     */
+    public List<VisitLog> toVisitLogs(Collection<VisitLogDocument> visitLogDocuments) {
+        return visitLogDocuments.stream()
+                .map(batchConverter())
+                .toList();
+    }
+
+    /**
+     * Creates a stateful converter for a single batch or stream of documents. The converter remembers the `visit`
+     * references it has created, so it must not be shared between unrelated results.
+     *
+     * @return A function converting {@link VisitLogDocument}s to {@link VisitLog} entities.
+     */
+    public Function<VisitLogDocument, VisitLog> batchConverter() {
+        Map<UUID, Visit> visitReferences = new HashMap<>();
+        return visitLogDocument -> toVisitLog(
+                visitLogDocument,
+                visitReferences.computeIfAbsent(visitLogDocument.getVisitId(), this::visitReference)
+        );
+    }
+
+    /**
+     * Converts a {@link VisitLogDocument} to a {@link VisitLog} DTO entity for UI usage.
+     * <p>
+     * During conversion, the `visit` reference is resolved using {@link DataManager#getReference} to maintain
+     * UI associations, and {@link EntityStates#setNew} is set to false to indicate that the entity
+     * is not new. This helps avoid re-persisting the entity when interacting with Jmix UI components.
+     * </p>
+     *
+     * @param visitLogDocument The MongoDB document to convert.
+     * @param visit            The reference to the visit of the document.
+     * @return The converted {@link VisitLog} entity.
+     */
+    // tag::to-visit-log[]
+    private VisitLog toVisitLog(VisitLogDocument visitLogDocument, Visit visit) {
+        VisitLog visitLog = (VisitLog) metadata.create(visitLogMetaClass);
+        entityStates.setNew(visitLog, false);
+
+        visitLog.setId(visitLogDocument.getId());
+        visitLog.setVisit(visit);
+        visitLog.setTitle(visitLogDocument.getTitle());
+        visitLog.setDescription(visitLogDocument.getDescription());
+        if (visitLogDocument.getCreatedAt() != null) {
+            visitLog.setCreatedAt(visitLogDocument.getCreatedAt().atOffset(ZoneOffset.UTC));
+        }
+        visitLog.setPetName(visitLogDocument.getPetName());
+        visitLog.setOwnerName(visitLogDocument.getOwnerName());
+        visitLog.setVisitStart(visitLogDocument.getVisitStart());
+        visitLog.setDescriptionFileId(visitLogDocument.getDescriptionFileId());
+
+        return visitLog;
+    }
+
+    private Visit visitReference(UUID visitId) {
+        return dataManager.getReference(Visit.class, visitId);
+    }
+    // end::to-visit-log[]
+
+    /**
+     * Converts a {@link VisitLog} DTO entity to its persistent form, {@link VisitLogDocument}.
+     * <p>
+     * This method prepares the `VisitLog` DTO for storage by creating a new `VisitLogDocument`
+     * and setting relevant fields, including converting the associated `visit` entity to its identifier
+     * (`visitId`) for database compatibility. New visit logs receive the current time as creation timestamp, and
+     * every converted visit log receives it as `updatedAt`.
+     * The copied visit, pet and owner attributes are not taken from the DTO, they are set by
+     * {@link VisitLogDenormalization}.
+     * </p>
+     *
+     * @param visitLog The {@link VisitLog} entity to convert.
+     * @return The resulting {@link VisitLogDocument} for persistence.
+     */
+    public VisitLogDocument toVisitLogDocument(VisitLog visitLog) {
+        VisitLogDocument visitLogDocument = new VisitLogDocument();
+        // truncated to the precision of BSON dates, so that the journaled and the stored `updatedAt` compare equal
+        Instant now = timeSource.now().toInstant().truncatedTo(ChronoUnit.MILLIS);
+
+        visitLogDocument.setId(visitLog.getId());
+        visitLogDocument.setVisitId(visitLog.getVisit().getId());
+        visitLogDocument.setTitle(visitLog.getTitle());
+        visitLogDocument.setDescription(visitLog.getDescription());
+        visitLogDocument.setDescriptionFileId(visitLog.getDescriptionFileId());
+        visitLogDocument.setCreatedAt(visitLog.getCreatedAt() != null
+                ? visitLog.getCreatedAt().toInstant()
+                : now);
+        visitLogDocument.setUpdatedAt(now);
+
+        return visitLogDocument;
+    }
+}
@@ -0,0 +1,37 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.petclinic.MongoOperationOrigin;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Marks the MongoDB operations performed within a public {@link VisitLogService} method with the name of that
+ * method (e.g. `VisitLogService.findByVisit`), which is used as the `origin` of the command metrics and of slow
+ * operations.
+ * <p>
+ * Nested calls keep the origin of the outermost call, so internal delegation between service methods does not
+ * change how operations are attributed.
+ * </p>
+ *
+ * @see MongoOperationOrigin
+ */
+@Aspect
+@Component("petclinic_VisitLogOperationOriginAspect")
+public class VisitLogOperationOriginAspect {
+
+    @Around("execution(public * io.jmix.petclinic.visit.log.VisitLogService.*(..))")
+    public Object trackOrigin(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!MongoOperationOrigin.NONE.equals(MongoOperationOrigin.current())) {
+            return joinPoint.proceed();
+        }
+
+        String previous = MongoOperationOrigin.enter("VisitLogService." + joinPoint.getSignature().getName());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            MongoOperationOrigin.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.LoadContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.lang.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Translates the paging and sorting information of a Jmix {@link LoadContext.Query} into a Spring Data
+ * {@link Pageable} that can be passed to {@link VisitLogDocumentRepository}.
+ * <p>
+ * Jmix data loaders describe the requested page through `firstResult` / `maxResults` and a {@link io.jmix.core.Sort}
+ * of entity property paths. This class maps those paths of the {@link VisitLog} DTO entity to the corresponding
+ * fields of {@link VisitLogDocument}, so that sorting and paging are executed by MongoDB instead of in memory.
+ * Properties that have no counterpart in the document (e.g. nested paths of `visit`) are ignored.
+ * </p>
+ * <p>
+ * For visit logs that are not queried from MongoDB (e.g. archived visit logs), {@link #apply} sorts and pages
+ * a list of documents in memory the same way.
+ * </p>
+ */
+public final class VisitLogPaging {
+
+    /**
+     * Order in which visit logs are returned if no other sort order is requested. It matches the compound
+     * `(visitId, createdAt, _id)` index of {@link VisitLogDocument}.
+     */
+    public static final Sort CREATION_ORDER = Sort.by(Sort.Order.asc("createdAt"), Sort.Order.asc("id"));
+
+    private static final Map<String, String> DOCUMENT_FIELDS = Map.of(
+            "id", "id",
+            "visit", "visitId",
+            "title", "title",
+            "description", "description",
+            "createdAt", "createdAt",
+            "petName", "petName",
+            "ownerName", "ownerName",
+            "visitStart", "visitStart"
+    );
+
+    private VisitLogPaging() {
+    }
+
+    /**
+     * Creates a {@link Pageable} for the given Jmix query.
+     * <p>
+     * The returned {@link Pageable} skips exactly `firstResult` visit logs, even if it is not a multiple of
+     * `maxResults`, e.g. when a data loader is configured programmatically. If no `maxResults` is set, an unpaged
+     * request carrying only the sort order is returned.
+     * </p>
+     *
+     * @param query The query of the {@link LoadContext}, may be {@code null}.
+     * @return The {@link Pageable} describing the requested page and its sort order.
+     */
+    public static Pageable toPageable(@Nullable LoadContext.Query query) {
+        return toPageable(query, CREATION_ORDER);
+    }
+
+    /**
+     * Creates a {@link Pageable} for the given Jmix query, using the given sort order if the query requests none.
+     * Pass {@link Sort#unsorted()} to leave the order to the caller, e.g. the relevance order of a full-text search.
+     *
+     * @param query       The query of the {@link LoadContext}, may be {@code null}.
+     * @param defaultSort The sort order if the query does not request one.
+     * @return The {@link Pageable} describing the requested page and its sort order.
+     * @see #toPageable(LoadContext.Query)
+     */
+    public static Pageable toPageable(@Nullable LoadContext.Query query, Sort defaultSort) {
+        if (query == null) {
+            return Pageable.unpaged(defaultSort);
+        }
+
+        Sort sort = toSort(query.getSort(), defaultSort);
+        int maxResults = query.getMaxResults();
+        if (maxResults <= 0) {
+            return Pageable.unpaged(sort);
+        }
+
+        return new OffsetPageable(query.getFirstResult(), maxResults, sort);
+    }
+
+    /**
+     * Maps a Jmix {@link io.jmix.core.Sort} on {@link VisitLog} properties to a Spring Data {@link Sort}
+     * on {@link VisitLogDocument} fields.
+     * <p>
+     * Unless the sort already contains `id`, it is appended as the last order. Visit logs with equal values in
+     * the sorted fields are therefore always returned in the same order, so that no visit log is skipped or shown
+     * twice when paging through them.
+     * </p>
+     *
+     * @param sort The Jmix sort, may be {@code null}.
+     * @return The corresponding Spring Data sort, or {@link #CREATION_ORDER} if nothing can be mapped.
+     */
+    public static Sort toSort(@Nullable io.jmix.core.Sort sort) {
+        return toSort(sort, CREATION_ORDER);
+    }
+
+    private static Sort toSort(@Nullable io.jmix.core.Sort sort, Sort defaultSort) {
+        if (sort == null) {
+            return defaultSort;
+        }
+
+        List<Sort.Order> orders = sort.getOrders().stream()
+                .filter(order -> DOCUMENT_FIELDS.containsKey(order.getPath()))
+                .map(order -> new Sort.Order(
+                        order.getDirection() == io.jmix.core.Sort.Direction.DESC ? Sort.Direction.DESC : Sort.Direction.ASC,
+                        DOCUMENT_FIELDS.get(order.getPath())
+                ))
+                .toList();
+
+        if (orders.isEmpty()) {
+            return defaultSort;
+        }
+
+        Sort mappedSort = Sort.by(orders);
+        return mappedSort.getOrderFor("id") == null
+                ? mappedSort.and(Sort.by(Sort.Order.asc("id")))
+                : mappedSort;
+    }
+
+    /**
+     * A {@link Pageable} starting at an arbitrary offset instead of a page boundary. Spring Data MongoDB only uses
+     * the offset and size of a {@link Pageable}, so the page number is derived from them.
+     */
+    record OffsetPageable(long offset, int size, Sort sort) implements Pageable {
+
+        OffsetPageable {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset must not be negative");
+            }
+            if (size < 1) {
+                throw new IllegalArgumentException("Page size must be positive");
+            }
+        }
+
+        @Override
+        public int getPageNumber() {
+            return (int) (offset / size);
+        }
+
+        @Override
+        public int getPageSize() {
+            return size;
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public Sort getSort() {
+            return sort;
+        }
+
+        @Override
+        public Pageable next() {
+            return new OffsetPageable(offset + size, size, sort);
+        }
+
+        @Override
+        public Pageable previousOrFirst() {
+            return new OffsetPageable(Math.max(offset - size, 0), size, sort);
+        }
+
+        @Override
+        public Pageable first() {
+            return new OffsetPageable(0, size, sort);
+        }
+
+        @Override
+        public Pageable withPage(int pageNumber) {
+            return new OffsetPageable((long) pageNumber * size, size, sort);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return offset > 0;
+        }
+    }
+
+    /**
+     * Returns the {@link VisitLogDocument} field a {@link VisitLog} property is stored in.
+     *
+     * @param property The property path of the {@link VisitLog} entity.
+     * @return The document field, or {@code null} if the property is not stored as a field of its own.
+     */
+    @Nullable
+    static String documentField(String property) {
+        return DOCUMENT_FIELDS.get(property);
+    }
+
+    /**
+     * Sorts and pages the given documents in memory. Missing values are sorted first, as MongoDB does.
+     *
+     * @param documents The documents to sort and page.
+     * @param pageable  The requested page and sort order; {@link #CREATION_ORDER} is used if it is unsorted.
+     * @return The documents of the requested page.
+     */
+    public static List<VisitLogDocument> apply(List<VisitLogDocument> documents, Pageable pageable) {
+        List<VisitLogDocument> sorted = apply(documents, pageable.getSortOr(CREATION_ORDER));
+        if (pageable.isUnpaged()) {
+            return sorted;
+        }
+
+        int fromIndex = (int) Math.min(pageable.getOffset(), sorted.size());
+        return sorted.subList(fromIndex, Math.min(fromIndex + pageable.getPageSize(), sorted.size()));
+    }
+
+    /**
+     * Sorts the given documents in memory. Missing values are sorted first, as MongoDB does.
+     *
+     * @param documents The documents to sort.
+     * @param sort      The sort order on {@link VisitLogDocument} fields.
+     * @return The sorted documents.
+     */
+    public static List<VisitLogDocument> apply(List<VisitLogDocument> documents, Sort sort) {
+        Comparator<VisitLogDocument> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<VisitLogDocument> orderComparator = comparator(order.getProperty());
+            if (orderComparator == null) {
+                continue;
+            }
+            if (order.isDescending()) {
+                orderComparator = orderComparator.reversed();
+            }
+            comparator = comparator == null ? orderComparator : comparator.thenComparing(orderComparator);
+        }
+
+        return comparator == null
+                ? List.copyOf(documents)
+                : documents.stream().sorted(comparator).toList();
+    }
+
+    @Nullable
+    private static Comparator<VisitLogDocument> comparator(String field) {
+        return switch (field) {
+            case "id" -> nullsFirst(VisitLogDocument::getId);
+            case "visitId" -> nullsFirst(VisitLogDocument::getVisitId);
+            case "title" -> nullsFirst(VisitLogDocument::getTitle);
+            case "description" -> nullsFirst(VisitLogDocument::getDescription);
+            case "createdAt" -> nullsFirst(VisitLogDocument::getCreatedAt);
+            case "petName" -> nullsFirst(VisitLogDocument::getPetName);
+            case "ownerName" -> nullsFirst(VisitLogDocument::getOwnerName);
+            case "visitStart" -> nullsFirst(VisitLogDocument::getVisitStart);
+            default -> null;
+        };
+    }
+
+    private static <T extends Comparable<? super T>> Comparator<VisitLogDocument> nullsFirst(Function<VisitLogDocument, T> field) {
+        return Comparator.comparing(field, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+}
@@ -0,0 +1,963 @@
+package io.jmix.petclinic.visit.log;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneId;
+
+/**
+ * Configuration properties for the storage of visit logs in MongoDB, bound from `petclinic.visitlog.*`.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "petclinic.visitlog")
+@Validated
+public class VisitLogProperties {
+
+    @Valid
+    private final BulkWrite bulkWrite = new BulkWrite();
+
+    @Valid
+    private final Cache cache = new Cache();
+
+    @Valid
+    private final Streaming streaming = new Streaming();
+
+    @Valid
+    private final VisitIdMigration visitIdMigration = new VisitIdMigration();
+
+    @Valid
+    private final WriteBehind writeBehind = new WriteBehind();
+
+    @Valid
+    private final CascadeDelete cascadeDelete = new CascadeDelete();
+
+    @Valid
+    private final Archive archive = new Archive();
+
+    @Valid
+    private final VisitDetails visitDetails = new VisitDetails();
+
+    @Valid
+    private final Export export = new Export();
+
+    @Valid
+    private final Content content = new Content();
+
+    @Valid
+    private final Bucket bucket = new Bucket();
+
+    @Valid
+    private final Analytics analytics = new Analytics();
+
+    @Valid
+    private final Journal journal = new Journal();
+
+    @Valid
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * How visit logs are stored in MongoDB, see {@link VisitLogStorageLayout}. Visit logs stored with one layout
+     * are not visible with the other one.
+     */
+    @NotNull
+    private VisitLogStorageLayout storageLayout = VisitLogStorageLayout.DOCUMENT;
+
+    /**
+     * Maximum number of visit IDs passed to a single `$in` query. Larger sets of visits are split into
+     * several queries.
+     */
+    @Positive
+    private int maxVisitIdsPerQuery = 1000;
+
+    /**
+     * Maximum number of visits the visit list can be filtered to by the content of their visit logs. The IDs of the
+     * matching visits are passed to the JPQL query of the visit list in batches of `max-visit-ids-per-query`.
+     */
+    @Positive
+    private int maxFilteredVisits = 10000;
+
+    public BulkWrite getBulkWrite() {
+        return bulkWrite;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    public VisitIdMigration getVisitIdMigration() {
+        return visitIdMigration;
+    }
+
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public CascadeDelete getCascadeDelete() {
+        return cascadeDelete;
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    public VisitDetails getVisitDetails() {
+        return visitDetails;
+    }
+
+    public Export getExport() {
+        return export;
+    }
+
+    public Content getContent() {
+        return content;
+    }
+
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    public Analytics getAnalytics() {
+        return analytics;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public VisitLogStorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    public void setStorageLayout(VisitLogStorageLayout storageLayout) {
+        this.storageLayout = storageLayout;
+    }
+
+    public int getMaxVisitIdsPerQuery() {
+        return maxVisitIdsPerQuery;
+    }
+
+    public void setMaxVisitIdsPerQuery(int maxVisitIdsPerQuery) {
+        this.maxVisitIdsPerQuery = maxVisitIdsPerQuery;
+    }
+
+    public int getMaxFilteredVisits() {
+        return maxFilteredVisits;
+    }
+
+    public void setMaxFilteredVisits(int maxFilteredVisits) {
+        this.maxFilteredVisits = maxFilteredVisits;
+    }
+
+    /**
+     * Settings of {@link VisitLogService#saveVisitLogs}.
+     */
+    public static class BulkWrite {
+
+        /**
+         * Maximum number of visit logs sent to MongoDB in one bulk write.
+         */
+        @Positive
+        private int chunkSize = 500;
+
+        /**
+         * Whether a bulk write stops at the first failing visit log. Unordered bulk writes continue with the
+         * remaining visit logs and allow MongoDB to apply the writes in parallel.
+         */
+        private boolean ordered = false;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        public void setOrdered(boolean ordered) {
+            this.ordered = ordered;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogCache}.
+     */
+    public static class Cache {
+
+        /**
+         * Whether visit logs read through {@link VisitLogService} are cached.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of visit log documents held by each cache.
+         */
+        @Positive
+        private long maximumSize = 10_000;
+
+        /**
+         * Time after which a cached entry expires, regardless of how often it is read.
+         */
+        @NotNull
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+
+    /**
+     * Settings of the streaming load mode of the visit log list view.
+     */
+    public static class Streaming {
+
+        /**
+         * Whether the visit log list view streams all visit logs of a visit through the reactive repository
+         * instead of loading them page by page.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of visit logs added to the UI at once while streaming.
+         */
+        @Positive
+        private int chunkSize = 100;
+
+        /**
+         * Maximum time visit logs are held back while a chunk is incomplete, so that a slow cursor still shows
+         * its first entries promptly.
+         */
+        @NotNull
+        private Duration maxChunkDelay = Duration.ofMillis(250);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public Duration getMaxChunkDelay() {
+            return maxChunkDelay;
+        }
+
+        public void setMaxChunkDelay(Duration maxChunkDelay) {
+            this.maxChunkDelay = maxChunkDelay;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogVisitIdMigration}.
+     */
+    public static class VisitIdMigration {
+
+        /**
+         * Whether the string `visitId`s of existing visit logs are converted to binary UUIDs in the background
+         * after the application has started.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of visit logs converted by one bulk write.
+         */
+        @Positive
+        private int batchSize = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogWriteBehindQueue}.
+     */
+    public static class WriteBehind {
+
+        /**
+         * Whether {@link VisitLogService#saveVisitLog} returns as soon as the visit log is queued instead of
+         * waiting for MongoDB to acknowledge the write.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of distinct visit logs waiting to be written.
+         */
+        @Positive
+        private int capacity = 10_000;
+
+        /**
+         * Maximum number of visit logs written by one bulk write of the writer.
+         */
+        @Positive
+        private int batchSize = 500;
+
+        /**
+         * Time the writer waits for further visit logs before it writes an incomplete batch.
+         */
+        @NotNull
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * Time a save waits for free space when the queue is full. Afterwards, the visit log is written
+         * synchronously by the caller.
+         */
+        @NotNull
+        private Duration offerTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Time the writer waits before it retries visit logs whose write failed. The time doubles with every
+         * consecutive failed write up to `max-retry-backoff`.
+         */
+        @NotNull
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Maximum time the writer waits before it retries failed visit logs.
+         */
+        @NotNull
+        private Duration maxRetryBackoff = Duration.ofMinutes(1);
+
+        /**
+         * Number of attempts to write a visit log that MongoDB rejects, after which it is dropped. Writes failing
+         * because MongoDB is unavailable are retried without limit.
+         */
+        @Positive
+        private int maxAttempts = 5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public Duration getOfferTimeout() {
+            return offerTimeout;
+        }
+
+        public void setOfferTimeout(Duration offerTimeout) {
+            this.offerTimeout = offerTimeout;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Duration getMaxRetryBackoff() {
+            return maxRetryBackoff;
+        }
+
+        public void setMaxRetryBackoff(Duration maxRetryBackoff) {
+            this.maxRetryBackoff = maxRetryBackoff;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogCascadeDeletion}.
+     */
+    public static class CascadeDelete {
+
+        /**
+         * Maximum number of visits whose visit logs are removed by one `deleteMany` command.
+         */
+        @Positive
+        private int batchSize = 500;
+
+        /**
+         * Time the deletion waits for further removed visits before it removes the visit logs of an
+         * incomplete batch.
+         */
+        @NotNull
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogArchival}.
+     */
+    public static class Archive {
+
+        /**
+         * Whether the visit logs of completed visits are moved into the archive on schedule.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Cron expression of the archival job.
+         */
+        @NotNull
+        private String cron = "0 30 2 * * *";
+
+        /**
+         * Time since the end of a completed visit after which its visit logs are archived.
+         */
+        @NotNull
+        private Duration olderThan = Duration.ofDays(180);
+
+        /**
+         * Number of visits whose visit logs are archived together.
+         */
+        @Positive
+        private int batchSize = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        public Duration getOlderThan() {
+            return olderThan;
+        }
+
+        public void setOlderThan(Duration olderThan) {
+            this.olderThan = olderThan;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogDenormalization}.
+     */
+    public static class VisitDetails {
+
+        /**
+         * Whether visit logs stored without the copied visit, pet and owner attributes are completed in the
+         * background after the application has started.
+         */
+        private boolean backfillEnabled = true;
+
+        /**
+         * Number of visit logs read per batch of the backfill.
+         */
+        @Positive
+        private int batchSize = 200;
+
+        public boolean isBackfillEnabled() {
+            return backfillEnabled;
+        }
+
+        public void setBackfillEnabled(boolean backfillEnabled) {
+            this.backfillEnabled = backfillEnabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogExporter}.
+     */
+    public static class Export {
+
+        /**
+         * Number of visit logs MongoDB returns per batch of the export cursor. Only one batch is held in memory
+         * at a time.
+         */
+        @Positive
+        private int cursorBatchSize = 1000;
+
+        /**
+         * Number of rows of an xlsx export kept in memory. Older rows are flushed to a temporary file.
+         */
+        @Positive
+        private int xlsxRowAccessWindow = 100;
+
+        /**
+         * Time zone the creation timestamps of exported visit logs are written in. The days of the export range
+         * selected in the UI are interpreted in the same time zone.
+         */
+        @NotNull
+        private ZoneId timeZone = ZoneId.of("UTC");
+
+        public int getCursorBatchSize() {
+            return cursorBatchSize;
+        }
+
+        public void setCursorBatchSize(int cursorBatchSize) {
+            this.cursorBatchSize = cursorBatchSize;
+        }
+
+        public int getXlsxRowAccessWindow() {
+            return xlsxRowAccessWindow;
+        }
+
+        public void setXlsxRowAccessWindow(int xlsxRowAccessWindow) {
+            this.xlsxRowAccessWindow = xlsxRowAccessWindow;
+        }
+
+        public ZoneId getTimeZone() {
+            return timeZone;
+        }
+
+        public void setTimeZone(ZoneId timeZone) {
+            this.timeZone = timeZone;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogContentStorage}.
+     */
+    public static class Content {
+
+        /**
+         * Name of the GridFS bucket storing attachments and large descriptions of visit logs.
+         */
+        @NotNull
+        private String bucket = "visitLogFiles";
+
+        /**
+         * Descriptions larger than this size (UTF-8 encoded) are stored in GridFS instead of the visit log document.
+         */
+        @NotNull
+        private DataSize descriptionThreshold = DataSize.ofKilobytes(16);
+
+        /**
+         * Number of characters of a description stored in GridFS that are kept in the visit log document for lists.
+         */
+        @Positive
+        private int previewLength = 500;
+
+        /**
+         * Number of characters of a description stored in GridFS that are kept in the `searchText` field of the
+         * visit log document for the full-text search and description conditions. The field is stored in addition
+         * to the preview, so it has to stay well below `description-threshold`: even in UTF-8 characters of four
+         * bytes, it may take at most the threshold.
+         */
+        @Positive
+        private int searchTextLength = 2_000;
+
+        /**
+         * Largest description read from GridFS into memory, e.g. to edit it in the detail view.
+         */
+        @NotNull
+        private DataSize maxLoadedDescriptionSize = DataSize.ofMegabytes(1);
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public void setBucket(String bucket) {
+            this.bucket = bucket;
+        }
+
+        public DataSize getDescriptionThreshold() {
+            return descriptionThreshold;
+        }
+
+        public void setDescriptionThreshold(DataSize descriptionThreshold) {
+            this.descriptionThreshold = descriptionThreshold;
+        }
+
+        public int getPreviewLength() {
+            return previewLength;
+        }
+
+        public void setPreviewLength(int previewLength) {
+            this.previewLength = previewLength;
+        }
+
+        public int getSearchTextLength() {
+            return searchTextLength;
+        }
+
+        public void setSearchTextLength(int searchTextLength) {
+            this.searchTextLength = searchTextLength;
+        }
+
+        @AssertTrue(message = "search-text-length must not exceed a quarter of description-threshold (in bytes)")
+        public boolean isSearchTextBelowDescriptionThreshold() {
+            return descriptionThreshold == null || searchTextLength * 4L <= descriptionThreshold.toBytes();
+        }
+
+        public DataSize getMaxLoadedDescriptionSize() {
+            return maxLoadedDescriptionSize;
+        }
+
+        public void setMaxLoadedDescriptionSize(DataSize maxLoadedDescriptionSize) {
+            this.maxLoadedDescriptionSize = maxLoadedDescriptionSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogBucketStore}, used with {@link VisitLogStorageLayout#BUCKET}.
+     */
+    public static class Bucket {
+
+        /**
+         * Name of the collection storing the buckets.
+         */
+        @NotNull
+        private String collection = "visitLogBuckets";
+
+        /**
+         * Maximum number of visit logs per bucket. Further visit logs of the visit start a new bucket.
+         */
+        @Positive
+        private int maxEntries = 200;
+
+        /**
+         * Maximum BSON size of the visit logs of a bucket. A visit log that does not fit anymore starts a new bucket.
+         */
+        @NotNull
+        private DataSize maxSize = DataSize.ofKilobytes(256);
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public void setCollection(String collection) {
+            this.collection = collection;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogAnalytics}.
+     */
+    public static class Analytics {
+
+        /**
+         * Whether the activity counters are updated when visit logs are saved and removed, and reconciled on
+         * schedule.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time zone defining the days visit logs are counted for.
+         */
+        @NotNull
+        private ZoneId timeZone = ZoneId.of("UTC");
+
+        /**
+         * Cron expression of the reconciliation job.
+         */
+        @NotNull
+        private String reconciliationCron = "0 0 3 * * *";
+
+        /**
+         * Number of days, including the current one, whose counters are recounted by the reconciliation job.
+         */
+        @Positive
+        private int reconciliationDays = 7;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public ZoneId getTimeZone() {
+            return timeZone;
+        }
+
+        public void setTimeZone(ZoneId timeZone) {
+            this.timeZone = timeZone;
+        }
+
+        public String getReconciliationCron() {
+            return reconciliationCron;
+        }
+
+        public void setReconciliationCron(String reconciliationCron) {
+            this.reconciliationCron = reconciliationCron;
+        }
+
+        public int getReconciliationDays() {
+            return reconciliationDays;
+        }
+
+        public void setReconciliationDays(int reconciliationDays) {
+            this.reconciliationDays = reconciliationDays;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogJournal}.
+     */
+    public static class Journal {
+
+        /**
+         * Whether saves that fail because MongoDB is unavailable are written to the local journal and replayed
+         * later instead of failing.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory of the journal segments. It has to be on a local disk that survives a restart.
+         */
+        @NotNull
+        private Path directory = Path.of(".jmix", "visit-log-journal");
+
+        /**
+         * Size of a memory-mapped journal segment. A visit log has to fit into a single segment.
+         */
+        @NotNull
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Interval in which appended visit logs are forced to disk. All saves of an interval wait for the same
+         * fsync.
+         */
+        @NotNull
+        private Duration syncInterval = Duration.ofMillis(20);
+
+        /**
+         * Interval in which the journal is replayed into MongoDB while it is not empty.
+         */
+        @NotNull
+        private Duration replayInterval = Duration.ofSeconds(5);
+
+        /**
+         * Maximum number of visit logs written by one bulk write of the replay.
+         */
+        @Positive
+        private int replayBatchSize = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(Path directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public Duration getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(Duration syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+
+        public Duration getReplayInterval() {
+            return replayInterval;
+        }
+
+        public void setReplayInterval(Duration replayInterval) {
+            this.replayInterval = replayInterval;
+        }
+
+        public int getReplayBatchSize() {
+            return replayBatchSize;
+        }
+
+        public void setReplayBatchSize(int replayBatchSize) {
+            this.replayBatchSize = replayBatchSize;
+        }
+    }
+
+    /**
+     * Settings of {@link VisitLogCircuitBreaker}.
+     */
+    public static class CircuitBreaker {
+
+        /**
+         * Whether writes of visit logs are rejected without contacting MongoDB after repeated connection failures.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of consecutive connection failures that open the circuit breaker.
+         */
+        @Positive
+        private int failureThreshold = 3;
+
+        /**
+         * Time the circuit breaker stays open before a single write is let through to test the connection.
+         */
+        @NotNull
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package io.jmix.petclinic.visit.log;
+
+public class VisitLogQueryException extends RuntimeException {
+    public VisitLogQueryException(String message) {
+        super(message);
+    }
+}
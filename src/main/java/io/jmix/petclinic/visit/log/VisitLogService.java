@@ -1,13 +1,40 @@
 package io.jmix.petclinic.visit.log;
 
-import io.jmix.core.DataManager;
-import io.jmix.core.EntityStates;
+import io.jmix.petclinic.MongoDatabaseSelection;
 import io.jmix.petclinic.entity.visit.Visit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 
 /**
@@ -21,8 +48,25 @@ import java.util.UUID;
  * The `VisitLogService` uses:
  * <ul>
  *     <li>{@link VisitLogDocumentRepository} - Repository for saving, retrieving, and deleting {@link VisitLogDocument} entities in MongoDB.</li>
- *     <li>{@link DataManager} - Facilitates entity creation and reference management within the Jmix environment.</li>
- *     <li>{@link EntityStates} - Manages entity states, ensuring entities loaded from the database are not marked as new.</li>
+ *     <li>{@link ReactiveVisitLogDocumentRepository} - Non-blocking repository for streaming {@link VisitLogDocument} entities.</li>
+ *     <li>{@link VisitLogMapper} - Converts between {@link VisitLogDocument} and the {@link VisitLog} DTO entity.</li>
+ *     <li>{@link VisitLogVisitIdMigration} - Provides the `visitId` values to query for while existing documents are
+ *     migrated to binary UUIDs.</li>
+ *     <li>{@link MeterRegistry} - Publishes metrics about the bulk writes of visit logs.</li>
+ *     <li>{@link VisitLogCache} - Keeps recently read visit logs in memory. All write operations of this
+ *     service invalidate the affected cache entries.</li>
+ *     <li>{@link VisitLogWriteBehindQueue} - Writes single saved visit logs asynchronously if the write-behind mode
+ *     is enabled.</li>
+ *     <li>{@link VisitLogArchive} - Provides the visit logs of archived visits, which are no longer stored in the
+ *     regular collection.</li>
+ *     <li>{@link VisitLogDenormalization} - Copies the visit, pet and owner attributes into visit logs before they
+ *     are written and corrects copies that changed while they were written.</li>
+ *     <li>{@link VisitLogContentStorage} - Stores attachments and large descriptions of visit logs in GridFS.</li>
+ *     <li>{@link VisitLogBucketStore} - Stores the visit logs instead of {@link VisitLogDocumentRepository} if
+ *     `petclinic.visitlog.storage-layout` is `bucket`.</li>
+ *     <li>{@link VisitLogAnalytics} - Counts created and removed visit logs per day, visit type and nurse.</li>
+ *     <li>{@link VisitLogJournal} - Keeps single saved visit logs in a local journal while MongoDB is unavailable
+ *     and replays them afterwards.</li>
  * </ul>
  * </p>
  */
@@ -34,14 +78,64 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Component("petclinic_VisitLogService")
 public class VisitLogService {
 
-    private final EntityStates entityStates;
+    private static final Logger log = LoggerFactory.getLogger(VisitLogService.class);
+
     private final VisitLogDocumentRepository visitLogDocumentRepository;
-    private final DataManager dataManager;
+    private final ReactiveVisitLogDocumentRepository reactiveVisitLogDocumentRepository;
+    private final VisitLogMapper visitLogMapper;
+    private final VisitLogVisitIdMigration visitLogVisitIdMigration;
+    private final VisitLogProperties visitLogProperties;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogWriteBehindQueue visitLogWriteBehindQueue;
+    private final VisitLogArchive visitLogArchive;
+    private final VisitLogDenormalization visitLogDenormalization;
+    private final VisitLogContentStorage visitLogContentStorage;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogAnalytics visitLogAnalytics;
+    private final VisitLogJournal visitLogJournal;
+    private final VisitLogCircuitBreaker visitLogCircuitBreaker;
+    private final MongoDatabaseFactory mongoDatabaseFactory;
+    private final Timer bulkWriteTimer;
+    private final Counter bulkWriteSavedCounter;
+    private final Counter bulkWriteFailedCounter;
 
-    public VisitLogService(EntityStates entityStates, VisitLogDocumentRepository visitLogDocumentRepository, DataManager dataManager) {
-        this.entityStates = entityStates;
+    public VisitLogService(VisitLogDocumentRepository visitLogDocumentRepository,
+                           ReactiveVisitLogDocumentRepository reactiveVisitLogDocumentRepository,
+                           VisitLogMapper visitLogMapper, VisitLogVisitIdMigration visitLogVisitIdMigration,
+                           VisitLogProperties visitLogProperties, VisitLogCache visitLogCache,
+                           VisitLogWriteBehindQueue visitLogWriteBehindQueue, VisitLogArchive visitLogArchive,
+                           VisitLogDenormalization visitLogDenormalization,
+                           VisitLogContentStorage visitLogContentStorage, VisitLogBucketStore visitLogBucketStore,
+                           VisitLogAnalytics visitLogAnalytics, VisitLogJournal visitLogJournal,
+                           VisitLogCircuitBreaker visitLogCircuitBreaker,
+                           MongoDatabaseFactory mongoDatabaseFactory, MeterRegistry meterRegistry) {
         this.visitLogDocumentRepository = visitLogDocumentRepository;
-        this.dataManager = dataManager;
+        this.reactiveVisitLogDocumentRepository = reactiveVisitLogDocumentRepository;
+        this.visitLogMapper = visitLogMapper;
+        this.visitLogVisitIdMigration = visitLogVisitIdMigration;
+        this.visitLogProperties = visitLogProperties;
+        this.visitLogCache = visitLogCache;
+        this.visitLogWriteBehindQueue = visitLogWriteBehindQueue;
+        this.visitLogArchive = visitLogArchive;
+        this.visitLogDenormalization = visitLogDenormalization;
+        this.visitLogContentStorage = visitLogContentStorage;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogAnalytics = visitLogAnalytics;
+        this.visitLogJournal = visitLogJournal;
+        this.visitLogCircuitBreaker = visitLogCircuitBreaker;
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+
+        this.bulkWriteTimer = Timer.builder("petclinic.visitlog.bulk-write")
+                .description("Duration of bulk writes of visit logs")
+                .register(meterRegistry);
+        this.bulkWriteSavedCounter = Counter.builder("petclinic.visitlog.bulk-write.documents")
+                .description("Visit logs processed by bulk writes")
+                .tag("outcome", "saved")
+                .register(meterRegistry);
+        this.bulkWriteFailedCounter = Counter.builder("petclinic.visitlog.bulk-write.documents")
+                .description("Visit logs processed by bulk writes")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
     }
 
     /**
@@ -50,33 +144,662 @@ public class VisitLogService {
      * This method queries MongoDB for {@link VisitLogDocument} records matching the provided visit ID.
      * Each result is converted to a {@link VisitLog} DTO entity for UI representation. During conversion,
      * the `visit` reference is re-resolved to ensure it is correctly associated for display and interaction in Jmix.
+     * The visit logs of an archived visit are read from {@link VisitLogArchive}.
      * </p>
      *
      * @param visit The {@link Visit} entity to retrieve visit logs for.
      * @return A list of {@link VisitLog} entries linked to the specified visit.
      */
     public List<VisitLog> findByVisit(Visit visit) {
-        return visitLogDocumentRepository.findByVisitId(visit.getId().toString()).stream()
-                .map(this::toVisitLog)
-                .toList();
+        UUID visitId = visit.getId();
+        List<VisitLogDocument> visitLogDocuments = visitLogCache.getVisitLogs(visitId, Pageable.unpaged(),
+                () -> findVisitLogDocuments(visitId, Pageable.unpaged()));
+        return visitLogMapper.toVisitLogs(visitLogDocuments);
     }
 
     // end::class[]
 
+    /**
+     * Retrieves a single page of {@link VisitLog} entries associated with a specific {@link Visit}.
+     * <p>
+     * Paging and sorting are executed by MongoDB, so only the documents of the requested page are transferred
+     * and converted. Use {@link VisitLogPaging#toPageable} to create the {@link Pageable} from a Jmix load context.
+     * The visit logs of an archived visit are sorted and paged in memory.
+     * </p>
+     *
+     * @param visit    The {@link Visit} entity to retrieve visit logs for.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return The {@link VisitLog} entries of the requested page.
+     */
+    public List<VisitLog> findByVisit(Visit visit, Pageable pageable) {
+        UUID visitId = visit.getId();
+        List<VisitLogDocument> visitLogDocuments = visitLogCache.getVisitLogs(visitId, pageable,
+                () -> findVisitLogDocuments(visitId, pageable));
+        return visitLogMapper.toVisitLogs(visitLogDocuments);
+    }
+
+    private List<VisitLogDocument> findVisitLogDocuments(UUID visitId, Pageable pageable) {
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(visitId);
+        return visitLogArchive.findByVisitId(visitId)
+                .map(archived -> VisitLogPaging.apply(
+                        visitLogArchive.merge(archived, findStoredVisitLogDocuments(visitIdValues)),
+                        pageable
+                ))
+                .orElseGet(() -> visitLogBucketStore.isEnabled()
+                        ? visitLogBucketStore.findByVisitIdIn(visitIdValues, pageable)
+                        : visitLogDocumentRepository.findByVisitIdIn(visitIdValues, pageable));
+    }
+
+    private List<VisitLogDocument> findStoredVisitLogDocuments(List<Object> visitIdValues) {
+        return visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.findByVisitIdIn(visitIdValues)
+                : visitLogDocumentRepository.findByVisitIdIn(visitIdValues);
+    }
+
+    /**
+     * Searches all {@link VisitLog} entries for the given terms in their title and description.
+     * <p>
+     * The search uses the MongoDB text index of {@link VisitLogDocument}: terms are matched as stemmed words,
+     * phrases can be put in double quotes and terms prefixed with `-` are excluded. Unless the pageable
+     * requests a sort order, the results are sorted by their relevance score, most relevant first.
+     * </p>
+     * <p>
+     * The search is not available with the bucket layout, see {@link #isTextSearchAvailable()}.
+     * </p>
+     *
+     * @param text     The search terms.
+     * @param pageable The page to retrieve.
+     * @return The matching {@link VisitLog} entries of the requested page.
+     * @throws VisitLogQueryException If visit logs are stored in buckets.
+     */
+    public List<VisitLog> search(String text, Pageable pageable) {
+        rejectSearchInBucketLayout();
+        return visitLogMapper.toVisitLogs(visitLogDocumentRepository.searchByText(null, text, pageable));
+    }
+
+    /**
+     * Searches the {@link VisitLog} entries of a specific {@link Visit} for the given terms in their title
+     * and description.
+     *
+     * @param visit    The {@link Visit} entity to search the visit logs of.
+     * @param text     The search terms.
+     * @param pageable The page to retrieve.
+     * @return The matching {@link VisitLog} entries of the requested page.
+     * @throws VisitLogQueryException If the visit is archived, as archived visit logs are not in the text index, or
+     *                                if visit logs are stored in buckets.
+     * @see #search(String, Pageable)
+     */
+    public List<VisitLog> searchByVisit(Visit visit, String text, Pageable pageable) {
+        rejectSearchInBucketLayout();
+        rejectSearchOfArchivedVisit(visit.getId());
+        List<Object> visitIds = visitLogVisitIdMigration.queryValues(visit.getId());
+        return visitLogMapper.toVisitLogs(visitLogDocumentRepository.searchByText(visitIds, text, pageable));
+    }
+
+    /**
+     * Counts the {@link VisitLog} entries of a specific {@link Visit} matching the given search terms.
+     *
+     * @param visit The {@link Visit} entity to search the visit logs of.
+     * @param text  The search terms.
+     * @return The number of matching {@link VisitLog} entries.
+     * @throws VisitLogQueryException If the visit is archived, as archived visit logs are not in the text index, or
+     *                                if visit logs are stored in buckets.
+     */
+    public long countSearchByVisit(Visit visit, String text) {
+        rejectSearchInBucketLayout();
+        rejectSearchOfArchivedVisit(visit.getId());
+        List<Object> visitIds = visitLogVisitIdMigration.queryValues(visit.getId());
+        return visitLogDocumentRepository.countByText(visitIds, text);
+    }
+
+    /**
+     * Finds the {@link Visit}s having at least one {@link VisitLog} entry that matches the given search terms in
+     * its title or description, e.g. to filter a list of visits by the content of their logs.
+     * <p>
+     * Only the distinct visit IDs are read from MongoDB, not the matching entries. Like {@link #search}, the search
+     * covers the regular visit log collection; archived visit logs are not included.
+     * </p>
+     *
+     * @param text  The search terms.
+     * @param limit The maximum number of returned visit IDs. Callers can pass their own maximum + 1 to detect
+     *              that more visits match than they can handle.
+     * @return Up to {@code limit} IDs of matching visits.
+     * @throws VisitLogQueryException If visit logs are stored in buckets.
+     */
+    public Set<UUID> findVisitIdsByText(String text, int limit) {
+        rejectSearchInBucketLayout();
+        return visitLogDocumentRepository.findDistinctVisitIdsByText(text, limit,
+                !visitLogVisitIdMigration.isCompleted());
+    }
+
+    /**
+     * Returns whether the full-text search is available, e.g. to hide search fields otherwise.
+     * <p>
+     * The search is only available with the document layout. With the bucket layout ({@link VisitLogBucketStore}),
+     * a text index can only match and score whole buckets, so the results would differ from the document layout:
+     * other words would match, and the relevance order would be lost. The search methods reject searches with a
+     * {@link VisitLogQueryException} instead.
+     * </p>
+     *
+     * @return Whether visit logs can be searched by words.
+     */
+    public boolean isTextSearchAvailable() {
+        return !visitLogBucketStore.isEnabled();
+    }
+
+    private void rejectSearchInBucketLayout() {
+        if (!isTextSearchAvailable()) {
+            throw new VisitLogQueryException("Visit logs can not be searched by words with the bucket storage layout");
+        }
+    }
+
+    private void rejectSearchOfArchivedVisit(UUID visitId) {
+        if (visitLogArchive.isArchived(visitId)) {
+            throw new VisitLogQueryException("The visit logs of archived visits can not be searched by words; "
+                    + "filter them by their title or description instead");
+        }
+    }
+
+    /**
+     * Retrieves the {@link VisitLog} entries of a specific {@link Visit} that match arbitrary criteria.
+     * <p>
+     * For a visit that is not archived, the criteria and search terms are evaluated by MongoDB like in
+     * {@link #find(Criteria, String, Pageable)}. The visit logs of an archived visit are merged with the stored ones
+     * and filtered, sorted and paged in memory by {@link VisitLogCriteriaMatcher} and {@link VisitLogPaging}.
+     * </p>
+     *
+     * @param visit    The {@link Visit} entity to retrieve visit logs for.
+     * @param criteria The criteria on {@link VisitLogDocument} fields, or {@code null}.
+     * @param text     Full-text search terms that the entries have to match in addition, or {@code null}.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return The matching {@link VisitLog} entries of the requested page.
+     * @throws VisitLogQueryException If search terms are given for an archived visit, or the criteria can not be
+     *                                evaluated in memory.
+     */
+    public List<VisitLog> findByVisit(Visit visit, @Nullable Criteria criteria, @Nullable String text, Pageable pageable) {
+        return findMatchingArchivedVisitLogDocuments(visit.getId(), criteria, text)
+                .map(visitLogDocuments -> visitLogMapper.toVisitLogs(VisitLogPaging.apply(visitLogDocuments, pageable)))
+                .orElseGet(() -> find(visitCriteria(visit.getId(), criteria), text, pageable));
+    }
+
+    /**
+     * Counts the {@link VisitLog} entries of a specific {@link Visit} that match arbitrary criteria.
+     *
+     * @param visit    The {@link Visit} entity to count visit logs for.
+     * @param criteria The criteria on {@link VisitLogDocument} fields, or {@code null}.
+     * @param text     Full-text search terms that the entries have to match in addition, or {@code null}.
+     * @return The number of matching {@link VisitLog} entries.
+     * @throws VisitLogQueryException If search terms are given for an archived visit, or the criteria can not be
+     *                                evaluated in memory.
+     * @see #findByVisit(Visit, Criteria, String, Pageable)
+     */
+    public long countByVisit(Visit visit, @Nullable Criteria criteria, @Nullable String text) {
+        return findMatchingArchivedVisitLogDocuments(visit.getId(), criteria, text)
+                .map(visitLogDocuments -> (long) visitLogDocuments.size())
+                .orElseGet(() -> count(visitCriteria(visit.getId(), criteria), text));
+    }
+
+    private Criteria visitCriteria(UUID visitId, @Nullable Criteria criteria) {
+        return VisitLogCriteriaTranslator.and(Arrays.asList(
+                where("visitId").in(visitLogVisitIdMigration.queryValues(visitId)), criteria));
+    }
+
+    /**
+     * Returns the visit logs of an archived visit that match the criteria, in the order of their creation.
+     *
+     * @return The matching visit logs, or an empty optional if the visit is not archived.
+     */
+    private Optional<List<VisitLogDocument>> findMatchingArchivedVisitLogDocuments(UUID visitId,
+                                                                                   @Nullable Criteria criteria,
+                                                                                   @Nullable String text) {
+        Optional<List<VisitLogDocument>> archived = visitLogArchive.findByVisitId(visitId);
+        if (archived.isEmpty()) {
+            return Optional.empty();
+        }
+        if (text != null) {
+            rejectSearchOfArchivedVisit(visitId);
+        }
+
+        List<VisitLogDocument> visitLogDocuments = visitLogArchive.merge(archived.get(),
+                findStoredVisitLogDocuments(visitLogVisitIdMigration.queryValues(visitId)));
+        if (criteria != null) {
+            visitLogContentStorage.loadSearchTexts(visitLogDocuments);
+        }
+        return Optional.of(VisitLogCriteriaMatcher.filter(visitLogDocuments, criteria));
+    }
+
+    /**
+     * Retrieves the {@link VisitLog} entries matching arbitrary criteria, e.g. translated from a Jmix condition by
+     * {@link VisitLogCriteriaTranslator}.
+     * <p>
+     * The criteria are evaluated by MongoDB against the regular visit log collection. Archived visit logs and saves
+     * still waiting in {@link VisitLogWriteBehindQueue} are not included; they are returned by
+     * {@link #findByVisit(Visit, Pageable)}, and archived visit logs matching criteria by
+     * {@link #findByVisit(Visit, Criteria, String, Pageable)}.
+     * </p>
+     *
+     * @param criteria The criteria on {@link VisitLogDocument} fields.
+     * @param text     Full-text search terms that the entries have to match in addition, or {@code null}.
+     * @param pageable The page to retrieve, including its sort order.
+     * @return The matching {@link VisitLog} entries of the requested page.
+     * @throws VisitLogQueryException If search terms are given and visit logs are stored in buckets.
+     */
+    public List<VisitLog> find(Criteria criteria, @Nullable String text, Pageable pageable) {
+        if (text != null) {
+            rejectSearchInBucketLayout();
+        }
+        if (visitLogBucketStore.isEnabled()) {
+            return visitLogMapper.toVisitLogs(visitLogBucketStore.findByCriteria(criteria, pageable));
+        }
+        return visitLogMapper.toVisitLogs(visitLogDocumentRepository.findByCriteria(criteria, text, pageable));
+    }
+
+    /**
+     * Counts the {@link VisitLog} entries matching arbitrary criteria.
+     *
+     * @param criteria The criteria on {@link VisitLogDocument} fields.
+     * @param text     Full-text search terms that the entries have to match in addition, or {@code null}.
+     * @return The number of matching {@link VisitLog} entries.
+     * @throws VisitLogQueryException If search terms are given and visit logs are stored in buckets.
+     * @see #find(Criteria, String, Pageable)
+     */
+    public long count(Criteria criteria, @Nullable String text) {
+        if (text != null) {
+            rejectSearchInBucketLayout();
+        }
+        if (visitLogBucketStore.isEnabled()) {
+            return visitLogBucketStore.countByCriteria(criteria);
+        }
+        return visitLogDocumentRepository.countByCriteria(criteria, text);
+    }
+
+    /**
+     * Streams all {@link VisitLog} entries associated with a specific {@link Visit} in the order of their creation.
+     *
+     * @param visit The {@link Visit} entity to retrieve visit logs for.
+     * @return A {@link Flux} emitting the {@link VisitLog} entries linked to the specified visit.
+     * @see #streamByVisit(Visit, Criteria)
+     */
+    public Flux<VisitLog> streamByVisit(Visit visit) {
+        return streamByVisit(visit, null);
+    }
+
+    /**
+     * Streams the {@link VisitLog} entries associated with a specific {@link Visit} that match the given criteria,
+     * in the order of their creation.
+     * <p>
+     * The entries are read through {@link ReactiveVisitLogDocumentRepository} and emitted as soon as they arrive
+     * from MongoDB. Subscribing does not block the calling thread, so the caller can display the first entries
+     * while the remaining ones are still being transferred. The entries are not cached. With the bucket layout, the
+     * buckets of the visit are read on a worker thread and their entries emitted afterwards. Either way, the stream
+     * reads from the database of the calling thread (see {@link MongoDatabaseSelection}).
+     * </p>
+     * <p>
+     * The visit logs of an archived visit are merged with the stored ones and filtered in memory like in
+     * {@link #findByVisit(Visit, Criteria, String, Pageable)}, and emitted once all of them have been read.
+     * </p>
+     *
+     * @param visit    The {@link Visit} entity to retrieve visit logs for.
+     * @param criteria Additional criteria, e.g. translated from the generic filter by
+     *                 {@link VisitLogCriteriaTranslator}, or {@code null}.
+     * @return A {@link Flux} emitting the matching {@link VisitLog} entries linked to the specified visit.
+     */
+    public Flux<VisitLog> streamByVisit(Visit visit, @Nullable Criteria criteria) {
+        // the stream is subscribed on other threads, which are not bound to the HTTP session of the caller
+        String databaseName = mongoDatabaseFactory.getMongoDatabase().getName();
+        UUID visitId = visit.getId();
+        Criteria visitCriteria = visitCriteria(visitId, criteria);
+        return Mono.fromCallable(() -> inDatabase(databaseName,
+                        () -> findMatchingArchivedVisitLogDocuments(visitId, criteria, null)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(archived -> archived
+                        .map(visitLogDocuments -> Flux.fromIterable(visitLogDocuments).map(visitLogMapper.batchConverter()))
+                        .orElseGet(() -> streamStoredVisitLogs(databaseName, visitCriteria)));
+    }
+
+    private Flux<VisitLog> streamStoredVisitLogs(String databaseName, Criteria visitCriteria) {
+        if (visitLogBucketStore.isEnabled()) {
+            return Flux.defer(() -> Flux.fromIterable(inDatabase(databaseName,
+                            () -> visitLogBucketStore.findByCriteria(visitCriteria,
+                                    Pageable.unpaged(VisitLogPaging.CREATION_ORDER)))))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .map(visitLogMapper.batchConverter());
+        }
+        return Flux.defer(() -> reactiveVisitLogDocumentRepository
+                        .streamByCriteria(visitCriteria, VisitLogPaging.CREATION_ORDER)
+                        .map(visitLogMapper.batchConverter()))
+                .contextWrite(Context.of(MongoDatabaseSelection.class, databaseName));
+    }
+
+    private static <T> T inDatabase(String databaseName, Supplier<T> action) {
+        String previous = MongoDatabaseSelection.enter(databaseName);
+        try {
+            return action.get();
+        } finally {
+            MongoDatabaseSelection.restore(previous);
+        }
+    }
+
+    /**
+     * Counts the {@link VisitLog} entries associated with a specific {@link Visit} without loading them.
+     *
+     * @param visit The {@link Visit} entity to count visit logs for.
+     * @return The number of {@link VisitLog} entries linked to the specified visit.
+     */
+    public long countByVisit(Visit visit) {
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(visit.getId());
+        return visitLogArchive.findByVisitId(visit.getId())
+                .map(archived -> (long) visitLogArchive.merge(archived, findStoredVisitLogDocuments(visitIdValues)).size())
+                .orElseGet(() -> visitLogBucketStore.isEnabled()
+                        ? visitLogBucketStore.countPerVisitId(visitIdValues).getOrDefault(visit.getId(), 0L)
+                        : visitLogDocumentRepository.countByVisitIdIn(visitIdValues));
+    }
+
+    /**
+     * Retrieves the {@link VisitLog} entries of several {@link Visit}s at once, grouped by visit ID.
+     * <p>
+     * Instead of one query per visit, the logs of all visits are fetched with a single `$in` query. Very large
+     * sets of visits are split into several queries of at most `petclinic.visitlog.max-visit-ids-per-query` IDs.
+     * Within each visit, the entries are ordered by their creation. The visit logs of archived visits are merged
+     * with the stored ones like in {@link #findByVisit(Visit)}.
+     * </p>
+     *
+     * @param visits The {@link Visit} entities to retrieve visit logs for.
+     * @return The {@link VisitLog} entries by visit ID; visits without logs are mapped to an empty list.
+     */
+    public Map<UUID, List<VisitLog>> findByVisits(Collection<Visit> visits) {
+        Map<UUID, List<VisitLog>> visitLogsByVisitId = new LinkedHashMap<>();
+        visits.forEach(visit -> visitLogsByVisitId.put(visit.getId(), new ArrayList<>()));
+
+        List<UUID> visitIds = List.copyOf(visitLogsByVisitId.keySet());
+
+        int batchSize = visitLogProperties.getMaxVisitIdsPerQuery();
+        for (int batchStart = 0; batchStart < visitIds.size(); batchStart += batchSize) {
+            List<UUID> batch = visitIds.subList(batchStart, Math.min(batchStart + batchSize, visitIds.size()));
+            List<Object> batchValues = visitLogVisitIdMigration.queryValues(batch);
+
+            List<VisitLogDocument> visitLogDocuments = visitLogBucketStore.isEnabled()
+                    ? visitLogBucketStore.findByVisitIdIn(batchValues)
+                    : visitLogDocumentRepository.findByVisitIdIn(batchValues, VisitLogPaging.CREATION_ORDER);
+
+            Map<UUID, List<VisitLogDocument>> visitLogDocumentsByVisitId = visitLogDocuments.stream()
+                    .collect(Collectors.groupingBy(VisitLogDocument::getVisitId, LinkedHashMap::new, Collectors.toList()));
+            visitLogArchive.findByVisitIds(batch)
+                    .forEach((visitId, archived) -> visitLogDocumentsByVisitId.put(visitId,
+                            visitLogArchive.merge(archived, visitLogDocumentsByVisitId.getOrDefault(visitId, List.of()))));
+
+            visitLogDocumentsByVisitId.forEach((visitId, documents) ->
+                    visitLogsByVisitId.get(visitId).addAll(visitLogMapper.toVisitLogs(documents)));
+        }
+
+        return visitLogsByVisitId;
+    }
+
+    /**
+     * Counts the {@link VisitLog} entries of several {@link Visit}s at once.
+     * <p>
+     * The counts are calculated by a single aggregation per `petclinic.visitlog.max-visit-ids-per-query` visits,
+     * which is served by the `visitId` prefix of the compound index. This makes it suitable for displaying the
+     * number of logs for every row of a page in a data grid.
+     * </p>
+     *
+     * @param visits The {@link Visit} entities to count the visit logs for.
+     * @return The number of {@link VisitLog} entries by visit ID; visits without logs are mapped to zero.
+     */
+    public Map<UUID, Long> countByVisits(Collection<Visit> visits) {
+        Map<UUID, Long> countsByVisitId = new LinkedHashMap<>();
+        visits.forEach(visit -> countsByVisitId.put(visit.getId(), 0L));
+
+        List<UUID> visitIds = List.copyOf(countsByVisitId.keySet());
+
+        int batchSize = visitLogProperties.getMaxVisitIdsPerQuery();
+        for (int batchStart = 0; batchStart < visitIds.size(); batchStart += batchSize) {
+            List<UUID> batch = visitIds.subList(batchStart, Math.min(batchStart + batchSize, visitIds.size()));
+
+            List<Object> batchValues = visitLogVisitIdMigration.queryValues(batch);
+            countsByVisitId.putAll(visitLogBucketStore.isEnabled()
+                    ? visitLogBucketStore.countPerVisitId(batchValues)
+                    : visitLogDocumentRepository.countPerVisitId(batchValues));
+            visitLogArchive.countByVisitIds(batch)
+                    .forEach((visitId, count) -> countsByVisitId.merge(visitId, count, Long::sum));
+        }
+
+        return countsByVisitId;
+    }
+
+    /**
+     * Retrieves the {@link VisitLog} entries of a specific {@link Visit} that follow the given position,
+     * in the order of their creation.
+     * <p>
+     * In contrast to {@link #findByVisit(Visit, Pageable)}, this method does not skip over previous pages but
+     * seeks directly after the key (`createdAt`, `id`) of the last entry seen. Loading page N therefore costs
+     * the same as loading the first page, which makes it the preferred way to iterate over visits with many logs.
+     * Pass {@link org.springframework.data.domain.ScrollPosition#keyset()} to start from the beginning and
+     * {@link Window#positionAt(int)} of the last entry to continue. With the bucket layout, the window is cut out of
+     * the visit logs of the buckets following the position.
+     * </p>
+     *
+     * @param visit    The {@link Visit} entity to retrieve visit logs for.
+     * @param position The position to continue after.
+     * @param limit    The maximum number of entries to return.
+     * @return A {@link Window} containing the {@link VisitLog} entries and the positions to continue from.
+     */
+    public Window<VisitLog> findByVisitAfter(Visit visit, KeysetScrollPosition position, int limit) {
+        List<Object> visitIdValues = visitLogVisitIdMigration.queryValues(visit.getId());
+        Window<VisitLogDocument> visitLogDocuments = visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.scrollByVisitIdIn(visitIdValues, position, limit)
+                : visitLogDocumentRepository.scrollByVisitIdIn(visitIdValues, position, limit);
+        return visitLogDocuments.map(visitLogMapper.batchConverter());
+    }
+
     /**
      * Saves a {@link VisitLog} entry to the database by converting it into its persistent form, {@link VisitLogDocument}.
      * <p>
      * This method converts the given `VisitLog` DTO entity to a `VisitLogDocument` and saves it using the repository.
+     * Before, the attributes of the visit, pet and owner are copied into the document by {@link VisitLogDenormalization},
+     * which corrects them after the write if they have been changed in the meantime.
+     * A description above `petclinic.visitlog.content.description-threshold` is moved into GridFS by
+     * {@link VisitLogContentStorage}, and the document keeps only its preview (see {@link #loadDescription}).
      * After saving, the document is re-converted to a `VisitLog` to return the updated DTO entity.
      * </p>
+     * <p>
+     * With `petclinic.visitlog.write-behind.enabled`, the document is handed over to {@link VisitLogWriteBehindQueue}
+     * and the method returns without waiting for MongoDB. The saved entry is then visible to {@link #loadVisitLog}
+     * immediately, but to queries only after the queue has written it. If the queue stays full, the entry is written
+     * synchronously instead.
+     * </p>
+     * <p>
+     * A new entry, i.e. one without `createdAt`, is counted by {@link VisitLogAnalytics} once MongoDB has
+     * acknowledged its write.
+     * </p>
+     * <p>
+     * The synchronous write, including the upload of a large description, passes {@link VisitLogCircuitBreaker}. If
+     * MongoDB is unavailable, the document is appended to {@link VisitLogJournal} as requested and the entry is
+     * returned as saved; it is written to MongoDB once the connection is back. Such an entry is counted by the next
+     * reconciliation of {@link VisitLogAnalytics}.
+     * </p>
      *
      * @param visitLog The {@link VisitLog} entity to be saved.
      * @return The saved and updated {@link VisitLog} entity.
      */
     public VisitLog saveVisitLog(VisitLog visitLog) {
-        VisitLogDocument visitLogDocument = toVisitLogDocument(visitLog);
-        VisitLogDocument savedDocument = visitLogDocumentRepository.save(visitLogDocument);
-        return toVisitLog(savedDocument);
+        boolean created = visitLog.getCreatedAt() == null;
+        VisitLogDocument visitLogDocument = visitLogMapper.toVisitLogDocument(visitLog);
+        visitLogDenormalization.denormalize(List.of(visitLogDocument));
+        if (visitLogWriteBehindQueue.isEnabled() && visitLogWriteBehindQueue.offer(visitLogDocument, created)) {
+            return visitLogMapper.toVisitLog(visitLogDocument);
+        }
+
+        // the document is journaled as requested, before its description is moved into GridFS
+        Optional<VisitLogDocument> storedDocument = visitLogJournal.storeOrAppend(visitLogDocument, this::store);
+        if (storedDocument.isEmpty()) {
+            return visitLogMapper.toVisitLog(visitLogDocument);
+        }
+
+        VisitLogDocument savedDocument = storedDocument.get();
+        visitLogDenormalization.reconcile(List.of(savedDocument));
+        invalidateCache(List.of(savedDocument));
+        if (created) {
+            visitLogAnalytics.recordCreated(List.of(savedDocument));
+        }
+        return visitLogMapper.toVisitLog(savedDocument);
+    }
+
+    private VisitLogDocument store(VisitLogDocument visitLogDocument) {
+        String description = visitLogDocument.getDescription();
+        String descriptionFileId = visitLogDocument.getDescriptionFileId();
+        List<VisitLogDocument> withNewDescription = visitLogContentStorage.storeDescriptions(List.of(visitLogDocument));
+
+        VisitLogDocument savedDocument;
+        try {
+            savedDocument = visitLogBucketStore.isEnabled()
+                    ? visitLogBucketStore.save(visitLogDocument)
+                    : visitLogDocumentRepository.save(visitLogDocument);
+        } catch (RuntimeException e) {
+            // a journaled document keeps its full description, the uploaded file is replaced by the replay
+            visitLogDocument.setDescription(description);
+            visitLogDocument.setDescriptionFileId(descriptionFileId);
+            throw e;
+        }
+        visitLogContentStorage.removeReplacedDescriptions(withNewDescription);
+        return savedDocument;
+    }
+
+    /**
+     * Saves multiple {@link VisitLog} entries with as few database round-trips as possible.
+     * <p>
+     * The entries are converted to {@link VisitLogDocument}s and written via MongoDB bulk writes in chunks of
+     * `petclinic.visitlog.bulk-write.chunk-size`. By default the bulk writes are unordered, so a failing entry
+     * does not prevent the other entries from being written. With `petclinic.visitlog.bulk-write.ordered` enabled,
+     * writing stops at the first failure and all following entries are reported as failed.
+     * </p>
+     * <p>
+     * The duration of each call is recorded by the `petclinic.visitlog.bulk-write` timer, the number of written
+     * and failed entries by the `petclinic.visitlog.bulk-write.documents` counter, which together give the write
+     * throughput.
+     * </p>
+     * <p>
+     * Like a single save, the write of each chunk, including the upload of large descriptions, passes
+     * {@link VisitLogCircuitBreaker}. If MongoDB is unavailable, the entries of the chunk are appended to
+     * {@link VisitLogJournal} and returned as saved. If the journal is disabled or can not take them, they are
+     * reported as failed with the connection error. Journaled entries are counted by the next reconciliation of
+     * {@link VisitLogAnalytics}.
+     * </p>
+     *
+     * @param visitLogs The {@link VisitLog} entities to be saved.
+     * @return The saved entries together with the entries that could not be written.
+     */
+    public VisitLogBulkSaveResult saveVisitLogs(Collection<VisitLog> visitLogs) {
+        return bulkWriteTimer.record(() -> {
+            VisitLogProperties.BulkWrite bulkWrite = visitLogProperties.getBulkWrite();
+            BulkOperations.BulkMode bulkMode = bulkWrite.isOrdered()
+                    ? BulkOperations.BulkMode.ORDERED
+                    : BulkOperations.BulkMode.UNORDERED;
+
+            List<VisitLog> pending = List.copyOf(visitLogs);
+            List<VisitLog> saved = new ArrayList<>(pending.size());
+            List<VisitLogBulkSaveResult.Failure> failures = new ArrayList<>();
+
+            for (int chunkStart = 0; chunkStart < pending.size(); chunkStart += bulkWrite.getChunkSize()) {
+                List<VisitLog> chunk = pending.subList(chunkStart, Math.min(chunkStart + bulkWrite.getChunkSize(), pending.size()));
+                List<VisitLogDocument> documents = chunk.stream()
+                        .map(visitLogMapper::toVisitLogDocument)
+                        .toList();
+                visitLogDenormalization.denormalize(documents);
+                List<String> descriptions = documents.stream().map(VisitLogDocument::getDescription).toList();
+                List<String> descriptionFileIds = documents.stream().map(VisitLogDocument::getDescriptionFileId).toList();
+
+                List<VisitLogDocument> withNewDescription = new ArrayList<>();
+                Map<Integer, String> errors;
+                boolean unavailable = false;
+                try {
+                    errors = visitLogCircuitBreaker.execute(() -> {
+                        withNewDescription.addAll(visitLogContentStorage.storeDescriptions(documents));
+                        return visitLogBucketStore.isEnabled()
+                                ? visitLogBucketStore.bulkSave(documents, bulkMode)
+                                : visitLogDocumentRepository.bulkSave(documents, bulkMode);
+                    });
+                } catch (RuntimeException e) {
+                    if (!VisitLogCircuitBreaker.isUnavailability(e)) {
+                        throw e;
+                    }
+                    // the journal keeps the full description, the replay moves it into GridFS again
+                    unavailable = true;
+                    for (int i = 0; i < documents.size(); i++) {
+                        documents.get(i).setDescription(descriptions.get(i));
+                        documents.get(i).setDescriptionFileId(descriptionFileIds.get(i));
+                    }
+                    withNewDescription.clear();
+                    errors = appendToJournal(documents, e);
+                }
+                invalidateCache(documents);
+
+                List<VisitLogDocument> written = new ArrayList<>(chunk.size());
+                List<VisitLogDocument> created = new ArrayList<>();
+                for (int i = 0; i < chunk.size(); i++) {
+                    String error = errors.get(i);
+                    if (error == null) {
+                        written.add(documents.get(i));
+                        if (chunk.get(i).getCreatedAt() == null) {
+                            created.add(documents.get(i));
+                        }
+                        saved.add(visitLogMapper.toVisitLog(documents.get(i)));
+                    } else {
+                        failures.add(new VisitLogBulkSaveResult.Failure(chunk.get(i), error));
+                    }
+                }
+                if (!unavailable) {
+                    visitLogContentStorage.removeReplacedDescriptions(
+                            withNewDescription.stream().filter(written::contains).toList());
+                    visitLogContentStorage.removeUnwrittenDescriptions(
+                            withNewDescription.stream().filter(document -> !written.contains(document)).toList());
+                    visitLogDenormalization.reconcile(written);
+                    visitLogAnalytics.recordCreated(created);
+                }
+
+                if (bulkMode == BulkOperations.BulkMode.ORDERED && !errors.isEmpty()) {
+                    pending.subList(chunkStart + chunk.size(), pending.size())
+                            .forEach(visitLog -> failures.add(new VisitLogBulkSaveResult.Failure(visitLog,
+                                    "Not written because of a previous error in the ordered bulk write")));
+                    break;
+                }
+            }
+
+            bulkWriteSavedCounter.increment(saved.size());
+            bulkWriteFailedCounter.increment(failures.size());
+
+            return new VisitLogBulkSaveResult(saved, failures);
+        });
+    }
+
+    /**
+     * Appends the documents of a chunk that could not be written because MongoDB is unavailable to
+     * {@link VisitLogJournal}. Documents without `id` receive a newly generated ObjectId, so that the saved visit
+     * logs are returned with their final ID.
+     *
+     * @return The errors by position in the chunk: none if the documents are journaled, otherwise the connection
+     * error for every document.
+     */
+    private Map<Integer, String> appendToJournal(List<VisitLogDocument> documents, RuntimeException unavailability) {
+        if (visitLogJournal.isEnabled()) {
+            documents.stream()
+                    .filter(document -> document.getId() == null)
+                    .forEach(document -> document.setId(new ObjectId().toHexString()));
+            try {
+                visitLogJournal.appendAll(documents);
+                log.warn("MongoDB is unavailable, {} visit logs of a bulk save are appended to the journal: {}",
+                        documents.size(), unavailability.getMessage());
+                return Map.of();
+            } catch (RuntimeException e) {
+                log.error("Failed to journal {} visit logs of a bulk save", documents.size(), e);
+            }
+        }
+
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            errors.put(i, String.valueOf(unavailability.getMessage()));
+        }
+        return errors;
     }
 
     /**
@@ -84,15 +807,21 @@ public class VisitLogService {
      * <p>
      * This method uses {@link VisitLogDocumentRepository} to retrieve the `VisitLogDocument` based on the provided ID.
      * If the document is found, it is converted to a `VisitLog` entity for use in the UI. If the document is not found,
-     * a {@link VisitLogNotFoundException} is thrown.
+     * a {@link VisitLogNotFoundException} is thrown. A save of the visit log that is still waiting in
+     * {@link VisitLogWriteBehindQueue} or {@link VisitLogJournal} takes precedence over the stored document.
      * </p>
      *
      * @param visitLogId The ID of the {@link VisitLog} entity to load.
      * @return The loaded and converted {@link VisitLog} entity.
      */
     public VisitLog loadVisitLog(String visitLogId) {
-        return visitLogDocumentRepository.findById(visitLogId)
-                .map(this::toVisitLog)
+        return visitLogWriteBehindQueue.getPending(visitLogId)
+                .or(() -> visitLogJournal.getPending(visitLogId))
+                .or(() -> visitLogCache.getVisitLog(visitLogId, visitLogBucketStore.isEnabled()
+                        ? visitLogBucketStore::findById
+                        : visitLogDocumentRepository::findById))
+                .or(() -> visitLogArchive.findEntry(visitLogId))
+                .map(visitLogMapper::toVisitLog)
                 .orElseThrow(() -> new VisitLogNotFoundException(visitLogId));
     }
 
@@ -101,61 +830,103 @@ public class VisitLogService {
      * <p>
      * This method converts each `VisitLog` entity's ID to a list, which is then passed to
      * {@link VisitLogDocumentRepository#deleteAllById}. This enables bulk deletion of entities based on their IDs.
+     * Queued and journaled saves of the entries are discarded first, so that they are not restored, and
+     * archived entries are removed from {@link VisitLogArchive}. Their attachments and description files are removed
+     * from {@link VisitLogContentStorage} and their counters in {@link VisitLogAnalytics} are decremented. Afterwards,
+     * the removed entries and the cached logs of their visits are evicted from {@link VisitLogCache}.
      * </p>
      *
      * @param visitLogs A collection of {@link VisitLog} entities to remove.
      */
     public void removeVisitLogs(Collection<VisitLog> visitLogs) {
-        visitLogDocumentRepository.deleteAllById(
-                visitLogs.stream().map(VisitLog::getId).toList()
+        List<String> visitLogIds = visitLogs.stream().map(VisitLog::getId).toList();
+        visitLogWriteBehindQueue.discard(visitLogIds);
+        visitLogJournal.discard(visitLogIds);
+        if (visitLogBucketStore.isEnabled()) {
+            visitLogBucketStore.deleteAllById(visitLogIds);
+        } else {
+            visitLogDocumentRepository.deleteAllById(visitLogIds);
+        }
+        visitLogArchive.removeEntries(visitLogIds);
+        visitLogContentStorage.removeFiles(visitLogIds);
+        visitLogAnalytics.recordRemoved(visitLogs);
+        visitLogCache.invalidate(
+                visitLogIds,
+                visitLogs.stream().map(visitLog -> visitLog.getVisit().getId()).collect(Collectors.toSet())
         );
     }
 
     /**
-     * Converts a {@link VisitLogDocument} to a {@link VisitLog} DTO entity for UI usage.
+     * Returns the full description of a {@link VisitLog}.
      * <p>
-     * During conversion, the `visit` reference is resolved using {@link DataManager#getReference} to maintain
-     * UI associations, and {@link EntityStates#setNew} is set to false to indicate that the entity
-     * is not new. This helps avoid re-persisting the entity when interacting with Jmix UI components.
+     * Descriptions above `petclinic.visitlog.content.description-threshold` are stored in GridFS, and loaded
+     * `VisitLog`s contain only their first `petclinic.visitlog.content.preview-length` characters together with
+     * {@link VisitLog#getDescriptionFileId()}. For these, the full text is read from {@link VisitLogContentStorage}.
      * </p>
      *
-     * @param visitLogDocument The MongoDB document to convert.
-     * @return The converted {@link VisitLog} entity.
+     * @param visitLog The {@link VisitLog} entity.
+     * @return The full description, or {@code null} if the visit log has none.
      */
+    @Nullable
+    public String loadDescription(VisitLog visitLog) {
+        String descriptionFileId = visitLog.getDescriptionFileId();
+        return descriptionFileId != null
+                ? visitLogContentStorage.readDescription(descriptionFileId)
+                : visitLog.getDescription();
+    }
 
-    // tag::to-visit-log[]
-    private VisitLog toVisitLog(VisitLogDocument visitLogDocument) {
-        VisitLog visitLog = dataManager.create(VisitLog.class);
-        entityStates.setNew(visitLog, false);
-
-        visitLog.setId(visitLogDocument.getId());
-        visitLog.setVisit(dataManager.getReference(Visit.class, UUID.fromString(visitLogDocument.getVisitId())));
-        visitLog.setTitle(visitLogDocument.getTitle());
-        visitLog.setDescription(visitLogDocument.getDescription());
+    /**
+     * Lists the attachments of a saved {@link VisitLog} in upload order.
+     *
+     * @param visitLog The {@link VisitLog} entity.
+     * @return The attachments.
+     */
+    public List<VisitLogAttachment> getAttachments(VisitLog visitLog) {
+        return visitLogContentStorage.getAttachments(visitLog.getId());
+    }
 
-        return visitLog;
+    /**
+     * Attaches a file to a saved {@link VisitLog}. The content is streamed into GridFS and never held in memory
+     * as a whole; the visit log document itself is not changed.
+     *
+     * @param visitLog    The {@link VisitLog} entity.
+     * @param fileName    The name of the file.
+     * @param contentType The MIME type of the file, if known.
+     * @param content     The content of the file. It is not closed.
+     * @return The stored attachment.
+     */
+    public VisitLogAttachment addAttachment(VisitLog visitLog, String fileName, @Nullable String contentType,
+                                            InputStream content) {
+        return visitLogContentStorage.addAttachment(visitLog.getId(), visitLog.getVisit().getId(), fileName,
+                contentType, content);
     }
-    // end::to-visit-log[]
 
     /**
-     * Converts a {@link VisitLog} DTO entity to its persistent form, {@link VisitLogDocument}.
-     * <p>
-     * This method prepares the `VisitLog` DTO for storage by creating a new `VisitLogDocument`
-     * and setting relevant fields, including converting the associated `visit` entity to its identifier
-     * (`visitId`) for database compatibility.
-     * </p>
+     * Opens the content of an attachment of a {@link VisitLog} for streaming, e.g. into a download. The returned
+     * stream has to be closed.
      *
-     * @param visitLog The {@link VisitLog} entity to convert.
-     * @return The resulting {@link VisitLogDocument} for persistence.
+     * @param visitLog The {@link VisitLog} entity.
+     * @param fileId   The ID of the attachment, see {@link VisitLogAttachment#fileId()}.
+     * @return The content of the attachment.
      */
-    private VisitLogDocument toVisitLogDocument(VisitLog visitLog) {
-        VisitLogDocument visitLogDocument = new VisitLogDocument();
+    public InputStream openAttachment(VisitLog visitLog, String fileId) {
+        return visitLogContentStorage.openAttachment(visitLog.getId(), fileId);
+    }
 
-        visitLogDocument.setId(visitLog.getId());
-        visitLogDocument.setVisitId(visitLog.getVisit().getId().toString());
-        visitLogDocument.setTitle(visitLog.getTitle());
-        visitLogDocument.setDescription(visitLog.getDescription());
+    /**
+     * Removes an attachment of a {@link VisitLog}.
+     *
+     * @param visitLog The {@link VisitLog} entity.
+     * @param fileId   The ID of the attachment, see {@link VisitLogAttachment#fileId()}.
+     */
+    public void removeAttachment(VisitLog visitLog, String fileId) {
+        visitLogContentStorage.removeAttachment(visitLog.getId(), fileId);
+    }
 
-        return visitLogDocument;
+    private void invalidateCache(Collection<VisitLogDocument> visitLogDocuments) {
+        visitLogCache.invalidate(
+                visitLogDocuments.stream().map(VisitLogDocument::getId).toList(),
+                visitLogDocuments.stream().map(VisitLogDocument::getVisitId).collect(Collectors.toSet())
+        );
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package io.jmix.petclinic.visit.log;
+
+/**
+ * Layout in which visit logs are stored in MongoDB, selected by `petclinic.visitlog.storage-layout`.
+ */
+public enum VisitLogStorageLayout {
+
+    /**
+     * One {@link VisitLogDocument} per visit log. Every visit log has its own entries in all indexes, so queries
+     * across visits, the full-text search and sorting are fully served by indexes.
+     */
+    DOCUMENT,
+
+    /**
+     * The visit logs of a visit are appended to a few bucket documents, see {@link VisitLogBucketStore}. This saves
+     * the per-document overhead and index entries of many short visit logs, and the logs of a visit are read with a
+     * single document fetch. Queries across visits unwind the buckets and are not served by indexes. The full-text
+     * search is not available, see {@link VisitLogService#isTextSearchAvailable()}.
+     */
+    BUCKET
+}
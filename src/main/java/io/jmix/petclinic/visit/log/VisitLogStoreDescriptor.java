@@ -0,0 +1,26 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.StoreDescriptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Describes the `visitlogs` data store of the {@link VisitLog} entity, which is implemented by
+ * {@link VisitLogDataStore}.
+ * <p>
+ * The store is registered through `jmix.core.additional-stores` and `jmix.core.store-descriptor-visitlogs` in
+ * `application.properties`.
+ * </p>
+ */
+@Component("petclinic_VisitLogStoreDescriptor")
+public class VisitLogStoreDescriptor implements StoreDescriptor {
+
+    @Override
+    public String getBeanName() {
+        return "petclinic_VisitLogDataStore";
+    }
+
+    @Override
+    public boolean isJpa() {
+        return false;
+    }
+}
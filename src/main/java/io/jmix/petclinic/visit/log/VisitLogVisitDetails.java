@@ -0,0 +1,50 @@
+package io.jmix.petclinic.visit.log;
+
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Attributes of a visit, its pet and the pet's owner that are copied into every {@link VisitLogDocument} of the
+ * visit by {@link VisitLogDenormalization}.
+ *
+ * @param visitId    The ID of the visit.
+ * @param petId      The ID of the pet of the visit.
+ * @param petName    The name of the pet.
+ * @param ownerId    The ID of the owner of the pet.
+ * @param ownerName  The full name of the owner.
+ * @param visitStart The start of the visit.
+ */
+public record VisitLogVisitDetails(UUID visitId,
+                                   @Nullable UUID petId,
+                                   @Nullable String petName,
+                                   @Nullable UUID ownerId,
+                                   @Nullable String ownerName,
+                                   @Nullable LocalDateTime visitStart) {
+
+    /**
+     * Reads the attributes copied into a document.
+     *
+     * @param visitLogDocument A visit log.
+     * @return The copied attributes of the visit of the visit log.
+     */
+    public static VisitLogVisitDetails of(VisitLogDocument visitLogDocument) {
+        return new VisitLogVisitDetails(visitLogDocument.getVisitId(), visitLogDocument.getPetId(),
+                visitLogDocument.getPetName(), visitLogDocument.getOwnerId(), visitLogDocument.getOwnerName(),
+                visitLogDocument.getVisitStart());
+    }
+
+    /**
+     * Copies the attributes into the given document.
+     *
+     * @param visitLogDocument A visit log of the visit.
+     */
+    public void applyTo(VisitLogDocument visitLogDocument) {
+        visitLogDocument.setPetId(petId);
+        visitLogDocument.setPetName(petName);
+        visitLogDocument.setOwnerId(ownerId);
+        visitLogDocument.setOwnerName(ownerName);
+        visitLogDocument.setVisitStart(visitStart);
+    }
+}
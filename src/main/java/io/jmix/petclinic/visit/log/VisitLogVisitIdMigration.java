@@ -0,0 +1,122 @@
+package io.jmix.petclinic.visit.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Converts the `visitId` of existing {@link VisitLogDocument}s from its former string form to a binary UUID.
+ * <p>
+ * The migration runs while the application is in use: documents are converted in batches of
+ * `petclinic.visitlog.visit-id-migration.batch-size` in `_id` order, and every batch is a single unordered bulk
+ * write. Converted documents no longer match the migration query, so an interrupted migration simply continues
+ * with the remaining documents on its next run.
+ * </p>
+ * <p>
+ * Until no string `visitId` is left, queries have to match both forms of a visit ID. {@link #queryValues} returns
+ * the values to use for the `visitId` of a query, which is the binary UUID only once the migration is completed.
+ * </p>
+ */
+@Component("petclinic_VisitLogVisitIdMigration")
+public class VisitLogVisitIdMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogVisitIdMigration.class);
+
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogProperties visitLogProperties;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean completed = false;
+
+    public VisitLogVisitIdMigration(VisitLogDocumentRepository visitLogDocumentRepository,
+                                    VisitLogProperties visitLogProperties) {
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogProperties = visitLogProperties;
+    }
+
+    /**
+     * Returns the values a `visitId` has to be matched against to find all logs of the given visit.
+     *
+     * @param visitId The ID of the visit.
+     * @return The binary UUID and, until the migration is completed, its string form.
+     */
+    public List<Object> queryValues(UUID visitId) {
+        return completed ? List.of(visitId) : List.of(visitId, visitId.toString());
+    }
+
+    /**
+     * Returns the values a `visitId` has to be matched against to find all logs of the given visits.
+     *
+     * @param visitIds The IDs of the visits.
+     * @return The binary UUIDs and, until the migration is completed, their string form.
+     */
+    public List<Object> queryValues(Collection<UUID> visitIds) {
+        List<Object> values = new ArrayList<>(completed ? visitIds.size() : visitIds.size() * 2);
+        values.addAll(visitIds);
+        if (!completed) {
+            visitIds.forEach(visitId -> values.add(visitId.toString()));
+        }
+        return values;
+    }
+
+    /**
+     * @return Whether all documents store their `visitId` as binary UUID.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Determines whether string `visitId`s are left without converting them, e.g. at startup when the migration is
+     * disabled, so that queries match only the binary UUID once all documents have been converted.
+     *
+     * @return Whether all documents store their `visitId` as binary UUID.
+     */
+    public boolean refreshCompleted() {
+        completed = visitLogDocumentRepository.countStringVisitIds() == 0;
+        return completed;
+    }
+
+    /**
+     * Converts all remaining string `visitId`s to binary UUIDs. If the migration is already running, the call
+     * returns immediately.
+     *
+     * @return The number of converted documents.
+     */
+    public long migrate() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            long remaining = visitLogDocumentRepository.countStringVisitIds();
+            if (remaining > 0) {
+                log.info("Converting the visit ID of {} visit logs to binary UUID", remaining);
+            }
+
+            int batchSize = visitLogProperties.getVisitIdMigration().getBatchSize();
+            Object lastId = null;
+            do {
+                lastId = visitLogDocumentRepository.migrateVisitIdsToUuid(lastId, batchSize);
+                if (lastId != null) {
+                    log.debug("Visit ID of visit logs converted up to _id {}", lastId);
+                }
+            } while (lastId != null);
+
+            long stillRemaining = visitLogDocumentRepository.countStringVisitIds();
+            completed = stillRemaining == 0;
+            if (remaining > 0) {
+                log.info("Visit ID of {} visit logs converted to binary UUID, {} remaining",
+                        remaining - stillRemaining, stillRemaining);
+            }
+            return Math.max(0, remaining - stillRemaining);
+        } finally {
+            running.set(false);
+        }
+    }
+}
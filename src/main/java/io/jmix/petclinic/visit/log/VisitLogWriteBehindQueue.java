@@ -0,0 +1,614 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.petclinic.MongoDatabaseSelection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded write-behind queue for {@link VisitLogDocument}s, used by {@link VisitLogService#saveVisitLog} when
+ * `petclinic.visitlog.write-behind.enabled` is set.
+ * <p>
+ * Saved visit logs are queued and written to MongoDB by a dedicated writer thread in bulk writes of up to
+ * `petclinic.visitlog.write-behind.batch-size` documents. The writer waits at most
+ * `petclinic.visitlog.write-behind.flush-interval` for a batch to fill up. Repeated saves of the same visit log
+ * are coalesced: while the visit log is waiting, a new save only replaces the queued document, so it is written
+ * once with its latest content. With the bucket layout, the batches are written by {@link VisitLogBucketStore}.
+ * </p>
+ * <p>
+ * Queued documents keep their full description. The writer moves large descriptions of copies of the documents into
+ * GridFS with {@link VisitLogContentStorage} right before the bulk write, and removes the replaced description files
+ * only after MongoDB has acknowledged the write, so that the stored visit log never references a removed file.
+ * Likewise, new visit logs are counted by {@link VisitLogAnalytics} once their write has been acknowledged.
+ * </p>
+ * <p>
+ * The writer has no HTTP session, so the database of each save is captured when it is queued. A batch is written
+ * per database with the database selected by {@link MongoDatabaseSelection}, which keeps the saves of the sessions of
+ * the online profile in their own databases.
+ * </p>
+ * <p>
+ * A visit log stays visible to {@link #getPending} until its write has been acknowledged. The bulk writes pass
+ * {@link VisitLogCircuitBreaker}. If MongoDB is unavailable, the batch is handed over to {@link VisitLogJournal}
+ * when it is enabled. Otherwise, and for visit logs rejected by MongoDB, the failed visit logs are queued again,
+ * unless they have been saved again meanwhile, and the writer pauses for
+ * `petclinic.visitlog.write-behind.retry-backoff`, doubled with every consecutive failed write. A visit log that
+ * MongoDB rejects `petclinic.visitlog.write-behind.max-attempts` times is logged and dropped.
+ * </p>
+ * <p>
+ * The queue holds at most `petclinic.visitlog.write-behind.capacity` visit logs. When it is full, a save waits up to
+ * `petclinic.visitlog.write-behind.offer-timeout` for free space and is rejected afterwards, so that the caller can
+ * write the visit log itself. On shutdown, the queue stops accepting visit logs and writes all remaining ones once.
+ * </p>
+ * <p>
+ * Metrics:
+ * <ul>
+ *     <li>`petclinic.visitlog.write-behind.queue.depth` - number of visit logs waiting to be written.</li>
+ *     <li>`petclinic.visitlog.write-behind.flush` - duration of the bulk writes of the writer.</li>
+ *     <li>`petclinic.visitlog.write-behind.documents` - visit logs by `outcome`: `saved`, `retried`, `journaled`,
+ *     `failed` (dropped) or `coalesced` with a queued save of the same visit log.</li>
+ * </ul>
+ * </p>
+ */
+@Component("petclinic_VisitLogWriteBehindQueue")
+public class VisitLogWriteBehindQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitLogWriteBehindQueue.class);
+
+    private final VisitLogDocumentRepository visitLogDocumentRepository;
+    private final VisitLogBucketStore visitLogBucketStore;
+    private final VisitLogCache visitLogCache;
+    private final VisitLogCircuitBreaker visitLogCircuitBreaker;
+    private final VisitLogJournal visitLogJournal;
+    private final VisitLogContentStorage visitLogContentStorage;
+    private final VisitLogAnalytics visitLogAnalytics;
+    private final VisitLogDenormalization visitLogDenormalization;
+    private final MongoTemplate mongoTemplate;
+    private final MongoConverter mongoConverter;
+    private final VisitLogProperties.WriteBehind settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private final Condition stopping = lock.newCondition();
+    private final Map<String, VisitLogDocument> pending = new LinkedHashMap<>();
+    private final Map<String, VisitLogDocument> inFlight = new LinkedHashMap<>();
+    private final Map<String, Integer> failedAttempts = new HashMap<>();
+    private final Map<String, String> databaseNames = new HashMap<>();
+    private final Set<String> created = new HashSet<>();
+
+    private final Timer flushTimer;
+    private final Counter savedCounter;
+    private final Counter retriedCounter;
+    private final Counter journaledCounter;
+    private final Counter failedCounter;
+    private final Counter coalescedCounter;
+
+    private volatile boolean running = false;
+    @Nullable
+    private Thread writer;
+    private int consecutiveFailedWrites = 0;
+
+    public VisitLogWriteBehindQueue(VisitLogDocumentRepository visitLogDocumentRepository,
+                                    VisitLogBucketStore visitLogBucketStore, VisitLogCache visitLogCache,
+                                    VisitLogCircuitBreaker visitLogCircuitBreaker, VisitLogJournal visitLogJournal,
+                                    VisitLogContentStorage visitLogContentStorage, VisitLogAnalytics visitLogAnalytics,
+                                    VisitLogDenormalization visitLogDenormalization, MongoTemplate mongoTemplate,
+                                    VisitLogProperties visitLogProperties, MeterRegistry meterRegistry) {
+        this.visitLogDocumentRepository = visitLogDocumentRepository;
+        this.visitLogBucketStore = visitLogBucketStore;
+        this.visitLogCache = visitLogCache;
+        this.visitLogCircuitBreaker = visitLogCircuitBreaker;
+        this.visitLogJournal = visitLogJournal;
+        this.visitLogContentStorage = visitLogContentStorage;
+        this.visitLogAnalytics = visitLogAnalytics;
+        this.visitLogDenormalization = visitLogDenormalization;
+        this.mongoTemplate = mongoTemplate;
+        this.mongoConverter = mongoTemplate.getConverter();
+        this.settings = visitLogProperties.getWriteBehind();
+
+        Gauge.builder("petclinic.visitlog.write-behind.queue.depth", this, VisitLogWriteBehindQueue::size)
+                .description("Visit logs waiting to be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("petclinic.visitlog.write-behind.flush")
+                .description("Duration of the bulk writes of queued visit logs")
+                .register(meterRegistry);
+        this.savedCounter = documentCounter(meterRegistry, "saved");
+        this.retriedCounter = documentCounter(meterRegistry, "retried");
+        this.journaledCounter = documentCounter(meterRegistry, "journaled");
+        this.failedCounter = documentCounter(meterRegistry, "failed");
+        this.coalescedCounter = documentCounter(meterRegistry, "coalesced");
+    }
+
+    private static Counter documentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("petclinic.visitlog.write-behind.documents")
+                .description("Visit logs processed by the write-behind queue")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "visit-log-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return Whether saves are queued, i.e. the write-behind mode is enabled and the queue is not shut down.
+     */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Queues a document to be written. A document without `id` receives a newly generated ObjectId first, so that
+     * the caller can return the visit log with its final ID.
+     *
+     * @param document The document to write.
+     * @param isNew    Whether the document is a new visit log, which is counted by {@link VisitLogAnalytics} once
+     *                 it has been written.
+     * @return {@code true} if the document was queued or coalesced with a queued save of the same visit log,
+     * {@code false} if the queue is shut down or stayed full for `offer-timeout`.
+     */
+    public boolean offer(VisitLogDocument document, boolean isNew) {
+        if (document.getId() == null) {
+            document.setId(new ObjectId().toHexString());
+        }
+        String databaseName = mongoTemplate.getDb().getName();
+
+        lock.lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            if (pending.containsKey(document.getId())) {
+                pending.put(document.getId(), document);
+                databaseNames.put(document.getId(), databaseName);
+                if (isNew) {
+                    created.add(document.getId());
+                }
+                coalescedCounter.increment();
+                return true;
+            }
+
+            long remainingNanos = settings.getOfferTimeout().toNanos();
+            while (pending.size() >= settings.getCapacity()) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = notFull.awaitNanos(remainingNanos);
+            }
+
+            pending.put(document.getId(), document);
+            databaseNames.put(document.getId(), databaseName);
+            if (isNew) {
+                created.add(document.getId());
+            }
+            notEmpty.signal();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queued document with the given ID, which is more recent than the document stored in MongoDB.
+     * A document that is being written is returned until MongoDB has acknowledged the write.
+     *
+     * @param id The ID of the visit log.
+     * @return The queued document, or an empty optional if no save of the visit log is waiting.
+     */
+    public Optional<VisitLogDocument> getPending(String id) {
+        lock.lock();
+        try {
+            return Optional.ofNullable(pending.get(id)).or(() -> Optional.ofNullable(inFlight.get(id)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops queued saves of the given visit logs, e.g. because they are removed. If one of them is being written,
+     * the method waits for the write to finish, so that it can not restore the visit log after its removal.
+     *
+     * @param ids The IDs of the visit logs.
+     */
+    public void discard(Collection<String> ids) {
+        lock.lock();
+        try {
+            while (ids.stream().anyMatch(inFlight::containsKey)) {
+                written.awaitUninterruptibly();
+            }
+            pending.keySet().removeAll(ids);
+            failedAttempts.keySet().removeAll(ids);
+            created.removeAll(ids);
+            databaseNames.keySet().removeAll(ids);
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops queued saves of all visit logs of the given visits, e.g. because the visits are removed. Like
+     * {@link #discard}, the method waits for a write of such a visit log to finish.
+     *
+     * @param visitIds The IDs of the visits.
+     */
+    public void discardVisits(Collection<UUID> visitIds) {
+        lock.lock();
+        try {
+            while (inFlight.values().stream().anyMatch(document -> visitIds.contains(document.getVisitId()))) {
+                written.awaitUninterruptibly();
+            }
+            List<String> ids = pending.values().stream()
+                    .filter(document -> visitIds.contains(document.getVisitId()))
+                    .map(VisitLogDocument::getId)
+                    .toList();
+            pending.keySet().removeAll(ids);
+            failedAttempts.keySet().removeAll(ids);
+            created.removeAll(ids);
+            databaseNames.keySet().removeAll(ids);
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops queued saves of all visit logs of the given database, e.g. because the database of an HTTP session of
+     * the online profile is dropped. Like {@link #discard}, the method waits for a write to that database to finish,
+     * so that it can not recreate the database after it has been dropped.
+     *
+     * @param databaseName The name of the MongoDB database.
+     */
+    public void discardDatabase(String databaseName) {
+        lock.lock();
+        try {
+            while (inFlight.keySet().stream().anyMatch(id -> databaseName.equals(databaseNames.get(id)))) {
+                written.awaitUninterruptibly();
+            }
+            List<String> ids = pending.keySet().stream()
+                    .filter(id -> databaseName.equals(databaseNames.get(id)))
+                    .toList();
+            pending.keySet().removeAll(ids);
+            failedAttempts.keySet().removeAll(ids);
+            created.removeAll(ids);
+            databaseNames.keySet().removeAll(ids);
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of visit logs waiting to be written or being written.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                List<VisitLogDocument> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (write(batch, true)) {
+                    consecutiveFailedWrites = 0;
+                } else {
+                    awaitRetry();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in the visit log writer", e);
+            }
+        }
+    }
+
+    private List<VisitLogDocument> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty() && running) {
+                notEmpty.await();
+            }
+
+            long remainingNanos = settings.getFlushInterval().toNanos();
+            while (pending.size() < settings.getBatchSize() && remainingNanos > 0 && running) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+
+            return drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<VisitLogDocument> drain() {
+        List<VisitLogDocument> batch = new ArrayList<>(Math.min(pending.size(), settings.getBatchSize()));
+        Iterator<VisitLogDocument> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < settings.getBatchSize()) {
+            VisitLogDocument document = iterator.next();
+            batch.add(document);
+            inFlight.put(document.getId(), document);
+            iterator.remove();
+        }
+        notFull.signalAll();
+        return batch;
+    }
+
+    private void awaitRetry() throws InterruptedException {
+        long backoffNanos = settings.getRetryBackoff().toNanos() << Math.min(consecutiveFailedWrites++, 20);
+        long remainingNanos = Math.min(backoffNanos, settings.getMaxRetryBackoff().toNanos());
+
+        lock.lock();
+        try {
+            while (running && remainingNanos > 0) {
+                remainingNanos = stopping.awaitNanos(remainingNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a batch taken from the queue.
+     *
+     * @param batch The documents to write, registered as being written.
+     * @param retry Whether failed documents are queued again.
+     * @return {@code false} if documents have been queued again.
+     */
+    private boolean write(List<VisitLogDocument> batch, boolean retry) {
+        Map<String, List<Integer>> indexesByDatabase = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                indexesByDatabase.computeIfAbsent(databaseNames.get(batch.get(i).getId()), databaseName -> new ArrayList<>()).add(i);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        Map<Integer, String> errors;
+        boolean unavailable = false;
+        try {
+            errors = flushTimer.record(() -> visitLogCircuitBreaker.execute(() -> store(batch, indexesByDatabase)));
+        } catch (RuntimeException e) {
+            unavailable = VisitLogCircuitBreaker.isUnavailability(e);
+            if (unavailable && handOverToJournal(batch)) {
+                return true;
+            }
+            log.warn("Failed to write {} queued visit logs: {}", batch.size(), e.getMessage());
+            errors = new LinkedHashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                errors.put(i, String.valueOf(e.getMessage()));
+            }
+        }
+
+        List<VisitLogDocument> written = new ArrayList<>(batch.size());
+        List<VisitLogDocument> retried = new ArrayList<>();
+        List<VisitLogDocument> createdDocuments = new ArrayList<>();
+        int dropped = 0;
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                VisitLogDocument document = batch.get(i);
+                String error = errors.get(i);
+                if (error == null) {
+                    failedAttempts.remove(document.getId());
+                    written.add(document);
+                    if (created.remove(document.getId())) {
+                        createdDocuments.add(document);
+                    }
+                    continue;
+                }
+                // connection failures are retried without limit, as they are not caused by the visit log
+                int attempts = unavailable
+                        ? failedAttempts.getOrDefault(document.getId(), 0)
+                        : failedAttempts.merge(document.getId(), 1, Integer::sum);
+                if (retry && attempts < settings.getMaxAttempts()) {
+                    retried.add(document);
+                } else {
+                    log.error("Dropping queued visit log {} after {} failed writes: {}",
+                            document.getId(), Math.max(attempts, 1), error);
+                    failedAttempts.remove(document.getId());
+                    created.remove(document.getId());
+                    dropped++;
+                }
+            }
+            complete(batch, retried);
+        } finally {
+            lock.unlock();
+        }
+
+        savedCounter.increment(batch.size() - errors.size());
+        retriedCounter.increment(retried.size());
+        failedCounter.increment(dropped);
+        indexesByDatabase.forEach((databaseName, indexes) -> {
+            String previous = MongoDatabaseSelection.enter(databaseName);
+            try {
+                visitLogAnalytics.recordCreated(indexes.stream()
+                        .map(batch::get)
+                        .filter(createdDocuments::contains)
+                        .toList());
+                visitLogDenormalization.reconcile(indexes.stream()
+                        .map(batch::get)
+                        .filter(written::contains)
+                        .toList());
+            } finally {
+                MongoDatabaseSelection.restore(previous);
+            }
+        });
+
+        visitLogCache.invalidate(
+                batch.stream().map(VisitLogDocument::getId).toList(),
+                batch.stream().map(VisitLogDocument::getVisitId).collect(Collectors.toSet())
+        );
+        return retried.isEmpty();
+    }
+
+    private Map<Integer, String> store(List<VisitLogDocument> batch, Map<String, List<Integer>> indexesByDatabase) {
+        Map<Integer, String> errors = new LinkedHashMap<>();
+        indexesByDatabase.forEach((databaseName, indexes) -> {
+            String previous = MongoDatabaseSelection.enter(databaseName);
+            try {
+                store(indexes.stream().map(batch::get).toList())
+                        .forEach((index, error) -> errors.put(indexes.get(index), error));
+            } finally {
+                MongoDatabaseSelection.restore(previous);
+            }
+        });
+        return errors;
+    }
+
+    private Map<Integer, String> store(List<VisitLogDocument> batch) {
+        List<VisitLogDocument> documents = batch.stream().map(this::copy).toList();
+        // description files of a failed write are left behind and removed with the replaced descriptions later
+        List<VisitLogDocument> withNewDescription = visitLogContentStorage.storeDescriptions(documents);
+        Map<Integer, String> errors = visitLogBucketStore.isEnabled()
+                ? visitLogBucketStore.bulkSave(documents, BulkOperations.BulkMode.UNORDERED)
+                : visitLogDocumentRepository.bulkSave(documents, BulkOperations.BulkMode.UNORDERED);
+
+        List<VisitLogDocument> written = new ArrayList<>();
+        List<VisitLogDocument> notWritten = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            if (!withNewDescription.contains(documents.get(i))) {
+                continue;
+            }
+            if (errors.containsKey(i)) {
+                notWritten.add(documents.get(i));
+            } else {
+                written.add(documents.get(i));
+            }
+        }
+        visitLogContentStorage.removeReplacedDescriptions(written);
+        visitLogContentStorage.removeUnwrittenDescriptions(notWritten);
+        return errors;
+    }
+
+    private VisitLogDocument copy(VisitLogDocument document) {
+        Document bson = new Document();
+        mongoConverter.write(document, bson);
+        return mongoConverter.read(VisitLogDocument.class, bson);
+    }
+
+    private boolean handOverToJournal(List<VisitLogDocument> batch) {
+        if (!visitLogJournal.isEnabled()) {
+            return false;
+        }
+        try {
+            visitLogJournal.appendAll(batch);
+        } catch (RuntimeException e) {
+            log.error("Failed to journal {} queued visit logs", batch.size(), e);
+            return false;
+        }
+        log.warn("MongoDB is unavailable, {} queued visit logs are handed over to the journal", batch.size());
+
+        lock.lock();
+        try {
+            // journaled visit logs are counted by the next reconciliation of VisitLogAnalytics
+            batch.forEach(document -> {
+                failedAttempts.remove(document.getId());
+                created.remove(document.getId());
+            });
+            complete(batch, List.of());
+        } finally {
+            lock.unlock();
+        }
+        journaledCounter.increment(batch.size());
+        return true;
+    }
+
+    private void complete(List<VisitLogDocument> batch, List<VisitLogDocument> retried) {
+        batch.forEach(document -> inFlight.remove(document.getId()));
+        // a save of the same visit log queued during the write is more recent than the failed document
+        retried.forEach(document -> pending.putIfAbsent(document.getId(), document));
+        batch.stream()
+                .map(VisitLogDocument::getId)
+                .filter(id -> !pending.containsKey(id))
+                .forEach(databaseNames::remove);
+        written.signalAll();
+    }
+
+    /**
+     * Stops accepting visit logs and writes the remaining ones before the application shuts down. Visit logs that
+     * still can not be written are handed over to {@link VisitLogJournal} if MongoDB is unavailable, or dropped.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            stopping.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+
+        List<VisitLogDocument> batch;
+        do {
+            lock.lock();
+            try {
+                batch = drain();
+            } finally {
+                lock.unlock();
+            }
+            if (!batch.isEmpty()) {
+                write(batch, false);
+            }
+        } while (!batch.isEmpty());
+
+        log.info("Write-behind queue of visit logs drained");
+    }
+}
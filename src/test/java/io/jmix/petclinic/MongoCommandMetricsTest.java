@@ -0,0 +1,124 @@
+package io.jmix.petclinic;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import io.jmix.petclinic.visit.log.VisitLogService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "petclinic.mongodb.monitoring.slow-operation-threshold=0ms")
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MongoCommandMetricsTest {
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    MongoSlowOperationLog slowOperationLog;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    DataManager dataManager;
+
+    @BeforeEach
+    void setUp() {
+        slowOperationLog.clear();
+    }
+
+    @Test
+    void test_visitLogServiceOperation_isRecordedWithOriginAndFilterShape() {
+        // Given
+        Visit visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+
+        // When
+        visitLogService.findByVisit(visit);
+
+        // Then
+        assertThat(slowOperationLog.getSlowest())
+                .anySatisfy(entry -> {
+                    assertThat(entry.command()).isEqualTo("find");
+                    assertThat(entry.collection()).isEqualTo("visitLogDocument");
+                    assertThat(entry.origin()).isEqualTo("VisitLogService.findByVisit");
+                    assertThat(entry.filterShape()).isEqualTo("{visitId: {$in: [?]}}");
+                });
+
+        // and
+        assertThat(meterRegistry.find("petclinic.mongodb.commands")
+                .tag("command", "find")
+                .tag("origin", "VisitLogService.findByVisit")
+                .timer())
+                .isNotNull();
+    }
+
+    @Test
+    void test_fastCommands_shareTimerAndAreNotLogged() {
+        // Given
+        MongoDbProperties mongoDbProperties = new MongoDbProperties();
+        mongoDbProperties.getMonitoring().setSlowOperationThreshold(Duration.ofSeconds(1));
+        MongoSlowOperationLog ownSlowOperationLog = new MongoSlowOperationLog(mongoDbProperties);
+        SimpleMeterRegistry ownMeterRegistry = new SimpleMeterRegistry();
+        MongoCommandMetrics metrics = new MongoCommandMetrics(ownMeterRegistry, mongoDbProperties.getMonitoring(),
+                ownSlowOperationLog);
+
+        // When
+        execute(metrics, 1, Duration.ofMillis(5));
+        execute(metrics, 2, Duration.ofMillis(5));
+
+        // Then
+        assertThat(ownMeterRegistry.get("petclinic.mongodb.commands").timers()).hasSize(1);
+        assertThat(ownMeterRegistry.get("petclinic.mongodb.commands").tag("command", "find").timer().count())
+                .isEqualTo(2);
+        assertThat(ownSlowOperationLog.getSlowest()).isEmpty();
+
+        // When
+        execute(metrics, 3, Duration.ofSeconds(2));
+
+        // Then
+        assertThat(ownSlowOperationLog.getSlowest())
+                .singleElement()
+                .satisfies(entry -> assertThat(entry.filterShape()).isEqualTo("{visitId: {$in: [?]}}"));
+    }
+
+    private void execute(MongoCommandMetrics metrics, int requestId, Duration elapsed) {
+        ConnectionDescription connection = new ConnectionDescription(
+                new ServerId(new ClusterId(), new ServerAddress("localhost", 27017)));
+        metrics.commandStarted(new CommandStartedEvent(null, requestId, requestId, connection, "petclinic", "find",
+                BsonDocument.parse("{find: 'visitLogDocument', filter: {visitId: {$in: [1, 2]}}}")));
+        metrics.commandSucceeded(new CommandSucceededEvent(null, requestId, requestId, connection, "petclinic", "find",
+                new BsonDocument(), elapsed.toNanos()));
+    }
+
+    @Test
+    void test_filterShape_replacesValuesAndKeepsOperators() {
+        // Given
+        BsonDocument command = BsonDocument.parse(
+                "{aggregate: 'visitLogs', pipeline: [{$match: {visitId: {$in: [1, 2, 3]}, title: 'x'}}, {$count: 'n'}]}"
+        );
+
+        // When
+        String shape = MongoCommandMetrics.filterShape("aggregate", command);
+
+        // Then
+        assertThat(shape).isEqualTo("[{$match: {visitId: {$in: [?]}, title: ?}}, {$count: ?}]");
+    }
+}
@@ -0,0 +1,86 @@
+package io.jmix.petclinic;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link MongoConnectionPoolSaturationMetrics}. Every test uses a listener and meter registry of its own.
+ */
+public class MongoConnectionPoolSaturationMetricsTest {
+
+    SimpleMeterRegistry meterRegistry;
+    MongoConnectionPoolSaturationMetrics metrics;
+
+    ServerId serverId = new ServerId(new ClusterId(), new ServerAddress("localhost", 27017));
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new MongoConnectionPoolSaturationMetrics(meterRegistry);
+    }
+
+    @Test
+    void test_connectionPoolCreated_registersMetersOfServer() {
+        // When
+        metrics.connectionPoolCreated(new ConnectionPoolCreatedEvent(serverId, ConnectionPoolSettings.builder().build()));
+
+        // Then
+        assertThat(meterRegistry.find("petclinic.mongodb.pool.checkout").tag("server", "localhost:27017").timer())
+                .isNotNull();
+        assertThat(meterRegistry.find("petclinic.mongodb.pool.checkout.failed").tag("server", "localhost:27017").counters())
+                .hasSize(ConnectionCheckOutFailedEvent.Reason.values().length);
+    }
+
+    @Test
+    void test_checkouts_areRecordedInMetersOfServer() {
+        // Given
+        metrics.connectionPoolCreated(new ConnectionPoolCreatedEvent(serverId, ConnectionPoolSettings.builder().build()));
+        ConnectionId connectionId = new ConnectionId(serverId);
+
+        // When
+        metrics.connectionCheckedOut(new ConnectionCheckedOutEvent(connectionId, 1, TimeUnit.MILLISECONDS.toNanos(5)));
+        metrics.connectionCheckedOut(new ConnectionCheckedOutEvent(connectionId, 2, TimeUnit.MILLISECONDS.toNanos(15)));
+        metrics.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(serverId, 3,
+                ConnectionCheckOutFailedEvent.Reason.TIMEOUT, TimeUnit.SECONDS.toNanos(2)));
+
+        // Then
+        Timer checkout = meterRegistry.get("petclinic.mongodb.pool.checkout").tag("server", "localhost:27017").timer();
+        assertThat(checkout.count()).isEqualTo(2);
+        assertThat(checkout.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(20);
+
+        // and
+        assertThat(meterRegistry.get("petclinic.mongodb.pool.checkout.failed")
+                .tags("server", "localhost:27017", "reason", "TIMEOUT")
+                .counter()
+                .count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void test_connectionPoolClosed_removesMetersOfServer() {
+        // Given
+        metrics.connectionPoolCreated(new ConnectionPoolCreatedEvent(serverId, ConnectionPoolSettings.builder().build()));
+
+        // When
+        metrics.connectionPoolClosed(new ConnectionPoolClosedEvent(serverId));
+
+        // Then
+        assertThat(meterRegistry.find("petclinic.mongodb.pool.checkout").meters()).isEmpty();
+        assertThat(meterRegistry.find("petclinic.mongodb.pool.checkout.failed").meters()).isEmpty();
+    }
+}
@@ -0,0 +1,175 @@
+package io.jmix.petclinic.online;
+
+import com.mongodb.client.MongoClient;
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogCascadeDeletion;
+import io.jmix.petclinic.visit.log.VisitLogService;
+import io.jmix.petclinic.visit.log.VisitLogWriteBehindQueue;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test for the session databases of {@link RoutingMongoDatabaseFactory}. The session is set by the test
+ * instead of an HTTP session. Queued work is kept in the queues by long flush intervals.
+ */
+@SpringBootTest(properties = {
+        "petclinic.visitlog.write-behind.enabled=true",
+        "petclinic.visitlog.write-behind.flush-interval=1m",
+        "petclinic.visitlog.cascade-delete.flush-interval=1m"
+})
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class RoutingMongoDatabaseFactoryTest {
+
+    @Autowired
+    TestRoutingMongoDatabaseFactory routingMongoDatabaseFactory;
+
+    @Autowired
+    MongoClient mongoClient;
+
+    @Autowired
+    MongoProperties mongoProperties;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogWriteBehindQueue visitLogWriteBehindQueue;
+
+    @Autowired
+    VisitLogCascadeDeletion visitLogCascadeDeletion;
+
+    @Autowired
+    DataManager dataManager;
+
+    final List<String> sessionIds = new ArrayList<>();
+
+    @Test
+    void test_getMongoDatabase_isolatesDatabasesOfSessions() {
+        // Given
+        String firstDatabaseName = inSession("first", () -> routingMongoDatabaseFactory.getMongoDatabase().getName());
+        String secondDatabaseName = inSession("second", () -> routingMongoDatabaseFactory.getMongoDatabase().getName());
+
+        // When
+        inSession("first", () -> routingMongoDatabaseFactory.getMongoDatabase().getCollection("isolation")
+                .insertOne(new Document("session", "first")));
+
+        // Then
+        assertThat(firstDatabaseName).isNotEqualTo(secondDatabaseName);
+        assertThat(inSession("first", () -> routingMongoDatabaseFactory.getMongoDatabase().getName()))
+                .isEqualTo(firstDatabaseName);
+        assertThat(routingMongoDatabaseFactory.getMongoDatabase().getName())
+                .isEqualTo(mongoProperties.getMongoClientDatabase());
+
+        // and
+        assertThat(countIsolationDocuments(firstDatabaseName)).isEqualTo(1);
+        assertThat(countIsolationDocuments(secondDatabaseName)).isZero();
+        assertThat(countIsolationDocuments(mongoProperties.getMongoClientDatabase())).isZero();
+    }
+
+    @Test
+    void test_dropSessionDatabase_discardsQueuedWorkOfSession() throws InterruptedException {
+        // Given
+        Visit visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        String databaseName = inSession("dropped", () -> {
+            VisitLog visitLog = dataManager.create(VisitLog.class);
+            visitLog.setVisit(visit);
+            visitLog.setTitle("queued");
+            visitLogService.saveVisitLog(visitLog);
+            visitLogCascadeDeletion.enqueue(List.of(visit.getId()));
+            return routingMongoDatabaseFactory.getMongoDatabase().getName();
+        });
+        assertThat(visitLogWriteBehindQueue.size()).isEqualTo(1);
+        assertThat(visitLogCascadeDeletion.size()).isEqualTo(1);
+
+        // When
+        routingMongoDatabaseFactory.databaseNames.remove("dropped");
+        routingMongoDatabaseFactory.dropSessionDatabase("dropped", databaseName);
+
+        // Then
+        assertThat(awaitDropped(databaseName)).isTrue();
+        assertThat(visitLogWriteBehindQueue.size()).isZero();
+        assertThat(visitLogCascadeDeletion.size()).isZero();
+    }
+
+    private <T> T inSession(String sessionId, Supplier<T> action) {
+        if (!sessionIds.contains(sessionId)) {
+            sessionIds.add(sessionId);
+        }
+        TestRoutingMongoDatabaseFactory.SESSION_ID.set(sessionId);
+        try {
+            return action.get();
+        } finally {
+            TestRoutingMongoDatabaseFactory.SESSION_ID.remove();
+        }
+    }
+
+    private long countIsolationDocuments(String databaseName) {
+        return mongoClient.getDatabase(databaseName).getCollection("isolation").countDocuments();
+    }
+
+    private boolean awaitDropped(String databaseName) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            if (!mongoClient.listDatabaseNames().into(new ArrayList<>()).contains(databaseName)) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionIds.forEach(sessionId -> {
+            String databaseName = routingMongoDatabaseFactory.databaseNames.remove(sessionId);
+            if (databaseName != null) {
+                mongoClient.getDatabase(databaseName).drop();
+            }
+        });
+        mongoClient.getDatabase(mongoProperties.getMongoClientDatabase()).getCollection("isolation").drop();
+    }
+
+    /**
+     * Routes to the session set by the test for the current thread.
+     */
+    static class TestRoutingMongoDatabaseFactory extends RoutingMongoDatabaseFactory {
+
+        static final ThreadLocal<String> SESSION_ID = new ThreadLocal<>();
+
+        TestRoutingMongoDatabaseFactory(MongoClient mongoClient, String defaultDatabaseName) {
+            super(mongoClient, defaultDatabaseName);
+        }
+
+        @Nullable
+        @Override
+        protected String getSessionId() {
+            return SESSION_ID.get();
+        }
+    }
+
+    @TestConfiguration
+    static class SessionDatabaseConfiguration {
+
+        @Bean
+        TestRoutingMongoDatabaseFactory mongoDatabaseFactory(MongoClient mongoClient, MongoProperties mongoProperties) {
+            return new TestRoutingMongoDatabaseFactory(mongoClient, mongoProperties.getMongoClientDatabase());
+        }
+    }
+}
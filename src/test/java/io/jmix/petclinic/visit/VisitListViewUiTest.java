@@ -0,0 +1,199 @@
+package io.jmix.petclinic.visit;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.flowui.ViewNavigators;
+import io.jmix.flowui.component.UiComponentUtils;
+import io.jmix.flowui.component.textfield.TypedTextField;
+import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.testassist.FlowuiTestAssistConfiguration;
+import io.jmix.flowui.testassist.UiTest;
+import io.jmix.flowui.testassist.UiTestUtils;
+import io.jmix.flowui.view.ViewControllerUtils;
+import io.jmix.petclinic.JmixPetclinicApplication;
+import io.jmix.petclinic.entity.pet.Pet;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.entity.visit.VisitType;
+import io.jmix.petclinic.view.visit.VisitListView;
+import io.jmix.petclinic.visit.log.VisitLog;
+import io.jmix.petclinic.visit.log.VisitLogProperties;
+import io.jmix.petclinic.visit.log.VisitLogService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * UI integration test for the visit log search of {@link VisitListView}.
+ */
+@UiTest
+@SpringBootTest(classes = {JmixPetclinicApplication.class, FlowuiTestAssistConfiguration.class})
+public class VisitListViewUiTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    ViewNavigators viewNavigators;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogProperties visitLogProperties;
+
+    int maxFilteredVisits;
+    int maxVisitIdsPerQuery;
+    String searchTerm;
+    List<Visit> visits = new ArrayList<>();
+    List<VisitLog> visitLogs = new ArrayList<>();
+
+    VisitListView visitListView;
+    CollectionLoader<Visit> visitsDl;
+    TypedTextField<String> visitLogSearchField;
+
+    @BeforeEach
+    void setUp() {
+        maxFilteredVisits = visitLogProperties.getMaxFilteredVisits();
+        maxVisitIdsPerQuery = visitLogProperties.getMaxVisitIdsPerQuery();
+        // a term that no other visit log contains
+        searchTerm = "marker" + System.nanoTime();
+
+        viewNavigators.view(UiTestUtils.getCurrentView(), VisitListView.class).navigate();
+        visitListView = UiTestUtils.getCurrentView();
+        visitsDl = ViewControllerUtils.getViewData(visitListView).getLoader("visitsDl");
+        visitLogSearchField = findComponent("visitLogSearchField");
+    }
+
+    @Test
+    void test_visitLogSearch_pagesAndCountsMatchingVisits() {
+        // Given
+        List<Visit> matchingVisits = List.of(createVisit(searchTerm), createVisit(searchTerm), createVisit(searchTerm));
+        createVisit("Vaccination");
+        visitsDl.setMaxResults(2);
+
+        // When
+        visitLogSearchField.setValue(searchTerm);
+
+        // Then
+        assertThat(visitsDl.getContainer().getItems()).hasSize(2);
+        assertThat(count()).isEqualTo(3);
+
+        // When
+        visitsDl.setFirstResult(2);
+        visitsDl.load();
+
+        // Then
+        assertThat(visitsDl.getContainer().getItems()).hasSize(1);
+        assertThat(visitsDl.getContainer().getItems()).isSubsetOf(matchingVisits);
+    }
+
+    @Test
+    void test_visitLogSearch_passesMatchingVisitIdsInBatches() {
+        // Given
+        List<Visit> matchingVisits = List.of(createVisit(searchTerm), createVisit(searchTerm), createVisit(searchTerm));
+        visitLogProperties.setMaxVisitIdsPerQuery(2);
+
+        // When
+        visitLogSearchField.setValue(searchTerm);
+
+        // Then
+        assertThat(visitsDl.getParameters()).containsOnlyKeys("visitLogMatch0", "visitLogMatch1");
+        assertThat(visitsDl.getContainer().getItems()).containsExactlyInAnyOrderElementsOf(matchingVisits);
+        assertThat(count()).isEqualTo(3);
+    }
+
+    @Test
+    void test_visitLogSearch_withoutMatchingVisitLogs_showsNoVisits() {
+        // Given
+        createVisit("Vaccination");
+
+        // When
+        visitLogSearchField.setValue(searchTerm);
+
+        // Then
+        assertThat(visitsDl.getContainer().getItems()).isEmpty();
+    }
+
+    @Test
+    void test_visitLogSearch_isCombinedWithConditionOfGenericFilter() {
+        // Given
+        List<Visit> matchingVisits = List.of(createVisit(searchTerm), createVisit(searchTerm));
+        createVisit("Vaccination");
+        visitLogSearchField.setValue(searchTerm);
+        PropertyCondition typeCondition = PropertyCondition.equal("type", VisitType.REGULAR_CHECKUP);
+
+        // When: the generic filter replaces the condition of the loader
+        visitsDl.setCondition(typeCondition);
+        visitsDl.load();
+
+        // Then
+        assertThat(visitsDl.getContainer().getItems()).containsExactlyInAnyOrderElementsOf(matchingVisits);
+        assertThat(count()).isEqualTo(2);
+
+        // When
+        visitLogSearchField.clear();
+
+        // Then
+        assertThat(visitsDl.getCondition()).isSameAs(typeCondition);
+    }
+
+    @Test
+    void test_visitLogSearch_withTooManyMatchingVisits_clearsPreviousFilter() {
+        // Given
+        String otherSearchTerm = searchTerm + "other";
+        createVisit(otherSearchTerm);
+        createVisit(searchTerm);
+        createVisit(searchTerm);
+        visitLogSearchField.setValue(otherSearchTerm);
+        assertThat(count()).isEqualTo(1);
+        visitLogProperties.setMaxFilteredVisits(1);
+
+        // When
+        visitLogSearchField.setValue(searchTerm);
+
+        // Then
+        assertThat(visitsDl.getParameters()).isEmpty();
+        assertThat(count()).isEqualTo(dataManager.loadValue("select count(e) from petclinic_Visit e", Long.class).one());
+    }
+
+    private long count() {
+        return dataManager.getCount(visitsDl.createLoadContext());
+    }
+
+    private Visit createVisit(String visitLogTitle) {
+        Visit visit = dataManager.create(Visit.class);
+        visit.setPet(dataManager.load(Pet.class).all().maxResults(1).one());
+        visit.setType(VisitType.REGULAR_CHECKUP);
+        visit.setVisitStart(LocalDateTime.now());
+        visit.setVisitEnd(LocalDateTime.now().plusHours(1));
+        visit = dataManager.save(visit);
+        visits.add(visit);
+
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(visitLogTitle);
+        visitLogs.add(visitLogService.saveVisitLog(visitLog));
+        return visit;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T findComponent(String componentId) {
+        return (T) UiComponentUtils.getComponent(visitListView, componentId);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogProperties.setMaxFilteredVisits(maxFilteredVisits);
+        visitLogProperties.setMaxVisitIdsPerQuery(maxVisitIdsPerQuery);
+        visitLogService.removeVisitLogs(visitLogs);
+        visits.forEach(dataManager::remove);
+    }
+}
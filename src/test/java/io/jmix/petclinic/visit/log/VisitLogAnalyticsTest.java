@@ -0,0 +1,117 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.TimeSource;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Integration test for the activity counters of {@link VisitLogAnalytics}.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogAnalyticsTest {
+
+    @Autowired
+    VisitLogAnalytics visitLogAnalytics;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogProperties visitLogProperties;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    TimeSource timeSource;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+
+    LocalDate today;
+
+    List<VisitLog> savedVisitLogs = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // The visit does not exist in the relational database, so its visit logs are counted without type and nurse
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        today = LocalDate.ofInstant(timeSource.now().toInstant(), visitLogProperties.getAnalytics().getTimeZone());
+        visitLogAnalytics.reconcile();
+    }
+
+    @Test
+    void test_saveAndRemove_updateCounterIncrementally() {
+        // Given
+        long countBefore = unknownVisitCount();
+
+        // When
+        saveVisitLog("a");
+        saveVisitLog("b");
+
+        // Then
+        assertThat(unknownVisitCount()).isEqualTo(countBefore + 2);
+
+        // When
+        visitLogService.removeVisitLogs(List.of(savedVisitLogs.remove(0)));
+
+        // Then
+        assertThat(unknownVisitCount()).isEqualTo(countBefore + 1);
+    }
+
+    @Test
+    void test_reconcile_correctsDriftedCounter() {
+        // Given
+        saveVisitLog("a");
+        long expectedCount = unknownVisitCount();
+        mongoTemplate.updateFirst(unknownVisitCounterQuery(), new Update().inc("count", 5), VisitLogActivityDocument.class);
+
+        // When
+        visitLogAnalytics.reconcile();
+
+        // Then
+        assertThat(unknownVisitCount()).isEqualTo(expectedCount);
+    }
+
+    private long unknownVisitCount() {
+        VisitLogActivityDocument counter = mongoTemplate.findOne(unknownVisitCounterQuery(), VisitLogActivityDocument.class);
+        return counter != null ? counter.getCount() : 0;
+    }
+
+    private Query unknownVisitCounterQuery() {
+        return Query.query(where("day").is(today.toString()).and("visitType").is(null).and("nurseId").is(null));
+    }
+
+    private void saveVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        savedVisitLogs.add(visitLogService.saveVisitLog(visitLog));
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogService.removeVisitLogs(savedVisitLogs);
+    }
+}
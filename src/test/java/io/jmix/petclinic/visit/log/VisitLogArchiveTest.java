@@ -0,0 +1,178 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogArchiveTest {
+
+    @Autowired
+    VisitLogArchive visitLogArchive;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_findByVisit_readsArchivedVisitLogs() {
+        // Given
+        archive("a", "c", "b");
+
+        // Expect
+        assertThat(visitLogService.findByVisit(visit, PageRequest.of(0, 2, Sort.by("title"))))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "b");
+        assertThat(visitLogService.countByVisit(visit)).isEqualTo(3);
+    }
+
+    @Test
+    void test_loadVisitLog_findsArchivedVisitLog() {
+        // Given
+        List<VisitLogDocument> archived = archive("a");
+
+        // When
+        VisitLog visitLog = visitLogService.loadVisitLog(archived.get(0).getId());
+
+        // Then
+        assertThat(visitLog.getTitle()).isEqualTo("a");
+        assertThat(visitLog.getVisit().getId()).isEqualTo(visit.getId());
+    }
+
+    @Test
+    void test_findByVisit_combinesArchivedAndNewVisitLogs() {
+        // Given
+        archive("archived");
+        saveVisitLog("new");
+
+        // Expect
+        assertThat(visitLogService.findByVisit(visit))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("archived", "new");
+    }
+
+    @Test
+    void test_streamByVisit_combinesArchivedAndNewVisitLogs() {
+        // Given
+        archive("archived-1", "archived-2");
+        saveVisitLog("new");
+
+        // When
+        List<VisitLog> streamed = visitLogService.streamByVisit(visit, Criteria.where("title").ne("archived-2"))
+                .collectList()
+                .block();
+
+        // Then
+        assertThat(streamed)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("archived-1", "new");
+    }
+
+    @Test
+    void test_findByVisits_combinesArchivedAndNewVisitLogs() {
+        // Given
+        archive("archived");
+        saveVisitLog("new");
+        Visit visitWithoutLogs = dataManager.getReference(Visit.class, UUID.randomUUID());
+
+        // When
+        Map<UUID, List<VisitLog>> visitLogsByVisitId = visitLogService.findByVisits(List.of(visit, visitWithoutLogs));
+
+        // Then
+        assertThat(visitLogsByVisitId.get(visit.getId()))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("archived", "new");
+        assertThat(visitLogsByVisitId.get(visitWithoutLogs.getId()))
+                .isEmpty();
+    }
+
+    @Test
+    void test_deleteAllUnchanged_keepsVisitLogsSavedAgainMeanwhile() {
+        // Given
+        VisitLogDocument unchanged = visitLogDocumentRepository.save(createDocument("unchanged"));
+        VisitLogDocument changed = visitLogDocumentRepository.save(createDocument("changed"));
+        List<VisitLogDocument> read = visitLogDocumentRepository.findAllById(List.of(unchanged.getId(), changed.getId()));
+
+        // and: a concurrent save of one of the read visit logs
+        changed.setDescription("added while archiving");
+        changed.setUpdatedAt(changed.getUpdatedAt().plusSeconds(1));
+        visitLogDocumentRepository.save(changed);
+
+        // When
+        long deletedCount = visitLogDocumentRepository.deleteAllUnchanged(read);
+
+        // Then
+        assertThat(deletedCount).isEqualTo(1);
+        assertThat(visitLogDocumentRepository.findById(unchanged.getId())).isEmpty();
+        assertThat(visitLogDocumentRepository.findById(changed.getId()))
+                .hasValueSatisfying(document -> assertThat(document.getDescription()).isEqualTo("added while archiving"));
+    }
+
+    private void saveVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        visitLogService.saveVisitLog(visitLog);
+    }
+
+    private VisitLogDocument createDocument(String title) {
+        VisitLogDocument visitLogDocument = new VisitLogDocument();
+        visitLogDocument.setVisitId(visit.getId());
+        visitLogDocument.setTitle(title);
+        visitLogDocument.setCreatedAt(Instant.now().minusSeconds(3600));
+        visitLogDocument.setUpdatedAt(Instant.now().minusSeconds(3600).truncatedTo(ChronoUnit.MILLIS));
+        return visitLogDocument;
+    }
+
+    private List<VisitLogDocument> archive(String... titles) {
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>();
+        for (String title : titles) {
+            VisitLogDocument visitLogDocument = new VisitLogDocument();
+            visitLogDocument.setId(new ObjectId().toHexString());
+            visitLogDocument.setVisitId(visit.getId());
+            visitLogDocument.setTitle(title);
+            visitLogDocument.setCreatedAt(Instant.now().minusSeconds(3600));
+            visitLogDocuments.add(visitLogDocument);
+        }
+        visitLogArchive.archive(visit.getId(), visitLogDocuments);
+        return visitLogDocuments;
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogArchive.removeVisits(List.of(visit.getId()));
+        visitLogDocumentRepository.deleteByVisitIdIn(List.of(visit.getId()));
+    }
+}
@@ -0,0 +1,294 @@
+package io.jmix.petclinic.visit.log;
+
+import com.mongodb.client.model.Filters;
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration test for visit logs stored in buckets by {@link VisitLogBucketStore}.
+ */
+@SpringBootTest(properties = {
+        "petclinic.visitlog.storage-layout=bucket",
+        "petclinic.visitlog.bucket.max-entries=2"
+})
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogBucketStoreTest {
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogBucketStore visitLogBucketStore;
+
+    @Autowired
+    VisitLogProperties visitLogProperties;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogCriteriaTranslator visitLogCriteriaTranslator;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+
+    Visit documentVisit;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        documentVisit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_saveVisitLog_startsNewBucketWhenBucketIsFull() {
+        // When
+        saveVisitLog("Checkup");
+        saveVisitLog("Vaccination");
+        saveVisitLog("Follow-up");
+
+        // Then
+        assertThat(countBuckets()).isEqualTo(2);
+
+        // and
+        assertThat(visitLogService.findByVisit(visit))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Checkup", "Vaccination", "Follow-up");
+        assertThat(visitLogService.countByVisit(visit)).isEqualTo(3);
+    }
+
+    @Test
+    void test_saveVisitLog_replacesStoredVisitLogInItsBucket() {
+        // Given
+        VisitLog visitLog = saveVisitLog("Checkup");
+
+        // When
+        visitLog.setTitle("Annual checkup");
+        visitLogService.saveVisitLog(visitLog);
+
+        // Then
+        assertThat(countBuckets()).isEqualTo(1);
+        assertThat(visitLogBucketStore.findById(visitLog.getId()))
+                .hasValueSatisfying(visitLogDocument ->
+                        assertThat(visitLogDocument.getTitle()).isEqualTo("Annual checkup"));
+    }
+
+    @Test
+    void test_save_movesVisitLogThatNoLongerFitsItsBucket() {
+        // Given
+        VisitLogProperties limitedProperties = new VisitLogProperties();
+        limitedProperties.getBucket().setMaxSize(DataSize.ofBytes(1024));
+        VisitLogBucketStore limitedBucketStore = new VisitLogBucketStore(mongoTemplate, limitedProperties);
+
+        VisitLogDocument checkup = limitedBucketStore.save(createDocument("Checkup"));
+        limitedBucketStore.save(createDocument("Vaccination"));
+
+        // When
+        checkup.setDescription("x".repeat(1000));
+        limitedBucketStore.save(checkup);
+
+        // Then
+        assertThat(countBuckets()).isEqualTo(2);
+        assertThat(limitedBucketStore.findById(checkup.getId()))
+                .hasValueSatisfying(visitLogDocument ->
+                        assertThat(visitLogDocument.getDescription()).hasSize(1000));
+        assertThat(limitedBucketStore.findByVisitIdIn(List.of(visit.getId())))
+                .extracting(VisitLogDocument::getTitle)
+                .containsExactly("Checkup", "Vaccination");
+    }
+
+    @Test
+    void test_findByVisitAfter_continuesAfterLastSeenVisitLog() {
+        // Given
+        saveVisitLog("Checkup");
+        saveVisitLog("Vaccination");
+        saveVisitLog("Follow-up");
+
+        // When
+        Window<VisitLog> firstWindow = visitLogService.findByVisitAfter(visit, ScrollPosition.keyset(), 2);
+        Window<VisitLog> secondWindow = visitLogService.findByVisitAfter(visit,
+                (KeysetScrollPosition) firstWindow.positionAt(1), 2);
+
+        // Then
+        assertThat(firstWindow.getContent())
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Checkup", "Vaccination");
+        assertThat(firstWindow.hasNext()).isTrue();
+
+        // and
+        assertThat(secondWindow.getContent())
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Follow-up");
+        assertThat(secondWindow.hasNext()).isFalse();
+    }
+
+    @Test
+    void test_searchByVisit_isRejectedInBucketLayout() {
+        // Given
+        saveVisitLog("Rabies vaccination");
+
+        // Expect
+        assertThat(visitLogService.isTextSearchAvailable()).isFalse();
+        assertThatThrownBy(() -> visitLogService.searchByVisit(visit, "rabies", PageRequest.of(0, 10)))
+                .isInstanceOf(VisitLogQueryException.class);
+        assertThatThrownBy(() -> visitLogService.find(new Criteria(), "rabies", PageRequest.of(0, 10)))
+                .isInstanceOf(VisitLogQueryException.class);
+    }
+
+    @Test
+    void test_queries_returnSameVisitLogsInBothLayouts() {
+        // Given
+        inLayout(VisitLogStorageLayout.DOCUMENT, () -> saveVisitLogs(documentVisit));
+        saveVisitLogs(visit);
+
+        // When
+        List<List<String>> documentResults = inLayout(VisitLogStorageLayout.DOCUMENT, () -> query(documentVisit));
+        List<List<String>> bucketResults = query(visit);
+
+        // Then
+        assertThat(bucketResults).isEqualTo(documentResults);
+        assertThat(bucketResults.get(0)).containsExactly("Checkup", "Vaccination", "Follow-up", "Dental cleaning");
+    }
+
+    private List<VisitLog> saveVisitLogs(Visit visitOfLogs) {
+        return Stream.of("Checkup", "Vaccination", "Follow-up", "Dental cleaning")
+                .map(title -> {
+                    VisitLog visitLog = dataManager.create(VisitLog.class);
+                    visitLog.setVisit(visitOfLogs);
+                    visitLog.setTitle(title);
+                    return visitLogService.saveVisitLog(visitLog);
+                })
+                .toList();
+    }
+
+    /**
+     * Runs the queries that the views use, each result reduced to the titles of the returned visit logs or to
+     * the count.
+     */
+    private List<List<String>> query(Visit visitOfLogs) {
+        Criteria criteria = Criteria.where("title").regex("c", "i");
+        Criteria visitAndCriteria = VisitLogCriteriaTranslator.and(List.of(
+                visitLogCriteriaTranslator.visitCriteria(visitOfLogs.getId()), criteria));
+        return List.of(
+                titles(visitLogService.findByVisit(visitOfLogs)),
+                titles(visitLogService.findByVisit(visitOfLogs, PageRequest.of(1, 2))),
+                titles(visitLogService.findByVisit(visitOfLogs, PageRequest.of(0, 3, Sort.by("title")))),
+                titles(visitLogService.findByVisit(visitOfLogs, criteria, null, PageRequest.of(0, 10))),
+                List.of(String.valueOf(visitLogService.countByVisit(visitOfLogs, criteria, null))),
+                titles(visitLogService.find(visitAndCriteria, null, PageRequest.of(0, 10))),
+                titles(visitLogService.streamByVisit(visitOfLogs, criteria).collectList().block())
+        );
+    }
+
+    private List<String> titles(List<VisitLog> visitLogs) {
+        return visitLogs.stream()
+                .map(VisitLog::getTitle)
+                .toList();
+    }
+
+    private <T> T inLayout(VisitLogStorageLayout storageLayout, Supplier<T> action) {
+        visitLogProperties.setStorageLayout(storageLayout);
+        try {
+            return action.get();
+        } finally {
+            visitLogProperties.setStorageLayout(VisitLogStorageLayout.BUCKET);
+        }
+    }
+
+    @Test
+    void test_removeVisitLogs_removesEmptyBuckets() {
+        // Given
+        VisitLog checkup = saveVisitLog("Checkup");
+        VisitLog vaccination = saveVisitLog("Vaccination");
+        VisitLog followUp = saveVisitLog("Follow-up");
+
+        // When
+        visitLogService.removeVisitLogs(List.of(checkup, followUp));
+
+        // Then
+        assertThat(countBuckets()).isEqualTo(1);
+        assertThat(visitLogService.findByVisit(visit))
+                .extracting(VisitLog::getId)
+                .containsExactly(vaccination.getId());
+    }
+
+    @Test
+    void test_deleteAllUnchanged_keepsVisitLogsSavedAgainMeanwhile() {
+        // Given
+        VisitLogDocument unchanged = visitLogBucketStore.save(createDocument("unchanged"));
+        VisitLogDocument changed = visitLogBucketStore.save(createDocument("changed"));
+        List<VisitLogDocument> read = visitLogBucketStore.findByVisitIdIn(List.of(visit.getId()));
+
+        // and: a concurrent save of one of the read visit logs
+        changed.setDescription("added while archiving");
+        changed.setUpdatedAt(changed.getUpdatedAt().plusSeconds(1));
+        visitLogBucketStore.save(changed);
+
+        // When
+        visitLogBucketStore.deleteAllUnchanged(read);
+
+        // Then
+        assertThat(visitLogBucketStore.findById(unchanged.getId())).isEmpty();
+        assertThat(visitLogBucketStore.findById(changed.getId()))
+                .hasValueSatisfying(visitLogDocument ->
+                        assertThat(visitLogDocument.getDescription()).isEqualTo("added while archiving"));
+        assertThat(countBuckets()).isEqualTo(1);
+    }
+
+    private VisitLog saveVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        return visitLogService.saveVisitLog(visitLog);
+    }
+
+    private VisitLogDocument createDocument(String title) {
+        VisitLogDocument document = new VisitLogDocument();
+        document.setVisitId(visit.getId());
+        document.setTitle(title);
+        document.setCreatedAt(Instant.now());
+        document.setUpdatedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        return document;
+    }
+
+    private long countBuckets() {
+        return mongoTemplate.getCollection(visitLogProperties.getBucket().getCollection())
+                .countDocuments(Filters.eq("visitId", visit.getId()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogBucketStore.deleteByVisitIdIn(List.of(visit.getId()));
+        visitLogDocumentRepository.deleteByVisitIdIn(List.of(documentVisit.getId()));
+    }
+}
@@ -0,0 +1,137 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link VisitLogCache}. Every test uses a cache and meter registry of its own.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogCacheTest {
+
+    SimpleMeterRegistry meterRegistry;
+    VisitLogCache visitLogCache;
+
+    UUID visitId = UUID.randomUUID();
+    AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        VisitLogProperties visitLogProperties = new VisitLogProperties();
+        visitLogProperties.getCache().setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        visitLogCache = new VisitLogCache(visitLogProperties, meterRegistry);
+    }
+
+    @Test
+    void test_getVisitLog_loadsFoundVisitLogOnce() {
+        // Given
+        VisitLogDocument document = createDocument("a");
+
+        // When
+        visitLogCache.getVisitLog(document.getId(), id -> load(document));
+        Optional<VisitLogDocument> cached = visitLogCache.getVisitLog(document.getId(), id -> load(document));
+
+        // Then
+        assertThat(cached).contains(document);
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "visitLogs", "result", "hit").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void test_getVisitLog_doesNotCacheMissingVisitLog() {
+        // Given
+        VisitLogDocument document = createDocument("a");
+        visitLogCache.getVisitLog(document.getId(), id -> load(null));
+
+        // When
+        Optional<VisitLogDocument> loaded = visitLogCache.getVisitLog(document.getId(), id -> load(document));
+
+        // Then
+        assertThat(loaded).contains(document);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void test_getVisitLog_discardsVisitLogLoadedDuringInvalidation() {
+        // Given
+        VisitLogDocument document = createDocument("a");
+
+        // When
+        visitLogCache.getVisitLog(document.getId(), id -> {
+            // a concurrent save invalidates the visit log while the previous state is being loaded
+            visitLogCache.invalidate(List.of(id), Set.of(visitId));
+            return load(document);
+        });
+        visitLogCache.getVisitLog(document.getId(), id -> load(document));
+
+        // Then
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void test_getVisitLogs_discardsVisitLogsLoadedDuringInvalidation() {
+        // Given
+        List<VisitLogDocument> documents = List.of(createDocument("a"), createDocument("b"));
+
+        // When
+        visitLogCache.getVisitLogs(visitId, Pageable.unpaged(), () -> {
+            visitLogCache.invalidate(List.of(), Set.of(visitId));
+            loads.incrementAndGet();
+            return documents;
+        });
+        List<VisitLogDocument> loaded = visitLogCache.getVisitLogs(visitId, Pageable.unpaged(), () -> {
+            loads.incrementAndGet();
+            return documents;
+        });
+
+        // Then
+        assertThat(loaded).containsExactlyElementsOf(documents);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void test_invalidate_removesCachedVisitLogsOfVisit() {
+        // Given
+        List<VisitLogDocument> documents = List.of(createDocument("a"));
+        visitLogCache.getVisitLogs(visitId, Pageable.unpaged(), () -> documents);
+
+        // When
+        visitLogCache.invalidate(List.of(), Set.of(visitId));
+        visitLogCache.getVisitLogs(visitId, Pageable.unpaged(), () -> {
+            loads.incrementAndGet();
+            return documents;
+        });
+
+        // Then
+        assertThat(loads).hasValue(1);
+    }
+
+    private Optional<VisitLogDocument> load(VisitLogDocument document) {
+        loads.incrementAndGet();
+        return Optional.ofNullable(document);
+    }
+
+    private VisitLogDocument createDocument(String id) {
+        VisitLogDocument document = new VisitLogDocument();
+        document.setId(id);
+        document.setVisitId(visitId);
+        document.setTitle("Visit log " + id);
+        return document;
+    }
+}
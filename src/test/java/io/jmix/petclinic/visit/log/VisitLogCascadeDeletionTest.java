@@ -0,0 +1,79 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogCascadeDeletionTest {
+
+    @Autowired
+    VisitLogCascadeDeletion visitLogCascadeDeletion;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit removedVisit;
+    Visit otherVisit;
+
+    @BeforeEach
+    void setUp() {
+        removedVisit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        otherVisit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_enqueue_removesOnlyLogsOfRemovedVisits() throws InterruptedException {
+        // Given
+        saveVisitLog(removedVisit, "a");
+        saveVisitLog(removedVisit, "b");
+        saveVisitLog(otherVisit, "c");
+
+        // When
+        visitLogCascadeDeletion.enqueue(List.of(removedVisit.getId()));
+
+        // Then
+        assertThat(awaitNoLogs(removedVisit)).isTrue();
+        assertThat(visitLogService.countByVisit(otherVisit)).isEqualTo(1);
+    }
+
+    private boolean awaitNoLogs(Visit visit) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            if (visitLogService.countByVisit(visit) == 0) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private void saveVisitLog(Visit visit, String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        visitLogService.saveVisitLog(visitLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogDocumentRepository.deleteByVisitIdIn(List.of(removedVisit.getId(), otherVisit.getId()));
+    }
+}
@@ -0,0 +1,171 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Integration test for the attachments and large descriptions of visit logs stored by {@link VisitLogContentStorage}.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogContentTest {
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogProperties visitLogProperties;
+
+    @Autowired
+    VisitLogCriteriaTranslator visitLogCriteriaTranslator;
+
+    @Autowired
+    MongoDatabaseFactory mongoDatabaseFactory;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+    VisitLog visitLog;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_saveVisitLog_storesLargeDescriptionInGridFs() {
+        // Given
+        String description = "weight ".repeat((int) visitLogProperties.getContent().getDescriptionThreshold().toBytes());
+
+        // When
+        visitLog = saveVisitLog(description);
+
+        // Then
+        VisitLogDocument visitLogDocument = visitLogDocumentRepository.findById(visitLog.getId()).orElseThrow();
+        assertThat(visitLogDocument.getDescriptionFileId()).isNotNull();
+        assertThat(visitLogDocument.getDescription()).hasSize(visitLogProperties.getContent().getPreviewLength());
+        assertThat(visitLogDocument.getSearchText()).hasSize(visitLogProperties.getContent().getSearchTextLength());
+
+        // and
+        VisitLog loadedVisitLog = visitLogService.loadVisitLog(visitLog.getId());
+        assertThat(visitLogService.loadDescription(loadedVisitLog)).isEqualTo(description);
+    }
+
+    @Test
+    void test_saveVisitLog_keepsSmallDescriptionInDocument() {
+        // When
+        visitLog = saveVisitLog("weight");
+
+        // Then
+        VisitLogDocument visitLogDocument = visitLogDocumentRepository.findById(visitLog.getId()).orElseThrow();
+        assertThat(visitLogDocument.getDescriptionFileId()).isNull();
+        assertThat(visitLogService.loadDescription(visitLog)).isEqualTo("weight");
+    }
+
+    @Test
+    void test_searchAndConditions_matchLargeDescriptionBeyondPreview() {
+        // Given: a word after the preview, but within the search text
+        String description = "x".repeat(visitLogProperties.getContent().getPreviewLength()) + " fracture "
+                + "weight ".repeat((int) visitLogProperties.getContent().getDescriptionThreshold().toBytes());
+        visitLog = saveVisitLog(description);
+
+        // When
+        List<VisitLog> searchResult = visitLogService.searchByVisit(visit, "fracture", Pageable.ofSize(10));
+        List<VisitLog> conditionResult = visitLogService.find(new Criteria().andOperator(
+                where("visitId").is(visit.getId()),
+                visitLogCriteriaTranslator.translate(PropertyCondition.contains("description", "FRACTURE"), Map.of())
+        ), null, Pageable.unpaged());
+
+        // Then
+        assertThat(searchResult).extracting(VisitLog::getId).containsExactly(visitLog.getId());
+        assertThat(conditionResult).extracting(VisitLog::getId).containsExactly(visitLog.getId());
+        assertThat(conditionResult.get(0).getDescription()).hasSize(visitLogProperties.getContent().getPreviewLength());
+    }
+
+    @Test
+    void test_readDescription_rejectsDescriptionAboveLoadLimit() {
+        // Given
+        DataSize threshold = visitLogProperties.getContent().getDescriptionThreshold();
+        visitLog = saveVisitLog("weight ".repeat((int) threshold.toBytes()));
+
+        VisitLogProperties limitedProperties = new VisitLogProperties();
+        limitedProperties.getContent().setMaxLoadedDescriptionSize(threshold);
+        VisitLogContentStorage limitedStorage = new VisitLogContentStorage(mongoDatabaseFactory, limitedProperties);
+
+        // Then
+        assertThatThrownBy(() -> limitedStorage.readDescription(visitLog.getDescriptionFileId()))
+                .isInstanceOf(VisitLogDescriptionTooLargeException.class);
+    }
+
+    @Test
+    void test_attachments_canBeAddedOpenedAndRemoved() throws IOException {
+        // Given
+        visitLog = saveVisitLog("x-ray taken");
+
+        // When
+        VisitLogAttachment attachment = visitLogService.addAttachment(visitLog, "x-ray.txt", "text/plain",
+                new ByteArrayInputStream("x-ray".getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertThat(visitLogService.getAttachments(visitLog))
+                .extracting(VisitLogAttachment::fileName, VisitLogAttachment::length)
+                .containsExactly(tuple("x-ray.txt", 5L));
+
+        // and
+        try (InputStream content = visitLogService.openAttachment(visitLog, attachment.fileId())) {
+            assertThat(new String(content.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("x-ray");
+        }
+
+        // When
+        visitLogService.removeAttachment(visitLog, attachment.fileId());
+
+        // Then
+        assertThat(visitLogService.getAttachments(visitLog)).isEmpty();
+        assertThatThrownBy(() -> visitLogService.openAttachment(visitLog, attachment.fileId()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private VisitLog saveVisitLog(String description) {
+        VisitLog newVisitLog = dataManager.create(VisitLog.class);
+        newVisitLog.setVisit(visit);
+        newVisitLog.setTitle("Checkup");
+        newVisitLog.setDescription(description);
+        return visitLogService.saveVisitLog(newVisitLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (visitLog != null) {
+            visitLogService.removeVisitLogs(List.of(visitLog));
+        }
+    }
+}
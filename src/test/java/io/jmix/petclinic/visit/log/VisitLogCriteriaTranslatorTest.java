@@ -0,0 +1,126 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogCriteriaTranslatorTest {
+
+    @Autowired
+    VisitLogCriteriaTranslator visitLogCriteriaTranslator;
+
+    @Test
+    void test_translate_quotesValuesOfStringOperations() {
+        // When
+        Criteria criteria = visitLogCriteriaTranslator.translate(
+                PropertyCondition.contains("title", "a.b*"), Map.of()).criteria();
+
+        // Then
+        Pattern pattern = (Pattern) criteria.getCriteriaObject().get("title");
+        assertThat(pattern.matcher("x A.B* y").find()).isTrue();
+        assertThat(pattern.matcher("aXbb").find()).isFalse();
+    }
+
+    @Test
+    void test_translate_matchesStartsWithAsEscapedCaseSensitivePrefix() {
+        // When
+        Criteria criteria = visitLogCriteriaTranslator.translate(
+                PropertyCondition.startsWith("petName", "Max.(1)"), Map.of()).criteria();
+
+        // Then
+        Pattern pattern = (Pattern) criteria.getCriteriaObject().get("petName");
+        assertThat(pattern.pattern()).isEqualTo("^Max\\.\\(1\\)");
+        assertThat(pattern.flags()).isZero();
+        assertThat(pattern.matcher("Max.(1) junior").find()).isTrue();
+        assertThat(pattern.matcher("max.(1)").find()).isFalse();
+        assertThat(pattern.matcher("MaxX(1)").find()).isFalse();
+    }
+
+    @Test
+    void test_translate_skipsConditionsWithoutValue() {
+        // When
+        Criteria criteria = visitLogCriteriaTranslator.translate(LogicalCondition.and(
+                PropertyCondition.contains("title", null),
+                PropertyCondition.equal("description", "x")
+        ), Map.of()).criteria();
+
+        // Then
+        assertThat(criteria.getCriteriaObject()).isEqualTo(new Document("description", "x"));
+    }
+
+    @Test
+    void test_translate_rejectsUnknownProperties() {
+        // Expect
+        assertThatThrownBy(() -> visitLogCriteriaTranslator.translate(
+                PropertyCondition.equal("visit.pet.name", "Max"), Map.of()))
+                .isInstanceOf(VisitLogQueryException.class);
+    }
+
+    @Test
+    void test_translate_reportsTextMatchesNoIndexCanNarrowDown() {
+        // Expect
+        assertThat(visitLogCriteriaTranslator.translate(
+                PropertyCondition.contains("title", "aller"), Map.of()).unindexedMatches()).isTrue();
+        assertThat(visitLogCriteriaTranslator.translate(LogicalCondition.or(
+                PropertyCondition.contains("title", "checkup"),
+                PropertyCondition.startsWith("petName", "Max")
+        ), Map.of()).unindexedMatches()).isTrue();
+        assertThat(visitLogCriteriaTranslator.translate(
+                PropertyCondition.contains("ownerName", "Ketchum"), Map.of()).unindexedMatches()).isTrue();
+        assertThat(visitLogCriteriaTranslator.translate(
+                PropertyCondition.endsWith("title", "up"), Map.of()).unindexedMatches()).isTrue();
+        assertThat(visitLogCriteriaTranslator.translate(
+                PropertyCondition.startsWith("title", "Check"), Map.of()).unindexedMatches()).isTrue();
+        assertThat(visitLogCriteriaTranslator.translate(LogicalCondition.and(
+                PropertyCondition.startsWith("petName", "Max"),
+                PropertyCondition.startsWith("ownerName", "Ash")
+        ), Map.of()).unindexedMatches()).isFalse();
+    }
+
+    @Test
+    void test_translatedCriteria_areMatchedInMemory() {
+        // Given
+        VisitLogDocument checkup = document("Checkup", "Max", Instant.parse("2024-01-01T10:00:00Z"));
+        VisitLogDocument vaccination = document("Vaccination", "Pikachu", Instant.parse("2024-02-01T10:00:00Z"));
+        VisitLogDocument withoutPet = document("Follow-up checkup", null, Instant.parse("2024-03-01T10:00:00Z"));
+
+        // When
+        Criteria criteria = visitLogCriteriaTranslator.translate(LogicalCondition.and(
+                PropertyCondition.contains("title", "CHECKUP"),
+                LogicalCondition.or(
+                        PropertyCondition.startsWith("petName", "Ma"),
+                        PropertyCondition.isSet("petName", false)
+                ),
+                PropertyCondition.less("createdAt", OffsetDateTime.parse("2024-03-01T10:00:00Z"))
+        ), Map.of()).criteria();
+
+        // Then
+        assertThat(VisitLogCriteriaMatcher.filter(List.of(checkup, vaccination, withoutPet), criteria))
+                .containsExactly(checkup);
+    }
+
+    private VisitLogDocument document(String title, String petName, Instant createdAt) {
+        VisitLogDocument visitLogDocument = new VisitLogDocument();
+        visitLogDocument.setTitle(title);
+        visitLogDocument.setPetName(petName);
+        visitLogDocument.setCreatedAt(createdAt);
+        return visitLogDocument;
+    }
+}
@@ -0,0 +1,319 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.FluentLoader;
+import io.jmix.core.Sort;
+import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Integration test for loading and saving {@link VisitLog} entities through {@link DataManager}, which are
+ * handled by {@link VisitLogDataStore}.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogDataStoreTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogArchive visitLogArchive;
+
+    Visit visit;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_loadList_withVisitParameter_returnsRequestedPageInRequestedOrder() {
+        // Given
+        List.of("c", "a", "e", "b", "d").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> secondPage = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .sort(Sort.by("title"))
+                .firstResult(2)
+                .maxResults(2)
+                .list();
+
+        // Then
+        assertThat(secondPage)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("c", "d");
+    }
+
+    @Test
+    void test_loadList_withUnalignedFirstResult_skipsExactlyFirstResultLogs() {
+        // Given
+        List.of("c", "a", "e", "b", "d").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .sort(Sort.by("title"))
+                .firstResult(3)
+                .maxResults(2)
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("d", "e");
+    }
+
+    @Test
+    void test_loadList_withCondition_isRestrictedByCondition() {
+        // Given
+        List.of("a", "b", "c").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .condition(LogicalCondition.and(
+                        PropertyCondition.equal("visit", visit),
+                        PropertyCondition.inList("title", List.of("a", "c"))
+                ))
+                .sort(Sort.by("title"))
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "c");
+    }
+
+    @Test
+    void test_loadList_withFilterConditions_matchesContainedTextIgnoringCaseAndPrefixesExactly() {
+        // Given
+        List.of("Vaccination", "Deworming", "vaccine booster", "Checkup").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .condition(LogicalCondition.or(
+                        PropertyCondition.startsWith("title", "Vacc"),
+                        PropertyCondition.contains("title", "WORM")
+                ))
+                .sort(Sort.by("title"))
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Deworming", "Vaccination");
+    }
+
+    @Test
+    void test_loadList_acrossVisits_matchesContainedTextWithinSearchResults() {
+        // Given
+        String word = "marker" + System.nanoTime();
+        List.of("Allergy " + word, "Checkup " + word, "Allergy").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e")
+                .parameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER, word)
+                .condition(PropertyCondition.contains("title", "ALLER"))
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Allergy " + word);
+    }
+
+    @Test
+    void test_loadList_acrossVisits_withSortAndContainsCondition_keepsRequestedOrder() {
+        // Given: the visit log sorted last by title is the more relevant search result
+        String word = "marker" + System.nanoTime();
+        saveVisitLog("Allergy " + word + " " + word + " " + word);
+        saveVisitLog("Allergy " + word);
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e")
+                .parameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER, word)
+                .condition(PropertyCondition.contains("title", "allergy"))
+                .sort(Sort.by("title"))
+                .firstResult(0)
+                .maxResults(10)
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Allergy " + word, "Allergy " + word + " " + word + " " + word);
+    }
+
+    @Test
+    void test_loadList_acrossVisits_rejectsTextMatchesWithoutIndex() {
+        // Expect
+        assertThatThrownBy(() -> dataManager.load(VisitLog.class)
+                .condition(PropertyCondition.endsWith("title", "up"))
+                .list())
+                .isInstanceOf(VisitLogQueryException.class);
+        assertThatThrownBy(() -> dataManager.load(VisitLog.class)
+                .condition(PropertyCondition.contains("title", "aller"))
+                .list())
+                .isInstanceOf(VisitLogQueryException.class);
+    }
+
+    @Test
+    void test_loadList_ofArchivedVisit_appliesConditionToArchivedLogs() {
+        // Given
+        archive("Archived checkup", "Archived vaccination");
+        saveVisitLog("New checkup");
+
+        // When
+        FluentLoader.ByQuery<VisitLog> loader = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .condition(PropertyCondition.contains("title", "CHECKUP"))
+                .sort(Sort.by("title"));
+
+        // Then
+        assertThat(loader.list())
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Archived checkup", "New checkup");
+        assertThat(dataManager.getCount(loader.buildLoadContext()))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void test_loadList_ofArchivedVisit_rejectsSearchText() {
+        // Given
+        archive("Archived checkup");
+
+        // Expect
+        assertThatThrownBy(() -> dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .parameter(VisitLogDataStore.SEARCH_TEXT_PARAMETER, "checkup")
+                .list())
+                .isInstanceOf(VisitLogQueryException.class);
+    }
+
+    @Test
+    void test_getCount_countsOnlyLogsOfTheVisit() {
+        // Given
+        List.of("a", "b", "c").forEach(this::saveVisitLog);
+
+        // When
+        long count = dataManager.getCount(dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .buildLoadContext());
+
+        // Then
+        assertThat(count).isEqualTo(3);
+    }
+
+    @Test
+    void test_loadList_withoutVisitOfVisitQuery_returnsNothing() {
+        // Given
+        saveVisitLog("a");
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, null)
+                .list();
+        long count = dataManager.getCount(dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e where e.visit = :visit")
+                .buildLoadContext());
+
+        // Then
+        assertThat(visitLogs).isEmpty();
+        assertThat(count).isZero();
+    }
+
+    @Test
+    void test_loadValues_returnsRequestedPropertiesOfMatchingLogs() {
+        // Given
+        List.of("b", "a").forEach(this::saveVisitLog);
+
+        // When
+        List<KeyValueEntity> values = dataManager
+                .loadValues("select e.title, e.description from petclinic_VisitLog e where e.visit = :visit")
+                .store("visitlogs")
+                .properties("title", "description")
+                .parameter(VisitLogDataStore.VISIT_PARAMETER, visit)
+                .list();
+
+        // Then
+        assertThat(values)
+                .extracting(value -> value.<String>getValue("title"), value -> value.<String>getValue("description"))
+                .containsExactlyInAnyOrder(
+                        tuple("a", "Description of a"),
+                        tuple("b", "Description of b")
+                );
+    }
+
+    @Test
+    void test_remove_removesVisitLog() {
+        // Given
+        VisitLog visitLog = saveVisitLog("a");
+
+        // When
+        dataManager.remove(visitLog);
+
+        // Then
+        assertThat(dataManager.load(VisitLog.class).id(visitLog.getId()).optional()).isEmpty();
+    }
+
+    private VisitLog saveVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        visitLog.setDescription("Description of " + title);
+        return dataManager.save(visitLog);
+    }
+
+    private void archive(String... titles) {
+        List<VisitLogDocument> visitLogDocuments = Stream.of(titles)
+                .map(title -> {
+                    VisitLogDocument visitLogDocument = new VisitLogDocument();
+                    visitLogDocument.setId(new ObjectId().toHexString());
+                    visitLogDocument.setVisitId(visit.getId());
+                    visitLogDocument.setTitle(title);
+                    visitLogDocument.setCreatedAt(Instant.now().minusSeconds(3600));
+                    return visitLogDocument;
+                })
+                .toList();
+        visitLogArchive.archive(visit.getId(), visitLogDocuments);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogArchive.removeVisits(List.of(visit.getId()));
+        visitLogDocumentRepository.deleteAll(visitLogDocumentRepository.findByVisitIdIn(List.of(visit.getId())));
+    }
+}
@@ -0,0 +1,177 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.SaveContext;
+import io.jmix.core.Sort;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.petclinic.entity.owner.Owner;
+import io.jmix.petclinic.entity.pet.Pet;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.entity.visit.VisitType;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test for the visit, pet and owner attributes copied into visit logs by {@link VisitLogDenormalization}.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogDenormalizationTest {
+
+    private static final LocalDateTime VISIT_START = LocalDateTime.of(2024, 3, 1, 10, 30);
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDenormalization visitLogDenormalization;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    Owner owner;
+    Pet pet;
+    Visit visit;
+
+    @BeforeEach
+    void setUp() {
+        owner = dataManager.create(Owner.class);
+        owner.setFirstName("Ash");
+        owner.setLastName("Ketchum");
+
+        pet = dataManager.create(Pet.class);
+        pet.setName("Pikachu-" + UUID.randomUUID());
+        pet.setIdentificationNumber("025");
+        pet.setOwner(owner);
+
+        visit = dataManager.create(Visit.class);
+        visit.setPet(pet);
+        visit.setType(VisitType.REGULAR_CHECKUP);
+        visit.setVisitStart(VISIT_START);
+        visit.setVisitEnd(VISIT_START.plusHours(1));
+
+        dataManager.save(new SaveContext().saving(owner, pet, visit));
+    }
+
+    @Test
+    void test_saveVisitLog_copiesVisitPetAndOwnerAttributes() {
+        // When
+        VisitLog visitLog = saveVisitLog("Checkup");
+
+        // Then
+        VisitLogDocument visitLogDocument = visitLogDocumentRepository.findById(visitLog.getId()).orElseThrow();
+        assertThat(visitLogDocument.getPetId()).isEqualTo(pet.getId());
+        assertThat(visitLogDocument.getPetName()).isEqualTo(pet.getName());
+        assertThat(visitLogDocument.getOwnerId()).isEqualTo(owner.getId());
+        assertThat(visitLogDocument.getOwnerName()).isEqualTo("Ash Ketchum");
+        assertThat(visitLogDocument.getVisitStart()).isEqualTo(VISIT_START);
+    }
+
+    @Test
+    void test_renamingPetAndOwner_updatesCopiedAttributes() {
+        // Given
+        VisitLog visitLog = saveVisitLog("Checkup");
+
+        // When
+        Pet loadedPet = dataManager.load(Pet.class).id(pet.getId()).one();
+        loadedPet.setName("Raichu-" + UUID.randomUUID());
+        dataManager.save(loadedPet);
+
+        // and
+        Owner loadedOwner = dataManager.load(Owner.class).id(owner.getId()).one();
+        loadedOwner.setLastName("Satoshi");
+        dataManager.save(loadedOwner);
+
+        // Then
+        VisitLog reloaded = visitLogService.loadVisitLog(visitLog.getId());
+        assertThat(reloaded.getPetName()).isEqualTo(loadedPet.getName());
+        assertThat(reloaded.getOwnerName()).isEqualTo("Ash Satoshi");
+    }
+
+    @Test
+    void test_reconcile_correctsCopiesOfPetRenamedWhileWriting() {
+        // Given
+        VisitLogDocument visitLogDocument = new VisitLogDocument();
+        visitLogDocument.setVisitId(visit.getId());
+        visitLogDocument.setTitle("Checkup");
+        visitLogDenormalization.denormalize(List.of(visitLogDocument));
+
+        // and the pet is renamed before the document is written, so the listener finds nothing to update
+        Pet loadedPet = dataManager.load(Pet.class).id(pet.getId()).one();
+        loadedPet.setName("Raichu-" + UUID.randomUUID());
+        dataManager.save(loadedPet);
+        visitLogDocument = visitLogDocumentRepository.save(visitLogDocument);
+
+        // When
+        visitLogDenormalization.reconcile(List.of(visitLogDocument));
+
+        // Then
+        assertThat(visitLogDocumentRepository.findById(visitLogDocument.getId()).orElseThrow().getPetName())
+                .isEqualTo(loadedPet.getName());
+    }
+
+    @Test
+    void test_loadList_filtersAllVisitLogsByCopiedAttributes() {
+        // Given
+        saveVisitLog("b");
+        saveVisitLog("a");
+
+        // When
+        List<VisitLog> visitLogs = dataManager.load(VisitLog.class)
+                .query("select e from petclinic_VisitLog e")
+                .condition(PropertyCondition.equal("petName", pet.getName()))
+                .sort(Sort.by("title"))
+                .list();
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "b");
+        assertThat(visitLogs)
+                .extracting(VisitLog::getVisitStart)
+                .containsOnly(VISIT_START);
+    }
+
+    @Test
+    void test_backfill_completesVisitLogsWithoutCopiedAttributes() {
+        // Given
+        VisitLogDocument visitLogDocument = new VisitLogDocument();
+        visitLogDocument.setVisitId(visit.getId());
+        visitLogDocument.setTitle("stored before denormalization");
+        visitLogDocument = visitLogDocumentRepository.save(visitLogDocument);
+
+        // When
+        visitLogDenormalization.backfill();
+
+        // Then
+        assertThat(visitLogDocumentRepository.findById(visitLogDocument.getId()).orElseThrow().getPetName())
+                .isEqualTo(pet.getName());
+    }
+
+    private VisitLog saveVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        return visitLogService.saveVisitLog(visitLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogDocumentRepository.deleteByVisitIdIn(List.of(visit.getId()));
+        dataManager.remove(visit, pet, owner);
+    }
+}
@@ -0,0 +1,211 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogExporterTest {
+
+    @Autowired
+    VisitLogExporter visitLogExporter;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogArchive visitLogArchive;
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    VisitLogProperties visitLogProperties;
+
+    Visit visit;
+    ZoneId timeZone;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        timeZone = visitLogProperties.getExport().getTimeZone();
+    }
+
+    @Test
+    void test_export_csv_writesHeaderAndOneQuotedRowPerVisitLog() {
+        // Given
+        saveVisitLog("Checkup", "weight, teeth");
+        saveVisitLog("Vaccination", "=1+1");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long count = visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())),
+                VisitLogExportFormat.CSV, output);
+
+        // Then
+        assertThat(count).isEqualTo(2);
+
+        // and
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(1)).endsWith(visit.getId() + ",Checkup,\"weight, teeth\"");
+        assertThat(lines.get(2)).endsWith(visit.getId() + ",Vaccination,'=1+1");
+    }
+
+    @Test
+    void test_export_csv_guardsFieldsStartingWithControlCharacters() {
+        // Given
+        saveVisitLog("Tab", "\t=1+1");
+        saveVisitLog("Carriage return", "\r=1+1");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())), VisitLogExportFormat.CSV, output);
+
+        // Then
+        String csv = output.toString(StandardCharsets.UTF_8);
+        assertThat(csv).contains(",Tab,'\t=1+1\r\n");
+        assertThat(csv).contains(",Carriage return,\"'\r=1+1\"\r\n");
+    }
+
+    @Test
+    void test_export_csv_writesCreationTimestampInExportTimeZone() {
+        // Given
+        visitLogProperties.getExport().setTimeZone(ZoneId.of("Pacific/Auckland"));
+        VisitLog visitLog = saveVisitLog("Checkup", "weight");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())), VisitLogExportFormat.CSV, output);
+
+        // Then
+        String row = output.toString(StandardCharsets.UTF_8).lines().toList().get(1);
+        assertThat(row).startsWith(LocalDateTime.ofInstant(visitLog.getCreatedAt().toInstant(),
+                ZoneId.of("Pacific/Auckland")) + ",");
+    }
+
+    @Test
+    void test_export_xlsx_writesHeaderAndOneRowPerVisitLog() throws IOException {
+        // Given
+        saveVisitLog("Checkup", "weight");
+        saveVisitLog("Vaccination", "rabies");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())),
+                VisitLogExportFormat.XLSX, output);
+
+        // Then
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertThat(sheet.getLastRowNum()).isEqualTo(2);
+            assertThat(sheet.getRow(1).getCell(5).getStringCellValue()).isEqualTo("Checkup");
+            assertThat(sheet.getRow(2).getCell(5).getStringCellValue()).isEqualTo("Vaccination");
+        }
+    }
+
+    @Test
+    void test_export_withDescriptionInGridFs_writesFullDescription() throws IOException {
+        // Given: a description above the threshold, of which the document keeps only a preview
+        String description = "weight ".repeat(3_000) + "end";
+        saveVisitLog("Checkup", description);
+
+        // When
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())), VisitLogExportFormat.CSV, csv);
+        ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())), VisitLogExportFormat.XLSX, xlsx);
+
+        // Then
+        assertThat(csv.toString(StandardCharsets.UTF_8).lines().toList().get(1))
+                .endsWith(",Checkup," + description);
+
+        // and
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(xlsx.toByteArray()))) {
+            assertThat(workbook.getSheetAt(0).getRow(1).getCell(6).getStringCellValue()).isEqualTo(description);
+        }
+    }
+
+    @Test
+    void test_export_xlsx_marksDescriptionsAboveCellLimitAsTruncated() throws IOException {
+        // Given
+        saveVisitLog("Checkup", "weight ".repeat(6_000));
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())), VisitLogExportFormat.XLSX, output);
+
+        // Then
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            String exported = workbook.getSheetAt(0).getRow(1).getCell(6).getStringCellValue();
+            assertThat(exported).hasSize(SpreadsheetVersion.EXCEL2007.getMaxTextLength());
+            assertThat(exported).endsWith(VisitLogExporter.TRUNCATION_MARKER);
+        }
+    }
+
+    @Test
+    void test_export_ofArchivedVisit_mergesArchivedVisitLogsInCreationOrder() {
+        // Given
+        VisitLogDocument archived = new VisitLogDocument();
+        archived.setId(new ObjectId().toHexString());
+        archived.setVisitId(visit.getId());
+        archived.setTitle("Archived");
+        archived.setCreatedAt(Instant.now().minusSeconds(3600));
+        visitLogArchive.archive(visit.getId(), List.of(archived));
+        saveVisitLog("New", "after the archival");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long count = visitLogExporter.export(VisitLogExportFilter.ofVisits(List.of(visit.getId())),
+                VisitLogExportFormat.CSV, output);
+
+        // Then
+        assertThat(count).isEqualTo(2);
+
+        // and
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines.get(1)).endsWith(visit.getId() + ",Archived,");
+        assertThat(lines.get(2)).endsWith(visit.getId() + ",New,after the archival");
+    }
+
+    private VisitLog saveVisitLog(String title, String description) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        visitLog.setDescription(description);
+        return visitLogService.saveVisitLog(visitLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogProperties.getExport().setTimeZone(timeZone);
+        visitLogArchive.removeVisits(List.of(visit.getId()));
+        visitLogDocumentRepository.deleteByVisitIdIn(List.of(visit.getId()));
+    }
+}
@@ -0,0 +1,235 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration test for {@link VisitLogJournal} and {@link VisitLogCircuitBreaker}. The unavailability of MongoDB is
+ * simulated by writes that fail with a connection failure.
+ * <p>
+ * Every test uses a journal in a directory and a circuit breaker of its own, so the journal and circuit breaker of
+ * the application are not affected. The journal is opened without its threads, i.e. it is only replayed by the test.
+ * </p>
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogJournalTest {
+
+    private static final UnaryOperator<VisitLogDocument> UNAVAILABLE = document -> {
+        throw new DataAccessResourceFailureException("MongoDB is down");
+    };
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogBucketStore visitLogBucketStore;
+
+    @Autowired
+    VisitLogCache visitLogCache;
+
+    @Autowired
+    VisitLogContentStorage visitLogContentStorage;
+
+    @Autowired
+    VisitLogDenormalization visitLogDenormalization;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @TempDir
+    Path journalDirectory;
+
+    UUID visitId = UUID.randomUUID();
+
+    VisitLogProperties visitLogProperties;
+    VisitLogJournal visitLogJournal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        visitLogProperties = new VisitLogProperties();
+        visitLogProperties.getJournal().setEnabled(true);
+        visitLogProperties.getJournal().setDirectory(journalDirectory);
+        visitLogProperties.getJournal().setSyncInterval(Duration.ZERO);
+
+        visitLogJournal = openJournal();
+    }
+
+    @Test
+    void test_storeOrAppend_journalsDocumentIfMongoDbIsUnavailable() {
+        // Given
+        VisitLogDocument document = createDocument("Journaled");
+
+        // When
+        Optional<VisitLogDocument> storedDocument = visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        // Then
+        assertThat(storedDocument).isEmpty();
+        assertThat(document.getId()).isNotNull();
+        assertThat(visitLogJournal.getPending(document.getId())).contains(document);
+        assertThat(visitLogJournal.size()).isEqualTo(1);
+    }
+
+    @Test
+    void test_storeOrAppend_journalsLaterSavesOfJournaledVisitLog() {
+        // Given
+        VisitLogDocument document = createDocument("First");
+        visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        VisitLogDocument laterSave = createDocument("Second");
+        laterSave.setId(document.getId());
+        AtomicBoolean stored = new AtomicBoolean();
+
+        // When
+        Optional<VisitLogDocument> storedDocument = visitLogJournal.storeOrAppend(laterSave, saved -> {
+            stored.set(true);
+            return saved;
+        });
+
+        // Then
+        assertThat(storedDocument).isEmpty();
+        assertThat(stored).isFalse();
+        assertThat(visitLogJournal.getPending(document.getId())).contains(laterSave);
+    }
+
+    @Test
+    void test_open_recoversJournaledDocumentsAfterRestart() throws InterruptedException, IOException {
+        // Given
+        VisitLogDocument document = createDocument("Journaled");
+        visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        // When
+        visitLogJournal.shutdown();
+        visitLogJournal = openJournal();
+
+        // Then
+        assertThat(visitLogJournal.getPending(document.getId()))
+                .hasValueSatisfying(recovered -> assertThat(recovered.getTitle()).isEqualTo("Journaled"));
+    }
+
+    @Test
+    void test_appendAll_skipsSaveOlderThanJournaledSave() {
+        // Given
+        VisitLogDocument document = createDocument("Newer");
+        document.setUpdatedAt(Instant.now());
+        visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        VisitLogDocument olderSave = createDocument("Older");
+        olderSave.setId(document.getId());
+        olderSave.setUpdatedAt(document.getUpdatedAt().minusSeconds(1));
+
+        // When
+        visitLogJournal.appendAll(List.of(olderSave));
+
+        // Then
+        assertThat(visitLogJournal.getPending(document.getId()))
+                .hasValueSatisfying(pending -> assertThat(pending.getTitle()).isEqualTo("Newer"));
+        assertThat(visitLogJournal.size()).isEqualTo(1);
+    }
+
+    @Test
+    void test_replay_writesJournaledDocumentsToMongoDb() {
+        // Given
+        VisitLogDocument document = createDocument("Journaled");
+        visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        // When
+        int replayedCount = visitLogJournal.replay();
+
+        // Then
+        assertThat(replayedCount).isEqualTo(1);
+        assertThat(visitLogJournal.getPending(document.getId())).isEmpty();
+        assertThat(visitLogDocumentRepository.findById(document.getId()))
+                .hasValueSatisfying(stored -> assertThat(stored.getTitle()).isEqualTo("Journaled"));
+    }
+
+    @Test
+    void test_discard_dropsJournaledSave() {
+        // Given
+        VisitLogDocument document = createDocument("Removed");
+        visitLogJournal.storeOrAppend(document, UNAVAILABLE);
+
+        // When
+        visitLogJournal.discard(List.of(document.getId()));
+        visitLogJournal.replay();
+
+        // Then
+        assertThat(visitLogJournal.getPending(document.getId())).isEmpty();
+        assertThat(visitLogDocumentRepository.findById(document.getId())).isEmpty();
+    }
+
+    @Test
+    void test_circuitBreaker_rejectsWritesWhileOpenAndClosesAfterSuccessfulTrial() throws InterruptedException {
+        // Given
+        visitLogProperties.getCircuitBreaker().setFailureThreshold(2);
+        visitLogProperties.getCircuitBreaker().setOpenDuration(Duration.ofMillis(200));
+        VisitLogCircuitBreaker circuitBreaker = new VisitLogCircuitBreaker(visitLogProperties, new SimpleMeterRegistry());
+
+        // When
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> circuitBreaker.execute(() -> UNAVAILABLE.apply(null)))
+                    .isInstanceOf(DataAccessResourceFailureException.class);
+        }
+
+        // Then
+        AtomicBoolean executed = new AtomicBoolean();
+        assertThat(circuitBreaker.getState()).isEqualTo(VisitLogCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> circuitBreaker.execute(() -> executed.getAndSet(true)))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(executed).isFalse();
+
+        // When
+        Thread.sleep(300);
+        circuitBreaker.execute(() -> executed.getAndSet(true));
+
+        // Then
+        assertThat(executed).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(VisitLogCircuitBreaker.State.CLOSED);
+    }
+
+    private VisitLogJournal openJournal() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VisitLogJournal journal = new VisitLogJournal(visitLogDocumentRepository, visitLogBucketStore, visitLogCache,
+                new VisitLogCircuitBreaker(visitLogProperties, meterRegistry), visitLogContentStorage,
+                visitLogDenormalization, mongoTemplate, visitLogProperties, meterRegistry);
+        journal.open();
+        return journal;
+    }
+
+    private VisitLogDocument createDocument(String title) {
+        VisitLogDocument document = new VisitLogDocument();
+        document.setVisitId(visitId);
+        document.setTitle(title);
+        document.setCreatedAt(Instant.now());
+        return document;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException, IOException {
+        // the journal directory is removed by JUnit
+        visitLogJournal.shutdown();
+        visitLogDocumentRepository.deleteAll(visitLogDocumentRepository.findByVisitIdIn(List.of(visitId)));
+    }
+}
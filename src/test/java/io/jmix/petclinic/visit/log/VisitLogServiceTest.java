@@ -0,0 +1,278 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test for {@link VisitLogService} against the MongoDB instance configured for the application.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogServiceTest {
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    VisitLogArchive visitLogArchive;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+    Visit archivedVisit;
+
+    @BeforeEach
+    void setUp() {
+        // Visit logs only store the visit id, so a reference to a random visit is sufficient
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        archivedVisit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_findByVisit_returnsRequestedPageInRequestedOrder() {
+        // Given
+        List.of("c", "a", "e", "b", "d").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> secondPage = visitLogService.findByVisit(visit, PageRequest.of(1, 2, Sort.by("title")));
+
+        // Then
+        assertThat(secondPage)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("c", "d");
+    }
+
+    @Test
+    void test_findByVisit_withEqualSortValues_returnsEveryLogOnExactlyOnePage() {
+        // Given
+        List.of("same", "same", "same", "same", "same").forEach(this::saveVisitLog);
+        LoadContext.Query query = new LoadContext.Query("");
+        query.setSort(io.jmix.core.Sort.by("title"));
+        query.setMaxResults(2);
+
+        // When
+        List<VisitLog> visitLogs = new ArrayList<>();
+        for (int firstResult = 0; firstResult < 5; firstResult += 2) {
+            query.setFirstResult(firstResult);
+            visitLogs.addAll(visitLogService.findByVisit(visit, VisitLogPaging.toPageable(query)));
+        }
+
+        // Then
+        assertThat(visitLogs)
+                .extracting(VisitLog::getId)
+                .hasSize(5)
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    void test_countByVisit_countsOnlyLogsOfTheVisit() {
+        // Given
+        List.of("a", "b", "c").forEach(this::saveVisitLog);
+
+        // Expect
+        assertThat(visitLogService.countByVisit(visit)).isEqualTo(3);
+        assertThat(visitLogService.countByVisit(dataManager.getReference(Visit.class, UUID.randomUUID()))).isZero();
+    }
+
+    @Test
+    void test_countByVisits_countsLogsPerVisitIncludingArchivedLogs() {
+        // Given
+        List.of("a", "b", "c").forEach(this::saveVisitLog);
+        Visit visitWithoutLogs = dataManager.getReference(Visit.class, UUID.randomUUID());
+
+        // and: a visit with archived logs and a log added after the archival
+        archive(archivedVisit, "archived-1", "archived-2");
+        VisitLog addedAfterArchival = createVisitLog("new");
+        addedAfterArchival.setVisit(archivedVisit);
+        visitLogService.saveVisitLog(addedAfterArchival);
+
+        // When
+        Map<UUID, Long> countsByVisitId = visitLogService.countByVisits(List.of(visit, visitWithoutLogs, archivedVisit));
+
+        // Then
+        assertThat(countsByVisitId)
+                .containsExactly(
+                        Map.entry(visit.getId(), 3L),
+                        Map.entry(visitWithoutLogs.getId(), 0L),
+                        Map.entry(archivedVisit.getId(), 3L)
+                );
+    }
+
+    @Test
+    void test_findByVisitAfter_continuesAfterLastSeenEntry() {
+        // Given
+        List.of("a", "b", "c", "d", "e").forEach(this::saveVisitLog);
+
+        // When
+        Window<VisitLog> firstPage = visitLogService.findByVisitAfter(visit, ScrollPosition.keyset(), 2);
+        Window<VisitLog> secondPage = visitLogService.findByVisitAfter(visit,
+                (KeysetScrollPosition) firstPage.positionAt(firstPage.size() - 1), 2);
+
+        // Then
+        assertThat(firstPage.getContent())
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "b");
+        assertThat(secondPage.getContent())
+                .extracting(VisitLog::getTitle)
+                .containsExactly("c", "d");
+        assertThat(secondPage.hasNext()).isTrue();
+    }
+
+    @Test
+    void test_saveVisitLogs_insertsNewAndUpdatesExistingLogs() {
+        // Given
+        VisitLog existingVisitLog = saveVisitLog("existing");
+        existingVisitLog.setTitle("updated");
+
+        // When
+        VisitLogBulkSaveResult result = visitLogService.saveVisitLogs(
+                List.of(existingVisitLog, createVisitLog("new-1"), createVisitLog("new-2"))
+        );
+
+        // Then
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(result.saved())
+                .allSatisfy(visitLog -> assertThat(visitLog.getId()).isNotNull());
+        assertThat(visitLogService.findByVisit(visit))
+                .extracting(VisitLog::getTitle)
+                .containsExactlyInAnyOrder("updated", "new-1", "new-2");
+    }
+
+    @Test
+    void test_findByVisits_groupsLogsByVisit() {
+        // Given
+        List.of("a", "b").forEach(this::saveVisitLog);
+        Visit visitWithoutLogs = dataManager.getReference(Visit.class, UUID.randomUUID());
+
+        // When
+        Map<UUID, List<VisitLog>> visitLogsByVisitId = visitLogService.findByVisits(List.of(visit, visitWithoutLogs));
+
+        // Then
+        assertThat(visitLogsByVisitId.get(visit.getId()))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "b");
+        assertThat(visitLogsByVisitId.get(visitWithoutLogs.getId()))
+                .isEmpty();
+    }
+
+    @Test
+    void test_streamByVisit_emitsEntriesInCreationOrder() {
+        // Given
+        List.of("b", "a", "c").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> streamed = visitLogService.streamByVisit(visit)
+                .collectList()
+                .block();
+
+        // Then
+        assertThat(streamed)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("b", "a", "c");
+    }
+
+    @Test
+    void test_streamByVisit_emitsMatchingEntriesInCreationOrder() {
+        // Given
+        List.of("a", "b", "c").forEach(this::saveVisitLog);
+
+        // When
+        List<VisitLog> streamed = visitLogService.streamByVisit(visit, Criteria.where("title").ne("b"))
+                .collectList()
+                .block();
+
+        // Then
+        assertThat(streamed)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("a", "c");
+    }
+
+    @Test
+    void test_searchByVisit_findsLogsByTermsInTitleOrDescription() {
+        // Given
+        saveVisitLog("Allergy check");
+        VisitLog visitLogWithDescription = createVisitLog("Follow-up");
+        visitLogWithDescription.setDescription("Reaction to allergy medication");
+        visitLogService.saveVisitLog(visitLogWithDescription);
+        saveVisitLog("Vaccination");
+
+        // When
+        List<VisitLog> result = visitLogService.searchByVisit(visit, "allergy", PageRequest.of(0, 10));
+
+        // Then
+        assertThat(result)
+                .extracting(VisitLog::getTitle)
+                .containsExactly("Allergy check", "Follow-up");
+        assertThat(visitLogService.countSearchByVisit(visit, "allergy")).isEqualTo(2);
+    }
+
+    @Test
+    void test_findVisitIdsByText_returnsVisitsWithMatchingLogs() {
+        // Given
+        saveVisitLog("Allergy check");
+        saveVisitLog("Vaccination");
+
+        // Expect
+        assertThat(visitLogService.findVisitIdsByText("allergy", 100)).contains(visit.getId());
+        assertThat(visitLogService.findVisitIdsByText("allergy", 1)).hasSize(1);
+    }
+
+    private VisitLog saveVisitLog(String title) {
+        return visitLogService.saveVisitLog(createVisitLog(title));
+    }
+
+    private VisitLog createVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        visitLog.setDescription("Description of " + title);
+        return visitLog;
+    }
+
+    private void archive(Visit archivedVisit, String... titles) {
+        List<VisitLogDocument> visitLogDocuments = new ArrayList<>();
+        for (String title : titles) {
+            VisitLogDocument visitLogDocument = new VisitLogDocument();
+            visitLogDocument.setId(new ObjectId().toHexString());
+            visitLogDocument.setVisitId(archivedVisit.getId());
+            visitLogDocument.setTitle(title);
+            visitLogDocument.setCreatedAt(Instant.now().minusSeconds(3600));
+            visitLogDocuments.add(visitLogDocument);
+        }
+        visitLogArchive.archive(archivedVisit.getId(), visitLogDocuments);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogArchive.removeVisits(List.of(archivedVisit.getId()));
+        visitLogDocumentRepository.deleteAll(
+                visitLogDocumentRepository.findByVisitIdIn(List.of(visit.getId(), archivedVisit.getId())));
+    }
+}
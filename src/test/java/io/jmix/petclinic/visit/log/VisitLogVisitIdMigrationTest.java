@@ -0,0 +1,132 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogVisitIdMigrationTest {
+
+    @Autowired
+    VisitLogVisitIdMigration visitLogVisitIdMigration;
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    DataManager dataManager;
+
+    Visit visit;
+
+    Visit otherVisit;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+        otherVisit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_migrate_convertsStringVisitIdToBinaryUuid() {
+        // Given
+        Document legacyVisitLog = insertVisitLogWithStringVisitId("legacy");
+
+        // When
+        visitLogVisitIdMigration.migrate();
+
+        // Then
+        Document migratedVisitLog = mongoTemplate.findById(legacyVisitLog.get("_id"), Document.class, collectionName());
+        assertThat(migratedVisitLog.get("visitId")).isEqualTo(visit.getId());
+        assertThat(visitLogVisitIdMigration.isCompleted()).isTrue();
+    }
+
+    @Test
+    void test_migrate_keepsVisitLogsReadable() {
+        // Given
+        insertVisitLogWithStringVisitId("legacy");
+
+        // When
+        visitLogVisitIdMigration.migrate();
+
+        // Then
+        assertThat(visitLogService.findByVisit(visit))
+                .extracting(VisitLog::getTitle)
+                .containsExactly("legacy");
+    }
+
+    @Test
+    void test_refreshCompleted_detectsRemainingStringVisitIds() {
+        // Given
+        insertVisitLogWithStringVisitId("legacy");
+
+        // Expect
+        assertThat(visitLogVisitIdMigration.refreshCompleted()).isFalse();
+        assertThat(visitLogVisitIdMigration.queryValues(visit.getId())).contains(visit.getId().toString());
+
+        // When
+        visitLogVisitIdMigration.migrate();
+
+        // Then
+        assertThat(visitLogVisitIdMigration.refreshCompleted()).isTrue();
+        assertThat(visitLogVisitIdMigration.queryValues(visit.getId())).containsExactly(visit.getId());
+    }
+
+    @Test
+    void test_findVisitIdsByText_findsVisitsWithBothVisitIdFormsOnce() {
+        // Given
+        String searchTerm = "marker" + System.nanoTime();
+        insertVisitLogWithStringVisitId(searchTerm);
+        saveVisitLog(visit, searchTerm);
+        saveVisitLog(otherVisit, searchTerm);
+        assertThat(visitLogVisitIdMigration.refreshCompleted()).isFalse();
+
+        // Expect
+        assertThat(visitLogService.findVisitIdsByText(searchTerm, 2))
+                .containsExactlyInAnyOrder(visit.getId(), otherVisit.getId());
+        assertThat(visitLogService.findVisitIdsByText(searchTerm, 1)).hasSize(1);
+    }
+
+    private void saveVisitLog(Visit visitOfLog, String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visitOfLog);
+        visitLog.setTitle(title);
+        visitLogService.saveVisitLog(visitLog);
+    }
+
+    private Document insertVisitLogWithStringVisitId(String title) {
+        Document visitLog = new Document("visitId", visit.getId().toString())
+                .append("title", title);
+        return mongoTemplate.insert(visitLog, collectionName());
+    }
+
+    private String collectionName() {
+        return mongoTemplate.getCollectionName(VisitLogDocument.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        visitLogDocumentRepository.deleteAll(visitLogDocumentRepository.findByVisitIdIn(
+                List.of(visit.getId(), visit.getId().toString(), otherVisit.getId())
+        ));
+    }
+}
@@ -0,0 +1,177 @@
+package io.jmix.petclinic.visit.log;
+
+import io.jmix.core.DataManager;
+import io.jmix.petclinic.entity.visit.Visit;
+import io.jmix.petclinic.test_support.AuthenticatedAsAdmin;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "petclinic.visitlog.write-behind.enabled=true")
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class VisitLogWriteBehindQueueTest {
+
+    @Autowired
+    VisitLogService visitLogService;
+
+    @Autowired
+    VisitLogDocumentRepository visitLogDocumentRepository;
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    VisitLogBucketStore visitLogBucketStore;
+
+    @Autowired
+    VisitLogCache visitLogCache;
+
+    @Autowired
+    VisitLogContentStorage visitLogContentStorage;
+
+    @Autowired
+    VisitLogDenormalization visitLogDenormalization;
+
+    @Autowired
+    VisitLogAnalytics visitLogAnalytics;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    Visit visit;
+
+    VisitLogWriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        visit = dataManager.getReference(Visit.class, UUID.randomUUID());
+    }
+
+    @Test
+    void test_saveVisitLog_isReadableBeforeAndAfterItIsWritten() throws InterruptedException {
+        // Given
+        VisitLog visitLog = createVisitLog("queued");
+
+        // When
+        VisitLog savedVisitLog = visitLogService.saveVisitLog(visitLog);
+
+        // Then
+        assertThat(savedVisitLog.getId()).isNotNull();
+        assertThat(visitLogService.loadVisitLog(savedVisitLog.getId()).getTitle()).isEqualTo("queued");
+        assertThat(awaitWritten(savedVisitLog.getId(), "queued")).isTrue();
+    }
+
+    @Test
+    void test_saveVisitLog_writesLatestContentOfRepeatedSaves() throws InterruptedException {
+        // Given
+        VisitLog savedVisitLog = visitLogService.saveVisitLog(createVisitLog("first"));
+
+        // When
+        savedVisitLog.setTitle("second");
+        visitLogService.saveVisitLog(savedVisitLog);
+
+        // Then
+        assertThat(awaitWritten(savedVisitLog.getId(), "second")).isTrue();
+    }
+
+    @Test
+    void test_write_retriesFailedBulkWriteAndKeepsDocumentVisibleMeanwhile() throws InterruptedException {
+        // Given
+        VisitLogProperties visitLogProperties = new VisitLogProperties();
+        visitLogProperties.getWriteBehind().setEnabled(true);
+        visitLogProperties.getWriteBehind().setFlushInterval(Duration.ofMillis(10));
+        visitLogProperties.getWriteBehind().setRetryBackoff(Duration.ofMillis(50));
+        visitLogProperties.getJournal().setEnabled(false);
+
+        AtomicInteger failingWrites = new AtomicInteger(2);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VisitLogCircuitBreaker circuitBreaker = new VisitLogCircuitBreaker(visitLogProperties, meterRegistry);
+        VisitLogJournal disabledJournal = new VisitLogJournal(visitLogDocumentRepository, visitLogBucketStore,
+                visitLogCache, circuitBreaker, visitLogContentStorage, visitLogDenormalization, mongoTemplate,
+                visitLogProperties, meterRegistry);
+        queue = new VisitLogWriteBehindQueue(failingBulkSaves(failingWrites), visitLogBucketStore, visitLogCache,
+                circuitBreaker, disabledJournal, visitLogContentStorage, visitLogAnalytics, visitLogDenormalization,
+                mongoTemplate, visitLogProperties, meterRegistry);
+        queue.start();
+
+        VisitLogDocument document = new VisitLogDocument();
+        document.setVisitId(visit.getId());
+        document.setTitle("retried");
+        document.setCreatedAt(Instant.now());
+        document.setUpdatedAt(Instant.now());
+
+        // When
+        assertThat(queue.offer(document, false)).isTrue();
+
+        // Then
+        while (failingWrites.get() > 0) {
+            assertThat(queue.getPending(document.getId())).contains(document);
+            Thread.sleep(5);
+        }
+        assertThat(awaitWritten(document.getId(), "retried")).isTrue();
+        assertThat(queue.getPending(document.getId())).isEmpty();
+    }
+
+    /**
+     * @return The repository of the application, whose first `failingWrites` bulk saves fail with a connection
+     * failure.
+     */
+    private VisitLogDocumentRepository failingBulkSaves(AtomicInteger failingWrites) {
+        return (VisitLogDocumentRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{VisitLogDocumentRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("bulkSave") && failingWrites.getAndDecrement() > 0) {
+                        throw new DataAccessResourceFailureException("MongoDB is down");
+                    }
+                    try {
+                        return method.invoke(visitLogDocumentRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private boolean awaitWritten(String visitLogId, String title) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            boolean written = visitLogDocumentRepository.findById(visitLogId)
+                    .filter(document -> title.equals(document.getTitle()))
+                    .isPresent();
+            if (written) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private VisitLog createVisitLog(String title) {
+        VisitLog visitLog = dataManager.create(VisitLog.class);
+        visitLog.setVisit(visit);
+        visitLog.setTitle(title);
+        return visitLog;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        visitLogDocumentRepository.deleteAll(visitLogDocumentRepository.findByVisitIdIn(List.of(visit.getId())));
+    }
+}